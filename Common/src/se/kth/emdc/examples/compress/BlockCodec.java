@@ -0,0 +1,88 @@
+package se.kth.emdc.examples.compress;
+
+import java.io.IOException;
+
+/**
+ * Compresses independent blocks of bytes, in pure Java so the jobs run
+ * without native libraries. A codec may keep state between the blocks
+ * (e.g. its hash table), so each stream uses its own instance, created by
+ * {@link #forName(String)}.
+ */
+public abstract class BlockCodec {
+
+	/** Job parameter with the codec of the intermediate data and the final sinks: none, lz4 or deflate. */
+	public static final String COMPRESSION_CODEC = "COMPRESSION_CODEC";
+
+	/** Job parameter that keeps the final sinks uncompressed when false. */
+	public static final String COMPRESS_OUTPUT = "COMPRESS_OUTPUT";
+
+	/** Job parameter with the size of the compressed blocks in kilobytes. */
+	public static final String COMPRESSION_BLOCK_KB = "COMPRESSION_BLOCK_KB";
+
+	public static final String NONE = "none";
+	public static final int DEFAULT_BLOCK_KB = 64;
+
+	/**
+	 * @return the name of the codec, as given to {@link #forName(String)}
+	 */
+	public abstract String getName();
+
+	/**
+	 * @return the id of the codec in the header of a compressed stream
+	 */
+	public abstract int getId();
+
+	/**
+	 * @return the maximum length of a compressed block of the given length
+	 */
+	public abstract int maxCompressedLength(int length);
+
+	/**
+	 * Compresses a block.
+	 * @param dst buffer of at least {@link #maxCompressedLength(int)} bytes after dstOffset
+	 * @return the length of the compressed block
+	 */
+	public abstract int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset);
+
+	/**
+	 * Decompresses a block.
+	 * @param rawLength the length of the block before compression
+	 * @throws IOException if the block is corrupted
+	 */
+	public abstract void decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int rawLength)
+			throws IOException;
+
+	/**
+	 * Releases the resources of the codec, it can not be used afterwards.
+	 */
+	public void end() {
+	}
+
+	/**
+	 * @return a new codec, or null for "none"
+	 * @throws IllegalArgumentException if the codec is unknown
+	 */
+	public static BlockCodec forName(String name) {
+		if (name == null || NONE.equals(name)) {
+			return null;
+		} else if (Lz4BlockCodec.NAME.equals(name)) {
+			return new Lz4BlockCodec();
+		} else if (DeflateBlockCodec.NAME.equals(name)) {
+			return new DeflateBlockCodec();
+		}
+		throw new IllegalArgumentException("Unknown compression codec: " + name);
+	}
+
+	/**
+	 * @return a new codec with the id of a stream header
+	 * @throws IOException if the id is unknown
+	 */
+	public static BlockCodec forId(int id) throws IOException {
+		if (id == Lz4BlockCodec.ID) {
+			return new Lz4BlockCodec();
+		} else if (id == DeflateBlockCodec.ID) {
+			return new DeflateBlockCodec();
+		}
+		throw new IOException("Unknown compression codec id: " + id);
+	}
+}
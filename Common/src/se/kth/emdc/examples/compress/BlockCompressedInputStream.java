@@ -0,0 +1,160 @@
+package se.kth.emdc.examples.compress;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a stream written by {@link BlockCompressedOutputStream}, with the
+ * codec named in its header.
+ */
+public class BlockCompressedInputStream extends InputStream {
+
+	private final InputStream in;
+	private BlockCodec codec;
+	private boolean headerRead;
+
+	private byte[] block = new byte[0];
+	private int blockLength;
+	private int position;
+	private byte[] compressed = new byte[0];
+	private final byte[] intBuffer = new byte[8];
+
+	public BlockCompressedInputStream(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Opens a file that may be compressed, e.g. the output of a job.
+	 * @return a stream decompressing the file if it starts with the header
+	 *         of a compressed stream, a stream of the file as is otherwise
+	 */
+	public static InputStream open(InputStream in) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in);
+		buffered.mark(4);
+		int magic = 0;
+		int read = 0;
+		for (int b; read < 4 && (b = buffered.read()) != -1; read++) {
+			magic = (magic << 8) | b;
+		}
+		buffered.reset();
+		return (read == 4 && magic == BlockCompressedOutputStream.MAGIC ? new BlockCompressedInputStream(buffered) : buffered);
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (position == blockLength && !readBlock()) {
+			return -1;
+		}
+		return block[position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (position == blockLength && !readBlock()) {
+			return -1;
+		}
+		int n = Math.min(len, blockLength - position);
+		System.arraycopy(block, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return blockLength - position;
+	}
+
+	/**
+	 * @return false at the end of the stream
+	 */
+	private boolean readBlock() throws IOException {
+		if (!headerRead) {
+			if (!readFully(intBuffer, 5, true)) {
+				return false;
+			}
+			if (readInt(intBuffer, 0) != BlockCompressedOutputStream.MAGIC) {
+				throw new IOException("Not a block compressed stream");
+			}
+			BlockCodec previous = codec;
+			codec = BlockCodec.forId(intBuffer[4]);
+			if (previous != null) {
+				previous.end();
+			}
+			headerRead = true;
+		}
+
+		if (!readFully(intBuffer, 8, true)) {
+			return false;
+		}
+		int rawLength = readInt(intBuffer, 0);
+		int storedLength = readInt(intBuffer, 4);
+		if (rawLength < 0 || storedLength < 0 || storedLength > rawLength) {
+			throw new IOException("Corrupted block compressed stream");
+		}
+		if (block.length < rawLength) {
+			block = new byte[rawLength];
+		}
+		if (storedLength == rawLength) {
+			readFully(block, rawLength, false);
+		} else {
+			if (compressed.length < storedLength) {
+				compressed = new byte[storedLength];
+			}
+			readFully(compressed, storedLength, false);
+			long start = CompressionStats.time();
+			codec.decompress(compressed, 0, storedLength, block, 0, rawLength);
+			CompressionStats.addDecompressed(CompressionStats.time() - start);
+		}
+		blockLength = rawLength;
+		position = 0;
+		return true;
+	}
+
+	/**
+	 * @param atBoundary true if the end of the stream is allowed before the first byte
+	 * @return false at the end of the stream
+	 */
+	private boolean readFully(byte[] b, int len, boolean atBoundary) throws IOException {
+		int off = 0;
+		while (off < len) {
+			int n = in.read(b, off, len - off);
+			if (n < 0) {
+				if (off == 0 && atBoundary) {
+					return false;
+				}
+				throw new EOFException("Truncated block compressed stream");
+			}
+			off += n;
+		}
+		return true;
+	}
+
+	private static int readInt(byte[] b, int off) {
+		return (b[off] & 0xFF) << 24 | (b[off + 1] & 0xFF) << 16 | (b[off + 2] & 0xFF) << 8 | (b[off + 3] & 0xFF);
+	}
+
+	/**
+	 * Expects the header of a new compressed stream at the next read.
+	 */
+	public void resetState() {
+		headerRead = false;
+		blockLength = 0;
+		position = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			in.close();
+		} finally {
+			if (codec != null) {
+				codec.end();
+			}
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package se.kth.emdc.examples.compress;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compresses the bytes written to it in independent blocks. The stream
+ * starts with a header naming the codec, so readers do not need to know
+ * it, and each block is written as:
+ * <pre>
+ * raw length (int) | stored length (int) | bytes
+ * </pre>
+ * A block that does not get smaller is stored as is, with its stored
+ * length equal to its raw length.
+ *
+ * @see BlockCompressedInputStream
+ */
+public class BlockCompressedOutputStream extends OutputStream {
+
+	/** "CBLK" */
+	public static final int MAGIC = 0x43424C4B;
+
+	private final OutputStream out;
+	private final BlockCodec codec;
+	private final byte[] block;
+	private int blockLength;
+	private byte[] compressed;
+	private boolean headerWritten;
+
+	/**
+	 * @param out the stream receiving the compressed blocks
+	 * @param codec the codec of the blocks, ended by {@link #close()}
+	 * @param blockSize the raw size of the blocks
+	 */
+	public BlockCompressedOutputStream(OutputStream out, BlockCodec codec, int blockSize) {
+		this.out = out;
+		this.codec = codec;
+		this.block = new byte[blockSize];
+		this.compressed = new byte[codec.maxCompressedLength(blockSize) + 8];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (blockLength == block.length) {
+			writeBlock();
+		}
+		block[blockLength++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (blockLength == block.length) {
+				writeBlock();
+			}
+			int n = Math.min(len, block.length - blockLength);
+			System.arraycopy(b, off, block, blockLength, n);
+			blockLength += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	private void writeBlock() throws IOException {
+		if (!headerWritten) {
+			writeInt(compressed, 0, MAGIC);
+			compressed[4] = (byte) codec.getId();
+			out.write(compressed, 0, 5);
+			headerWritten = true;
+		}
+		if (blockLength == 0) {
+			return;
+		}
+
+		long start = CompressionStats.time();
+		int length = codec.compress(block, 0, blockLength, compressed, 8);
+		if (length >= blockLength) {
+			System.arraycopy(block, 0, compressed, 8, blockLength);
+			length = blockLength;
+		}
+		CompressionStats.addCompressed(blockLength, length + 8, CompressionStats.time() - start);
+
+		writeInt(compressed, 0, blockLength);
+		writeInt(compressed, 4, length);
+		out.write(compressed, 0, length + 8);
+		blockLength = 0;
+	}
+
+	private static void writeInt(byte[] b, int off, int v) {
+		b[off] = (byte) (v >>> 24);
+		b[off + 1] = (byte) (v >>> 16);
+		b[off + 2] = (byte) (v >>> 8);
+		b[off + 3] = (byte) v;
+	}
+
+	/**
+	 * Writes the pending block, without closing or flushing the underlying stream.
+	 */
+	public void finish() throws IOException {
+		writeBlock();
+	}
+
+	/**
+	 * Starts a new compressed stream, with its own header, at the next write.
+	 */
+	public void resetState() {
+		blockLength = 0;
+		headerWritten = false;
+	}
+
+	/**
+	 * Writes the pending block, which makes small blocks: only use it when
+	 * the data must reach the underlying stream.
+	 */
+	@Override
+	public void flush() throws IOException {
+		writeBlock();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+			out.close();
+		} finally {
+			codec.end();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package se.kth.emdc.examples.compress;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes and CPU time of the block compression in this JVM. The streams add
+ * to global counters; a driver running the tasks in-process takes a
+ * {@link #snapshot()} before and after a job and reports the difference.
+ */
+public class CompressionStats {
+
+	private static final AtomicLong RAW_BYTES = new AtomicLong();
+	private static final AtomicLong COMPRESSED_BYTES = new AtomicLong();
+	private static final AtomicLong COMPRESS_NANOS = new AtomicLong();
+	private static final AtomicLong DECOMPRESS_NANOS = new AtomicLong();
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+	private final long rawBytes;
+	private final long compressedBytes;
+	private final long compressNanos;
+	private final long decompressNanos;
+
+	private CompressionStats(long rawBytes, long compressedBytes, long compressNanos, long decompressNanos) {
+		this.rawBytes = rawBytes;
+		this.compressedBytes = compressedBytes;
+		this.compressNanos = compressNanos;
+		this.decompressNanos = decompressNanos;
+	}
+
+	/**
+	 * @return the CPU time of the current thread in nanoseconds, or the wall
+	 *         clock time if the JVM does not measure it
+	 */
+	static long time() {
+		return (CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime());
+	}
+
+	static void addCompressed(int rawLength, int compressedLength, long nanos) {
+		RAW_BYTES.addAndGet(rawLength);
+		COMPRESSED_BYTES.addAndGet(compressedLength);
+		COMPRESS_NANOS.addAndGet(nanos);
+	}
+
+	static void addDecompressed(long nanos) {
+		DECOMPRESS_NANOS.addAndGet(nanos);
+	}
+
+	/**
+	 * @return the totals of this JVM so far
+	 */
+	public static CompressionStats snapshot() {
+		return new CompressionStats(RAW_BYTES.get(), COMPRESSED_BYTES.get(), COMPRESS_NANOS.get(), DECOMPRESS_NANOS.get());
+	}
+
+	/**
+	 * @return the compression done since an earlier snapshot
+	 */
+	public CompressionStats since(CompressionStats earlier) {
+		return new CompressionStats(rawBytes - earlier.rawBytes, compressedBytes - earlier.compressedBytes,
+				compressNanos - earlier.compressNanos, decompressNanos - earlier.decompressNanos);
+	}
+
+	public long getRawBytes() {
+		return rawBytes;
+	}
+
+	public long getCompressedBytes() {
+		return compressedBytes;
+	}
+
+	/**
+	 * @return the compressed size over the raw size, 1 if nothing was compressed
+	 */
+	public double getRatio() {
+		return (rawBytes == 0 ? 1 : (double) compressedBytes / rawBytes);
+	}
+
+	public long getCompressMillis() {
+		return compressNanos / 1000000;
+	}
+
+	public long getDecompressMillis() {
+		return decompressNanos / 1000000;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d bytes compressed into %d (ratio %.3f), %d ms of CPU compressing, %d ms decompressing",
+				rawBytes, compressedBytes, getRatio(), getCompressMillis(), getDecompressMillis());
+	}
+}
@@ -0,0 +1,77 @@
+package se.kth.emdc.examples.compress;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate compression of each block with the JDK's {@link Deflater}, at the
+ * fastest level: slower than {@link Lz4BlockCodec}, but usually 20-30%
+ * smaller on text.
+ */
+public class DeflateBlockCodec extends BlockCodec {
+
+	public static final String NAME = "deflate";
+	public static final int ID = 2;
+
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+	private final Inflater inflater = new Inflater(true);
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public int getId() {
+		return ID;
+	}
+
+	@Override
+	public int maxCompressedLength(int length) {
+		// stored blocks add 5 bytes per 16KB
+		return length + (length >>> 12) + 64;
+	}
+
+	@Override
+	public int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+		deflater.reset();
+		deflater.setInput(src, srcOffset, length);
+		deflater.finish();
+		int dstLength = maxCompressedLength(length);
+		int compressed = 0;
+		while (!deflater.finished() && compressed < dstLength) {
+			compressed += deflater.deflate(dst, dstOffset + compressed, dstLength - compressed);
+		}
+		return compressed;
+	}
+
+	@Override
+	public void decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int rawLength)
+			throws IOException {
+		inflater.reset();
+		inflater.setInput(src, srcOffset, length);
+		int inflated = 0;
+		try {
+			while (inflated < rawLength && !inflater.finished()) {
+				int n = inflater.inflate(dst, dstOffset + inflated, rawLength - inflated);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				inflated += n;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupted deflate block", e);
+		}
+		if (inflated != rawLength) {
+			throw new IOException("Corrupted deflate block: " + inflated + " bytes instead of " + rawLength);
+		}
+	}
+
+	@Override
+	public void end() {
+		deflater.end();
+		inflater.end();
+	}
+}
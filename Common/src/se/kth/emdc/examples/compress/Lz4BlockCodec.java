@@ -0,0 +1,182 @@
+package se.kth.emdc.examples.compress;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Fast compression in the LZ4 block format: a sequence of literals
+ * followed by a match of at least four bytes, copied from up to 64KB back.
+ * Each sequence starts with a token holding the literal length in its high
+ * nibble and the match length minus four in its low nibble, lengths of 15
+ * continuing in extra bytes. Matches are found through a hash table of the
+ * positions of four byte sequences, without searching further, which
+ * trades ratio for speed like the reference LZ4 does.
+ */
+public class Lz4BlockCodec extends BlockCodec {
+
+	public static final String NAME = "lz4";
+	public static final int ID = 1;
+
+	private static final int MIN_MATCH = 4;
+	private static final int MAX_OFFSET = 65535;
+	// the format requires the last 5 bytes to be literals and the last match to start 12 bytes before the end
+	private static final int LAST_LITERALS = 5;
+	private static final int MATCH_FIND_LIMIT = 12;
+
+	private static final int HASH_BITS = 12;
+	// positions of four byte sequences in the current block, -1 if none
+	private final int[] table = new int[1 << HASH_BITS];
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public int getId() {
+		return ID;
+	}
+
+	@Override
+	public int maxCompressedLength(int length) {
+		return length + length / 255 + 16;
+	}
+
+	@Override
+	public int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+		int end = srcOffset + length;
+		int matchLimit = end - LAST_LITERALS;
+		int op = dstOffset;
+		int anchor = srcOffset;
+
+		if (length > MATCH_FIND_LIMIT) {
+			Arrays.fill(table, -1);
+			int ip = srcOffset;
+			while (ip < end - MATCH_FIND_LIMIT) {
+				int sequence = readInt(src, ip);
+				int h = hash(sequence);
+				int ref = table[h];
+				table[h] = ip;
+				if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+					// skip faster over data that does not compress
+					ip += 1 + ((ip - anchor) >>> 6);
+					continue;
+				}
+
+				int matchLength = MIN_MATCH;
+				while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+					matchLength++;
+				}
+
+				int token = op;
+				op = writeLiterals(src, anchor, ip - anchor, dst, op);
+				dst[token] |= (byte) Math.min(matchLength - MIN_MATCH, 15);
+				dst[op++] = (byte) (ip - ref);
+				dst[op++] = (byte) ((ip - ref) >>> 8);
+				if (matchLength - MIN_MATCH >= 15) {
+					op = writeLength(matchLength - MIN_MATCH - 15, dst, op);
+				}
+				ip += matchLength;
+				anchor = ip;
+			}
+		}
+
+		return writeLiterals(src, anchor, end - anchor, dst, op) - dstOffset;
+	}
+
+	/**
+	 * Writes the token and the literals of a sequence, the match length of
+	 * the token is set by the caller.
+	 */
+	private static int writeLiterals(byte[] src, int literals, int literalLength, byte[] dst, int op) {
+		int token = op++;
+		if (literalLength >= 15) {
+			dst[token] = (byte) 0xF0;
+			op = writeLength(literalLength - 15, dst, op);
+		} else {
+			dst[token] = (byte) (literalLength << 4);
+		}
+		System.arraycopy(src, literals, dst, op, literalLength);
+		return op + literalLength;
+	}
+
+	private static int writeLength(int length, byte[] dst, int op) {
+		while (length >= 255) {
+			dst[op++] = (byte) 255;
+			length -= 255;
+		}
+		dst[op++] = (byte) length;
+		return op;
+	}
+
+	private static int readInt(byte[] bytes, int i) {
+		return (bytes[i] & 0xFF) | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF) << 16 | (bytes[i + 3] & 0xFF) << 24;
+	}
+
+	private static int hash(int sequence) {
+		return (sequence * -1640531535) >>> (32 - HASH_BITS);
+	}
+
+	@Override
+	public void decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int rawLength)
+			throws IOException {
+		int ip = srcOffset;
+		int end = srcOffset + length;
+		int op = dstOffset;
+		int dstEnd = dstOffset + rawLength;
+		try {
+			while (ip < end) {
+				int token = src[ip++] & 0xFF;
+
+				int literalLength = token >>> 4;
+				if (literalLength == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						literalLength += b;
+					} while (b == 255);
+				}
+				if (op + literalLength > dstEnd) {
+					throw new IOException("Corrupted LZ4 block");
+				}
+				System.arraycopy(src, ip, dst, op, literalLength);
+				ip += literalLength;
+				op += literalLength;
+				if (ip >= end) {
+					break;
+				}
+
+				int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+				ip += 2;
+				int matchLength = token & 0x0F;
+				if (matchLength == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						matchLength += b;
+					} while (b == 255);
+				}
+				matchLength += MIN_MATCH;
+
+				int ref = op - offset;
+				if (offset == 0 || ref < dstOffset || op + matchLength > dstEnd) {
+					throw new IOException("Corrupted LZ4 block");
+				}
+				if (offset >= matchLength) {
+					System.arraycopy(dst, ref, dst, op, matchLength);
+					op += matchLength;
+				} else {
+					// overlapping copy repeats the last offset bytes
+					for (int i = 0; i < matchLength; i++) {
+						dst[op++] = dst[ref++];
+					}
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Corrupted LZ4 block", e);
+		}
+		if (op != dstEnd) {
+			throw new IOException("Corrupted LZ4 block: " + (op - dstOffset) + " bytes instead of " + rawLength);
+		}
+	}
+}
@@ -1,28 +1,36 @@
 package se.kth.emdc.examples.kmeans;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 
 public class BasePoint {
 
-	protected Long coords[];
+	/**
+	 * Coordinates are kept in a flat primitive array, so a point costs a
+	 * single array header instead of one boxed Long per dimension.
+	 */
+	protected long coords[];
 	
 	public BasePoint(){
 		coords = null;
 	}
 	
 	public BasePoint(String[] coords){
-		this.coords = new Long[coords.length];
+		this.coords = new long[coords.length];
 		
 		for (int i = 0; i < coords.length; i++) {
-			this.coords[i] = new Long(coords[i]);
+			this.coords[i] = Long.parseLong(coords[i]);
 		}
 	}
 	
-	public BasePoint(Long[] coords){
+	public BasePoint(long[] coords){
 		this.coords = coords;
 	}
 	
@@ -32,18 +40,36 @@ public class BasePoint {
 			return -1.0;
 		}
 
+		return Math.sqrt(squaredDistanceTo(otherPoint));
+	}
+
+	/**
+	 * Computes the squared euclidian distance to another point of the same
+	 * dimension. Cheaper than {@link #euclidianDistanceTo(BasePoint)} when
+	 * only the ordering of distances matters.
+	 * @param otherPoint a point with the same dimension as this one
+	 * @return the squared distance between both points
+	 */
+	public double squaredDistanceTo(BasePoint otherPoint){
+		final long[] other = otherPoint.coords;
+
 		double quadSum = 0.0;
-		for (int i = 0; i < this.coords.length; i++) {
-			quadSum += Math.pow((this.coords[i] - otherPoint.coords[i]), 2);
+		for (int i = 0; i < coords.length; i++) {
+			double diff = coords[i] - other[i];
+			quadSum += diff * diff;
 		}
 		
-		return Math.sqrt(quadSum);
+		return quadSum;
 	}
 
-	public Long[] getCoords() {
+	public long[] getCoords() {
 		return coords;
 	}
 
+	public int getDimension() {
+		return coords.length;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -70,8 +96,8 @@ public class BasePoint {
 
 	@Override
 	public String toString() {
-		StringBuffer buf = new StringBuffer();
-		for (Long coord : coords) {
+		StringBuilder buf = new StringBuilder();
+		for (long coord : coords) {
 			buf.append(coord);
 			buf.append("\t");
 		}
@@ -88,13 +114,52 @@ public class BasePoint {
 
 		BufferedReader pointReader = new BufferedReader(new FileReader(pointsFileName));
 
-		LinkedList<BasePoint> pointsList = new LinkedList<BasePoint>();
+		try {
+			return readPoints(pointReader);
+		} finally {
+			pointReader.close();
+		}
+	}
+
+	/**
+	 * Reads one point per line until the end of the stream. Blank lines are
+	 * skipped, so concatenated job output files can be read directly.
+	 * @param pointReader
+	 * @return the list of points, in file order
+	 * @throws IOException if there is a problem while reading the stream
+	 */
+	public static List<BasePoint> readPoints(BufferedReader pointReader) throws IOException{
+
+		List<BasePoint> pointsList = new ArrayList<BasePoint>();
+		PointParser parser = new PointParser();
 
 		String line;
 		while((line = pointReader.readLine()) != null){
-			pointsList.add(new BasePoint(line.split("\\s+")));
+			if(parser.parse(line.getBytes()) > 0){
+				pointsList.add(new BasePoint(parser.copyValues()));
+			}
 		}
 
 		return pointsList;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Writes points to a local file, one point per line, in the same format
+	 * read by {@link #getPoints(String)}.
+	 * @param points
+	 * @param pointsFileName
+	 * @throws IOException if there is a problem while writing the file
+	 */
+	public static void writePoints(List<? extends BasePoint> points, String pointsFileName) throws IOException{
+
+		PrintWriter pointWriter = new PrintWriter(new BufferedWriter(new FileWriter(pointsFileName)));
+
+		try {
+			for (BasePoint point : points) {
+				pointWriter.println(point);
+			}
+		} finally {
+			pointWriter.close();
+		}
+	}
+}
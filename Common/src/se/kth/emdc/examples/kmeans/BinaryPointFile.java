@@ -0,0 +1,147 @@
+package se.kth.emdc.examples.kmeans;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Layout of the binary points file, a compact alternative to the text
+ * format produced by pointgenerator.py that can be read without parsing.
+ *
+ * The file starts with a fixed size header followed by blocks of points.
+ * All the values are little-endian:
+ * <pre>
+ * header: magic (int) | version (int) | dimension (int) | flags (int) |
+ *         count (long) | pointsPerBlock (int) | reserved (int)
+ * block:  pointsPerBlock * dimension coordinates (long) [| CRC32 (int)]
+ * </pre>
+ * Every block holds pointsPerBlock points except the last one, which holds
+ * the remaining ones. The CRC32 of the coordinates of a block follows them
+ * when the checksum flag is set.
+ *
+ * Since all the blocks have the same size their offsets can be computed, so
+ * a split of any byte range can locate its blocks without scanning: a split
+ * reads the blocks that start inside it, the same way text splits read the
+ * lines that start inside them.
+ */
+public class BinaryPointFile {
+
+	/** Job parameter selecting the points file format. */
+	public static final String POINTS_FORMAT = "POINTS_FORMAT";
+
+	public static final String TEXT = "text";
+	public static final String BINARY = "binary";
+
+	/** "KMPT" when read as little-endian bytes. */
+	public static final int MAGIC = 0x54504D4B;
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+
+	public static final int FLAG_CHECKSUMS = 1;
+
+	public static final int DEFAULT_POINTS_PER_BLOCK = 4096;
+
+	private final int dimension;
+	private final int flags;
+	private final long count;
+	private final int pointsPerBlock;
+
+	public BinaryPointFile(int dimension, long count, int pointsPerBlock, boolean checksums) {
+		if (dimension <= 0 || pointsPerBlock <= 0) {
+			throw new IllegalArgumentException("Dimension and points per block must be positive");
+		}
+		this.dimension = dimension;
+		this.count = count;
+		this.pointsPerBlock = pointsPerBlock;
+		this.flags = (checksums ? FLAG_CHECKSUMS : 0);
+	}
+
+	/**
+	 * Reads a header.
+	 * @param header the first {@link #HEADER_SIZE} bytes of the file
+	 * @throws IOException if the bytes are not a valid header
+	 */
+	public static BinaryPointFile readHeader(byte[] header) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(header, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+		if (buf.getInt() != MAGIC) {
+			throw new IOException("Not a binary points file");
+		}
+		int version = buf.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported binary points file version " + version);
+		}
+		int dimension = buf.getInt();
+		int flags = buf.getInt();
+		long count = buf.getLong();
+		int pointsPerBlock = buf.getInt();
+
+		return new BinaryPointFile(dimension, count, pointsPerBlock, (flags & FLAG_CHECKSUMS) != 0);
+	}
+
+	/**
+	 * @return the {@link #HEADER_SIZE} bytes of the header
+	 */
+	public byte[] toHeader() {
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(MAGIC);
+		buf.putInt(VERSION);
+		buf.putInt(dimension);
+		buf.putInt(flags);
+		buf.putLong(count);
+		buf.putInt(pointsPerBlock);
+		buf.putInt(0);
+		return buf.array();
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public int getPointsPerBlock() {
+		return pointsPerBlock;
+	}
+
+	public boolean hasChecksums() {
+		return (flags & FLAG_CHECKSUMS) != 0;
+	}
+
+	public int getPointSize() {
+		return dimension * 8;
+	}
+
+	/**
+	 * @return the size of a full block, checksum included
+	 */
+	public long getBlockSize() {
+		return (long) pointsPerBlock * getPointSize() + (hasChecksums() ? 4 : 0);
+	}
+
+	public long getNumBlocks() {
+		return (count + pointsPerBlock - 1) / pointsPerBlock;
+	}
+
+	public int getPointsInBlock(long block) {
+		return (int) Math.min(pointsPerBlock, count - block * pointsPerBlock);
+	}
+
+	public long getBlockOffset(long block) {
+		return HEADER_SIZE + block * getBlockSize();
+	}
+
+	/**
+	 * @return the first block starting at or after a file position
+	 */
+	public long getFirstBlockFrom(long position) {
+		if (position <= HEADER_SIZE) {
+			return 0;
+		}
+		long blockSize = getBlockSize();
+		long block = (position - HEADER_SIZE + blockSize - 1) / blockSize;
+		return Math.min(block, getNumBlocks());
+	}
+}
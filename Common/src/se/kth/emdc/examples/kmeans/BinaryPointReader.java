@@ -0,0 +1,212 @@
+package se.kth.emdc.examples.kmeans;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the points of the blocks starting inside a byte range of a binary
+ * points file (see {@link BinaryPointFile}). The coordinates are decoded
+ * from a little-endian ByteBuffer into a caller supplied array, so reading
+ * a point does not allocate.
+ *
+ * Local files are memory-mapped, in chunks of whole blocks of at most
+ * 2 GB since a ByteBuffer is indexed by an int. Streams of other file systems are read a
+ * whole block at a time into a reusable buffer.
+ */
+public class BinaryPointReader {
+
+	private final BinaryPointFile file;
+
+	// the blocks of the range, either mapped or read from the stream
+	private final ByteBuffer[] chunks;
+	private final long blocksPerChunk;
+	private final DataInputStream in;
+	private final byte[] blockBytes;
+
+	private ByteBuffer block;
+	private final long firstBlock;
+	private final long endBlock;
+	private long nextBlock;
+	private int pointsLeft;
+
+	private final CRC32 crc;
+	private byte[] crcScratch;
+
+	/**
+	 * Reads the blocks from a stream.
+	 * @param file the header of the file
+	 * @param in a stream positioned at the offset of the first block starting
+	 *        at or after start
+	 * @param start first byte of the range
+	 * @param length length of the range
+	 */
+	public BinaryPointReader(BinaryPointFile file, InputStream in, long start, long length) {
+		this.file = file;
+		this.chunks = null;
+		this.blocksPerChunk = 0;
+		this.in = new DataInputStream(in);
+		this.blockBytes = new byte[(int) file.getBlockSize()];
+		this.firstBlock = file.getFirstBlockFrom(start);
+		this.endBlock = file.getFirstBlockFrom(start + length);
+		this.nextBlock = firstBlock;
+		this.crc = (file.hasChecksums() ? new CRC32() : null);
+	}
+
+	private BinaryPointReader(BinaryPointFile file, ByteBuffer[] chunks, long blocksPerChunk, long firstBlock, long endBlock) {
+		this.file = file;
+		this.chunks = chunks;
+		this.blocksPerChunk = blocksPerChunk;
+		this.in = null;
+		this.blockBytes = null;
+		this.firstBlock = firstBlock;
+		this.endBlock = endBlock;
+		this.nextBlock = firstBlock;
+		this.crc = (file.hasChecksums() ? new CRC32() : null);
+	}
+
+	/**
+	 * Memory-maps the blocks starting inside a byte range of a local file.
+	 * @param pointsFile the binary points file
+	 * @param start first byte of the range
+	 * @param length length of the range, -1 for the whole file
+	 * @throws IOException if the file cannot be read or is not a binary points file
+	 */
+	public static BinaryPointReader map(File pointsFile, long start, long length) throws IOException {
+		return map(pointsFile, start, length, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param maxChunkBytes the maximum size of a mapping, at least one block
+	 */
+	static BinaryPointReader map(File pointsFile, long start, long length, long maxChunkBytes) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(pointsFile, "r");
+		try {
+			byte[] header = new byte[BinaryPointFile.HEADER_SIZE];
+			raf.readFully(header);
+			BinaryPointFile file = BinaryPointFile.readHeader(header);
+
+			long firstBlock = file.getFirstBlockFrom(start);
+			long endBlock = (length < 0 ? file.getNumBlocks() : file.getFirstBlockFrom(start + length));
+
+			long from = file.getBlockOffset(firstBlock);
+			long to = Math.min(file.getBlockOffset(endBlock), raf.length());
+
+			if (from >= to) {
+				// no block starts inside the range
+				return new BinaryPointReader(file, new ByteBuffer[0], 1, firstBlock, firstBlock);
+			}
+
+			// the mappings stay valid after the file is closed
+			long blocksPerChunk = Math.max(1, maxChunkBytes / file.getBlockSize());
+			long chunkBytes = blocksPerChunk * file.getBlockSize();
+			ByteBuffer[] chunks = new ByteBuffer[(int) ((to - from + chunkBytes - 1) / chunkBytes)];
+			FileChannel channel = raf.getChannel();
+			for (int i = 0; i < chunks.length; i++) {
+				long chunkStart = from + i * chunkBytes;
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, Math.min(chunkBytes, to - chunkStart));
+			}
+			return new BinaryPointReader(file, chunks, blocksPerChunk, firstBlock, endBlock);
+		} finally {
+			raf.close();
+		}
+	}
+
+	public BinaryPointFile getFile() {
+		return file;
+	}
+
+	public int getDimension() {
+		return file.getDimension();
+	}
+
+	/**
+	 * Reads the next point of the range.
+	 * @param coords array of at least {@link #getDimension()} values
+	 *        receiving the coordinates
+	 * @return false if there are no more points in the range
+	 * @throws IOException if the file is truncated or a checksum does not match
+	 */
+	public boolean next(long[] coords) throws IOException {
+		while (pointsLeft == 0) {
+			if (nextBlock >= endBlock) {
+				return false;
+			}
+			loadBlock(nextBlock++);
+		}
+
+		final ByteBuffer buf = block;
+		final int dimension = file.getDimension();
+		for (int i = 0; i < dimension; i++) {
+			coords[i] = buf.getLong();
+		}
+		pointsLeft--;
+		return true;
+	}
+
+	/**
+	 * @return the coordinates of the next point in a new array, or null if
+	 *         there are no more points in the range
+	 */
+	public long[] next() throws IOException {
+		long[] coords = new long[file.getDimension()];
+		return (next(coords) ? coords : null);
+	}
+
+	private void loadBlock(long blockNumber) throws IOException {
+		int points = file.getPointsInBlock(blockNumber);
+		int dataSize = points * file.getPointSize();
+		int size = dataSize + (crc != null ? 4 : 0);
+
+		if (chunks != null) {
+			int chunk = (int) ((blockNumber - firstBlock) / blocksPerChunk);
+			int position = (int) (((blockNumber - firstBlock) % blocksPerChunk) * file.getBlockSize());
+			ByteBuffer mapped = (chunk < chunks.length ? chunks[chunk] : null);
+			if (mapped == null || (long) position + size > mapped.capacity()) {
+				throw new EOFException("Truncated binary points file at block " + blockNumber);
+			}
+			mapped.limit(position + size).position(position);
+			block = mapped.slice().order(ByteOrder.LITTLE_ENDIAN);
+		} else {
+			in.readFully(blockBytes, 0, size);
+			block = ByteBuffer.wrap(blockBytes, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		if (crc != null) {
+			verifyChecksum(blockNumber, dataSize);
+		}
+		block.limit(dataSize);
+		pointsLeft = points;
+	}
+
+	private void verifyChecksum(long blockNumber, int dataSize) throws IOException {
+		byte[] bytes;
+		int offset;
+		if (block.hasArray()) {
+			bytes = block.array();
+			offset = block.arrayOffset();
+		} else {
+			// CRC32 only takes arrays, so mapped blocks are copied
+			if (crcScratch == null || crcScratch.length < dataSize) {
+				crcScratch = new byte[dataSize];
+			}
+			block.get(crcScratch, 0, dataSize);
+			block.position(0);
+			bytes = crcScratch;
+			offset = 0;
+		}
+
+		crc.reset();
+		crc.update(bytes, offset, dataSize);
+		if ((int) crc.getValue() != block.getInt(dataSize)) {
+			throw new IOException("Checksum error in binary points file block " + blockNumber);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package se.kth.emdc.examples.kmeans;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a binary points file (see {@link BinaryPointFile}) to the local
+ * file system. The number of points is only known at the end, so the
+ * header is written again when the writer is closed.
+ *
+ * The main method converts the text points files produced by
+ * pointgenerator.py.
+ */
+public class BinaryPointWriter {
+
+	private final RandomAccessFile out;
+	private final FileChannel channel;
+	private final int dimension;
+	private final int pointsPerBlock;
+	private final boolean checksums;
+
+	private final ByteBuffer block;
+	private final CRC32 crc;
+	private int pointsInBlock;
+	private long count;
+
+	/**
+	 * @param pointsFile the file to create, it is overwritten if it exists
+	 * @param dimension the dimension of the points
+	 * @param pointsPerBlock number of points of every block
+	 * @param checksums whether a CRC32 is appended to every block
+	 */
+	public BinaryPointWriter(File pointsFile, int dimension, int pointsPerBlock, boolean checksums) throws IOException {
+		// validates the parameters before touching the file
+		BinaryPointFile header = new BinaryPointFile(dimension, 0, pointsPerBlock, checksums);
+
+		this.out = new RandomAccessFile(pointsFile, "rw");
+		this.out.setLength(0);
+		this.channel = out.getChannel();
+		this.dimension = dimension;
+		this.pointsPerBlock = pointsPerBlock;
+		this.checksums = checksums;
+
+		this.block = ByteBuffer.allocate((int) header.getBlockSize()).order(ByteOrder.LITTLE_ENDIAN);
+		this.crc = (checksums ? new CRC32() : null);
+
+		out.write(header.toHeader());
+	}
+
+	/**
+	 * Appends a point.
+	 * @param coords the coordinates, exactly dimension values
+	 */
+	public void write(long[] coords) throws IOException {
+		if (coords.length != dimension) {
+			throw new IllegalArgumentException("Expected " + dimension + " coordinates but got " + coords.length);
+		}
+		for (int i = 0; i < dimension; i++) {
+			block.putLong(coords[i]);
+		}
+		count++;
+		if (++pointsInBlock == pointsPerBlock) {
+			flushBlock();
+		}
+	}
+
+	private void flushBlock() throws IOException {
+		if (pointsInBlock == 0) {
+			return;
+		}
+		if (checksums) {
+			crc.reset();
+			crc.update(block.array(), block.arrayOffset(), block.position());
+			block.putInt((int) crc.getValue());
+		}
+		block.flip();
+		while (block.hasRemaining()) {
+			channel.write(block);
+		}
+		block.clear();
+		pointsInBlock = 0;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Writes the last block and the final header.
+	 */
+	public void close() throws IOException {
+		try {
+			flushBlock();
+			channel.position(0);
+			out.write(new BinaryPointFile(dimension, count, pointsPerBlock, checksums).toHeader());
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Converts a text points file, one point per line, to a binary one.
+	 * @return the number of points written
+	 */
+	public static long convert(File textFile, File binaryFile, int pointsPerBlock, boolean checksums) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(textFile));
+		BinaryPointWriter writer = null;
+		try {
+			PointParser parser = new PointParser();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int dimension = parser.parse(line.getBytes());
+				if (dimension == 0) {
+					continue;
+				}
+				if (writer == null) {
+					writer = new BinaryPointWriter(binaryFile, dimension, pointsPerBlock, checksums);
+				}
+				writer.write(parser.copyValues());
+			}
+			if (writer == null) {
+				throw new IOException("No points in " + textFile);
+			}
+			return writer.getCount();
+		} finally {
+			reader.close();
+			if (writer != null) {
+				writer.close();
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		if (args.length < 2 || args.length > 4) {
+			System.err.println("Usage: " + BinaryPointWriter.class.getName() + " <textPointsFile> <binaryPointsFile> [pointsPerBlock] [checksums]");
+			System.err.println("<textPointsFile>: points file in the local file system, as written by pointgenerator.py");
+			System.err.println("<binaryPointsFile>: binary points file to create in the local file system");
+			System.err.println("[pointsPerBlock]: number of points of every block (default " + BinaryPointFile.DEFAULT_POINTS_PER_BLOCK + ")");
+			System.err.println("[checksums]: true to append a CRC32 to every block (default false)");
+			System.exit(2);
+		}
+
+		int pointsPerBlock = (args.length > 2 ? Integer.parseInt(args[2]) : BinaryPointFile.DEFAULT_POINTS_PER_BLOCK);
+		boolean checksums = (args.length > 3 && Boolean.parseBoolean(args[3]));
+
+		long start = System.currentTimeMillis();
+		long count = convert(new File(args[0]), new File(args[1]), pointsPerBlock, checksums);
+		System.out.println("Converted " + count + " points in " + (System.currentTimeMillis() - start) + "ms");
+	}
+}
@@ -0,0 +1,32 @@
+package se.kth.emdc.examples.kmeans;
+
+import java.util.List;
+
+/**
+ * Linear scan over an array of centers. O(k) per point, but without any
+ * overhead, which makes it the fastest choice for a small number of centers.
+ */
+public class BruteForceIndex extends NearestCenterIndex {
+
+	public BruteForceIndex(List<BasePoint> centers) {
+		super(centers);
+	}
+
+	@Override
+	public int nearest(BasePoint point) {
+		double minDist = Double.MAX_VALUE;
+		int closestCenterId = -1;
+
+		for (int i = 0; i < centers.length; i++) {
+			double dist = point.squaredDistanceTo(centers[i]);
+			if (dist < minDist) {
+				minDist = dist;
+				closestCenterId = i;
+			}
+		}
+		queries++;
+		distanceComputations += centers.length;
+
+		return closestCenterId;
+	}
+}
@@ -0,0 +1,156 @@
+package se.kth.emdc.examples.kmeans;
+
+import java.util.List;
+
+/**
+ * k-d tree over the cluster centers. Every node holds one center and splits
+ * the space on the dimension where its subtree has the largest spread; a
+ * query only descends into the far side of a split when the splitting
+ * plane is not farther away than the best center found so far.
+ *
+ * The tree is stored in flat arrays (node i holds center nodeCenter[i]),
+ * so queries do not allocate.
+ */
+public class KdTreeIndex extends NearestCenterIndex {
+
+	private final int[] nodeCenter;
+	private final int[] splitDim;
+	private final int[] left;
+	private final int[] right;
+	private final int root;
+
+	private int nodes;
+
+	// query state, the index is used by a single thread
+	private long[] query;
+	private int bestId;
+	private double bestDist;
+
+	public KdTreeIndex(List<BasePoint> centers) {
+		super(centers);
+
+		int k = this.centers.length;
+		nodeCenter = new int[k];
+		splitDim = new int[k];
+		left = new int[k];
+		right = new int[k];
+
+		int[] ids = new int[k];
+		for (int i = 0; i < k; i++) {
+			ids[i] = i;
+		}
+		root = build(ids, 0, k);
+	}
+
+	/**
+	 * Builds the subtree over ids[from, to) and returns its node, or -1 if
+	 * the range is empty.
+	 */
+	private int build(int[] ids, int from, int to) {
+		if (from >= to) {
+			return -1;
+		}
+
+		int dim = widestDimension(ids, from, to);
+		int mid = (from + to) >>> 1;
+		select(ids, from, to - 1, mid, dim);
+
+		int node = nodes++;
+		nodeCenter[node] = ids[mid];
+		splitDim[node] = dim;
+		left[node] = build(ids, from, mid);
+		right[node] = build(ids, mid + 1, to);
+		return node;
+	}
+
+	private int widestDimension(int[] ids, int from, int to) {
+		int dimension = centers[ids[from]].getDimension();
+		int widest = 0;
+		double maxSpread = -1;
+
+		for (int d = 0; d < dimension; d++) {
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			for (int i = from; i < to; i++) {
+				long c = centers[ids[i]].coords[d];
+				if (c < min) min = c;
+				if (c > max) max = c;
+			}
+			double spread = (double) max - (double) min;
+			if (spread > maxSpread) {
+				maxSpread = spread;
+				widest = d;
+			}
+		}
+		return widest;
+	}
+
+	/**
+	 * Quickselect: reorders ids[lo, hi] so that position n holds the center
+	 * with the n-th smallest coordinate on the given dimension, smaller ones
+	 * before it and larger ones after it.
+	 */
+	private void select(int[] ids, int lo, int hi, int n, int dim) {
+		while (hi > lo) {
+			long pivot = centers[ids[(lo + hi) >>> 1]].coords[dim];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (centers[ids[i]].coords[dim] < pivot) i++;
+				while (centers[ids[j]].coords[dim] > pivot) j--;
+				if (i <= j) {
+					int tmp = ids[i];
+					ids[i] = ids[j];
+					ids[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (n <= j) {
+				hi = j;
+			} else if (n >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public int nearest(BasePoint point) {
+		query = point.coords;
+		bestId = -1;
+		bestDist = Double.MAX_VALUE;
+
+		search(root, point);
+		queries++;
+
+		query = null;
+		return bestId;
+	}
+
+	private void search(int node, BasePoint point) {
+		if (node < 0) {
+			return;
+		}
+
+		int id = nodeCenter[node];
+		double dist = point.squaredDistanceTo(centers[id]);
+		distanceComputations++;
+		if (dist < bestDist || (dist == bestDist && id < bestId)) {
+			bestDist = dist;
+			bestId = id;
+		}
+
+		int dim = splitDim[node];
+		double diff = (double) query[dim] - centers[id].coords[dim];
+		int near = (diff < 0 ? left[node] : right[node]);
+		int far = (diff < 0 ? right[node] : left[node]);
+
+		search(near, point);
+		// ties have to be visited too, a center with a lower id may be on the plane
+		if (diff * diff <= bestDist) {
+			search(far, point);
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package se.kth.emdc.examples.kmeans;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs the k-means iterations from a single JVM. The current centers are kept
+ * in memory, written to a local file before each iteration (the jobs read
+ * them from there) and read back from the job output afterwards.
+ *
+ * The loop stops when no center moved more than the convergence threshold,
+ * which replaces the textual sort/diff of the centers files done by the
+ * kmeans-*-local.sh scripts.
+ */
+public abstract class KmeansDriver {
+
+	public static final double DEFAULT_CONVERGENCE_THRESHOLD = 0.0;
+	public static final int DEFAULT_MAX_ITERATIONS = 100;
+	public static final long DEFAULT_SAMPLE_SEED = 1L;
+
+	protected final String pointsFile;
+	protected final String outputPath;
+
+	private double convergenceThreshold = DEFAULT_CONVERGENCE_THRESHOLD;
+	private int maxIterations = DEFAULT_MAX_ITERATIONS;
+	private File workDir = new File(System.getProperty("java.io.tmpdir"));
+
+	private int iterations;
+	private double lastMovement;
+
+	/**
+	 * @param pointsFile the points file, as understood by the job
+	 * @param outputPath the folder where each iteration writes its centers
+	 */
+	public KmeansDriver(String pointsFile, String outputPath) {
+		this.pointsFile = pointsFile;
+		this.outputPath = outputPath;
+	}
+
+	/**
+	 * Runs a single k-means iteration with the centers stored in the given
+	 * local file and returns the recomputed centers.
+	 * @param iteration the iteration number, starting at 0
+	 * @param centersFileName local file holding the current centers
+	 * @return the new centers
+	 * @throws Exception if the job fails
+	 */
+	protected abstract List<BasePoint> runIteration(int iteration, String centersFileName) throws Exception;
+
+	/**
+	 * Iterates until the centers converge or the maximum number of
+	 * iterations is reached.
+	 * @param initialCenters the centers of the first iteration
+	 * @return the final centers
+	 * @throws Exception if one of the jobs fails
+	 */
+	public List<BasePoint> run(List<BasePoint> initialCenters) throws Exception {
+
+		File centersFile = File.createTempFile("kmeans-centers", ".txt", workDir);
+		centersFile.deleteOnExit();
+
+		List<BasePoint> centers = initialCenters;
+		iterations = 0;
+		lastMovement = Double.POSITIVE_INFINITY;
+
+		try {
+			while (iterations < maxIterations) {
+				long start = System.currentTimeMillis();
+
+				BasePoint.writePoints(centers, centersFile.getAbsolutePath());
+				List<BasePoint> nextCenters = runIteration(iterations, centersFile.getAbsolutePath());
+
+				lastMovement = maxMovement(centers, nextCenters);
+				centers = nextCenters;
+				iterations++;
+
+				System.out.println("Iteration " + iterations + ": max center movement " + lastMovement
+						+ ", " + (System.currentTimeMillis() - start) + "ms");
+
+				if (lastMovement <= convergenceThreshold) {
+					break;
+				}
+			}
+		} finally {
+			centersFile.delete();
+		}
+
+		return centers;
+	}
+
+	/**
+	 * Computes how far the centers moved between two iterations. Jobs do not
+	 * emit the centers in a stable order, so every new center is matched
+	 * with its nearest previous center.
+	 * @return the largest movement, or positive infinity if the number of
+	 *         centers changed (e.g. a cluster became empty)
+	 */
+	public static double maxMovement(List<BasePoint> previous, List<BasePoint> next) {
+		if (previous.size() != next.size()) {
+			return Double.POSITIVE_INFINITY;
+		}
+
+		double maxSquared = 0.0;
+		for (BasePoint center : next) {
+			double minSquared = Double.POSITIVE_INFINITY;
+			for (BasePoint old : previous) {
+				if (old.getDimension() != center.getDimension()) {
+					return Double.POSITIVE_INFINITY;
+				}
+				double dist = center.squaredDistanceTo(old);
+				if (dist < minSquared) {
+					minSquared = dist;
+				}
+			}
+			if (minSquared > maxSquared) {
+				maxSquared = minSquared;
+			}
+		}
+		return Math.sqrt(maxSquared);
+	}
+
+	/**
+	 * Picks k lines of the points stream as initial centers
+	 * (reservoir sampling, so the stream is read only once).
+	 * @param pointReader
+	 * @param k the number of centers
+	 * @param seed seed of the random generator
+	 * @return the initial centers
+	 * @throws IOException if there is a problem while reading the stream
+	 */
+	public static List<BasePoint> sampleCenters(BufferedReader pointReader, int k, long seed) throws IOException {
+		Random random = new Random(seed);
+		List<BasePoint> sample = new ArrayList<BasePoint>(k);
+		PointParser parser = new PointParser();
+
+		long seen = 0;
+		String line;
+		while ((line = pointReader.readLine()) != null) {
+			if (parser.parse(line.getBytes()) == 0) {
+				continue;
+			}
+			seen++;
+			if (sample.size() < k) {
+				sample.add(new BasePoint(parser.copyValues()));
+			} else {
+				long slot = (long) (random.nextDouble() * seen);
+				if (slot < k) {
+					sample.set((int) slot, new BasePoint(parser.copyValues()));
+				}
+			}
+		}
+		return sample;
+	}
+
+	/**
+	 * Picks k points of a binary points file as initial centers, see
+	 * {@link #sampleCenters(BufferedReader, int, long)}.
+	 * @param pointReader
+	 * @param k the number of centers
+	 * @param seed seed of the random generator
+	 * @return the initial centers
+	 * @throws IOException if there is a problem while reading the file
+	 */
+	public static List<BasePoint> sampleCenters(BinaryPointReader pointReader, int k, long seed) throws IOException {
+		Random random = new Random(seed);
+		List<BasePoint> sample = new ArrayList<BasePoint>(k);
+
+		long seen = 0;
+		long[] coords;
+		while ((coords = pointReader.next()) != null) {
+			seen++;
+			if (sample.size() < k) {
+				sample.add(new BasePoint(coords));
+			} else {
+				long slot = (long) (random.nextDouble() * seen);
+				if (slot < k) {
+					sample.set((int) slot, new BasePoint(coords));
+				}
+			}
+		}
+		return sample;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public double getLastMovement() {
+		return lastMovement;
+	}
+
+	public double getConvergenceThreshold() {
+		return convergenceThreshold;
+	}
+
+	public void setConvergenceThreshold(double convergenceThreshold) {
+		this.convergenceThreshold = convergenceThreshold;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	public void setWorkDir(File workDir) {
+		this.workDir = workDir;
+	}
+}
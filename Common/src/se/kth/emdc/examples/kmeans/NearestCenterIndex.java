@@ -0,0 +1,106 @@
+package se.kth.emdc.examples.kmeans;
+
+import java.util.List;
+
+/**
+ * Finds the nearest cluster center of a point. An index is built once per
+ * task from the centers of the current iteration and then queried for every
+ * point, so implementations may spend some work up front to make the
+ * queries cheaper.
+ *
+ * Center ids are positions in the list the index was built from. When two
+ * centers are at the same distance the one with the lowest id wins, so all
+ * the exact implementations assign points exactly like a linear scan.
+ * {@link RandomProjectionIndex} is approximate.
+ */
+public abstract class NearestCenterIndex {
+
+	/** Job parameter selecting the index implementation. */
+	public static final String NEAREST_CENTER_INDEX = "NEAREST_CENTER_INDEX";
+
+	public static final String BRUTE_FORCE = "bruteforce";
+	public static final String KD_TREE = "kdtree";
+	public static final String TRIANGLE_INEQUALITY = "triangle";
+	public static final String RANDOM_PROJECTION = "projection";
+
+	/** Job parameters of {@link RandomProjectionIndex}. */
+	public static final String PROJECTION_DIMENSION = "PROJECTION_DIMENSION";
+	public static final String PROJECTION_CANDIDATES = "PROJECTION_CANDIDATES";
+	public static final String PROJECTION_SEED = "PROJECTION_SEED";
+
+	public static final int DEFAULT_PROJECTION_DIMENSION = 16;
+	public static final int DEFAULT_PROJECTION_CANDIDATES = 3;
+	public static final long DEFAULT_PROJECTION_SEED = 1L;
+
+	protected final BasePoint[] centers;
+
+	/** Number of calls to {@link #nearest(BasePoint)}. */
+	protected long queries;
+
+	/** Number of point-to-center distances evaluated by {@link #nearest(BasePoint)}. */
+	protected long distanceComputations;
+
+	protected NearestCenterIndex(List<BasePoint> centers) {
+		this.centers = centers.toArray(new BasePoint[centers.size()]);
+	}
+
+	/**
+	 * @param point a point with the same dimension as the centers
+	 * @return the id of the nearest center, or -1 if there are no centers
+	 */
+	public abstract int nearest(BasePoint point);
+
+	public int size() {
+		return centers.length;
+	}
+
+	public BasePoint getCenter(int id) {
+		return centers[id];
+	}
+
+	public long getDistanceComputations() {
+		return distanceComputations;
+	}
+
+	/**
+	 * @return the number of point-to-center distances a linear scan would
+	 *         have evaluated but this index skipped
+	 */
+	public long getSkippedDistances() {
+		return queries * centers.length - distanceComputations;
+	}
+
+	/**
+	 * Creates the index selected by a job parameter, with the default
+	 * settings of {@link RandomProjectionIndex}.
+	 * @see #create(String, List, int, int, long)
+	 */
+	public static NearestCenterIndex create(String type, List<BasePoint> centers) {
+		return create(type, centers, DEFAULT_PROJECTION_DIMENSION, DEFAULT_PROJECTION_CANDIDATES, DEFAULT_PROJECTION_SEED);
+	}
+
+	/**
+	 * Creates the index selected by a job parameter.
+	 * @param type one of {@link #BRUTE_FORCE}, {@link #KD_TREE},
+	 *        {@link #TRIANGLE_INEQUALITY} or {@link #RANDOM_PROJECTION},
+	 *        null selects brute force
+	 * @param centers the cluster centers
+	 * @param projectionDimension dimension of the sketch of {@link RandomProjectionIndex}
+	 * @param projectionCandidates centers checked exactly by {@link RandomProjectionIndex}
+	 * @param projectionSeed seed of the projection of {@link RandomProjectionIndex}
+	 * @throws IllegalArgumentException if the type is unknown
+	 */
+	public static NearestCenterIndex create(String type, List<BasePoint> centers,
+			int projectionDimension, int projectionCandidates, long projectionSeed) {
+		if (type == null || BRUTE_FORCE.equals(type)) {
+			return new BruteForceIndex(centers);
+		} else if (KD_TREE.equals(type)) {
+			return new KdTreeIndex(centers);
+		} else if (TRIANGLE_INEQUALITY.equals(type)) {
+			return new TriangleInequalityIndex(centers);
+		} else if (RANDOM_PROJECTION.equals(type)) {
+			return new RandomProjectionIndex(centers, projectionDimension, projectionCandidates, projectionSeed);
+		}
+		throw new IllegalArgumentException("Unknown nearest center index: " + type);
+	}
+}
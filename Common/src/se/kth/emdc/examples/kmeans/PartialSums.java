@@ -0,0 +1,61 @@
+package se.kth.emdc.examples.kmeans;
+
+/**
+ * Running coordinate sums and point counts of every cluster, used by the
+ * mappers to combine the points of a whole task in memory. Instead of
+ * emitting one record per point, a mapper adds each point to the sums of
+ * its nearest center and emits at most one record per center when the task
+ * finishes.
+ *
+ * The sum arrays are allocated on the first point of each cluster and
+ * updated in place afterwards, so adding a point does not allocate.
+ */
+public class PartialSums {
+
+	/** Job parameter enabling the in-mapper combining of the points. */
+	public static final String IN_MAPPER_COMBINING = "IN_MAPPER_COMBINING";
+
+	private final long[][] sums;
+	private final long[] counts;
+
+	/**
+	 * @param numCenters the number of clusters
+	 */
+	public PartialSums(int numCenters) {
+		sums = new long[numCenters][];
+		counts = new long[numCenters];
+	}
+
+	/**
+	 * Adds a (possibly already summed) point to the sums of a cluster.
+	 * @param centerId the id of the cluster
+	 * @param coords the coordinates of the point
+	 * @param count the number of points the coordinates stand for
+	 */
+	public void add(int centerId, long[] coords, long count) {
+		long[] clusterSums = sums[centerId];
+		if (clusterSums == null) {
+			sums[centerId] = coords.clone();
+		} else {
+			for (int i = 0; i < clusterSums.length; i++) {
+				clusterSums[i] += coords[i];
+			}
+		}
+		counts[centerId] += count;
+	}
+
+	public int size() {
+		return counts.length;
+	}
+
+	/**
+	 * @return the coordinate sums of a cluster, or null if no point was added to it
+	 */
+	public long[] getSums(int centerId) {
+		return sums[centerId];
+	}
+
+	public long getCount(int centerId) {
+		return counts[centerId];
+	}
+}
@@ -0,0 +1,220 @@
+package se.kth.emdc.examples.kmeans;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JVM wide cache of the parsed points of input splits. The points do not
+ * change between k-means iterations, so when the iterations run in the
+ * same JVM (the in-process drivers with local job runners) every iteration
+ * after the first one can take the points of a split from memory instead
+ * of reading and parsing the file again.
+ *
+ * The points of a split are stored in a single flat long array. The cache
+ * holds at most a configured number of bytes and evicts the least recently
+ * used splits when it is full. A split larger than the whole budget is
+ * never cached.
+ */
+public class PointBlockCache {
+
+	/** Job parameter enabling the cache. */
+	public static final String POINT_CACHE = "POINT_CACHE";
+
+	/** Job parameter with the size of the cache in megabytes. */
+	public static final String POINT_CACHE_MB = "POINT_CACHE_MB";
+
+	public static final int DEFAULT_POINT_CACHE_MB = 512;
+
+	private static final PointBlockCache INSTANCE = new PointBlockCache(DEFAULT_POINT_CACHE_MB * 1024L * 1024L);
+
+	/**
+	 * The points of one split, coordinates of point i at
+	 * [i * dimension, (i + 1) * dimension).
+	 */
+	public static class PointBlock {
+
+		private final int dimension;
+		private final int count;
+		private final long[] coords;
+
+		public PointBlock(int dimension, int count, long[] coords) {
+			this.dimension = dimension;
+			this.count = count;
+			this.coords = coords;
+		}
+
+		public int getDimension() {
+			return dimension;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * Copies the coordinates of a point.
+		 * @param i the position of the point in the split
+		 * @param into array of at least dimension values
+		 */
+		public void getPoint(int i, long[] into) {
+			System.arraycopy(coords, i * dimension, into, 0, dimension);
+		}
+
+		public long getBytes() {
+			return coords.length * 8L;
+		}
+	}
+
+	/**
+	 * Collects the points of a split while it is read from the file. Gives
+	 * up as soon as the points do not fit in the given number of bytes.
+	 */
+	public static class Builder {
+
+		private final long maxBytes;
+		private long[] coords = new long[1024];
+		private int dimension = -1;
+		private int count;
+		private boolean overflow;
+
+		public Builder(long maxBytes) {
+			// a split is stored in a single array
+			this.maxBytes = Math.min(maxBytes, (Integer.MAX_VALUE - 8) * 8L);
+		}
+
+		/**
+		 * Adds the first dimension values of a buffer as the next point.
+		 * @return false if the split is too large to be cached or the
+		 *         points do not have the same dimension
+		 */
+		public boolean add(long[] point, int dimension) {
+			if (overflow) {
+				return false;
+			}
+			if (this.dimension < 0) {
+				this.dimension = dimension;
+			}
+
+			int size = count * dimension;
+			if (dimension != this.dimension || (size + (long) dimension) * 8 > maxBytes) {
+				overflow = true;
+				coords = null;
+				return false;
+			}
+			if (size + dimension > coords.length) {
+				long newLength = Math.max((long) coords.length * 2, size + dimension);
+				coords = Arrays.copyOf(coords, (int) Math.min(newLength, maxBytes / 8));
+			}
+			System.arraycopy(point, 0, coords, size, dimension);
+			count++;
+			return true;
+		}
+
+		/**
+		 * @return the collected points, or null if they could not be cached
+		 */
+		public PointBlock build() {
+			if (overflow || dimension < 0) {
+				return null;
+			}
+			return new PointBlock(dimension, count, Arrays.copyOf(coords, count * dimension));
+		}
+	}
+
+	private final LinkedHashMap<String, PointBlock> blocks = new LinkedHashMap<String, PointBlock>(16, 0.75f, true);
+	private long capacity;
+	private long usedBytes;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	PointBlockCache(long capacity) {
+		this.capacity = capacity;
+	}
+
+	public static PointBlockCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @return the key of the points of a split
+	 */
+	public static String key(String path, long start, long length) {
+		return path + ":" + start + ":" + length;
+	}
+
+	/**
+	 * Changes the size of the cache, evicting splits if it shrinks.
+	 */
+	public synchronized void setCapacity(long capacity) {
+		this.capacity = capacity;
+		evict();
+	}
+
+	public synchronized long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the points of a split, or null if they are not cached
+	 */
+	public synchronized PointBlock get(String key) {
+		PointBlock block = blocks.get(key);
+		if (block == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return block;
+	}
+
+	/**
+	 * Caches the points of a split, evicting the least recently used
+	 * splits to make room for them.
+	 */
+	public synchronized void put(String key, PointBlock block) {
+		if (block.getBytes() > capacity) {
+			return;
+		}
+		PointBlock old = blocks.put(key, block);
+		if (old != null) {
+			usedBytes -= old.getBytes();
+		}
+		usedBytes += block.getBytes();
+		evict();
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<String, PointBlock>> it = blocks.entrySet().iterator();
+		while (usedBytes > capacity && it.hasNext()) {
+			usedBytes -= it.next().getValue().getBytes();
+			it.remove();
+			evictions++;
+		}
+	}
+
+	public synchronized void clear() {
+		blocks.clear();
+		usedBytes = 0;
+	}
+
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * @return the number of splits evicted since the cache was created
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "Point cache: " + blocks.size() + " splits, " + usedBytes + " of " + capacity + " bytes, "
+				+ hits + " hits, " + misses + " misses, " + evictions + " evictions";
+	}
+}
@@ -0,0 +1,119 @@
+package se.kth.emdc.examples.kmeans;
+
+import java.util.Arrays;
+
+/**
+ * Parses the whitespace separated coordinates of a point straight from the
+ * bytes of a line. Replaces the bytes -&gt; String -&gt; split -&gt; parseLong
+ * chain: the digits are accumulated into a reusable buffer, so parsing a
+ * line allocates nothing once the buffer has grown to the point dimension.
+ *
+ * Spaces, tabs, carriage returns and line feeds separate the numbers.
+ * Leading and trailing separators are ignored. A parser is not thread safe;
+ * every task keeps its own.
+ */
+public class PointParser {
+
+	private long[] values = new long[16];
+	private int count;
+
+	/**
+	 * Parses all the numbers of a line.
+	 * @param bytes buffer holding the line
+	 * @param offset position of the first byte of the line
+	 * @param length number of bytes of the line
+	 * @return the number of values parsed, 0 for a blank line
+	 * @throws NumberFormatException if a token is not a valid long
+	 */
+	public int parse(byte[] bytes, int offset, int length) {
+		final int end = offset + length;
+		int pos = offset;
+		count = 0;
+
+		while (true) {
+			while (pos < end && isSeparator(bytes[pos])) {
+				pos++;
+			}
+			if (pos == end) {
+				return count;
+			}
+
+			int start = pos;
+			boolean negative = false;
+			if (bytes[pos] == '-' || bytes[pos] == '+') {
+				negative = (bytes[pos] == '-');
+				pos++;
+			}
+
+			// accumulate negatively, like Long.parseLong, so Long.MIN_VALUE fits
+			long limit = (negative ? Long.MIN_VALUE : -Long.MAX_VALUE);
+			long multmin = limit / 10;
+			long result = 0;
+			int digits = 0;
+			while (pos < end && !isSeparator(bytes[pos])) {
+				int digit = bytes[pos] - '0';
+				if (digit < 0 || digit > 9 || result < multmin) {
+					throw numberFormatException(bytes, start, end);
+				}
+				result *= 10;
+				if (result < limit + digit) {
+					throw numberFormatException(bytes, start, end);
+				}
+				result -= digit;
+				digits++;
+				pos++;
+			}
+			if (digits == 0) {
+				throw numberFormatException(bytes, start, end);
+			}
+
+			if (count == values.length) {
+				values = Arrays.copyOf(values, count * 2);
+			}
+			values[count++] = (negative ? result : -result);
+		}
+	}
+
+	/**
+	 * @see #parse(byte[], int, int)
+	 */
+	public int parse(byte[] line) {
+		return parse(line, 0, line.length);
+	}
+
+	/**
+	 * @return the number of values of the last parsed line
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the buffer holding the values of the last parsed line in its
+	 *         first {@link #getCount()} positions; it is overwritten by the
+	 *         next call to parse
+	 */
+	public long[] getValues() {
+		return values;
+	}
+
+	/**
+	 * @return a copy of the values of the last parsed line, to be kept as
+	 *         the coordinates of a point
+	 */
+	public long[] copyValues() {
+		return Arrays.copyOf(values, count);
+	}
+
+	private static boolean isSeparator(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+	}
+
+	private static NumberFormatException numberFormatException(byte[] bytes, int start, int end) {
+		int tokenEnd = start;
+		while (tokenEnd < end && !isSeparator(bytes[tokenEnd])) {
+			tokenEnd++;
+		}
+		return new NumberFormatException("For input string: \"" + new String(bytes, start, tokenEnd - start) + "\"");
+	}
+}
@@ -0,0 +1,142 @@
+package se.kth.emdc.examples.kmeans;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Approximate index for wide points. Points and centers are mapped into a
+ * low-dimensional sketch with a seeded Johnson-Lindenstrauss projection
+ * (the sparse +1/0/-1 matrix of Achlioptas, so projecting only takes
+ * additions). The centers nearest to the point in the sketch are
+ * shortlisted, and only those candidates are compared with the exact full
+ * dimension distance.
+ *
+ * Unlike the other indexes the result may differ from a linear scan when
+ * the true nearest center is not among the candidates. The centers are
+ * still recomputed from the original coordinates, so the error is limited
+ * to points close to the border of two clusters.
+ */
+public class RandomProjectionIndex extends NearestCenterIndex {
+
+	// rows of the projection matrix: the input dimensions added to and
+	// subtracted from each output dimension
+	private final int[][] plus;
+	private final int[][] minus;
+
+	private final double[][] projectedCenters;
+	private final int candidates;
+
+	// query state, the index is used by a single thread
+	private final double[] projected;
+	private final int[] candidateIds;
+	private final double[] candidateDists;
+
+	/**
+	 * @param centers the cluster centers
+	 * @param projectedDimension dimension of the sketch
+	 * @param candidates number of centers checked with the exact distance
+	 * @param seed seed of the projection matrix, all the tasks must use the same
+	 */
+	public RandomProjectionIndex(List<BasePoint> centers, int projectedDimension, int candidates, long seed) {
+		super(centers);
+
+		if (projectedDimension <= 0 || candidates <= 0) {
+			throw new IllegalArgumentException("Projected dimension and candidates must be positive");
+		}
+
+		int dimension = (this.centers.length > 0 ? this.centers[0].getDimension() : 0);
+		Random random = new Random(seed);
+
+		plus = new int[projectedDimension][];
+		minus = new int[projectedDimension][];
+		int[] plusBuf = new int[dimension];
+		int[] minusBuf = new int[dimension];
+		for (int j = 0; j < projectedDimension; j++) {
+			int p = 0;
+			int m = 0;
+			for (int i = 0; i < dimension; i++) {
+				// +1 and -1 with probability 1/6 each, 0 otherwise
+				int r = random.nextInt(6);
+				if (r == 0) {
+					plusBuf[p++] = i;
+				} else if (r == 1) {
+					minusBuf[m++] = i;
+				}
+			}
+			plus[j] = Arrays.copyOf(plusBuf, p);
+			minus[j] = Arrays.copyOf(minusBuf, m);
+		}
+
+		projectedCenters = new double[this.centers.length][];
+		for (int c = 0; c < this.centers.length; c++) {
+			projectedCenters[c] = project(this.centers[c].coords, new double[projectedDimension]);
+		}
+
+		this.candidates = Math.min(candidates, this.centers.length);
+		projected = new double[projectedDimension];
+		candidateIds = new int[this.candidates];
+		candidateDists = new double[this.candidates];
+	}
+
+	private double[] project(long[] coords, double[] into) {
+		for (int j = 0; j < into.length; j++) {
+			double sum = 0.0;
+			for (int i : plus[j]) {
+				sum += coords[i];
+			}
+			for (int i : minus[j]) {
+				sum -= coords[i];
+			}
+			into[j] = sum;
+		}
+		return into;
+	}
+
+	@Override
+	public int nearest(BasePoint point) {
+		queries++;
+		if (candidates == 0) {
+			return -1;
+		}
+
+		project(point.coords, projected);
+
+		// keep the candidates sorted by their distance in the sketch
+		int found = 0;
+		for (int c = 0; c < projectedCenters.length; c++) {
+			double[] center = projectedCenters[c];
+			double dist = 0.0;
+			for (int j = 0; j < center.length; j++) {
+				double diff = projected[j] - center[j];
+				dist += diff * diff;
+			}
+
+			if (found < candidates || dist < candidateDists[found - 1]) {
+				int pos = (found < candidates ? found++ : found - 1);
+				while (pos > 0 && candidateDists[pos - 1] > dist) {
+					candidateDists[pos] = candidateDists[pos - 1];
+					candidateIds[pos] = candidateIds[pos - 1];
+					pos--;
+				}
+				candidateDists[pos] = dist;
+				candidateIds[pos] = c;
+			}
+		}
+
+		// exact distances only for the shortlisted centers
+		int bestId = -1;
+		double bestDist = Double.MAX_VALUE;
+		for (int i = 0; i < found; i++) {
+			int id = candidateIds[i];
+			double dist = point.squaredDistanceTo(centers[id]);
+			if (dist < bestDist || (dist == bestDist && id < bestId)) {
+				bestDist = dist;
+				bestId = id;
+			}
+		}
+		distanceComputations += found;
+
+		return bestId;
+	}
+}
@@ -0,0 +1,75 @@
+package se.kth.emdc.examples.kmeans;
+
+import java.util.List;
+
+/**
+ * Linear scan that uses the distances between centers to skip candidates
+ * that provably cannot be nearer than the current best (Elkan's first
+ * lemma): if d(best, c) &gt; 2 d(x, best) then d(x, c) &gt; d(x, best). Once the
+ * point is closer to a center than half the distance from that center to
+ * any other one (Hamerly's bound), the remaining candidates are skipped
+ * altogether.
+ *
+ * The pairwise center distances cost O(k^2) once per task. Both tests are
+ * strict, so ties are still resolved on the lowest center id.
+ */
+public class TriangleInequalityIndex extends NearestCenterIndex {
+
+	/** centerDistances[i][j] is the euclidian distance between centers i and j. */
+	private final double[][] centerDistances;
+
+	/** Half the distance from each center to its nearest other center. */
+	private final double[] halfNearestCenter;
+
+	public TriangleInequalityIndex(List<BasePoint> centers) {
+		super(centers);
+
+		int k = this.centers.length;
+		centerDistances = new double[k][k];
+		halfNearestCenter = new double[k];
+
+		for (int i = 0; i < k; i++) {
+			halfNearestCenter[i] = Double.MAX_VALUE;
+		}
+		for (int i = 0; i < k; i++) {
+			for (int j = i + 1; j < k; j++) {
+				double dist = this.centers[i].euclidianDistanceTo(this.centers[j]);
+				centerDistances[i][j] = dist;
+				centerDistances[j][i] = dist;
+				if (dist / 2 < halfNearestCenter[i]) halfNearestCenter[i] = dist / 2;
+				if (dist / 2 < halfNearestCenter[j]) halfNearestCenter[j] = dist / 2;
+			}
+		}
+	}
+
+	@Override
+	public int nearest(BasePoint point) {
+		if (centers.length == 0) {
+			queries++;
+			return -1;
+		}
+
+		int best = 0;
+		double bestDist = Math.sqrt(point.squaredDistanceTo(centers[0]));
+		int computed = 1;
+
+		for (int j = 1; j < centers.length; j++) {
+			if (bestDist < halfNearestCenter[best]) {
+				break;
+			}
+			if (centerDistances[best][j] > 2 * bestDist) {
+				continue;
+			}
+			double dist = Math.sqrt(point.squaredDistanceTo(centers[j]));
+			computed++;
+			if (dist < bestDist) {
+				bestDist = dist;
+				best = j;
+			}
+		}
+
+		queries++;
+		distanceComputations += computed;
+		return best;
+	}
+}
@@ -0,0 +1,201 @@
+package se.kth.emdc.examples.olap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import se.kth.emdc.examples.wordcount.WordCountTable;
+
+/**
+ * Bloom filter of byte strings, used to drop the tuples of a join input
+ * whose key is certainly not in the other input before they are shuffled
+ * (a semi-join reduction). A key that was added is always reported; a key
+ * that was not is reported with the false positive rate of the filter.
+ *
+ * The filter is sized for an expected number of keys and a false positive
+ * rate, within a memory budget: when the budget is too small the filter
+ * keeps the budget and its false positive rate grows. The bit positions
+ * of a key are derived from two 64-bit hashes (double hashing).
+ */
+public class BloomFilter {
+
+	/** Job parameter enabling the Bloom filter of the anti-join. */
+	public static final String BLOOM_FILTER = "BLOOM_FILTER";
+
+	/** Job parameter with the target false positive rate. */
+	public static final String BLOOM_FILTER_FPP = "BLOOM_FILTER_FPP";
+
+	/** Job parameter with the maximum size of the filter in megabytes. */
+	public static final String BLOOM_FILTER_MAX_MB = "BLOOM_FILTER_MAX_MB";
+
+	/** Job parameter with the path of the filter, set by the driver. */
+	public static final String BLOOM_FILTER_PATH = "BLOOM_FILTER_PATH";
+
+	public static final double DEFAULT_FPP = 0.01;
+
+	public static final int DEFAULT_MAX_MB = 64;
+
+	private static final int MAGIC = 0x424C4F4D;
+
+	private final long[] words;
+	private final long bits;
+	private final int hashes;
+	private long keys;
+
+	/**
+	 * @param expectedKeys the number of keys that will be added
+	 * @param fpp the false positive rate at that number of keys
+	 * @param maxBytes the maximum size of the bit array
+	 */
+	public BloomFilter(long expectedKeys, double fpp, long maxBytes) {
+		if (fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("The false positive rate must be in (0, 1): " + fpp);
+		}
+		long n = Math.max(expectedKeys, 1);
+		long m = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+		m = Math.max(64, Math.min(m, Math.max(maxBytes, 8) * 8));
+		m = Math.min(m, (long) Integer.MAX_VALUE * 64);
+
+		this.words = new long[(int) ((m + 63) / 64)];
+		this.bits = words.length * 64L;
+		this.hashes = Math.max(1, Math.min(30, (int) Math.round((double) bits / n * Math.log(2))));
+	}
+
+	private BloomFilter(long[] words, int hashes, long keys) {
+		this.words = words;
+		this.bits = words.length * 64L;
+		this.hashes = hashes;
+		this.keys = keys;
+	}
+
+	/**
+	 * @return a filter of the distinct keys of a table
+	 */
+	public static BloomFilter create(WordCountTable keys, double fpp, long maxBytes) {
+		BloomFilter filter = new BloomFilter(keys.size(), fpp, maxBytes);
+		for (int i = 0; i < keys.size(); i++) {
+			filter.add(keys.getWords(), keys.getWordStart(i), keys.getWordLength(i));
+		}
+		return filter;
+	}
+
+	public void add(byte[] bytes, int offset, int length) {
+		long h1 = hash(bytes, offset, length);
+		long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+		for (int i = 0; i < hashes; i++) {
+			long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+			words[(int) (bit >>> 6)] |= 1L << bit;
+		}
+		keys++;
+	}
+
+	/**
+	 * @return false if the key was certainly not added, true if it probably was
+	 */
+	public boolean mightContain(byte[] bytes, int offset, int length) {
+		long h1 = hash(bytes, offset, length);
+		long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+		for (int i = 0; i < hashes; i++) {
+			long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+			if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long hash(byte[] bytes, int offset, int length) {
+		// FNV-1a, then a 64-bit finalizer to spread the bits
+		long h = 0xCBF29CE484222325L;
+		for (int i = offset; i < offset + length; i++) {
+			h ^= bytes[i] & 0xFF;
+			h *= 0x100000001B3L;
+		}
+		return mix(h);
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * @return the false positive rate for the keys added so far
+	 */
+	public double getExpectedFpp() {
+		return Math.pow(1 - Math.exp(-(double) hashes * keys / bits), hashes);
+	}
+
+	/**
+	 * @return the size of the bit array in bytes
+	 */
+	public long getBytes() {
+		return words.length * 8L;
+	}
+
+	public int getHashes() {
+		return hashes;
+	}
+
+	/**
+	 * @return the number of keys added, duplicates included
+	 */
+	public long getKeys() {
+		return keys;
+	}
+
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(hashes);
+		out.writeLong(keys);
+		out.writeInt(words.length);
+		for (long word : words) {
+			out.writeLong(word);
+		}
+	}
+
+	public static BloomFilter read(DataInput in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a Bloom filter");
+		}
+		int hashes = in.readInt();
+		long keys = in.readLong();
+		long[] words = new long[in.readInt()];
+		for (int i = 0; i < words.length; i++) {
+			words[i] = in.readLong();
+		}
+		return new BloomFilter(words, hashes, keys);
+	}
+
+	/**
+	 * Writes the filter to a stream, which is not closed.
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		write(data);
+		data.flush();
+	}
+
+	/**
+	 * Reads a filter from a stream, which is not closed.
+	 */
+	public static BloomFilter readFrom(InputStream in) throws IOException {
+		return read(new DataInputStream(new BufferedInputStream(in)));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Bloom filter of %d keys in %d bytes with %d hashes (expected false positive rate %.4f)",
+				keys, getBytes(), hashes, getExpectedFpp());
+	}
+}
@@ -0,0 +1,155 @@
+package se.kth.emdc.examples.olap;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * Splits the bytes of a '|' separated line into fields without decoding
+ * them. Gives the same fields as
+ * <pre>
+ * line.split("\\|")
+ * </pre>
+ * which drops the trailing empty fields, e.g. the one after the final '|'
+ * of the visits tuples. A scanner is reused for every line of a task, so
+ * the OLAP mappers split each line once, on its bytes, and only copy the
+ * columns they emit.
+ */
+public class FieldScanner {
+
+	public static final byte DELIMITER = '|';
+
+	private byte[] bytes;
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private int fields;
+
+	/**
+	 * Scans a new line.
+	 * @param bytes buffer holding the line, not copied
+	 * @param offset position of the first byte of the line
+	 * @param length number of bytes of the line
+	 */
+	public void reset(byte[] bytes, int offset, int length) {
+		this.bytes = bytes;
+		fields = 0;
+		int start = offset;
+		int end = offset + length;
+		for (int i = offset; i <= end; i++) {
+			if (i == end || bytes[i] == DELIMITER) {
+				if (fields == starts.length) {
+					starts = Arrays.copyOf(starts, fields * 2);
+					ends = Arrays.copyOf(ends, fields * 2);
+				}
+				starts[fields] = start;
+				ends[fields] = i;
+				fields++;
+				start = i + 1;
+			}
+		}
+		while (fields > 1 && starts[fields - 1] == ends[fields - 1]) {
+			fields--;
+		}
+	}
+
+	/**
+	 * @return the number of fields of the line, without the trailing empty ones
+	 */
+	public int getFieldCount() {
+		return fields;
+	}
+
+	/**
+	 * @return the buffer holding the fields
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return the position of the i-th field in {@link #getBytes()}
+	 */
+	public int getStart(int i) {
+		return starts[i];
+	}
+
+	public int getLength(int i) {
+		return ends[i] - starts[i];
+	}
+
+	/**
+	 * Parses a field like {@link Integer#parseInt(String)}.
+	 * @throws NumberFormatException if the field is not a decimal int
+	 */
+	public int parseInt(int i) {
+		int pos = starts[i];
+		int end = ends[i];
+		boolean negative = (pos < end && bytes[pos] == '-');
+		if (pos < end && (bytes[pos] == '-' || bytes[pos] == '+')) {
+			pos++;
+		}
+		if (pos == end) {
+			throw new NumberFormatException("For input string: \"" + toString(i) + "\"");
+		}
+
+		// accumulate negatively, Integer.MIN_VALUE has no positive counterpart
+		long value = 0;
+		for (; pos < end; pos++) {
+			int digit = bytes[pos] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException("For input string: \"" + toString(i) + "\"");
+			}
+			value = value * 10 - digit;
+			if (value < Integer.MIN_VALUE) {
+				throw new NumberFormatException("For input string: \"" + toString(i) + "\"");
+			}
+		}
+		if (!negative && value == Integer.MIN_VALUE) {
+			throw new NumberFormatException("For input string: \"" + toString(i) + "\"");
+		}
+		return (int) (negative ? value : -value);
+	}
+
+	/**
+	 * @return true if the i-th field starts with the given bytes
+	 */
+	public boolean startsWith(int i, byte[] prefix) {
+		if (getLength(i) < prefix.length) {
+			return false;
+		}
+		int start = starts[i];
+		for (int j = 0; j < prefix.length; j++) {
+			if (bytes[start + j] != prefix[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the i-th field contains the given bytes
+	 */
+	public boolean contains(int i, byte[] pattern) {
+		int last = ends[i] - pattern.length;
+		for (int start = starts[i]; start <= last; start++) {
+			int j = 0;
+			while (j < pattern.length && bytes[start + j] == pattern[j]) {
+				j++;
+			}
+			if (j == pattern.length) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the i-th field decoded as UTF-8
+	 */
+	public String toString(int i) {
+		try {
+			return new String(bytes, starts[i], getLength(i), "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package se.kth.emdc.examples.olap;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks whether a byte string contains every keyword of a set, in a
+ * single pass over its bytes. The keywords are compiled into an
+ * Aho-Corasick automaton whose failure links are resolved in advance, so
+ * the scan does one table lookup per byte and never goes back. The scan
+ * stops as soon as the last missing keyword is found.
+ *
+ * The keywords are matched on their UTF-8 bytes, case-sensitively, and
+ * may overlap each other like with {@link String#contains(CharSequence)}.
+ */
+public class KeywordMatcher {
+
+	/**
+	 * Job parameter with the keywords the docs must contain, separated by
+	 * '|' (which cannot occur in the docs content). The keywords are not
+	 * trimmed, so the surrounding spaces of the default ones match whole
+	 * words.
+	 */
+	public static final String KEYWORDS = "KEYWORDS";
+
+	public static final String DEFAULT_KEYWORDS = " editors | oscillations | convection ";
+
+	/** The found keywords are a bit set in a long. */
+	public static final int MAX_KEYWORDS = 64;
+
+	private static final int ALPHABET = 256;
+
+	private final String[] keywords;
+	private final long allKeywords;
+
+	// next[state * ALPHABET + b]: the state after reading byte b, failures included
+	private int[] next;
+	// the keywords ending at each state, including those of its failure states
+	private long[] matches;
+	private int states;
+
+	public KeywordMatcher(String... keywords) {
+		if (keywords.length > MAX_KEYWORDS) {
+			throw new IllegalArgumentException("At most " + MAX_KEYWORDS + " keywords are supported: " + keywords.length);
+		}
+		this.keywords = keywords.clone();
+		this.allKeywords = (keywords.length == MAX_KEYWORDS ? -1L : (1L << keywords.length) - 1);
+		build();
+	}
+
+	/**
+	 * @param keywords the keywords separated by '|', like the KEYWORDS parameter
+	 */
+	public static KeywordMatcher parse(String keywords) {
+		List<String> list = new ArrayList<String>();
+		int start = 0;
+		for (int i = 0; i <= keywords.length(); i++) {
+			if (i == keywords.length() || keywords.charAt(i) == '|') {
+				list.add(keywords.substring(start, i));
+				start = i + 1;
+			}
+		}
+		return new KeywordMatcher(list.toArray(new String[list.size()]));
+	}
+
+	private void build() {
+		int capacity = 1;
+		byte[][] bytes = new byte[keywords.length][];
+		for (int k = 0; k < keywords.length; k++) {
+			try {
+				bytes[k] = keywords[k].getBytes("UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				throw new RuntimeException(e);
+			}
+			capacity += bytes[k].length;
+		}
+
+		// trie of the keywords, 0 is the root and -1 a missing edge
+		next = new int[capacity * ALPHABET];
+		Arrays.fill(next, -1);
+		matches = new long[capacity];
+		states = 1;
+		for (int k = 0; k < bytes.length; k++) {
+			int state = 0;
+			for (byte b : bytes[k]) {
+				int edge = state * ALPHABET + (b & 0xFF);
+				if (next[edge] < 0) {
+					next[edge] = states++;
+				}
+				state = next[edge];
+			}
+			matches[state] |= 1L << k;
+		}
+
+		// breadth-first, the failure state of a state is shallower and already complete
+		int[] failure = new int[states];
+		int[] queue = new int[states];
+		int head = 0;
+		int tail = 0;
+		for (int b = 0; b < ALPHABET; b++) {
+			int child = next[b];
+			if (child < 0) {
+				next[b] = 0;
+			} else {
+				failure[child] = 0;
+				queue[tail++] = child;
+			}
+		}
+		while (head < tail) {
+			int state = queue[head++];
+			matches[state] |= matches[failure[state]];
+			for (int b = 0; b < ALPHABET; b++) {
+				int edge = state * ALPHABET + b;
+				int child = next[edge];
+				if (child < 0) {
+					next[edge] = next[failure[state] * ALPHABET + b];
+				} else {
+					failure[child] = next[failure[state] * ALPHABET + b];
+					queue[tail++] = child;
+				}
+			}
+		}
+		next = Arrays.copyOf(next, states * ALPHABET);
+		matches = Arrays.copyOf(matches, states);
+	}
+
+	/**
+	 * @return true if the bytes contain every keyword
+	 */
+	public boolean containsAll(byte[] bytes, int offset, int length) {
+		long found = matches[0];
+		if (found == allKeywords) {
+			return true;
+		}
+		int state = 0;
+		for (int i = offset; i < offset + length; i++) {
+			state = next[state * ALPHABET + (bytes[i] & 0xFF)];
+			long match = matches[state];
+			if (match != 0) {
+				found |= match;
+				if (found == allKeywords) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the i-th field of a scanned line contains every keyword
+	 */
+	public boolean containsAll(FieldScanner fields, int i) {
+		return containsAll(fields.getBytes(), fields.getStart(i), fields.getLength(i));
+	}
+
+	public String[] getKeywords() {
+		return keywords.clone();
+	}
+
+	/**
+	 * @return the number of states of the automaton
+	 */
+	public int getStates() {
+		return states;
+	}
+}
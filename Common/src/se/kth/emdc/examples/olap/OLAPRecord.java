@@ -0,0 +1,99 @@
+package se.kth.emdc.examples.olap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+
+import se.kth.emdc.examples.compress.BlockCompressedInputStream;
+import se.kth.emdc.examples.wordcount.WordCountTable;
+import se.kth.emdc.examples.wordcount.stream.StreamLineSource;
+
+/**
+ * Tuple emitted by the mappers of the OLAP jobs, keyed by its URL. The tag
+ * tells the reducer which table the tuple comes from, and only the columns
+ * the reducer needs follow it:
+ * <ul>
+ * <li>{@link #DOC}: a docs tuple containing all the keywords, nothing else
+ * (its content is not shuffled)</li>
+ * <li>{@link #RANK}: a ranks tuple, or a tuple of the output of job 1 which
+ * has the same layout, with its rank and average duration</li>
+ * <li>{@link #VISIT}: a visits tuple of the selected year, nothing else</li>
+ * </ul>
+ */
+public class OLAPRecord {
+
+	public static final byte DOC = 1;
+	public static final byte RANK = 2;
+	public static final byte VISIT = 3;
+
+	protected byte tag;
+	protected int rank;
+	protected int duration;
+
+	public void setDoc() {
+		tag = DOC;
+	}
+
+	public void setRank(int rank, int duration) {
+		this.tag = RANK;
+		this.rank = rank;
+		this.duration = duration;
+	}
+
+	public void setVisit() {
+		tag = VISIT;
+	}
+
+	public byte getTag() {
+		return tag;
+	}
+
+	public int getRank() {
+		return rank;
+	}
+
+	public int getDuration() {
+		return duration;
+	}
+
+	/**
+	 * @return the ranks tuple of this record: Rank|URL|Average Duration
+	 */
+	public String toLine(String url) {
+		return rank + "|" + url + "|" + duration;
+	}
+
+	/**
+	 * Adds the URLs of the ranks tuples of a stream whose rank is above a
+	 * threshold to a table of distinct URLs, e.g. to build a
+	 * {@link BloomFilter} of the output of job 1. The stream may be block
+	 * compressed and is not closed.
+	 */
+	public static void readRankUrls(InputStream in, int minRank, WordCountTable urls) throws IOException {
+		StreamLineSource lines = new StreamLineSource(BlockCompressedInputStream.open(in));
+		FieldScanner fields = new FieldScanner();
+		for (byte[] line; (line = lines.readLine()) != null;) {
+			fields.reset(line, 0, line.length);
+			if (fields.getFieldCount() == 3 && fields.parseInt(0) > minRank) {
+				urls.add(fields.getBytes(), fields.getStart(1), fields.getLength(1), 1);
+			}
+		}
+	}
+
+	public void write(DataOutput out) throws IOException {
+		out.writeByte(tag);
+		if (tag == RANK) {
+			out.writeInt(rank);
+			out.writeInt(duration);
+		}
+	}
+
+	public void read(DataInput in) throws IOException {
+		tag = in.readByte();
+		if (tag == RANK) {
+			rank = in.readInt();
+			duration = in.readInt();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package se.kth.emdc.examples.wordcount;
+
+/**
+ * Splits the bytes of a line into lower case words without decoding them.
+ * Gives the same words as
+ * <pre>
+ * new StringTokenizer(line.replaceAll("\\W", " ").toLowerCase())
+ * </pre>
+ * on UTF-8 text: a word is a run of ASCII letters, digits and underscores,
+ * every other byte (including all the bytes of multi-byte characters) is a
+ * separator. The upper case letters of a word are folded in place, so the
+ * line buffer is modified.
+ *
+ * A tokenizer is reused for every line of a task:
+ * <pre>
+ * tokenizer.reset(bytes, 0, length);
+ * while (tokenizer.next()) {
+ *     // word at [getStart(), getStart() + getLength()) of getBytes()
+ * }
+ * </pre>
+ */
+public class ByteTokenizer {
+
+	private static final boolean[] WORD_BYTE = new boolean[256];
+
+	static {
+		for (int b = 'a'; b <= 'z'; b++) {
+			WORD_BYTE[b] = true;
+		}
+		for (int b = 'A'; b <= 'Z'; b++) {
+			WORD_BYTE[b] = true;
+		}
+		for (int b = '0'; b <= '9'; b++) {
+			WORD_BYTE[b] = true;
+		}
+		WORD_BYTE['_'] = true;
+	}
+
+	private byte[] bytes;
+	private int pos;
+	private int end;
+
+	private int start;
+	private int length;
+
+	/**
+	 * Starts tokenizing a new line.
+	 * @param bytes buffer holding the line, its letters are folded to lower case
+	 * @param offset position of the first byte of the line
+	 * @param length number of bytes of the line
+	 */
+	public void reset(byte[] bytes, int offset, int length) {
+		this.bytes = bytes;
+		this.pos = offset;
+		this.end = offset + length;
+		this.start = offset;
+		this.length = 0;
+	}
+
+	/**
+	 * Moves to the next word of the line.
+	 * @return false if there are no more words
+	 */
+	public boolean next() {
+		final byte[] b = bytes;
+		int p = pos;
+
+		while (p < end && !WORD_BYTE[b[p] & 0xFF]) {
+			p++;
+		}
+		if (p == end) {
+			pos = p;
+			length = 0;
+			return false;
+		}
+
+		start = p;
+		while (p < end && WORD_BYTE[b[p] & 0xFF]) {
+			if (b[p] >= 'A' && b[p] <= 'Z') {
+				b[p] += 'a' - 'A';
+			}
+			p++;
+		}
+		length = p - start;
+		pos = p;
+		return true;
+	}
+
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return the position of the current word in {@link #getBytes()}
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * @return the number of bytes of the current word
+	 */
+	public int getLength() {
+		return length;
+	}
+}
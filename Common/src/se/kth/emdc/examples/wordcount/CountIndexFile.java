@@ -0,0 +1,129 @@
+package se.kth.emdc.examples.wordcount;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Layout of the word count index, the binary file holding the counts of
+ * all the documents processed so far by the incremental word count.
+ *
+ * The words are sorted by their unsigned bytes and stored in blocks. Inside
+ * a block each word only stores the suffix it does not share with the
+ * previous word. All the numbers are big-endian, vint and vlong are
+ * unsigned variable length integers of 7 bits per byte:
+ * <pre>
+ * header: magic (int) | version (int) | wordsPerBlock (int)
+ * block:  words in the block (vint, &gt; 0) | words
+ * word:   shared prefix length (vint) | suffix length (vint) | suffix | count (vlong)
+ * end:    0 (vint)
+ * index:  blocks (int) | for each block: offset (long) | first word length (vint) | first word
+ * footer: index offset (long) | words (long) | total count (long) | magic (int)
+ * </pre>
+ * Merging the counts of new documents is a single sequential pass over the
+ * previous index, which only needs the blocks. The index at the end of the
+ * file lets a single word be looked up by reading one block.
+ *
+ * An index directory holds successive generations of the file, named by
+ * {@link #getGenerationName(int)}. A merge writes the next generation under
+ * {@link #getTemporaryName(int)} where the file system can rename it, and
+ * deletes the previous generation once the next one is complete. A file
+ * left truncated by a failed merge has no footer, see {@link #isComplete}.
+ */
+public class CountIndexFile {
+
+	/** "WCIX" */
+	public static final int MAGIC = 0x57434958;
+	public static final int VERSION = 1;
+
+	public static final int HEADER_SIZE = 12;
+	public static final int FOOTER_SIZE = 28;
+
+	public static final int DEFAULT_WORDS_PER_BLOCK = 1024;
+
+	private static final String GENERATION_PREFIX = "counts-";
+	private static final String TEMPORARY_PREFIX = "_";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+
+	/**
+	 * @return the file name of a generation of the index
+	 */
+	public static String getGenerationName(int generation) {
+		return String.format("%s%05d", GENERATION_PREFIX, generation);
+	}
+
+	/**
+	 * @return the file name a generation of the index is written to before
+	 *         being renamed, which is not the name of a generation
+	 */
+	public static String getTemporaryName(int generation) {
+		return TEMPORARY_PREFIX + getGenerationName(generation) + TEMPORARY_SUFFIX;
+	}
+
+	/**
+	 * @return the generation of an index file name, or -1 if the name is not
+	 *         one of an index file
+	 */
+	public static int parseGeneration(String name) {
+		if (!name.startsWith(GENERATION_PREFIX)) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(name.substring(GENERATION_PREFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Checks that an index file ends with the magic of its footer.
+	 *
+	 * @param in the stream of the index file, positioned at its beginning
+	 *        and not closed
+	 * @param length the length of the file
+	 * @return false if the file was not completely written
+	 */
+	public static boolean isComplete(InputStream in, long length) throws IOException {
+		if (length < HEADER_SIZE + FOOTER_SIZE) {
+			return false;
+		}
+		for (long toSkip = length - 4; toSkip > 0;) {
+			long skipped = in.skip(toSkip);
+			if (skipped <= 0) {
+				return false;
+			}
+			toSkip -= skipped;
+		}
+		return new DataInputStream(in).readInt() == MAGIC;
+	}
+
+	public static void writeVLong(DataOutput out, long n) throws IOException {
+		while ((n & ~0x7FL) != 0) {
+			out.writeByte((int) (n & 0x7F) | 0x80);
+			n >>>= 7;
+		}
+		out.writeByte((int) n);
+	}
+
+	public static long readVLong(DataInput in) throws IOException {
+		long n = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			n |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return n;
+			}
+		}
+		throw new IOException("Malformed variable length integer");
+	}
+
+	public static int readVInt(DataInput in) throws IOException {
+		long n = readVLong(in);
+		if (n > Integer.MAX_VALUE) {
+			throw new IOException("Variable length integer out of range: " + n);
+		}
+		return (int) n;
+	}
+}
@@ -0,0 +1,107 @@
+package se.kth.emdc.examples.wordcount;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Merges the counts of new documents into a word count index. The delta
+ * counts are read from the output of a word count job, one "word count"
+ * line per word, into a {@link WordCountTable}. They are then sorted and
+ * merged with the words of the previous index in a single sequential pass,
+ * writing the next index.
+ */
+public class CountIndexMerger {
+
+	/** Job parameter with the number of words of each block of the index. */
+	public static final String WORDS_PER_BLOCK = "WORDS_PER_BLOCK";
+
+	private final WordCountTable delta = new WordCountTable(Long.MAX_VALUE);
+
+	private long mergedWords;
+	private long newWords;
+
+	/**
+	 * Adds the counts of a word count output file, with lines holding a word
+	 * and its count separated by white space.
+	 */
+	public void readDelta(InputStream in) throws IOException {
+		delta.readCounts(in);
+	}
+
+	/**
+	 * @return the number of distinct words read from the delta files
+	 */
+	public int getDeltaWords() {
+		return delta.size();
+	}
+
+	/**
+	 * @return the number of words of the last merge already in the previous index
+	 */
+	public long getMergedWords() {
+		return mergedWords;
+	}
+
+	/**
+	 * @return the number of words of the last merge not in the previous index
+	 */
+	public long getNewWords() {
+		return newWords;
+	}
+
+	/**
+	 * Writes the words of the previous index and of the delta files to the
+	 * next index, adding the counts of the words in both, and closes it.
+	 * @param previous the previous index, null if this is the first one
+	 */
+	public void merge(CountIndexReader previous, CountIndexWriter next) throws IOException {
+		final byte[] words = delta.getWords();
+		Integer[] order = new Integer[delta.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer e1, Integer e2) {
+				return NormalizedKey.compare(words, delta.getWordStart(e1), delta.getWordLength(e1), words,
+						delta.getWordStart(e2), delta.getWordLength(e2));
+			}
+		});
+
+		mergedWords = 0;
+		newWords = 0;
+		boolean hasPrevious = previous != null && previous.next();
+		int d = 0;
+		while (hasPrevious || d < order.length) {
+			int c;
+			if (!hasPrevious) {
+				c = 1;
+			} else if (d == order.length) {
+				c = -1;
+			} else {
+				int e = order[d];
+				c = NormalizedKey.compare(previous.getWord(), 0, previous.getWordLength(), words,
+						delta.getWordStart(e), delta.getWordLength(e));
+			}
+
+			if (c < 0) {
+				next.add(previous.getWord(), 0, previous.getWordLength(), previous.getCount());
+				hasPrevious = previous.next();
+			} else {
+				int e = order[d++];
+				long count = delta.getCount(e);
+				if (c == 0) {
+					count += previous.getCount();
+					hasPrevious = previous.next();
+					mergedWords++;
+				} else {
+					newWords++;
+				}
+				next.add(words, delta.getWordStart(e), delta.getWordLength(e), count);
+			}
+		}
+		next.close();
+	}
+}
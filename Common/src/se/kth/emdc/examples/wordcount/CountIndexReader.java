@@ -0,0 +1,159 @@
+package se.kth.emdc.examples.wordcount;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+
+/**
+ * Reads the words of a word count index in order.
+ *
+ * @see CountIndexFile
+ */
+public class CountIndexReader {
+
+	private final DataInputStream in;
+	private final int wordsPerBlock;
+
+	private int remainingInBlock;
+	private boolean finished;
+
+	private byte[] word = new byte[64];
+	private int wordLength;
+	private long count;
+
+	/**
+	 * @param in the stream of the index file, positioned at its beginning
+	 *        and closed by {@link #close()}
+	 */
+	public CountIndexReader(InputStream in) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(in));
+		if (this.in.readInt() != CountIndexFile.MAGIC) {
+			throw new IOException("Not a word count index");
+		}
+		int version = this.in.readInt();
+		if (version != CountIndexFile.VERSION) {
+			throw new IOException("Unsupported word count index version: " + version);
+		}
+		wordsPerBlock = this.in.readInt();
+	}
+
+	private CountIndexReader(DataInputStream in, int wordsPerBlock) {
+		this.in = in;
+		this.wordsPerBlock = wordsPerBlock;
+	}
+
+	/**
+	 * Moves to the next word of the index.
+	 * @return false if there are no more words
+	 */
+	public boolean next() throws IOException {
+		if (finished) {
+			return false;
+		}
+		if (remainingInBlock == 0) {
+			remainingInBlock = CountIndexFile.readVInt(in);
+			if (remainingInBlock == 0) {
+				finished = true;
+				return false;
+			}
+			// the first word of a block shares nothing with the previous one
+			wordLength = 0;
+		}
+
+		int shared = CountIndexFile.readVInt(in);
+		int suffix = CountIndexFile.readVInt(in);
+		if (shared > wordLength) {
+			throw new IOException("Corrupted word count index");
+		}
+		if (word.length < shared + suffix) {
+			byte[] grown = new byte[Math.max(shared + suffix, word.length * 2)];
+			System.arraycopy(word, 0, grown, 0, shared);
+			word = grown;
+		}
+		in.readFully(word, shared, suffix);
+		wordLength = shared + suffix;
+		count = CountIndexFile.readVLong(in);
+
+		remainingInBlock--;
+		return true;
+	}
+
+	/**
+	 * @return the buffer holding the current word, starting at 0
+	 */
+	public byte[] getWord() {
+		return word;
+	}
+
+	public int getWordLength() {
+		return wordLength;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public int getWordsPerBlock() {
+		return wordsPerBlock;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Looks up the count of a single word, reading the block index and the
+	 * one block that may hold the word.
+	 * @return the count of the word, 0 if it is not in the index
+	 */
+	public static long lookup(File file, byte[] target) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(raf.length() - CountIndexFile.FOOTER_SIZE);
+			long indexOffset = raf.readLong();
+			raf.seek(raf.length() - 4);
+			if (raf.readInt() != CountIndexFile.MAGIC) {
+				throw new IOException("Not a word count index: " + file);
+			}
+
+			// last block whose first word is not greater than the target
+			raf.seek(indexOffset);
+			DataInputStream index = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel())));
+			int blocks = index.readInt();
+			long blockOffset = -1;
+			for (int i = 0; i < blocks; i++) {
+				long offset = index.readLong();
+				byte[] first = new byte[CountIndexFile.readVInt(index)];
+				index.readFully(first);
+				if (NormalizedKey.compare(first, 0, first.length, target, 0, target.length) > 0) {
+					break;
+				}
+				blockOffset = offset;
+			}
+			if (blockOffset < 0) {
+				return 0;
+			}
+
+			raf.seek(blockOffset);
+			CountIndexReader reader = new CountIndexReader(new DataInputStream(new BufferedInputStream(
+					Channels.newInputStream(raf.getChannel()))), 0);
+			// stop at the end of the block
+			reader.remainingInBlock = CountIndexFile.readVInt(reader.in);
+			while (reader.remainingInBlock > 0 && reader.next()) {
+				int c = NormalizedKey.compare(reader.word, 0, reader.wordLength, target, 0, target.length);
+				if (c == 0) {
+					return reader.count;
+				} else if (c > 0) {
+					break;
+				}
+			}
+			return 0;
+		} finally {
+			raf.close();
+		}
+	}
+}
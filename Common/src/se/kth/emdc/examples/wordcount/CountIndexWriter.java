@@ -0,0 +1,146 @@
+package se.kth.emdc.examples.wordcount;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a word count index. The words must be added in increasing order
+ * of their unsigned bytes, each word once.
+ *
+ * @see CountIndexFile
+ */
+public class CountIndexWriter {
+
+	private final DataOutputStream out;
+	private final int wordsPerBlock;
+	private long position;
+
+	// the current block, written when it is full
+	private final ByteArrayOutputStream blockBuffer = new ByteArrayOutputStream();
+	private final DataOutputStream block = new DataOutputStream(blockBuffer);
+	private int wordsInBlock;
+
+	private byte[] previous = new byte[64];
+	private int previousLength = -1;
+
+	// offset and first word of each block
+	private final List<Long> blockOffsets = new ArrayList<Long>();
+	private final List<byte[]> blockFirstWords = new ArrayList<byte[]>();
+
+	private long words;
+	private long totalCount;
+
+	/**
+	 * @param out the stream of the index file, closed by {@link #close()}
+	 * @param wordsPerBlock the number of words of each block
+	 */
+	public CountIndexWriter(OutputStream out, int wordsPerBlock) throws IOException {
+		if (wordsPerBlock <= 0) {
+			throw new IllegalArgumentException("The words per block must be positive");
+		}
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+		this.wordsPerBlock = wordsPerBlock;
+
+		this.out.writeInt(CountIndexFile.MAGIC);
+		this.out.writeInt(CountIndexFile.VERSION);
+		this.out.writeInt(wordsPerBlock);
+		position = 12;
+	}
+
+	/**
+	 * Adds the next word of the index.
+	 * @throws IllegalArgumentException if the word is not greater than the previous one
+	 */
+	public void add(byte[] word, int offset, int length, long count) throws IOException {
+		if (previousLength >= 0 && NormalizedKey.compare(previous, 0, previousLength, word, offset, length) >= 0) {
+			throw new IllegalArgumentException("Words must be added in increasing order: " + new String(word, offset, length)
+					+ " after " + new String(previous, 0, previousLength));
+		}
+
+		int shared = 0;
+		if (wordsInBlock == 0) {
+			blockOffsets.add(position);
+			blockFirstWords.add(Arrays.copyOfRange(word, offset, offset + length));
+		} else {
+			int n = Math.min(previousLength, length);
+			while (shared < n && previous[shared] == word[offset + shared]) {
+				shared++;
+			}
+		}
+
+		CountIndexFile.writeVLong(block, shared);
+		CountIndexFile.writeVLong(block, length - shared);
+		block.write(word, offset + shared, length - shared);
+		CountIndexFile.writeVLong(block, count);
+
+		if (previous.length < length) {
+			previous = new byte[Math.max(length, previous.length * 2)];
+		}
+		System.arraycopy(word, offset, previous, 0, length);
+		previousLength = length;
+
+		words++;
+		totalCount += count;
+		if (++wordsInBlock == wordsPerBlock) {
+			flushBlock();
+		}
+	}
+
+	private void flushBlock() throws IOException {
+		if (wordsInBlock == 0) {
+			return;
+		}
+		ByteArrayOutputStream header = new ByteArrayOutputStream(5);
+		CountIndexFile.writeVLong(new DataOutputStream(header), wordsInBlock);
+		header.writeTo(out);
+		blockBuffer.writeTo(out);
+		position += header.size() + blockBuffer.size();
+
+		blockBuffer.reset();
+		wordsInBlock = 0;
+	}
+
+	/**
+	 * @return the number of words added so far
+	 */
+	public long getWords() {
+		return words;
+	}
+
+	/**
+	 * @return the sum of the counts added so far
+	 */
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Writes the last block, the block index and the footer, and closes the stream.
+	 */
+	public void close() throws IOException {
+		flushBlock();
+		CountIndexFile.writeVLong(out, 0);
+		position++;
+
+		long indexOffset = position;
+		out.writeInt(blockOffsets.size());
+		for (int i = 0; i < blockOffsets.size(); i++) {
+			out.writeLong(blockOffsets.get(i));
+			byte[] first = blockFirstWords.get(i);
+			CountIndexFile.writeVLong(out, first.length);
+			out.write(first);
+		}
+
+		out.writeLong(indexOffset);
+		out.writeLong(words);
+		out.writeLong(totalCount);
+		out.writeInt(CountIndexFile.MAGIC);
+		out.close();
+	}
+}
@@ -0,0 +1,114 @@
+package se.kth.emdc.examples.wordcount;
+
+import java.util.Random;
+
+/**
+ * The heavy keys of a word count: the few words (e.g. "the", "of") whose
+ * occurrences are a large share of all the words, so the reducer receiving
+ * them would finish long after the others. The occurrences of a heavy key
+ * are spread over several reducers instead, each of them emitting a
+ * partial count, and the partial counts are merged by a small follow-up
+ * step.
+ *
+ * The heavy keys are found by the driver in a sample of the input, with a
+ * {@link WordDictionary.Builder}, and stored like a dictionary, one word
+ * per line.
+ */
+public class HeavyKeys {
+
+	/** Job parameter enabling the spreading of the heavy keys. */
+	public static final String SKEW_AWARE = "SKEW_AWARE";
+
+	/** Job parameter with the path of the heavy keys file. */
+	public static final String HEAVY_KEYS_PATH = "HEAVY_KEYS_PATH";
+
+	/**
+	 * Job parameter with the minimum fraction of the sampled words made up
+	 * by the occurrences of a heavy key. Defaults to half the fair share of
+	 * a reducer, see {@link #getDefaultShare(int)}.
+	 */
+	public static final String HEAVY_KEY_SHARE = "HEAVY_KEY_SHARE";
+
+	/** Job parameter with the number of reducers each heavy key is spread over. */
+	public static final String HEAVY_KEY_SPLITS = "HEAVY_KEY_SPLITS";
+
+	public static final int DEFAULT_HEAVY_KEY_SPLITS = 8;
+
+	/** Maximum number of splits of a key, the salt of a split is a single byte. */
+	public static final int MAX_SPLITS = 256;
+
+	// never part of a word, separates a salted word from its split
+	private static final byte SALT_SEPARATOR = 0;
+
+	private final WordDictionary keys;
+	private final int splits;
+	private int nextSplit;
+
+	/**
+	 * @param keys the heavy keys
+	 * @param splits the number of reducers each heavy key is spread over
+	 */
+	public HeavyKeys(WordDictionary keys, int splits) {
+		if (splits < 1 || splits > MAX_SPLITS) {
+			throw new IllegalArgumentException("The splits of a heavy key must be between 1 and " + MAX_SPLITS + ": " + splits);
+		}
+		this.keys = keys;
+		this.splits = splits;
+		// tasks emitting few heavy keys, e.g. after an in-memory aggregation, must not all start with the same split
+		this.nextSplit = new Random().nextInt(splits);
+	}
+
+	/**
+	 * @return half the share of the words of each of the reducers, a key
+	 *         above it adds at least half again to the load of its reducer
+	 */
+	public static double getDefaultShare(int reducers) {
+		return 0.5 / Math.max(1, reducers);
+	}
+
+	public boolean isHeavy(byte[] bytes, int offset, int length) {
+		return keys.getId(bytes, offset, length) >= 0;
+	}
+
+	/**
+	 * @return the split of the next occurrence of a heavy key, the splits
+	 *         are used in turn from a random one
+	 */
+	public int nextSplit() {
+		int split = nextSplit;
+		nextSplit = (nextSplit + 1) % splits;
+		return split;
+	}
+
+	public int getSplits() {
+		return splits;
+	}
+
+	public int size() {
+		return keys.size();
+	}
+
+	/**
+	 * Appends a split to a word, so engines partitioning by the hash of the
+	 * key send the splits of a heavy key to different reducers.
+	 * @param target buffer receiving the salted word, of at least length + 2 bytes
+	 * @return the length of the salted word
+	 */
+	public static int salt(byte[] bytes, int offset, int length, int split, byte[] target) {
+		System.arraycopy(bytes, offset, target, 0, length);
+		target[length] = SALT_SEPARATOR;
+		target[length + 1] = (byte) split;
+		return length + 2;
+	}
+
+	/**
+	 * @return the length of the word without its split, the length itself if
+	 *         the word is not salted
+	 */
+	public static int unsaltedLength(byte[] bytes, int offset, int length) {
+		if (length >= 2 && bytes[offset + length - 2] == SALT_SEPARATOR) {
+			return length - 2;
+		}
+		return length;
+	}
+}
@@ -0,0 +1,65 @@
+package se.kth.emdc.examples.wordcount;
+
+/**
+ * Byte-wise comparison of words through a normalized key: the first eight
+ * bytes of a word packed big-endian into a long, padded with zeros. Two
+ * prefixes compared as unsigned longs give the same order as comparing the
+ * first eight unsigned bytes, so most comparisons of different words are
+ * settled by a single long compare and only words sharing their first
+ * eight bytes are compared byte by byte.
+ */
+public final class NormalizedKey {
+
+	/** Number of bytes of a word held by its prefix. */
+	public static final int PREFIX_LENGTH = 8;
+
+	private NormalizedKey() {
+	}
+
+	/**
+	 * @return the first eight bytes of the word packed into a long
+	 */
+	public static long prefix(byte[] bytes, int offset, int length) {
+		long prefix = 0;
+		int n = Math.min(length, PREFIX_LENGTH);
+		for (int i = 0; i < n; i++) {
+			prefix |= (bytes[offset + i] & 0xFFL) << (56 - 8 * i);
+		}
+		return prefix;
+	}
+
+	/**
+	 * Compares two prefixes as unsigned longs.
+	 */
+	public static int compare(long prefix1, long prefix2) {
+		prefix1 ^= Long.MIN_VALUE;
+		prefix2 ^= Long.MIN_VALUE;
+		return (prefix1 < prefix2 ? -1 : (prefix1 == prefix2 ? 0 : 1));
+	}
+
+	/**
+	 * Compares two words by their unsigned bytes, the shorter word first if
+	 * one is a prefix of the other.
+	 */
+	public static int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+		int c = compare(prefix(b1, s1, l1), prefix(b2, s2, l2));
+		if (c != 0) {
+			return c;
+		}
+		return compareTail(b1, s1, l1, b2, s2, l2);
+	}
+
+	/**
+	 * Compares two words whose prefixes are equal.
+	 */
+	public static int compareTail(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+		int n = Math.min(l1, l2);
+		for (int i = PREFIX_LENGTH; i < n; i++) {
+			int diff = (b1[s1 + i] & 0xFF) - (b2[s2 + i] & 0xFF);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return l1 - l2;
+	}
+}
@@ -0,0 +1,308 @@
+package se.kth.emdc.examples.wordcount;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving summary of the most frequent words of a stream (Metwally,
+ * Agrawal and El Abbadi). A fixed number of counters is kept; a word that
+ * is not monitored takes over the counter with the lowest count and
+ * inherits that count as its error. Every counter then satisfies
+ * <pre>
+ * count - error &lt;= true count &lt;= count
+ * </pre>
+ * and the error is at most N / capacity for a stream of N words, so any
+ * word occurring more often than that is monitored.
+ *
+ * Summaries are mergeable: the mappers summarize their own words and a
+ * single reducer merges the partial summaries, keeping the same bounds.
+ */
+public class SpaceSaving {
+
+	/** Job parameter with the number of words written by the top-K WordCount. */
+	public static final String TOP_K = "TOP_K";
+
+	/** Job parameter with the number of counters of each summary. */
+	public static final String SKETCH_CAPACITY = "SKETCH_CAPACITY";
+
+	public static final int DEFAULT_TOP_K = 1000;
+
+	/** Default number of counters per word of the result. */
+	public static final int DEFAULT_CAPACITY_FACTOR = 10;
+
+	/**
+	 * A monitored word.
+	 */
+	public static class Counter {
+
+		private final String word;
+		private long count;
+		private long error;
+
+		// position in the heap
+		private int index;
+
+		private Counter(String word, long count, long error) {
+			this.word = word;
+			this.count = count;
+			this.error = error;
+		}
+
+		public String getWord() {
+			return word;
+		}
+
+		/**
+		 * @return an upper bound of the occurrences of the word
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the maximum overestimation of {@link #getCount()}
+		 */
+		public long getError() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			return word + " " + count + " " + error;
+		}
+	}
+
+	// highest count first, then by word so the results are deterministic
+	private static final Comparator<Counter> BY_COUNT = new Comparator<Counter>() {
+		@Override
+		public int compare(Counter c1, Counter c2) {
+			if (c1.count != c2.count) {
+				return (c1.count > c2.count ? -1 : 1);
+			}
+			return c1.word.compareTo(c2.word);
+		}
+	};
+
+	private int capacity;
+
+	private final Map<String, Counter> counters = new HashMap<String, Counter>();
+
+	// min-heap on the counts, the root is the counter to replace
+	private Counter[] heap;
+
+	// upper bound of the count of any word that is not monitored, raised
+	// when counters are dropped by a merge
+	private long floor;
+
+	/**
+	 * @param capacity the number of counters
+	 */
+	public SpaceSaving(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity must be positive");
+		}
+		this.capacity = capacity;
+		this.heap = new Counter[capacity];
+	}
+
+	/**
+	 * Counts occurrences of a word.
+	 * @param word the word
+	 * @param count number of occurrences, the mappers add the counts of
+	 *        their in-memory table instead of single words
+	 */
+	public void add(String word, long count) {
+		Counter counter = counters.get(word);
+		if (counter != null) {
+			counter.count += count;
+			siftDown(counter.index);
+			return;
+		}
+
+		long unmonitored = getFloor();
+		if (counters.size() < capacity) {
+			counter = new Counter(word, unmonitored + count, unmonitored);
+			counter.index = counters.size();
+			heap[counter.index] = counter;
+			counters.put(word, counter);
+			siftUp(counter.index);
+		} else {
+			// replace the word with the lowest count
+			counters.remove(heap[0].word);
+			counter = new Counter(word, unmonitored + count, unmonitored);
+			counter.index = 0;
+			heap[0] = counter;
+			counters.put(word, counter);
+			siftDown(0);
+		}
+	}
+
+	/**
+	 * Adds the words of another summary to this one. A word missing from
+	 * one of the summaries is counted with the floor of that summary, and
+	 * if there are more words than counters the lowest ones are dropped.
+	 */
+	public void merge(SpaceSaving other) {
+		long thisFloor = getFloor();
+		long otherFloor = other.getFloor();
+
+		Map<String, Counter> merged = new HashMap<String, Counter>(counters.size() + other.counters.size());
+		for (Counter c : counters.values()) {
+			merged.put(c.word, new Counter(c.word, c.count + otherFloor, c.error + otherFloor));
+		}
+		for (Counter c : other.counters.values()) {
+			Counter m = merged.get(c.word);
+			if (m == null) {
+				merged.put(c.word, new Counter(c.word, c.count + thisFloor, c.error + thisFloor));
+			} else {
+				m.count += c.count - otherFloor;
+				m.error += c.error - otherFloor;
+			}
+		}
+
+		List<Counter> sorted = new ArrayList<Counter>(merged.values());
+		Collections.sort(sorted, BY_COUNT);
+
+		floor = thisFloor + otherFloor;
+		if (sorted.size() > capacity) {
+			floor = Math.max(floor, sorted.get(capacity).count);
+			sorted = sorted.subList(0, capacity);
+		}
+		rebuild(sorted);
+	}
+
+	/**
+	 * Keeps only the given number of words with the highest counts.
+	 */
+	public void truncate(int size) {
+		if (size >= counters.size()) {
+			return;
+		}
+		List<Counter> sorted = getTop(counters.size());
+		floor = Math.max(floor, sorted.get(size).count);
+		capacity = size;
+		heap = new Counter[size];
+		rebuild(sorted.subList(0, size));
+	}
+
+	private void rebuild(List<Counter> sorted) {
+		counters.clear();
+		Arrays.fill(heap, null);
+		// the list is in decreasing order, so reversed it is a valid min-heap
+		for (int i = 0; i < sorted.size(); i++) {
+			Counter c = sorted.get(sorted.size() - 1 - i);
+			c.index = i;
+			heap[i] = c;
+			counters.put(c.word, c);
+		}
+	}
+
+	/**
+	 * @return an upper bound of the count of any word that is not monitored
+	 */
+	public long getFloor() {
+		if (counters.size() == capacity) {
+			return Math.max(floor, heap[0].count);
+		}
+		return floor;
+	}
+
+	/**
+	 * @return the monitored words with the highest counts, highest first
+	 */
+	public List<Counter> getTop(int k) {
+		List<Counter> sorted = new ArrayList<Counter>(counters.values());
+		Collections.sort(sorted, BY_COUNT);
+		return new ArrayList<Counter>(sorted.subList(0, Math.min(k, sorted.size())));
+	}
+
+	/**
+	 * @return the number of monitored words
+	 */
+	public int size() {
+		return counters.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	private void siftUp(int i) {
+		Counter c = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (heap[parent].count <= c.count) {
+				break;
+			}
+			heap[i] = heap[parent];
+			heap[i].index = i;
+			i = parent;
+		}
+		heap[i] = c;
+		c.index = i;
+	}
+
+	private void siftDown(int i) {
+		int n = counters.size();
+		Counter c = heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= n) {
+				break;
+			}
+			if (child + 1 < n && heap[child + 1].count < heap[child].count) {
+				child++;
+			}
+			if (c.count <= heap[child].count) {
+				break;
+			}
+			heap[i] = heap[child];
+			heap[i].index = i;
+			i = child;
+		}
+		heap[i] = c;
+		c.index = i;
+	}
+
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(capacity);
+		out.writeLong(floor);
+		out.writeInt(counters.size());
+		for (int i = 0; i < counters.size(); i++) {
+			out.writeUTF(heap[i].word);
+			out.writeLong(heap[i].count);
+			out.writeLong(heap[i].error);
+		}
+	}
+
+	/**
+	 * Replaces the content of this summary with a serialized one.
+	 */
+	public void read(DataInput in) throws IOException {
+		capacity = in.readInt();
+		floor = in.readLong();
+		int size = in.readInt();
+
+		counters.clear();
+		if (heap.length != capacity) {
+			heap = new Counter[capacity];
+		} else {
+			Arrays.fill(heap, null);
+		}
+		// written in heap order
+		for (int i = 0; i < size; i++) {
+			Counter c = new Counter(in.readUTF(), in.readLong(), in.readLong());
+			c.index = i;
+			heap[i] = c;
+			counters.put(c.word, c);
+		}
+	}
+}
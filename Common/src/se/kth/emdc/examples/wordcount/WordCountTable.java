@@ -0,0 +1,236 @@
+package se.kth.emdc.examples.wordcount;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from word bytes to an int counter, used by the
+ * mappers to aggregate the words of a task in memory instead of emitting
+ * one (word, 1) pair per token.
+ *
+ * The words are copied into a single byte array and the entries are kept
+ * in parallel int arrays, so adding a word that is already in the table
+ * does not allocate. The table reports when its estimated size reaches the
+ * memory budget; the mapper then emits all the counts and clears it.
+ */
+public class WordCountTable {
+
+	/** Job parameter enabling the in-mapper aggregation of the words. */
+	public static final String IN_MAPPER_AGGREGATION = "IN_MAPPER_AGGREGATION";
+
+	/** Job parameter with the memory budget of the table in megabytes. */
+	public static final String AGGREGATION_BUFFER_MB = "AGGREGATION_BUFFER_MB";
+
+	public static final int DEFAULT_AGGREGATION_BUFFER_MB = 64;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final long maxBytes;
+
+	// slot -> entry + 1, 0 for an empty slot
+	private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+	// entries, in insertion order
+	private int[] hashes = new int[INITIAL_CAPACITY];
+	private int[] starts = new int[INITIAL_CAPACITY];
+	private int[] lengths = new int[INITIAL_CAPACITY];
+	private int[] counts = new int[INITIAL_CAPACITY];
+	private int size;
+
+	private byte[] words = new byte[INITIAL_CAPACITY * 8];
+	private int wordsLength;
+
+	/**
+	 * @param maxBytes the memory budget of the table
+	 */
+	public WordCountTable(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Adds to the counter of a word, inserting it if needed.
+	 * @param bytes buffer holding the word
+	 * @param offset position of the first byte of the word
+	 * @param length number of bytes of the word
+	 * @param count value added to the counter
+	 */
+	public void add(byte[] bytes, int offset, int length, int count) {
+		int hash = hash(bytes, offset, length);
+		int mask = slots.length - 1;
+
+		for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+			int entry = slots[slot] - 1;
+			if (entry < 0) {
+				slots[slot] = insert(hash, bytes, offset, length, count) + 1;
+				if (size * 2 > slots.length) {
+					rehash();
+				}
+				return;
+			}
+			if (hashes[entry] == hash && sameWord(entry, bytes, offset, length)) {
+				counts[entry] += count;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @param bytes buffer holding the word
+	 * @param offset position of the first byte of the word
+	 * @param length number of bytes of the word
+	 * @return the position of the word in the table, in insertion order,
+	 *         or -1 if the word is not in the table
+	 */
+	public int find(byte[] bytes, int offset, int length) {
+		int hash = hash(bytes, offset, length);
+		int mask = slots.length - 1;
+
+		for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+			int entry = slots[slot] - 1;
+			if (entry < 0) {
+				return -1;
+			}
+			if (hashes[entry] == hash && sameWord(entry, bytes, offset, length)) {
+				return entry;
+			}
+		}
+	}
+
+	private int insert(int hash, byte[] bytes, int offset, int length, int count) {
+		if (size == counts.length) {
+			int capacity = size * 2;
+			hashes = Arrays.copyOf(hashes, capacity);
+			starts = Arrays.copyOf(starts, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+		}
+		if (wordsLength + length > words.length) {
+			words = Arrays.copyOf(words, Math.max(words.length * 2, wordsLength + length));
+		}
+		System.arraycopy(bytes, offset, words, wordsLength, length);
+
+		hashes[size] = hash;
+		starts[size] = wordsLength;
+		lengths[size] = length;
+		counts[size] = count;
+		wordsLength += length;
+		return size++;
+	}
+
+	private boolean sameWord(int entry, byte[] bytes, int offset, int length) {
+		if (lengths[entry] != length) {
+			return false;
+		}
+		int start = starts[entry];
+		for (int i = 0; i < length; i++) {
+			if (words[start + i] != bytes[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int entry = 0; entry < size; entry++) {
+			int slot = hashes[entry] & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = entry + 1;
+		}
+	}
+
+	private static int hash(byte[] bytes, int offset, int length) {
+		int h = 1;
+		for (int i = offset; i < offset + length; i++) {
+			h = 31 * h + bytes[i];
+		}
+		// spread the bits, the slots are selected by the low ones
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return h;
+	}
+
+	/**
+	 * @return the estimated memory used by the words in the table, in
+	 *         bytes: their bytes, four ints per entry and at least two slots
+	 *         per entry
+	 */
+	public long getBytes() {
+		return wordsLength + size * 24L;
+	}
+
+	/**
+	 * @return true if the table reached its memory budget and should be
+	 *         emitted and cleared
+	 */
+	public boolean isFull() {
+		return getBytes() >= maxBytes;
+	}
+
+	/**
+	 * @return the number of distinct words
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the buffer holding the bytes of all the words
+	 */
+	public byte[] getWords() {
+		return words;
+	}
+
+	/**
+	 * @return the position of the i-th word in {@link #getWords()}
+	 */
+	public int getWordStart(int i) {
+		return starts[i];
+	}
+
+	public int getWordLength(int i) {
+		return lengths[i];
+	}
+
+	public int getCount(int i) {
+		return counts[i];
+	}
+
+	/**
+	 * Adds the counts of a word count output file, with lines holding a word
+	 * and its count separated by white space. Does not close the stream.
+	 */
+	public void readCounts(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			int split = line.length() - 1;
+			while (split >= 0 && !Character.isWhitespace(line.charAt(split))) {
+				split--;
+			}
+			if (split <= 0) {
+				continue;
+			}
+			byte[] word = line.substring(0, split).trim().getBytes("UTF-8");
+			if (word.length > 0) {
+				add(word, 0, word.length, Integer.parseInt(line.substring(split + 1)));
+			}
+		}
+	}
+
+	/**
+	 * Removes all the words, keeping the allocated arrays.
+	 */
+	public void clear() {
+		Arrays.fill(slots, 0);
+		size = 0;
+		wordsLength = 0;
+	}
+}
@@ -0,0 +1,219 @@
+package se.kth.emdc.examples.wordcount;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Maps the most frequent words to small integer ids, so the shuffle of the
+ * word count can sort and group ints instead of strings. Words that are
+ * not in the dictionary keep their bytes.
+ *
+ * All the tasks of a job must use the same dictionary, otherwise the same
+ * word would reach the reducers under two keys. It is built once by the
+ * driver from a sample of the input, stored as a file with one word per
+ * line (the id of a word is its line number) and loaded by every task.
+ * The most frequent words get the lowest ids, which have the shortest
+ * variable length encodings.
+ */
+public class WordDictionary {
+
+	/** Job parameter enabling the dictionary encoding of the words. */
+	public static final String ENCODE_WORDS = "ENCODE_WORDS";
+
+	/** Job parameter with the path of the dictionary file. */
+	public static final String DICTIONARY_PATH = "DICTIONARY_PATH";
+
+	/** Job parameter with the maximum number of words in the dictionary. */
+	public static final String DICTIONARY_SIZE = "DICTIONARY_SIZE";
+
+	/** Job parameter with the number of megabytes of input sampled to build the dictionary. */
+	public static final String DICTIONARY_SAMPLE_MB = "DICTIONARY_SAMPLE_MB";
+
+	public static final int DEFAULT_DICTIONARY_SIZE = 65536;
+	public static final int DEFAULT_DICTIONARY_SAMPLE_MB = 64;
+
+	// entry i of the table is the word with id i
+	private final WordCountTable table = new WordCountTable(Long.MAX_VALUE);
+
+	/**
+	 * @param bytes buffer holding the word
+	 * @param offset position of the first byte of the word
+	 * @param length number of bytes of the word
+	 * @return the id of the word, or -1 if it is not in the dictionary
+	 */
+	public int getId(byte[] bytes, int offset, int length) {
+		return table.find(bytes, offset, length);
+	}
+
+	/**
+	 * @return the buffer holding the bytes of all the words
+	 */
+	public byte[] getWords() {
+		return table.getWords();
+	}
+
+	/**
+	 * @return the position of the word with the given id in {@link #getWords()}
+	 */
+	public int getWordStart(int id) {
+		return table.getWordStart(id);
+	}
+
+	public int getWordLength(int id) {
+		return table.getWordLength(id);
+	}
+
+	public int size() {
+		return table.size();
+	}
+
+	private void add(byte[] bytes, int offset, int length) {
+		if (table.find(bytes, offset, length) < 0) {
+			table.add(bytes, offset, length, 0);
+		}
+	}
+
+	/**
+	 * Writes the words one per line, in id order. Does not close the stream.
+	 */
+	public void write(OutputStream out) throws IOException {
+		BufferedOutputStream buffered = new BufferedOutputStream(out);
+		for (int id = 0; id < size(); id++) {
+			buffered.write(getWords(), getWordStart(id), getWordLength(id));
+			buffered.write('\n');
+		}
+		buffered.flush();
+	}
+
+	/**
+	 * Reads a dictionary written by {@link #write(OutputStream)}. Does not
+	 * close the stream.
+	 */
+	public static WordDictionary read(InputStream in) throws IOException {
+		WordDictionary dictionary = new WordDictionary();
+		BufferedInputStream buffered = new BufferedInputStream(in);
+
+		byte[] word = new byte[64];
+		int length = 0;
+		int b;
+		while ((b = buffered.read()) != -1) {
+			if (b == '\n') {
+				dictionary.add(word, 0, length);
+				length = 0;
+			} else {
+				if (length == word.length) {
+					word = Arrays.copyOf(word, length * 2);
+				}
+				word[length++] = (byte) b;
+			}
+		}
+		if (length > 0) {
+			dictionary.add(word, 0, length);
+		}
+		return dictionary;
+	}
+
+	/**
+	 * Counts the words of a sample of the input and keeps the most frequent
+	 * ones. The sample is tokenized like the mappers do.
+	 */
+	public static class Builder {
+
+		private final WordCountTable counts = new WordCountTable(Long.MAX_VALUE);
+		private final ByteTokenizer tokenizer = new ByteTokenizer();
+		private final byte[] buffer = new byte[64 * 1024];
+		private long remaining;
+		private long sampledWords;
+
+		/**
+		 * @param sampleBytes the number of bytes of input to sample
+		 */
+		public Builder(long sampleBytes) {
+			this.remaining = sampleBytes;
+		}
+
+		/**
+		 * Counts the words at the beginning of a stream, until the stream
+		 * ends or the sample is complete. Does not close the stream.
+		 * @return false if the sample is complete
+		 */
+		public boolean sample(InputStream in) throws IOException {
+			int carry = 0;
+			while (remaining > 0) {
+				int read = in.read(buffer, carry, (int) Math.min(buffer.length - carry, remaining));
+				boolean end = (read == -1);
+				int length = carry + (end ? 0 : read);
+				if (!end) {
+					remaining -= read;
+				}
+
+				// a word touching the end of the buffer may continue in the next read
+				carry = 0;
+				tokenizer.reset(buffer, 0, length);
+				while (tokenizer.next()) {
+					int start = tokenizer.getStart();
+					if (!end && remaining > 0 && start + tokenizer.getLength() == length && start > 0) {
+						carry = tokenizer.getLength();
+						System.arraycopy(buffer, start, buffer, 0, carry);
+						break;
+					}
+					counts.add(buffer, start, tokenizer.getLength(), 1);
+					sampledWords++;
+				}
+
+				if (end) {
+					break;
+				}
+			}
+			return remaining > 0;
+		}
+
+		/**
+		 * @param size the maximum number of words in the dictionary
+		 * @return the most frequent words of the sample, the most frequent first
+		 */
+		public WordDictionary build(int size) {
+			return build(size, 1);
+		}
+
+		/**
+		 * @param minShare the minimum fraction of the sampled words made up by
+		 *        the occurrences of a word in the dictionary
+		 * @return the words of the sample more frequent than the share, the
+		 *         most frequent first
+		 */
+		public WordDictionary buildFrequent(double minShare) {
+			return build(Integer.MAX_VALUE, (long) Math.max(1, Math.ceil(minShare * sampledWords)));
+		}
+
+		private WordDictionary build(int size, long minCount) {
+			Integer[] entries = new Integer[counts.size()];
+			for (int i = 0; i < entries.length; i++) {
+				entries[i] = i;
+			}
+			Arrays.sort(entries, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer e1, Integer e2) {
+					int c1 = counts.getCount(e1);
+					int c2 = counts.getCount(e2);
+					return (c1 > c2 ? -1 : (c1 < c2 ? 1 : e1.compareTo(e2)));
+				}
+			});
+
+			WordDictionary dictionary = new WordDictionary();
+			for (int i = 0; i < Math.min(size, entries.length); i++) {
+				int entry = entries[i];
+				if (counts.getCount(entry) < minCount) {
+					break;
+				}
+				dictionary.add(counts.getWords(), counts.getWordStart(entry), counts.getWordLength(entry));
+			}
+			return dictionary;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package se.kth.emdc.examples.wordcount.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads a file that is being appended to, like <code>tail -f</code>: at the
+ * end of the file the reads wait for more bytes instead of returning -1.
+ * When the file gets shorter than the bytes read so far, it was truncated
+ * and is read again from its start. The stream only ends when it is closed.
+ */
+public class FollowingFileInputStream extends InputStream {
+
+	private final File file;
+	private final long pollMillis;
+
+	private RandomAccessFile in;
+	private long position;
+	private volatile boolean closed;
+
+	/**
+	 * @param pollMillis time waited at the end of the file before reading again
+	 * @param fromEnd true to start at the current end of the file
+	 */
+	public FollowingFileInputStream(File file, long pollMillis, boolean fromEnd) throws IOException {
+		this.file = file;
+		this.pollMillis = pollMillis;
+		this.in = new RandomAccessFile(file, "r");
+		if (fromEnd) {
+			position = in.length();
+			in.seek(position);
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return (read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (!closed) {
+			int n = in.read(b, off, len);
+			if (n > 0) {
+				position += n;
+				return n;
+			}
+
+			if (file.length() < position) {
+				in.close();
+				in = new RandomAccessFile(file, "r");
+				position = 0;
+				continue;
+			}
+			try {
+				Thread.sleep(pollMillis);
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("Interrupted while following " + file);
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		in.close();
+	}
+}
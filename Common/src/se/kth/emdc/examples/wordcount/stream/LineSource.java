@@ -0,0 +1,28 @@
+package se.kth.emdc.examples.wordcount.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Unbounded source of text lines for {@link StreamingWordCount}.
+ *
+ * {@link #readLine()} blocks until a line is available; when the consumer
+ * is slow the source is simply not read, so a socket or file source is
+ * throttled by the transport or the file instead of buffering.
+ */
+public interface LineSource extends Closeable {
+
+	/**
+	 * @return the bytes of the next line without its line terminator, in a
+	 *         new array owned by the caller, or null at the end of the stream
+	 * @throws InterruptedException if the thread was interrupted while
+	 *         waiting for a line
+	 */
+	byte[] readLine() throws IOException, InterruptedException;
+
+	/**
+	 * Stops the source; a thread blocked in {@link #readLine()} returns or
+	 * fails.
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,94 @@
+package se.kth.emdc.examples.wordcount.stream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Local stand-in for a live source: replays the lines of a file at a fixed
+ * rate, a given number of times or forever. The lines are loaded in memory
+ * first, so the rate is not limited by the disk.
+ */
+public class ReplayLineSource implements LineSource {
+
+	private final byte[][] lines;
+	private final double linesPerSecond;
+	private final long totalLines;
+
+	private long emitted;
+	private long startNanos;
+	private volatile boolean closed;
+
+	/**
+	 * @param lines the lines to replay, not copied
+	 * @param linesPerSecond the rate of the lines, 0 for as fast as they are read
+	 * @param repeat the number of times the lines are replayed, 0 for forever
+	 */
+	public ReplayLineSource(byte[][] lines, double linesPerSecond, int repeat) {
+		if (lines.length == 0) {
+			throw new IllegalArgumentException("No lines to replay");
+		}
+		this.lines = lines;
+		this.linesPerSecond = linesPerSecond;
+		this.totalLines = (repeat <= 0 ? Long.MAX_VALUE : (long) repeat * lines.length);
+	}
+
+	public ReplayLineSource(File file, double linesPerSecond, int repeat) throws IOException {
+		this(readLines(file), linesPerSecond, repeat);
+	}
+
+	private static byte[][] readLines(File file) throws IOException {
+		List<byte[]> lines = new ArrayList<byte[]>();
+		StreamLineSource source = new StreamLineSource(new FileInputStream(file));
+		try {
+			for (byte[] line; (line = source.readLine()) != null;) {
+				lines.add(line);
+			}
+		} finally {
+			source.close();
+		}
+		return lines.toArray(new byte[lines.size()][]);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public byte[] readLine() throws InterruptedException {
+		if (closed || emitted == totalLines) {
+			return null;
+		}
+		if (emitted == 0) {
+			startNanos = System.nanoTime();
+		}
+		if (linesPerSecond > 0) {
+			long due = startNanos + (long) (emitted * 1e9 / linesPerSecond);
+			long wait = due - System.nanoTime();
+			if (wait > 0) {
+				Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+			}
+		}
+		// the tokenizer folds the line in place, the replayed copy must stay intact
+		byte[] line = lines[(int) (emitted % lines.length)];
+		emitted++;
+		return Arrays.copyOf(line, line.length);
+	}
+
+	/**
+	 * @return the number of lines returned so far
+	 */
+	public long getEmitted() {
+		return emitted;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		closed = true;
+	}
+}
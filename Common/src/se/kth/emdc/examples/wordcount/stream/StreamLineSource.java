@@ -0,0 +1,99 @@
+package se.kth.emdc.examples.wordcount.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.Arrays;
+
+/**
+ * Splits the bytes of an input stream into lines ending with '\n' or
+ * "\r\n". The last line does not need a terminator.
+ */
+public class StreamLineSource implements LineSource {
+
+	private final InputStream in;
+	private final Socket socket;
+
+	private final byte[] buffer = new byte[64 * 1024];
+	private int position;
+	private int limit;
+
+	private byte[] line = new byte[256];
+
+	public StreamLineSource(InputStream in) {
+		this(in, null);
+	}
+
+	private StreamLineSource(InputStream in, Socket socket) {
+		this.in = in;
+		this.socket = socket;
+	}
+
+	/**
+	 * @return the lines sent to a TCP server, e.g. <code>nc -lk port</code>
+	 */
+	public static StreamLineSource connect(String host, int port) throws IOException {
+		Socket socket = new Socket(host, port);
+		return new StreamLineSource(socket.getInputStream(), socket);
+	}
+
+	/**
+	 * @param fromEnd true to skip the lines already in the file, like <code>tail -f</code>
+	 * @return the lines appended to a growing file
+	 */
+	public static StreamLineSource follow(File file, long pollMillis, boolean fromEnd) throws IOException {
+		return new StreamLineSource(new FollowingFileInputStream(file, pollMillis, fromEnd));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public byte[] readLine() throws IOException {
+		int length = 0;
+		while (true) {
+			if (position == limit) {
+				int n = in.read(buffer, 0, buffer.length);
+				if (n < 0) {
+					return (length == 0 ? null : Arrays.copyOf(line, length));
+				}
+				position = 0;
+				limit = n;
+			}
+
+			int end = position;
+			while (end < limit && buffer[end] != '\n') {
+				end++;
+			}
+			if (length + end - position > line.length) {
+				line = Arrays.copyOf(line, Math.max(line.length * 2, length + end - position));
+			}
+			System.arraycopy(buffer, position, line, length, end - position);
+			length += end - position;
+
+			if (end < limit) {
+				position = end + 1;
+				if (length > 0 && line[length - 1] == '\r') {
+					length--;
+				}
+				return Arrays.copyOf(line, length);
+			}
+			position = limit;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			in.close();
+		} finally {
+			if (socket != null) {
+				socket.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package se.kth.emdc.examples.wordcount.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import se.kth.emdc.examples.wordcount.WordCountTable;
+
+/**
+ * WordCount over an unbounded source of lines, with the counts of every
+ * tumbling or sliding window emitted shortly after the window ends.
+ *
+ * A reader thread moves the lines of the source into a bounded queue and
+ * the calling thread counts them in a {@link WindowedWordCount}. The
+ * counting thread waits on the queue at most until the end of the current
+ * pane, so a window is emitted on time even when no line arrives. When the
+ * counting or the {@link WindowListener} falls behind, the queue fills up
+ * and the reader blocks, which stops reading the socket or the file: the
+ * lines waiting to be counted, and the delay of the windows, are bounded
+ * by the capacity of the queue.
+ */
+public class StreamingWordCount {
+
+	public static final int DEFAULT_QUEUE_LINES = 10000;
+
+	private static final byte[] END_OF_STREAM = new byte[0];
+
+	private final LineSource source;
+	private final WindowedWordCount counts;
+	private final BlockingQueue<byte[]> queue;
+
+	private volatile IOException sourceError;
+	private volatile long blockedNanos;
+
+	/**
+	 * @param queueLines the capacity of the queue between the source and the counting
+	 */
+	public StreamingWordCount(LineSource source, WindowedWordCount counts, int queueLines) {
+		this.source = source;
+		this.counts = counts;
+		this.queue = new ArrayBlockingQueue<byte[]>(queueLines);
+	}
+
+	/**
+	 * Counts the lines of the source until its end, then emits the last
+	 * windows. Closes the source.
+	 */
+	public void run() throws IOException, InterruptedException {
+		Thread reader = new Thread("StreamingWordCount source") {
+			@Override
+			public void run() {
+				try {
+					for (byte[] line; (line = source.readLine()) != null;) {
+						if (!queue.offer(line)) {
+							// the counting is behind, wait for it instead of reading ahead
+							long start = System.nanoTime();
+							queue.put(line);
+							blockedNanos += System.nanoTime() - start;
+						}
+					}
+				} catch (IOException e) {
+					sourceError = e;
+				} catch (InterruptedException e) {
+					return;
+				}
+				try {
+					queue.put(END_OF_STREAM);
+				} catch (InterruptedException e) {
+					// stopped by the counting thread
+				}
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+
+		try {
+			while (true) {
+				long now = System.currentTimeMillis();
+				counts.advance(now);
+				long wait = Math.min(counts.getNextWindowEnd() - now, counts.getSlideMillis());
+				byte[] line = queue.poll(Math.max(wait, 1), TimeUnit.MILLISECONDS);
+				if (line == END_OF_STREAM) {
+					break;
+				}
+				if (line != null) {
+					counts.add(line, 0, line.length, System.currentTimeMillis());
+				}
+			}
+			counts.finish();
+		} finally {
+			reader.interrupt();
+			source.close();
+		}
+		if (sourceError != null) {
+			throw new IOException("Could not read the source", sourceError);
+		}
+	}
+
+	/**
+	 * @return the time the reader waited for the counting to make room in the queue
+	 */
+	public long getBlockedMillis() {
+		return blockedNanos / 1000000;
+	}
+
+	/**
+	 * Prints the number of words of each window, its most frequent words
+	 * and how long after its end it was emitted.
+	 */
+	public static class TopWordsPrinter implements WindowListener {
+
+		private final PrintStream out;
+		private final int top;
+
+		public TopWordsPrinter(PrintStream out, int top) {
+			this.out = out;
+			this.top = top;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void window(long start, long end, WordCountTable counts) {
+			// partial selection sort, the windows are printed rarely
+			int[] best = new int[Math.min(top, counts.size())];
+			long total = 0;
+			for (int i = 0; i < counts.size(); i++) {
+				total += counts.getCount(i);
+			}
+			for (int k = 0; k < best.length; k++) {
+				int max = -1;
+				for (int i = 0; i < counts.size(); i++) {
+					if ((max < 0 || counts.getCount(i) > counts.getCount(max)) && !contains(best, k, i)) {
+						max = i;
+					}
+				}
+				best[k] = max;
+			}
+
+			StringBuilder line = new StringBuilder();
+			line.append('[').append(start).append(", ").append(end).append(") ").append(counts.size()).append(" words, ")
+					.append(total).append(" occurrences, emitted after ").append(System.currentTimeMillis() - end).append(" ms:");
+			for (int i : best) {
+				line.append(' ').append(new String(counts.getWords(), counts.getWordStart(i), counts.getWordLength(i)))
+						.append('=').append(counts.getCount(i));
+			}
+			out.println(line);
+		}
+
+		private static boolean contains(int[] values, int length, int value) {
+			for (int i = 0; i < length; i++) {
+				if (values[i] == value) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * @return the source described by socket:host:port, file:path or
+	 *         replay:path[:linesPerSecond[:repeat]]
+	 */
+	private static LineSource openSource(String spec) throws IOException {
+		String[] parts = spec.split(":");
+		if (parts[0].equals("socket") && parts.length == 3) {
+			return StreamLineSource.connect(parts[1], Integer.parseInt(parts[2]));
+		} else if (parts[0].equals("file") && parts.length == 2) {
+			return StreamLineSource.follow(new File(parts[1]), 100, true);
+		} else if (parts[0].equals("replay") && parts.length >= 2 && parts.length <= 4) {
+			return new ReplayLineSource(new File(parts[1]), (parts.length > 2 ? Double.parseDouble(parts[2]) : 0),
+					(parts.length > 3 ? Integer.parseInt(parts[3]) : 1));
+		}
+		throw new IllegalArgumentException("Unknown source " + spec);
+	}
+
+	/**
+	 * Parameters: [source] [windowSeconds] [slideSeconds] [queueLines] [topWords]
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: StreamingWordCount <source> <window seconds> [<slide seconds>] [<queue lines>] [<top words>]");
+			System.err.println("<source>: socket:<host>:<port>, file:<path> (new lines of a growing file)"
+					+ " or replay:<path>[:<lines per second>[:<repeat, 0 for forever>]]");
+			System.err.println("<slide seconds>: sliding windows if smaller than the window (default tumbling windows)");
+			System.err.println("<queue lines>: lines read ahead of the counting (default " + DEFAULT_QUEUE_LINES + ")");
+			System.exit(2);
+		}
+
+		long windowMillis = (long) (Double.parseDouble(args[1]) * 1000);
+		long slideMillis = (args.length > 2 ? (long) (Double.parseDouble(args[2]) * 1000) : windowMillis);
+		int queueLines = (args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_QUEUE_LINES);
+		int top = (args.length > 4 ? Integer.parseInt(args[4]) : 10);
+
+		WindowedWordCount counts = new WindowedWordCount(windowMillis, slideMillis, new TopWordsPrinter(System.out, top));
+		StreamingWordCount job = new StreamingWordCount(openSource(args[0]), counts, queueLines);
+		long start = System.currentTimeMillis();
+		job.run();
+		System.out.println(counts.getLines() + " lines counted in " + counts.getWindows() + " windows in "
+				+ (System.currentTimeMillis() - start) + " ms, source blocked " + job.getBlockedMillis() + " ms by the counting");
+	}
+}
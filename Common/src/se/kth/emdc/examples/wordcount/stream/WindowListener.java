@@ -0,0 +1,22 @@
+package se.kth.emdc.examples.wordcount.stream;
+
+import java.io.IOException;
+
+import se.kth.emdc.examples.wordcount.WordCountTable;
+
+/**
+ * Receives the word counts of each window closed by a {@link WindowedWordCount}.
+ */
+public interface WindowListener {
+
+	/**
+	 * Called when the processing time passes the end of a window. A slow
+	 * listener delays the counting, which in turn stops the reading of the
+	 * source once the queue of lines is full.
+	 * @param start the start of the window in milliseconds, inclusive
+	 * @param end the end of the window in milliseconds, exclusive
+	 * @param counts the words of the window and their counts, only valid
+	 *        until the method returns
+	 */
+	void window(long start, long end, WordCountTable counts) throws IOException;
+}
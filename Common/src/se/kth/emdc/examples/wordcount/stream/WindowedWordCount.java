@@ -0,0 +1,165 @@
+package se.kth.emdc.examples.wordcount.stream;
+
+import java.io.IOException;
+
+import se.kth.emdc.examples.wordcount.ByteTokenizer;
+import se.kth.emdc.examples.wordcount.WordCountTable;
+
+/**
+ * Counts the words of a stream of lines per tumbling or sliding window of
+ * processing time.
+ *
+ * The time is cut into panes of one slide, aligned on multiples of the
+ * slide. Each pane counts its words in a {@link WordCountTable}, like the
+ * in-mapper aggregation of the batch WordCount, and a window is the sum of
+ * its window / slide last panes, like the CountWords reducer. A tumbling
+ * window (slide equal to the window) is a single pane and is emitted
+ * without copying. Only the panes of the open windows are kept, so the
+ * memory is bounded by the distinct words of one window.
+ */
+public class WindowedWordCount {
+
+	private final long windowMillis;
+	private final long slideMillis;
+	private final WindowListener listener;
+
+	private final ByteTokenizer tokenizer = new ByteTokenizer();
+
+	// ring of the panes of the open windows, current is the newest
+	private final WordCountTable[] panes;
+	private int current;
+	private long paneStart = Long.MIN_VALUE;
+
+	// sum of the panes of a sliding window, reused for every window
+	private final WordCountTable window;
+
+	private long windows;
+	private long lines;
+
+	/**
+	 * @param windowMillis the length of the windows
+	 * @param slideMillis the time between the start of two windows, equal
+	 *        to the window for tumbling windows, a divisor of it for
+	 *        sliding windows
+	 */
+	public WindowedWordCount(long windowMillis, long slideMillis, WindowListener listener) {
+		if (windowMillis <= 0 || slideMillis <= 0 || windowMillis % slideMillis != 0) {
+			throw new IllegalArgumentException("The window (" + windowMillis + " ms) must be a positive multiple of the slide ("
+					+ slideMillis + " ms)");
+		}
+		this.windowMillis = windowMillis;
+		this.slideMillis = slideMillis;
+		this.listener = listener;
+
+		this.panes = new WordCountTable[(int) (windowMillis / slideMillis)];
+		for (int i = 0; i < panes.length; i++) {
+			panes[i] = new WordCountTable(Long.MAX_VALUE);
+		}
+		this.window = (panes.length > 1 ? new WordCountTable(Long.MAX_VALUE) : null);
+	}
+
+	/**
+	 * Counts the words of a line received at the given time, after emitting
+	 * the windows that ended before it. The letters of the line are folded
+	 * to lower case in place.
+	 */
+	public void add(byte[] line, int offset, int length, long time) throws IOException {
+		advance(time);
+		WordCountTable pane = panes[current];
+		tokenizer.reset(line, offset, length);
+		while (tokenizer.next()) {
+			pane.add(tokenizer.getBytes(), tokenizer.getStart(), tokenizer.getLength(), 1);
+		}
+		lines++;
+	}
+
+	/**
+	 * Emits every window that ended at or before the given time.
+	 */
+	public void advance(long time) throws IOException {
+		if (paneStart == Long.MIN_VALUE) {
+			paneStart = align(time);
+			return;
+		}
+		while (time >= paneStart + slideMillis) {
+			if (isEmpty()) {
+				// nothing to emit until the next line, skip the idle panes
+				paneStart = Math.max(paneStart + slideMillis, align(time));
+				continue;
+			}
+			closePane();
+		}
+	}
+
+	/**
+	 * Emits the windows that still hold counts, at the end of the stream.
+	 */
+	public void finish() throws IOException {
+		while (paneStart != Long.MIN_VALUE && !isEmpty()) {
+			closePane();
+		}
+	}
+
+	/**
+	 * Emits the window ending with the current pane and starts the next pane.
+	 */
+	private void closePane() throws IOException {
+		long end = paneStart + slideMillis;
+		if (window == null) {
+			listener.window(end - windowMillis, end, panes[current]);
+		} else {
+			window.clear();
+			for (WordCountTable pane : panes) {
+				for (int i = 0; i < pane.size(); i++) {
+					window.add(pane.getWords(), pane.getWordStart(i), pane.getWordLength(i), pane.getCount(i));
+				}
+			}
+			listener.window(end - windowMillis, end, window);
+		}
+		windows++;
+
+		// the oldest pane is in no open window anymore, it becomes the new one
+		current = (current + 1) % panes.length;
+		panes[current].clear();
+		paneStart = end;
+	}
+
+	private boolean isEmpty() {
+		for (WordCountTable pane : panes) {
+			if (pane.size() > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long align(long time) {
+		return time - ((time % slideMillis) + slideMillis) % slideMillis;
+	}
+
+	/**
+	 * @return the time at which the next window closes, Long.MAX_VALUE
+	 *         before the first call to {@link #advance(long)}
+	 */
+	public long getNextWindowEnd() {
+		return (paneStart == Long.MIN_VALUE ? Long.MAX_VALUE : paneStart + slideMillis);
+	}
+
+	public long getSlideMillis() {
+		return slideMillis;
+	}
+
+	/**
+	 * @return the number of windows emitted so far
+	 */
+	public long getWindows() {
+		return windows;
+	}
+
+	/**
+	 * @return the number of lines counted so far
+	 */
+	public long getLines() {
+		return lines;
+	}
+}
@@ -0,0 +1,221 @@
+package se.kth.emdc.examples.compress.hadoop;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionInputStream;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+
+import se.kth.emdc.examples.compress.BlockCodec;
+import se.kth.emdc.examples.compress.BlockCompressedInputStream;
+import se.kth.emdc.examples.compress.BlockCompressedOutputStream;
+
+/**
+ * Hadoop codec writing {@link BlockCompressedOutputStream}s, usable for the
+ * map output spills and the job output without native libraries.
+ *
+ * The streams compress whole blocks themselves, so the codec has no real
+ * {@link Compressor}: the pooled one only exists because the map output
+ * writer resets it.
+ */
+public abstract class BlockCompressionCodec implements CompressionCodec, Configurable {
+
+	private Configuration conf;
+	private int blockSize = BlockCodec.DEFAULT_BLOCK_KB * 1024;
+
+	/**
+	 * @return the name of the {@link BlockCodec} of the streams
+	 */
+	protected abstract String getCodecName();
+
+	public void setConf(Configuration conf) {
+		this.conf = conf;
+		this.blockSize = conf.getInt(BlockCodec.COMPRESSION_BLOCK_KB, BlockCodec.DEFAULT_BLOCK_KB) * 1024;
+	}
+
+	public Configuration getConf() {
+		return conf;
+	}
+
+	public CompressionOutputStream createOutputStream(OutputStream out) throws IOException {
+		return new BlockOutputStream(out, new BlockCompressedOutputStream(out, BlockCodec.forName(getCodecName()), blockSize));
+	}
+
+	public CompressionOutputStream createOutputStream(OutputStream out, Compressor compressor) throws IOException {
+		return createOutputStream(out);
+	}
+
+	public Class<? extends Compressor> getCompressorType() {
+		return UnusedCompressor.class;
+	}
+
+	public Compressor createCompressor() {
+		return new UnusedCompressor();
+	}
+
+	public CompressionInputStream createInputStream(InputStream in) throws IOException {
+		return new BlockInputStream(in, new BlockCompressedInputStream(in));
+	}
+
+	public CompressionInputStream createInputStream(InputStream in, Decompressor decompressor) throws IOException {
+		return createInputStream(in);
+	}
+
+	public Class<? extends Decompressor> getDecompressorType() {
+		return UnusedDecompressor.class;
+	}
+
+	public Decompressor createDecompressor() {
+		return new UnusedDecompressor();
+	}
+
+	private static class BlockOutputStream extends CompressionOutputStream {
+
+		private final BlockCompressedOutputStream blocks;
+
+		BlockOutputStream(OutputStream out, BlockCompressedOutputStream blocks) {
+			super(out);
+			this.blocks = blocks;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			blocks.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			blocks.write(b, off, len);
+		}
+
+		@Override
+		public void finish() throws IOException {
+			blocks.finish();
+		}
+
+		@Override
+		public void resetState() throws IOException {
+			blocks.resetState();
+		}
+
+		@Override
+		public void close() throws IOException {
+			// finishes and closes the underlying stream, then releases the codec
+			blocks.close();
+		}
+	}
+
+	private static class BlockInputStream extends CompressionInputStream {
+
+		private final BlockCompressedInputStream blocks;
+
+		BlockInputStream(InputStream in, BlockCompressedInputStream blocks) throws IOException {
+			super(in);
+			this.blocks = blocks;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return blocks.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return blocks.read(b, off, len);
+		}
+
+		@Override
+		public void resetState() throws IOException {
+			blocks.resetState();
+		}
+
+		@Override
+		public void close() throws IOException {
+			blocks.close();
+		}
+	}
+
+	public static class UnusedCompressor implements Compressor {
+
+		public void setInput(byte[] b, int off, int len) {
+			throw new UnsupportedOperationException();
+		}
+
+		public boolean needsInput() {
+			return false;
+		}
+
+		public void setDictionary(byte[] b, int off, int len) {
+		}
+
+		public long getBytesRead() {
+			return 0;
+		}
+
+		public long getBytesWritten() {
+			return 0;
+		}
+
+		public void finish() {
+		}
+
+		public boolean finished() {
+			return true;
+		}
+
+		public int compress(byte[] b, int off, int len) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void reset() {
+		}
+
+		public void end() {
+		}
+
+		public void reinit(Configuration conf) {
+		}
+	}
+
+	public static class UnusedDecompressor implements Decompressor {
+
+		public void setInput(byte[] b, int off, int len) {
+			throw new UnsupportedOperationException();
+		}
+
+		public boolean needsInput() {
+			return false;
+		}
+
+		public void setDictionary(byte[] b, int off, int len) {
+		}
+
+		public boolean needsDictionary() {
+			return false;
+		}
+
+		public boolean finished() {
+			return true;
+		}
+
+		public int decompress(byte[] b, int off, int len) {
+			throw new UnsupportedOperationException();
+		}
+
+		public int getRemaining() {
+			return 0;
+		}
+
+		public void reset() {
+		}
+
+		public void end() {
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package se.kth.emdc.examples.compress.hadoop;
+
+import se.kth.emdc.examples.compress.DeflateBlockCodec;
+
+/**
+ * Block compression with the {@link DeflateBlockCodec}, smaller but slower than {@link JavaLz4Codec}.
+ */
+public class JavaDeflateCodec extends BlockCompressionCodec {
+
+	@Override
+	protected String getCodecName() {
+		return DeflateBlockCodec.NAME;
+	}
+
+	public String getDefaultExtension() {
+		return ".jdeflate";
+	}
+}
@@ -0,0 +1,18 @@
+package se.kth.emdc.examples.compress.hadoop;
+
+import se.kth.emdc.examples.compress.Lz4BlockCodec;
+
+/**
+ * Block compression with the fast {@link Lz4BlockCodec}.
+ */
+public class JavaLz4Codec extends BlockCompressionCodec {
+
+	@Override
+	protected String getCodecName() {
+		return Lz4BlockCodec.NAME;
+	}
+
+	public String getDefaultExtension() {
+		return ".jlz4";
+	}
+}
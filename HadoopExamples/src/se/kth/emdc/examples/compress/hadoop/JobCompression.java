@@ -0,0 +1,99 @@
+package se.kth.emdc.examples.compress.hadoop;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+
+import se.kth.emdc.examples.compress.BlockCodec;
+import se.kth.emdc.examples.compress.CompressionStats;
+import se.kth.emdc.examples.compress.DeflateBlockCodec;
+import se.kth.emdc.examples.compress.Lz4BlockCodec;
+
+/**
+ * Turns the COMPRESSION_CODEC parameter of the example jobs into the Hadoop
+ * settings compressing the map output spills and, unless COMPRESS_OUTPUT is
+ * false, the job output, and reports the compression of a finished job.
+ */
+public class JobCompression {
+
+	private static final String TASK_COUNTERS = "org.apache.hadoop.mapred.Task$Counter";
+
+	private static final String DEFAULT_CODECS = "org.apache.hadoop.io.compress.DefaultCodec,org.apache.hadoop.io.compress.GzipCodec";
+
+	/**
+	 * @return the usage line of the compression parameters
+	 */
+	public static String usage() {
+		return "-D" + BlockCodec.COMPRESSION_CODEC + "=" + BlockCodec.NONE + "|" + Lz4BlockCodec.NAME + "|" + DeflateBlockCodec.NAME
+				+ ": codec of the map output and, unless -D" + BlockCodec.COMPRESS_OUTPUT + "=false, of the job output (default "
+				+ BlockCodec.NONE + "), in blocks of -D" + BlockCodec.COMPRESSION_BLOCK_KB + " kilobytes (default " + BlockCodec.DEFAULT_BLOCK_KB + ")";
+	}
+
+	/**
+	 * Configures the compression of a job. Must be called before the job is
+	 * created, which copies the configuration.
+	 */
+	public static void configure(Configuration conf) {
+		// the inputs of a job may be the compressed output of a previous one
+		String codecs = conf.get("io.compression.codecs", DEFAULT_CODECS);
+		for (Class<?> codec : new Class<?>[] { JavaLz4Codec.class, JavaDeflateCodec.class }) {
+			if (!codecs.contains(codec.getName())) {
+				codecs += "," + codec.getName();
+			}
+		}
+		conf.set("io.compression.codecs", codecs);
+
+		Class<? extends CompressionCodec> codecClass = getCodecClass(conf.get(BlockCodec.COMPRESSION_CODEC, BlockCodec.NONE));
+		if (codecClass == null) {
+			return;
+		}
+		conf.setBoolean("mapred.compress.map.output", true);
+		conf.setClass("mapred.map.output.compression.codec", codecClass, CompressionCodec.class);
+		if (conf.getBoolean(BlockCodec.COMPRESS_OUTPUT, true)) {
+			conf.setBoolean("mapred.output.compress", true);
+			conf.setClass("mapred.output.compression.codec", codecClass, CompressionCodec.class);
+		}
+	}
+
+	/**
+	 * @return the Hadoop codec of a {@link BlockCodec} name, null for none
+	 * @throws IllegalArgumentException if the codec is unknown
+	 */
+	public static Class<? extends CompressionCodec> getCodecClass(String name) {
+		if (BlockCodec.NONE.equals(name)) {
+			return null;
+		} else if (Lz4BlockCodec.NAME.equals(name)) {
+			return JavaLz4Codec.class;
+		} else if (DeflateBlockCodec.NAME.equals(name)) {
+			return JavaDeflateCodec.class;
+		}
+		throw new IllegalArgumentException("Unknown compression codec: " + name);
+	}
+
+	/**
+	 * Prints the map output compression of a finished job, from its
+	 * counters, and the bytes and CPU time of the block codecs of the tasks
+	 * that ran in this JVM since the given snapshot (all of them with the
+	 * local job runner).
+	 */
+	public static void report(Job job, CompressionStats before) throws IOException {
+		Configuration conf = job.getConfiguration();
+		if (!conf.getBoolean("mapred.compress.map.output", false)) {
+			return;
+		}
+		Counters counters = job.getCounters();
+		long raw = counters.findCounter(TASK_COUNTERS, "MAP_OUTPUT_BYTES").getValue();
+		long materialized = counters.findCounter(TASK_COUNTERS, "MAP_OUTPUT_MATERIALIZED_BYTES").getValue();
+		System.out.println(String.format("%s: map output of %d bytes materialized in %d bytes (ratio %.3f) with %s",
+				job.getJobName(), raw, materialized, (raw == 0 ? 1 : (double) materialized / raw),
+				conf.get("mapred.map.output.compression.codec")));
+
+		CompressionStats stats = CompressionStats.snapshot().since(before);
+		if (stats.getRawBytes() > 0) {
+			System.out.println(job.getJobName() + ": in-process tasks " + stats);
+		}
+	}
+}
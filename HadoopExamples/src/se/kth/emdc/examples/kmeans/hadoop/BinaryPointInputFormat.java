@@ -0,0 +1,98 @@
+package se.kth.emdc.examples.kmeans.hadoop;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import se.kth.emdc.examples.kmeans.BinaryPointFile;
+import se.kth.emdc.examples.kmeans.BinaryPointReader;
+import se.kth.emdc.examples.kmeans.hadoop.Kmeans.CoordinatesSum;
+
+/**
+ * Reads binary points files (see {@link BinaryPointFile}). The files are
+ * split like text files, every split reads the blocks that start inside
+ * it. The key is the position of the point in the file.
+ */
+public class BinaryPointInputFormat extends FileInputFormat<LongWritable, CoordinatesSum> {
+
+	@Override
+	public RecordReader<LongWritable, CoordinatesSum> createRecordReader(InputSplit split, TaskAttemptContext context) {
+		return new BinaryPointRecordReader();
+	}
+
+	public static class BinaryPointRecordReader extends RecordReader<LongWritable, CoordinatesSum> {
+
+		private FSDataInputStream in;
+		private BinaryPointReader reader;
+
+		// the mapper gets the same objects for every point
+		private final LongWritable key = new LongWritable();
+		private final CoordinatesSum value = new CoordinatesSum();
+		private long[] coords;
+
+		private long firstPoint;
+		private long points;
+		private long pointsRead;
+
+		@Override
+		public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+			FileSplit split = (FileSplit) genericSplit;
+			Path path = split.getPath();
+			FileSystem fs = path.getFileSystem(context.getConfiguration());
+			in = fs.open(path);
+
+			byte[] header = new byte[BinaryPointFile.HEADER_SIZE];
+			in.readFully(0, header);
+			BinaryPointFile file = BinaryPointFile.readHeader(header);
+
+			long firstBlock = file.getFirstBlockFrom(split.getStart());
+			long endBlock = file.getFirstBlockFrom(split.getStart() + split.getLength());
+			firstPoint = firstBlock * file.getPointsPerBlock();
+			points = Math.min(endBlock * file.getPointsPerBlock(), file.getCount()) - firstPoint;
+
+			in.seek(file.getBlockOffset(firstBlock));
+			reader = new BinaryPointReader(file, in, split.getStart(), split.getLength());
+			coords = new long[file.getDimension()];
+		}
+
+		@Override
+		public boolean nextKeyValue() throws IOException {
+			if (!reader.next(coords)) {
+				return false;
+			}
+			key.set(firstPoint + pointsRead++);
+			value.set(coords, coords.length, 1);
+			return true;
+		}
+
+		@Override
+		public LongWritable getCurrentKey() {
+			return key;
+		}
+
+		@Override
+		public CoordinatesSum getCurrentValue() {
+			return value;
+		}
+
+		@Override
+		public float getProgress() {
+			return (points == 0 ? 1.0f : Math.min(1.0f, pointsRead / (float) points));
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (in != null) {
+				in.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package se.kth.emdc.examples.kmeans.hadoop;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+
+import se.kth.emdc.examples.kmeans.BinaryPointFile;
+import se.kth.emdc.examples.kmeans.PointBlockCache;
+import se.kth.emdc.examples.kmeans.PointBlockCache.PointBlock;
+import se.kth.emdc.examples.kmeans.PointParser;
+import se.kth.emdc.examples.kmeans.hadoop.Kmeans.CoordinatesSum;
+
+/**
+ * Reads the points of a text or binary points file through the
+ * {@link PointBlockCache}. The first job reading a split parses it and
+ * caches its points, the following jobs in the same JVM take them from
+ * memory. The key is the position of the point in the split.
+ */
+public class CachedPointInputFormat extends FileInputFormat<LongWritable, CoordinatesSum> {
+
+	public static enum PointCacheCounter { CACHED_SPLITS, PARSED_SPLITS, EVICTED_SPLITS }
+
+	@Override
+	protected boolean isSplitable(JobContext context, Path file) {
+		if (BinaryPointFile.BINARY.equals(context.getConfiguration().get(BinaryPointFile.POINTS_FORMAT))) {
+			return true;
+		}
+		// same rule as TextInputFormat
+		return new CompressionCodecFactory(context.getConfiguration()).getCodec(file) == null;
+	}
+
+	@Override
+	public RecordReader<LongWritable, CoordinatesSum> createRecordReader(InputSplit split, TaskAttemptContext context) {
+		return new CachedPointRecordReader();
+	}
+
+	public static class CachedPointRecordReader extends RecordReader<LongWritable, CoordinatesSum> {
+
+		private final LongWritable key = new LongWritable();
+		private final CoordinatesSum value = new CoordinatesSum();
+
+		private PointBlockCache cache;
+		private String cacheKey;
+		// the map task passes its context, which has the counters
+		private TaskInputOutputContext<?, ?, ?, ?> counters;
+
+		// set when the split is cached
+		private PointBlock block;
+		private long[] coords;
+
+		// set when the split is read from the file
+		private BinaryPointInputFormat.BinaryPointRecordReader binaryReader;
+		private LineRecordReader lineReader;
+		private PointParser parser;
+		private PointBlockCache.Builder builder;
+
+		private long points;
+
+		@Override
+		public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException, InterruptedException {
+			FileSplit split = (FileSplit) genericSplit;
+			Configuration conf = context.getConfiguration();
+
+			cache = PointBlockCache.getInstance();
+			cache.setCapacity(conf.getInt(PointBlockCache.POINT_CACHE_MB, PointBlockCache.DEFAULT_POINT_CACHE_MB) * 1024L * 1024L);
+			cacheKey = PointBlockCache.key(split.getPath().toString(), split.getStart(), split.getLength());
+			if (context instanceof TaskInputOutputContext) {
+				counters = (TaskInputOutputContext<?, ?, ?, ?>) context;
+			}
+
+			block = cache.get(cacheKey);
+			if (block != null) {
+				coords = new long[block.getDimension()];
+				increment(PointCacheCounter.CACHED_SPLITS, 1);
+				return;
+			}
+			increment(PointCacheCounter.PARSED_SPLITS, 1);
+
+			builder = new PointBlockCache.Builder(cache.getCapacity());
+			if (BinaryPointFile.BINARY.equals(conf.get(BinaryPointFile.POINTS_FORMAT))) {
+				binaryReader = new BinaryPointInputFormat.BinaryPointRecordReader();
+				binaryReader.initialize(split, context);
+			} else {
+				lineReader = new LineRecordReader();
+				lineReader.initialize(split, context);
+				parser = new PointParser();
+			}
+		}
+
+		@Override
+		public boolean nextKeyValue() throws IOException {
+			if (block != null) {
+				if (points == block.getCount()) {
+					return false;
+				}
+				block.getPoint((int) points, coords);
+				value.set(coords, coords.length, 1);
+			} else if (!readPoint()) {
+				// the whole split was read, the next jobs can take it from memory
+				if (builder != null) {
+					PointBlock parsed = builder.build();
+					if (parsed != null) {
+						long evictions = cache.getEvictions();
+						cache.put(cacheKey, parsed);
+						increment(PointCacheCounter.EVICTED_SPLITS, cache.getEvictions() - evictions);
+					}
+					builder = null;
+				}
+				return false;
+			}
+
+			key.set(points++);
+			return true;
+		}
+
+		private void increment(PointCacheCounter counter, long amount) {
+			if (counters != null) {
+				counters.getCounter(counter).increment(amount);
+			}
+		}
+
+		/**
+		 * Reads the next point of the file into the value and adds it to the
+		 * points to cache.
+		 */
+		private boolean readPoint() throws IOException {
+			if (binaryReader != null) {
+				if (!binaryReader.nextKeyValue()) {
+					return false;
+				}
+				CoordinatesSum point = binaryReader.getCurrentValue();
+				value.set(point.getCoords(), point.getDimension(), 1);
+			} else {
+				int dimension = 0;
+				while (dimension == 0) {
+					if (!lineReader.nextKeyValue()) {
+						return false;
+					}
+					Text line = lineReader.getCurrentValue();
+					try {
+						dimension = parser.parse(line.getBytes(), 0, line.getLength());
+					} catch (NumberFormatException e) {
+						throw new IOException(e);
+					}
+				}
+				value.set(parser.getValues(), dimension, 1);
+			}
+
+			if (builder != null && !builder.add(value.getCoords(), value.getDimension())) {
+				builder = null;
+			}
+			return true;
+		}
+
+		@Override
+		public LongWritable getCurrentKey() {
+			return key;
+		}
+
+		@Override
+		public CoordinatesSum getCurrentValue() {
+			return value;
+		}
+
+		@Override
+		public float getProgress() throws IOException {
+			if (block != null) {
+				return (block.getCount() == 0 ? 1.0f : points / (float) block.getCount());
+			}
+			return (binaryReader != null ? binaryReader.getProgress() : lineReader.getProgress());
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (binaryReader != null) {
+				binaryReader.close();
+			}
+			if (lineReader != null) {
+				lineReader.close();
+			}
+		}
+	}
+}
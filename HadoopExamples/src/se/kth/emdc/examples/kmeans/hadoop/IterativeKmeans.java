@@ -0,0 +1,134 @@
+package se.kth.emdc.examples.kmeans.hadoop;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import se.kth.emdc.examples.compress.BlockCompressedInputStream;
+import se.kth.emdc.examples.compress.CompressionStats;
+import se.kth.emdc.examples.compress.hadoop.JobCompression;
+import se.kth.emdc.examples.kmeans.BasePoint;
+import se.kth.emdc.examples.kmeans.BinaryPointFile;
+import se.kth.emdc.examples.kmeans.BinaryPointReader;
+import se.kth.emdc.examples.kmeans.KmeansDriver;
+import se.kth.emdc.examples.kmeans.PointBlockCache;
+
+/**
+ * Runs {@link Kmeans} iterations from a single JVM until the centers
+ * converge, replacing kmeans-hadoop-local.sh.
+ */
+public class IterativeKmeans extends KmeansDriver {
+
+	private final Configuration conf;
+
+	public IterativeKmeans(Configuration conf, String pointsFile, String outputPath) {
+		super(pointsFile, outputPath);
+		this.conf = conf;
+	}
+
+	@Override
+	protected List<BasePoint> runIteration(int iteration, String centersFileName) throws Exception {
+		Path output = new Path(outputPath);
+		FileSystem fs = output.getFileSystem(conf);
+		fs.delete(output, true);
+
+		CompressionStats compression = CompressionStats.snapshot();
+		Job job = Kmeans.createJob(new Configuration(conf), pointsFile, centersFileName, outputPath);
+		if (!job.waitForCompletion(false)) {
+			throw new Exception("Iteration " + iteration + " failed");
+		}
+		JobCompression.report(job, compression);
+
+		return readCenters(fs, output);
+	}
+
+	/**
+	 * Reads the centers written by the reducers (the part-* files of the
+	 * output folder).
+	 */
+	private static List<BasePoint> readCenters(FileSystem fs, Path output) throws Exception {
+		List<BasePoint> centers = new ArrayList<BasePoint>();
+		for (FileStatus part : fs.listStatus(output)) {
+			if (!part.getPath().getName().startsWith("part-")) {
+				continue;
+			}
+			BufferedReader reader = new BufferedReader(new InputStreamReader(BlockCompressedInputStream.open(fs.open(part.getPath()))));
+			try {
+				centers.addAll(BasePoint.readPoints(reader));
+			} finally {
+				reader.close();
+			}
+		}
+		return centers;
+	}
+
+	/**
+	 * Samples the initial centers from a text or binary points file.
+	 */
+	private static List<BasePoint> samplePoints(Configuration conf, Path pointsPath, int numClusters) throws Exception {
+		FileSystem fs = pointsPath.getFileSystem(conf);
+		FSDataInputStream in = fs.open(pointsPath);
+		try {
+			if (BinaryPointFile.BINARY.equals(conf.get(BinaryPointFile.POINTS_FORMAT))) {
+				byte[] header = new byte[BinaryPointFile.HEADER_SIZE];
+				in.readFully(header);
+				BinaryPointReader reader = new BinaryPointReader(BinaryPointFile.readHeader(header), in, 0, fs.getFileStatus(pointsPath).getLen());
+				return sampleCenters(reader, numClusters, DEFAULT_SAMPLE_SEED);
+			}
+			return sampleCenters(new BufferedReader(new InputStreamReader(in)), numClusters, DEFAULT_SAMPLE_SEED);
+		} finally {
+			in.close();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		Configuration conf = new Configuration();
+		String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+
+		if (otherArgs.length < 4 || otherArgs.length > 6) {
+			System.err.println("Usage: " + IterativeKmeans.class.getName() + " <pointsFile> <numClusters> <output> <centersFile> [threshold] [maxIterations]");
+			System.err.println("<pointsFile>: points file in HDFS, binary with -D" + BinaryPointFile.POINTS_FORMAT + "=" + BinaryPointFile.BINARY);
+			System.err.println("<numClusters>: number of clusters, the initial centers are sampled from the points");
+			System.err.println("<output>: output folder in HDFS used by every iteration, it is overwritten");
+			System.err.println("<centersFile>: final centers file in the local file system");
+			System.err.println("[threshold]: stop when no center moves more than this distance (default " + DEFAULT_CONVERGENCE_THRESHOLD + ")");
+			System.err.println("[maxIterations]: upper bound on the number of iterations (default " + DEFAULT_MAX_ITERATIONS + ")");
+			System.exit(2);
+		}
+
+		Path pointsPath = new Path(otherArgs[0]);
+		int numClusters = Integer.parseInt(otherArgs[1]);
+		List<BasePoint> initialCenters = samplePoints(conf, pointsPath, numClusters);
+
+		// with the local job runner all the iterations run in this JVM and share the parsed points
+		if (conf.get(PointBlockCache.POINT_CACHE) == null) {
+			conf.setBoolean(PointBlockCache.POINT_CACHE, true);
+		}
+
+		IterativeKmeans driver = new IterativeKmeans(conf, otherArgs[0], otherArgs[2]);
+		if (otherArgs.length > 4) {
+			driver.setConvergenceThreshold(Double.parseDouble(otherArgs[4]));
+		}
+		if (otherArgs.length > 5) {
+			driver.setMaxIterations(Integer.parseInt(otherArgs[5]));
+		}
+
+		long start = System.currentTimeMillis();
+		List<BasePoint> centers = driver.run(initialCenters);
+		BasePoint.writePoints(centers, otherArgs[3]);
+
+		System.out.println("Iterations: " + driver.getIterations());
+		System.out.println("Last max center movement: " + driver.getLastMovement());
+		System.out.println("Total execution time: " + (System.currentTimeMillis() - start) + "ms");
+	}
+}
@@ -3,7 +3,6 @@ package se.kth.emdc.examples.kmeans.hadoop;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -18,66 +17,129 @@ import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.GenericOptionsParser;
 
+import se.kth.emdc.examples.compress.CompressionStats;
+import se.kth.emdc.examples.compress.hadoop.JobCompression;
 import se.kth.emdc.examples.kmeans.BasePoint;
+import se.kth.emdc.examples.kmeans.BinaryPointFile;
+import se.kth.emdc.examples.kmeans.NearestCenterIndex;
+import se.kth.emdc.examples.kmeans.PartialSums;
+import se.kth.emdc.examples.kmeans.PointBlockCache;
+import se.kth.emdc.examples.kmeans.PointParser;
 
 public class Kmeans {
 	
 	public static final String CENTERS_FILENAME = "CENTERS_FILENAME";
 	
-	public static class NearestCenterMapper extends Mapper<Object, Text, IntWritable, CoordinatesSum> {
+	/**
+	 * Counters reported by the mappers, to compare the nearest center indexes.
+	 */
+	public static enum NearestCenterCounter { DISTANCE_COMPUTATIONS, SKIPPED_DISTANCES }
+	
+	/**
+	 * Assigns every point to its nearest center. Subclasses turn the input
+	 * records into points.
+	 */
+	public static abstract class AbstractNearestCenterMapper<VALUEIN> extends Mapper<Object, VALUEIN, IntWritable, CoordinatesSum> {
 
-		private List<BasePoint> centers = null;
+		private NearestCenterIndex centers = null;
+		
+		// only set when the points are combined in memory
+		private PartialSums partialSums = null;
+		
+		// context.write serializes the records, so the output key is reused
+		private final IntWritable centerId = new IntWritable();
 		
 		protected void setup(Context context) {
-			String centersFileName = context.getConfiguration().get(CENTERS_FILENAME);
+			Configuration conf = context.getConfiguration();
+			String centersFileName = conf.get(CENTERS_FILENAME);
 			
 			try {
-				centers  = BasePoint.getPoints(centersFileName);
+				centers  = NearestCenterIndex.create(conf.get(NearestCenterIndex.NEAREST_CENTER_INDEX), 
+						BasePoint.getPoints(centersFileName),
+						conf.getInt(NearestCenterIndex.PROJECTION_DIMENSION, NearestCenterIndex.DEFAULT_PROJECTION_DIMENSION),
+						conf.getInt(NearestCenterIndex.PROJECTION_CANDIDATES, NearestCenterIndex.DEFAULT_PROJECTION_CANDIDATES),
+						conf.getLong(NearestCenterIndex.PROJECTION_SEED, NearestCenterIndex.DEFAULT_PROJECTION_SEED));
 			} catch (Exception e) {
-				e.printStackTrace();
+				throw new RuntimeException("Could not create the nearest center index", e);
+			}
+			
+			if (context.getConfiguration().getBoolean(PartialSums.IN_MAPPER_COMBINING, false)) {
+				partialSums = new PartialSums(centers.size());
+			}
+		}
+		
+		protected void assign(CoordinatesSum onePoint, Context context) throws IOException, InterruptedException {
+
+			int closestCenterId = centers.nearest(onePoint);
+
+			if (partialSums != null) {
+				partialSums.add(closestCenterId, onePoint.getCoords(), onePoint.getCount());
+			} else {
+				centerId.set(closestCenterId);
+				context.write(centerId, onePoint);
 			}
 		}
 		
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			// emit a single partial sum per cluster
+			if (partialSums != null) {
+				for (int centerId = 0; centerId < partialSums.size(); centerId++) {
+					if (partialSums.getCount(centerId) > 0) {
+						context.write(new IntWritable(centerId), new CoordinatesSum(partialSums.getSums(centerId), partialSums.getCount(centerId)));
+					}
+				}
+			}
+			
+			context.getCounter(NearestCenterCounter.DISTANCE_COMPUTATIONS).increment(centers.getDistanceComputations());
+			context.getCounter(NearestCenterCounter.SKIPPED_DISTANCES).increment(centers.getSkippedDistances());
+		}
+
+	}
+	
+	public static class NearestCenterMapper extends AbstractNearestCenterMapper<Text> {
+
+		private final PointParser parser = new PointParser();
+		private final CoordinatesSum onePoint = new CoordinatesSum();
+		
 		protected void map(Object key, Text value, Context context) throws IOException, InterruptedException {
 
-			CoordinatesSum onePoint;
+			int dimension;
 			try {
-				onePoint = new CoordinatesSum(value.toString().split("\\s+"));
-			} catch (Exception e) {
+				dimension = parser.parse(value.getBytes(), 0, value.getLength());
+			} catch (NumberFormatException e) {
 				throw new IOException(e);
 			}
-
-			double minDist = Double.MAX_VALUE;
-			Integer closestCenterId = -1;
-
-			for (int i = 0; i < centers.size(); i++) {
-				BasePoint center = centers.get(i);
-				double dist = onePoint.euclidianDistanceTo(center);
-				if(dist < minDist){
-					minDist = dist;
-					closestCenterId = i;
-				}
+			if (dimension == 0) {
+				return;
 			}
+			onePoint.set(parser.getValues(), dimension, 1);
 
-			context.write(new IntWritable(closestCenterId), onePoint);
+			assign(onePoint, context);
+		};
+	}
+	
+	/**
+	 * Mapper for the points read by {@link BinaryPointInputFormat} and
+	 * {@link CachedPointInputFormat}, which need no parsing.
+	 */
+	public static class BinaryNearestCenterMapper extends AbstractNearestCenterMapper<CoordinatesSum> {
+		
+		protected void map(Object key, CoordinatesSum onePoint, Context context) throws IOException, InterruptedException {
+			assign(onePoint, context);
 		};
-
 	}
 
 	public static class SumCoordinatesCombiner extends Reducer<IntWritable, CoordinatesSum, IntWritable, CoordinatesSum> {
 		
 		public void reduce(IntWritable key, Iterable<CoordinatesSum> points, Context context) throws IOException, InterruptedException {
 			
-			Long[] coordSums = null;
+			long[] coordSums = null;
 			long length=0;
 			
 			for (CoordinatesSum onePoint : points) {
-				Long[] pointCoords = onePoint.getCoords();
+				long[] pointCoords = onePoint.getCoords();
 				if(coordSums == null){
-					coordSums = new Long[pointCoords.length];
-					for (int i=0; i<pointCoords.length; i++) {
-						coordSums[i] = pointCoords[i];
-					}
+					coordSums = pointCoords.clone();
 				} else {
 					for (int i = 0; i < coordSums.length; i++) {
 						coordSums[i] += pointCoords[i];
@@ -93,16 +155,13 @@ public class Kmeans {
 	public static class RecomputeCenterReducer extends Reducer<IntWritable, CoordinatesSum, NullWritable, WritablePoint> {
 				
 		public void reduce(IntWritable key, Iterable<CoordinatesSum> points, Context context) throws IOException, InterruptedException {	
-			Long[] coordSums = null;
+			long[] coordSums = null;
 			long length=0;
 			
 			for (CoordinatesSum summedPoints : points) {
-				Long[] pointCoords = summedPoints.getCoords();
+				long[] pointCoords = summedPoints.getCoords();
 				if(coordSums == null){
-					coordSums = new Long[pointCoords.length];
-					for (int i=0; i<pointCoords.length; i++) {
-						coordSums[i] = pointCoords[i];
-					}
+					coordSums = pointCoords.clone();
 				} else {
 					for (int i = 0; i < coordSums.length; i++) {
 						coordSums[i] += pointCoords[i];
@@ -111,7 +170,7 @@ public class Kmeans {
 				length += summedPoints.getCount();
 			}
 			
-			Long[] centCoords = new Long[coordSums.length];
+			long[] centCoords = new long[coordSums.length];
 			for (int i = 0; i < centCoords.length; i++) {
 				centCoords[i] = coordSums[i]/length;
 			}
@@ -132,14 +191,17 @@ public class Kmeans {
 			super(coords);
 		}
 		
-		public WritablePoint(Long... coords){
+		public WritablePoint(long... coords){
 			super(coords);
 		}
 		
 		@Override
 		public void readFields(DataInput in) throws IOException {
 			int length = in.readInt();
-			coords = new Long[length];
+			// Hadoop reuses value instances, so keep the array when the dimension matches
+			if (coords == null || coords.length != length) {
+				coords = new long[length];
+			}
 			for (int i = 0; i < length; i++) {
 				this.coords[i] = in.readLong();
 			}
@@ -156,7 +218,7 @@ public class Kmeans {
 
 	public static class CoordinatesSum extends WritablePoint implements Writable{
 
-		private Long count;
+		private long count;
 		
 		public CoordinatesSum() {
 			super();
@@ -164,18 +226,30 @@ public class Kmeans {
 		
 		public CoordinatesSum(String[] points){
 			super(points);
-			this.count = 1L;
+			this.count = 1;
 		}
 		
-		public CoordinatesSum(Long[] points, Long count){
+		public CoordinatesSum(long[] points, long count){
 			super(points);
 			this.count = count;
 		}
 		
-		public Long getCount() {
+		public long getCount() {
 			return count;
 		}
 		
+		/**
+		 * Copies the first dimension values of a buffer into this sum,
+		 * reusing the coordinates array when the dimension matches.
+		 */
+		public void set(long[] values, int dimension, long count) {
+			if (coords == null || coords.length != dimension) {
+				coords = new long[dimension];
+			}
+			System.arraycopy(values, 0, coords, 0, dimension);
+			this.count = count;
+		}
+		
 		@Override
 		public void readFields(DataInput in) throws IOException {
 			super.readFields(in);
@@ -189,6 +263,41 @@ public class Kmeans {
 		}		
 	}
 	
+	/**
+	 * Creates the job for a single k-means iteration.
+	 * @param conf base configuration of the job
+	 * @param pointsFile points file in HDFS, text or binary depending on {@link BinaryPointFile#POINTS_FORMAT}
+	 * @param centersFile centers file in the local file system
+	 * @param output output folder in HDFS
+	 */
+	public static Job createJob(Configuration conf, String pointsFile, String centersFile, String output) throws IOException {
+		JobCompression.configure(conf);
+		Job job = new Job(conf, "Kmeans Clustering Algorithm");
+		job.setJarByClass(Kmeans.class);
+		if (conf.getBoolean(PointBlockCache.POINT_CACHE, false)) {
+			job.setInputFormatClass(CachedPointInputFormat.class);
+			job.setMapperClass(BinaryNearestCenterMapper.class);
+		} else if (BinaryPointFile.BINARY.equals(conf.get(BinaryPointFile.POINTS_FORMAT))) {
+			job.setInputFormatClass(BinaryPointInputFormat.class);
+			job.setMapperClass(BinaryNearestCenterMapper.class);
+		} else {
+			job.setMapperClass(NearestCenterMapper.class);
+		}
+		job.setCombinerClass(SumCoordinatesCombiner.class);
+		job.setReducerClass(RecomputeCenterReducer.class);
+		
+        job.setMapOutputKeyClass(IntWritable.class);
+        job.setMapOutputValueClass(CoordinatesSum.class);
+		job.setOutputKeyClass(NullWritable.class);
+		job.setOutputValueClass(WritablePoint.class);
+		
+		FileInputFormat.addInputPath(job, new Path(pointsFile));
+		job.getConfiguration().set(CENTERS_FILENAME, centersFile);
+		
+		FileOutputFormat.setOutputPath(job, new Path(output));
+		return job;
+	}
+	
 	public static void main(String[] args) throws Exception {
 		
 		Configuration conf = new Configuration();
@@ -199,24 +308,20 @@ public class Kmeans {
 			System.err.println("<pointsFile>: points file in HDFS");
 			System.err.println("<centerFile>: center file in the local file system");
 			System.err.println("<output>: output folder in HDFS, must be empty before running the job");
+			System.err.println("-D" + NearestCenterIndex.NEAREST_CENTER_INDEX + "=" + NearestCenterIndex.BRUTE_FORCE + "|" + NearestCenterIndex.KD_TREE + "|" + NearestCenterIndex.TRIANGLE_INEQUALITY + "|" + NearestCenterIndex.RANDOM_PROJECTION + ": nearest center lookup (default " + NearestCenterIndex.BRUTE_FORCE + ")");
+			System.err.println("-D" + NearestCenterIndex.PROJECTION_DIMENSION + "=<n> -D" + NearestCenterIndex.PROJECTION_CANDIDATES + "=<n> -D" + NearestCenterIndex.PROJECTION_SEED + "=<n>: sketch dimension (default " + NearestCenterIndex.DEFAULT_PROJECTION_DIMENSION
+					+ "), centers checked exactly (default " + NearestCenterIndex.DEFAULT_PROJECTION_CANDIDATES + ") and seed of the " + NearestCenterIndex.RANDOM_PROJECTION + " lookup");
+			System.err.println("-D" + BinaryPointFile.POINTS_FORMAT + "=" + BinaryPointFile.TEXT + "|" + BinaryPointFile.BINARY + ": format of the points file (default " + BinaryPointFile.TEXT + ")");
+			System.err.println("-D" + PointBlockCache.POINT_CACHE + "=true: keep the parsed points in memory for the next jobs of the same JVM, up to -D" + PointBlockCache.POINT_CACHE_MB + " megabytes (default " + PointBlockCache.DEFAULT_POINT_CACHE_MB + ")");
+			System.err.println("-D" + PartialSums.IN_MAPPER_COMBINING + "=true: sum the points of each map task in memory and emit one record per center");
+			System.err.println(JobCompression.usage());
 			System.exit(2);
 		}
 		
-		Job job = new Job(conf, "Kmeans Clustering Algorithm");
-		job.setJarByClass(Kmeans.class);
-		job.setMapperClass(NearestCenterMapper.class);
-		job.setCombinerClass(SumCoordinatesCombiner.class);
-		job.setReducerClass(RecomputeCenterReducer.class);
-		
-        job.setMapOutputKeyClass(IntWritable.class);
-        job.setMapOutputValueClass(CoordinatesSum.class);
-		job.setOutputKeyClass(NullWritable.class);
-		job.setOutputValueClass(WritablePoint.class);
-		
-		FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
-		job.getConfiguration().set(CENTERS_FILENAME, otherArgs[1]);
-		
-		FileOutputFormat.setOutputPath(job, new Path(otherArgs[2]));
-		System.exit(job.waitForCompletion(true) ? 0 : 1);
+		CompressionStats compression = CompressionStats.snapshot();
+		Job job = createJob(conf, otherArgs[0], otherArgs[1], otherArgs[2]);
+		boolean success = job.waitForCompletion(true);
+		JobCompression.report(job, compression);
+		System.exit(success ? 0 : 1);
 	}
 }
\ No newline at end of file
@@ -13,10 +13,13 @@ import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.GenericOptionsParser;
 
+import se.kth.emdc.examples.compress.CompressionStats;
+import se.kth.emdc.examples.compress.hadoop.JobCompression;
+
 
 public class OLAPQueryMRJob1 {
 
-		public static class OLAPJoinMapper extends Mapper<Object, Text, Text, Text> {
+		public static class OLAPJoinMapper extends Mapper<Object, Text, Text, OLAPRecordWritable> {
 			/*
 			 * format of tuples in docs : URL | Content|\n
 			 * example a tuple in docs: url_1|words words words|
@@ -25,65 +28,65 @@ public class OLAPQueryMRJob1 {
 			*/
 			Integer docs_KeyPosition = 0;
 			Integer ranks_KeyPosition = 1;
-			String Delimiter = "\\|";
 			
-			String[] keywords={ " editors ", " oscillations ", " convection " };
+			// all the keywords are searched in one pass over the content
+			KeywordMatcher keywords;
 			Integer rank=50;
 			
+			FieldScanner fields = new FieldScanner();
+			Text url = new Text();
+			OLAPRecordWritable record = new OLAPRecordWritable();
+			
 			protected void setup(Context context)
 			{
-			
+				keywords = KeywordMatcher.parse(context.getConfiguration().get(KeywordMatcher.KEYWORDS, KeywordMatcher.DEFAULT_KEYWORDS));
 			}
 			
 			protected void map(Object key, Text value, Context context) throws IOException ,InterruptedException {
-				String[] items = value.toString().split(Delimiter);
-				if(items.length == 2) // it's a docs-tuple
+				fields.reset(value.getBytes(), 0, value.getLength());
+				if(fields.getFieldCount() == 2) // it's a docs-tuple
 				{
-					boolean ContainAllKeywords=true;
-					for(String keyword: keywords)
-					{
-						if(!items[1].contains(keyword)) // check whether content contains keyword
-						{
-							ContainAllKeywords=false;
-							
-						}
-					}
-					if(ContainAllKeywords)
+					if(keywords.containsAll(fields, 1)) // check whether content contains all the keywords
 					{
-						context.write(new Text(items[docs_KeyPosition]), value);
+						url.set(fields.getBytes(), fields.getStart(docs_KeyPosition), fields.getLength(docs_KeyPosition));
+						record.setDoc();
+						context.write(url, record);
 					}
 				}
-				else if(items.length == 3) // it's a ranks-tuple
+				else if(fields.getFieldCount() == 3) // it's a ranks-tuple
 				{
-					if(Integer.parseInt(items[0]) > rank) // check whether the rank is bigger enough
+					int tupleRank = fields.parseInt(0);
+					if(tupleRank > rank) // check whether the rank is bigger enough
 					{
-						context.write(new Text(items[ranks_KeyPosition]), value);
+						url.set(fields.getBytes(), fields.getStart(ranks_KeyPosition), fields.getLength(ranks_KeyPosition));
+						record.setRank(tupleRank, fields.parseInt(2));
+						context.write(url, record);
 					}
 				}
 			};
 
 		}
 
-		public static class OLAPJoinReducer extends Reducer<Text,Text,NullWritable,Text> {
-			String Delimiter = "\\|";
+		public static class OLAPJoinReducer extends Reducer<Text,OLAPRecordWritable,NullWritable,Text> {
+			OLAPRecord rank_record = new OLAPRecord();
+			Text rank_tuple = new Text();
 			
 			protected void setup(Context context)
 			{
 			}
 			
-			public void reduce(Text key, Iterable<Text> tuples, Context context) throws IOException, InterruptedException {
+			public void reduce(Text key, Iterable<OLAPRecordWritable> tuples, Context context) throws IOException, InterruptedException {
 				boolean rank_tuple_found = false;
 				boolean doc_tuple_found = false;
 				
-				Text rank_tuple = null;
-				for(Text tuple : tuples)
+				for(OLAPRecordWritable tuple : tuples)
 				{
-					if(tuple.toString().split(Delimiter).length == 3)
+					if(tuple.getTag() == OLAPRecord.RANK)
 					{
 						rank_tuple_found = true;
-						rank_tuple = new Text(tuple);
+						rank_record.setRank(tuple.getRank(), tuple.getDuration());
 					}
-					else if(tuple.toString().split(Delimiter).length == 2)
+					else if(tuple.getTag() == OLAPRecord.DOC)
 					{
 						doc_tuple_found = true;
 					}
@@ -92,6 +95,7 @@ public class OLAPQueryMRJob1 {
 				if(rank_tuple_found && doc_tuple_found)
 				{					
 					//emit the rank tuple
+					rank_tuple.set(rank_record.toLine(key.toString()));
 					context.write(NullWritable.get(), rank_tuple);
 				}
 			}
@@ -111,19 +115,28 @@ public class OLAPQueryMRJob1 {
 				System.err.println("<docs_file>: the path to the \"docs\" file in HDFS");
 				System.err.println("<ranks_file>: the path to the \"ranks\" file in HDFS");
 				System.err.println("<outputFolderPath>: output folder in HDFS, must be empty before running the job");
+				System.err.println("-D" + KeywordMatcher.KEYWORDS + "=<keywords>: the keywords the docs must contain, separated by '|' and not trimmed\n" +
+						"			(default \"" + KeywordMatcher.DEFAULT_KEYWORDS + "\")");
+				System.err.println(JobCompression.usage());
 				System.exit(2);
 			}
 			
+			JobCompression.configure(conf);
+			CompressionStats compression = CompressionStats.snapshot();
 			Job job = new Job(conf, "OLAP Query Job1");
 			job.setJarByClass(OLAPQueryMRJob1.class);
 			job.setMapperClass(OLAPJoinMapper.class);
 			job.setReducerClass(OLAPJoinReducer.class);
+			job.setMapOutputKeyClass(Text.class);
+			job.setMapOutputValueClass(OLAPRecordWritable.class);
 			job.setOutputKeyClass(Text.class);
 			job.setOutputValueClass(Text.class);
 			
 			FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
 			FileInputFormat.addInputPath(job, new Path(otherArgs[1]));
 			FileOutputFormat.setOutputPath(job, new Path(otherArgs[2]));
-			System.exit(job.waitForCompletion(true) ? 0 : 1);
+			boolean success = job.waitForCompletion(true);
+			JobCompression.report(job, compression);
+			System.exit(success ? 0 : 1);
 		}
 }
@@ -1,12 +1,17 @@
 package se.kth.emdc.examples.olap;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
@@ -14,10 +19,16 @@ import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.GenericOptionsParser;
 
+import se.kth.emdc.examples.compress.CompressionStats;
+import se.kth.emdc.examples.compress.hadoop.JobCompression;
+import se.kth.emdc.examples.wordcount.WordCountTable;
+
 
 public class OLAPQueryMRJob2 {
 
-		public static class OLAPJoinMapper extends Mapper<Object, Text, Text, Text> {
+		public static enum BloomFilterCounter { VISITS_KEPT, VISITS_PRUNED }
+
+		public static class OLAPJoinMapper extends Mapper<Object, Text, Text, OLAPRecordWritable> {
 			/*
 			 * format of tuples from step1 : Rank | URL | Average Duration |\n
 			 * example a tuple from step1: 86|url_1|50
@@ -26,65 +37,148 @@ public class OLAPQueryMRJob2 {
 			*/
 			Integer step1_KeyPosition = 1;
 			Integer visits_KeyPosition = 1;
-			String Delimiter = "\\|";
 			
 			String date="2010";
 			
-			protected void setup(Context context)
+			FieldScanner fields = new FieldScanner();
+			byte[] dateBytes;
+			Text url = new Text();
+			OLAPRecordWritable record = new OLAPRecordWritable();
+			
+			// URLs of the step1 tuples, the visits of other URLs cannot match and are not shuffled
+			BloomFilter step1_urls;
+			
+			protected void setup(Context context) throws IOException
 			{
-
+				dateBytes = date.getBytes();
+				
+				Configuration conf = context.getConfiguration();
+				if(conf.get(BloomFilter.BLOOM_FILTER_PATH) != null)
+				{
+					Path path = new Path(conf.get(BloomFilter.BLOOM_FILTER_PATH));
+					InputStream in = path.getFileSystem(conf).open(path);
+					try {
+						step1_urls = BloomFilter.readFrom(in);
+					} finally {
+						in.close();
+					}
+				}
 			}
 			
 			protected void map(Object key, Text value, Context context) throws IOException ,InterruptedException {
-				String[] items = value.toString().split(Delimiter);
-				if(items.length == 3) // it's a step1-tuple
+				fields.reset(value.getBytes(), 0, value.getLength());
+				if(fields.getFieldCount() == 3) // it's a step1-tuple
 				{
-					context.write(new Text(items[step1_KeyPosition]), value);
+					url.set(fields.getBytes(), fields.getStart(step1_KeyPosition), fields.getLength(step1_KeyPosition));
+					record.setRank(fields.parseInt(0), fields.parseInt(2));
+					context.write(url, record);
 				}
-				else if(items.length == 9) // it's a visits-tuple
+				else if(fields.getFieldCount() == 9) // it's a visits-tuple
 				{
-					if(items[2].substring(0, 4).equals(date)) // check whether the date is specified date
+					if(fields.startsWith(2, dateBytes)) // check whether the date is specified date
 					{
-						context.write(new Text(items[visits_KeyPosition]), value);
+						if(step1_urls != null)
+						{
+							if(!step1_urls.mightContain(fields.getBytes(), fields.getStart(visits_KeyPosition), fields.getLength(visits_KeyPosition)))
+							{
+								context.getCounter(BloomFilterCounter.VISITS_PRUNED).increment(1);
+								return;
+							}
+							context.getCounter(BloomFilterCounter.VISITS_KEPT).increment(1);
+						}
+						url.set(fields.getBytes(), fields.getStart(visits_KeyPosition), fields.getLength(visits_KeyPosition));
+						record.setVisit();
+						context.write(url, record);
 					}
 				}
 			};
 
 		}
 
-		public static class OLAPJoinReducer extends Reducer<Text,Text,NullWritable,Text> {
-			String Delimiter = "\\|";
+		public static class OLAPJoinReducer extends Reducer<Text,OLAPRecordWritable,NullWritable,Text> {
+			// the values are reused by the iterator, the step1 tuples are copied
+			int[] ranks = new int[16];
+			int[] durations = new int[16];
+			OLAPRecord step1_record = new OLAPRecord();
+			Text step1_tuple = new Text();
 			
 			protected void setup(Context context)
 			{
 			}
 			
-			public void reduce(Text key, Iterable<Text> tuples, Context context) throws IOException, InterruptedException {
-				boolean step1_tuple_found = false;
+			public void reduce(Text key, Iterable<OLAPRecordWritable> tuples, Context context) throws IOException, InterruptedException {
 				boolean visits_tuple_found = false;
-				LinkedList<Text> outputTuples = new LinkedList<Text>();
-				for(Text tuple : tuples)
+				int step1_tuples = 0;
+				for(OLAPRecordWritable tuple : tuples)
 				{
-					if(tuple.toString().split(Delimiter).length == 3)
+					if(tuple.getTag() == OLAPRecord.RANK)
 					{
-						step1_tuple_found = true;
-						outputTuples.add(tuple);
+						if(step1_tuples == ranks.length)
+						{
+							ranks = Arrays.copyOf(ranks, step1_tuples * 2);
+							durations = Arrays.copyOf(durations, step1_tuples * 2);
+						}
+						ranks[step1_tuples] = tuple.getRank();
+						durations[step1_tuples] = tuple.getDuration();
+						step1_tuples++;
 					}
-					if(tuple.toString().split(Delimiter).length == 9)
+					if(tuple.getTag() == OLAPRecord.VISIT)
 						visits_tuple_found = true;
 				}
 				
-				if(step1_tuple_found && (!visits_tuple_found))
+				if(step1_tuples > 0 && (!visits_tuple_found))
 				{
-					for(Text tuple: outputTuples)
+					String url = key.toString();
+					for(int i = 0; i < step1_tuples; i++)
 					{
-						context.write(NullWritable.get(), tuple);
+						step1_record.setRank(ranks[i], durations[i]);
+						step1_tuple.set(step1_record.toLine(url));
+						context.write(NullWritable.get(), step1_tuple);
 					}
 				}
 			}
 		}
 
 		
+		/**
+		 * Builds a Bloom filter of the URLs of the step1 files and writes it
+		 * next to the output, for the mappers to prune the visits with.
+		 * @return the path of the filter
+		 */
+		static Path writeBloomFilter(Configuration conf, String[] step1Paths, Path output) throws IOException
+		{
+			WordCountTable urls = new WordCountTable(Long.MAX_VALUE);
+			for(String step1Path : step1Paths)
+			{
+				Path path = new Path(step1Path);
+				FileSystem fs = path.getFileSystem(conf);
+				for(FileStatus file : fs.listStatus(path))
+				{
+					String name = file.getPath().getName();
+					if(file.isDir() || name.startsWith("_") || name.startsWith("."))
+						continue;
+					InputStream in = fs.open(file.getPath());
+					try {
+						OLAPRecord.readRankUrls(in, Integer.MIN_VALUE, urls);
+					} finally {
+						in.close();
+					}
+				}
+			}
+			
+			BloomFilter filter = BloomFilter.create(urls,
+					Double.parseDouble(conf.get(BloomFilter.BLOOM_FILTER_FPP, String.valueOf(BloomFilter.DEFAULT_FPP))),
+					conf.getInt(BloomFilter.BLOOM_FILTER_MAX_MB, BloomFilter.DEFAULT_MAX_MB) * 1024L * 1024L);
+			Path path = new Path(conf.get(BloomFilter.BLOOM_FILTER_PATH, output + "-bloom"));
+			OutputStream out = path.getFileSystem(conf).create(path, true);
+			try {
+				filter.writeTo(out);
+			} finally {
+				out.close();
+			}
+			System.out.println(filter + " written to " + path);
+			return path;
+		}
 
 		public static void main(String[] args) throws Exception {
 
@@ -99,17 +193,30 @@ public class OLAPQueryMRJob2 {
 						"			must be a string quoted");
 				System.err.println("<visits_file>: the path to the \"visits\" file in HDFS");
 				System.err.println("<outputFolderPath>: output folder in HDFS, must be empty before running the job");
+				System.err.println("-D" + BloomFilter.BLOOM_FILTER + "=true: prune the visits whose URL is not in a Bloom filter of the step1 URLs\n" +
+						"			-D" + BloomFilter.BLOOM_FILTER_FPP + "=<false positive rate> (default " + BloomFilter.DEFAULT_FPP + "), -D" +
+						BloomFilter.BLOOM_FILTER_MAX_MB + "=<max size> (default " + BloomFilter.DEFAULT_MAX_MB + " MB)");
+				System.err.println(JobCompression.usage());
 				System.exit(2);
 			}
 			
+			JobCompression.configure(conf);
+			String[] inputPaths = otherArgs[0].split("\\s+");
+			if(conf.getBoolean(BloomFilter.BLOOM_FILTER, false))
+			{
+				Path bloomFilter = writeBloomFilter(conf, inputPaths, new Path(otherArgs[2]));
+				conf.set(BloomFilter.BLOOM_FILTER_PATH, bloomFilter.toString());
+			}
+			CompressionStats compression = CompressionStats.snapshot();
 			Job job = new Job(conf, "OLAP Query Job2");
 			job.setJarByClass(OLAPQueryMRJob2.class);
 			job.setMapperClass(OLAPJoinMapper.class);
 			job.setReducerClass(OLAPJoinReducer.class);
+			job.setMapOutputKeyClass(Text.class);
+			job.setMapOutputValueClass(OLAPRecordWritable.class);
 			job.setOutputKeyClass(Text.class);
 			job.setOutputValueClass(Text.class);
 			
-			String[] inputPaths = otherArgs[0].split("\\s+");
 			for(String path: inputPaths)
 			{
 				FileInputFormat.addInputPath(job, new Path(path));
@@ -117,7 +224,15 @@ public class OLAPQueryMRJob2 {
 			
 			FileInputFormat.addInputPath(job, new Path(otherArgs[1]));
 			FileOutputFormat.setOutputPath(job, new Path(otherArgs[2]));
-			System.exit(job.waitForCompletion(true) ? 0 : 1);
+			boolean success = job.waitForCompletion(true);
+			JobCompression.report(job, compression);
+			if(conf.getBoolean(BloomFilter.BLOOM_FILTER, false))
+			{
+				Counters counters = job.getCounters();
+				System.out.println(job.getJobName() + ": Bloom filter kept " + counters.findCounter(BloomFilterCounter.VISITS_KEPT).getValue() +
+						" visits and pruned " + counters.findCounter(BloomFilterCounter.VISITS_PRUNED).getValue());
+			}
+			System.exit(success ? 0 : 1);
 		}
 }
 
@@ -0,0 +1,17 @@
+package se.kth.emdc.examples.olap;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * {@link OLAPRecord} shuffled between the mappers and the reducers of the
+ * Hadoop OLAP jobs.
+ */
+public class OLAPRecordWritable extends OLAPRecord implements Writable {
+
+	public void readFields(DataInput in) throws IOException {
+		read(in);
+	}
+}
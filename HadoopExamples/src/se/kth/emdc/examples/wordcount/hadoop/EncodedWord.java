@@ -0,0 +1,153 @@
+package se.kth.emdc.examples.wordcount.hadoop;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import se.kth.emdc.examples.wordcount.NormalizedKey;
+import se.kth.emdc.examples.wordcount.WordDictionary;
+
+/**
+ * Word key of the dictionary encoded word count: the id of the word in the
+ * {@link WordDictionary} or, for the words that are not in the dictionary,
+ * its bytes.
+ *
+ * Serialized as a single VInt n &gt;= 0 for the id n, or as a VInt
+ * -1 - length followed by the bytes of the word. The raw comparator reads
+ * the VInts and only compares bytes, through their {@link NormalizedKey}
+ * prefix, when both words are not in the dictionary. Ids are ordered before words, so the reducers see the keys in
+ * id order and not alphabetically.
+ */
+public class EncodedWord implements WritableComparable<EncodedWord> {
+
+  private int id = -1;
+  private byte[] bytes = new byte[16];
+  private int length = 0;
+
+  public void setId(int id) {
+    this.id = id;
+    this.length = 0;
+  }
+
+  public void setWord(byte[] src, int offset, int length) {
+    if (bytes.length < length) {
+      bytes = new byte[Math.max(length, bytes.length * 2)];
+    }
+    System.arraycopy(src, offset, bytes, 0, length);
+    this.id = -1;
+    this.length = length;
+  }
+
+  /**
+   * @return the id of the word, or -1 if the word is not in the dictionary
+   */
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * Sets the text with the decoded word.
+   */
+  public void decode(WordDictionary dictionary, Text text) {
+    if (id >= 0) {
+      text.set(dictionary.getWords(), dictionary.getWordStart(id), dictionary.getWordLength(id));
+    } else {
+      text.set(bytes, 0, length);
+    }
+  }
+
+  public void write(DataOutput out) throws IOException {
+    if (id >= 0) {
+      WritableUtils.writeVInt(out, id);
+    } else {
+      WritableUtils.writeVInt(out, -1 - length);
+      out.write(bytes, 0, length);
+    }
+  }
+
+  public void readFields(DataInput in) throws IOException {
+    int n = WritableUtils.readVInt(in);
+    if (n >= 0) {
+      setId(n);
+    } else {
+      id = -1;
+      length = -1 - n;
+      if (bytes.length < length) {
+        bytes = new byte[length];
+      }
+      in.readFully(bytes, 0, length);
+    }
+  }
+
+  public int compareTo(EncodedWord o) {
+    if (id >= 0 || o.id >= 0) {
+      if (id < 0) {
+        return 1;
+      }
+      if (o.id < 0) {
+        return -1;
+      }
+      return (id < o.id ? -1 : (id == o.id ? 0 : 1));
+    }
+    return NormalizedKey.compare(bytes, 0, length, o.bytes, 0, o.length);
+  }
+
+  @Override
+  public int hashCode() {
+    if (id >= 0) {
+      return id;
+    }
+    return WritableComparator.hashBytes(bytes, length);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof EncodedWord)) {
+      return false;
+    }
+    return compareTo((EncodedWord) obj) == 0;
+  }
+
+  @Override
+  public String toString() {
+    return (id >= 0 ? "#" + id : new String(bytes, 0, length));
+  }
+
+  /** Compares the serialized keys without deserializing them. */
+  public static class Comparator extends WritableComparator {
+
+    public Comparator() {
+      super(EncodedWord.class);
+    }
+
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      try {
+        int n1 = readVInt(b1, s1);
+        int n2 = readVInt(b2, s2);
+        if (n1 >= 0 || n2 >= 0) {
+          if (n1 < 0) {
+            return 1;
+          }
+          if (n2 < 0) {
+            return -1;
+          }
+          return (n1 < n2 ? -1 : (n1 == n2 ? 0 : 1));
+        }
+        int h1 = WritableUtils.decodeVIntSize(b1[s1]);
+        int h2 = WritableUtils.decodeVIntSize(b2[s2]);
+        return NormalizedKey.compare(b1, s1 + h1, -1 - n1, b2, s2 + h2, -1 - n2);
+      } catch (IOException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+  }
+
+  static {
+    WritableComparator.define(EncodedWord.class, new Comparator());
+  }
+}
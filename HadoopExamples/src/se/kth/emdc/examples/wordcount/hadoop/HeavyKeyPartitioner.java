@@ -0,0 +1,44 @@
+package se.kth.emdc.examples.wordcount.hadoop;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+import se.kth.emdc.examples.wordcount.HeavyKeys;
+
+/**
+ * Hash partitioner of the words that spreads the occurrences of the
+ * {@link HeavyKeys} over several reducers, in turn, starting from the
+ * reducer the hash would choose. The partial counts of the heavy keys are
+ * merged after the job by {@link WordCount#mergeHeavyKeys}.
+ */
+public class HeavyKeyPartitioner extends Partitioner<Text, IntWritable> implements Configurable {
+
+  private Configuration conf;
+  private HeavyKeys heavyKeys;
+
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    try {
+      heavyKeys = WordCount.readHeavyKeys(conf);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Could not read the heavy keys " + conf.get(HeavyKeys.HEAVY_KEYS_PATH), e);
+    }
+  }
+
+  public Configuration getConf() {
+    return conf;
+  }
+
+  public int getPartition(Text key, IntWritable value, int numPartitions) {
+    int partition = (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+    if (heavyKeys.isHeavy(key.getBytes(), 0, key.getLength())) {
+      partition = (partition + heavyKeys.nextSplit()) % numPartitions;
+    }
+    return partition;
+  }
+}
@@ -0,0 +1,151 @@
+package se.kth.emdc.examples.wordcount.hadoop;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import se.kth.emdc.examples.compress.BlockCompressedInputStream;
+import se.kth.emdc.examples.compress.CompressionStats;
+import se.kth.emdc.examples.compress.hadoop.JobCompression;
+import se.kth.emdc.examples.wordcount.CountIndexFile;
+import se.kth.emdc.examples.wordcount.CountIndexMerger;
+import se.kth.emdc.examples.wordcount.CountIndexReader;
+import se.kth.emdc.examples.wordcount.CountIndexWriter;
+import se.kth.emdc.examples.wordcount.HeavyKeys;
+import se.kth.emdc.examples.wordcount.WordDictionary;
+
+/**
+ * Word count over a growing set of documents. Only the new documents are
+ * counted, by the {@link WordCount} job, and their counts are merged into
+ * the index of the previous runs kept in the index directory.
+ *
+ * @see CountIndexFile
+ */
+public class IncrementalWordCount {
+
+  private static final String DELTA_DIRECTORY = "_delta";
+
+  /**
+   * @return the latest complete generation of the index in the directory, -1 if there is none
+   */
+  public static int findGeneration(FileSystem fs, Path indexPath) throws IOException {
+    int generation = -1;
+    if (fs.exists(indexPath)) {
+      for (FileStatus status : fs.listStatus(indexPath)) {
+        int candidate = CountIndexFile.parseGeneration(status.getPath().getName());
+        if (candidate > generation && isComplete(fs, status)) {
+          generation = candidate;
+        }
+      }
+    }
+    return generation;
+  }
+
+  private static boolean isComplete(FileSystem fs, FileStatus status) throws IOException {
+    InputStream in = fs.open(status.getPath());
+    try {
+      return CountIndexFile.isComplete(in, status.getLen());
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Merges the output of a word count job into the index directory, writing
+   * its next generation to a temporary file, renaming it and deleting the
+   * previous one.
+   */
+  public static void merge(Configuration conf, Path deltaPath, Path indexPath) throws IOException {
+    FileSystem fs = indexPath.getFileSystem(conf);
+    CountIndexMerger merger = new CountIndexMerger();
+    FileSystem deltaFs = deltaPath.getFileSystem(conf);
+    for (FileStatus status : deltaFs.listStatus(deltaPath)) {
+      if (status.getPath().getName().startsWith("part-")) {
+        InputStream in = BlockCompressedInputStream.open(deltaFs.open(status.getPath()));
+        try {
+          merger.readDelta(in);
+        } finally {
+          in.close();
+        }
+      }
+    }
+
+    int generation = findGeneration(fs, indexPath);
+    Path previousPath = new Path(indexPath, CountIndexFile.getGenerationName(generation));
+    Path nextPath = new Path(indexPath, CountIndexFile.getGenerationName(generation + 1));
+    Path temporaryPath = new Path(indexPath, CountIndexFile.getTemporaryName(generation + 1));
+    CountIndexReader previous = generation < 0 ? null : new CountIndexReader(fs.open(previousPath));
+    OutputStream out = fs.create(temporaryPath, true);
+    CountIndexWriter next = null;
+    boolean merged = false;
+    try {
+      next = new CountIndexWriter(out,
+          conf.getInt(CountIndexMerger.WORDS_PER_BLOCK, CountIndexFile.DEFAULT_WORDS_PER_BLOCK));
+      merger.merge(previous, next);
+      merged = true;
+    } finally {
+      if (previous != null) {
+        previous.close();
+      }
+      if (!merged) {
+        out.close();
+        fs.delete(temporaryPath, false);
+      }
+    }
+    // a truncated file left by an older failed merge may hold the name
+    if (fs.exists(nextPath)) {
+      fs.delete(nextPath, false);
+    }
+    if (!fs.rename(temporaryPath, nextPath)) {
+      throw new IOException("Could not rename " + temporaryPath + " to " + nextPath);
+    }
+    if (generation >= 0) {
+      fs.delete(previousPath, false);
+    }
+
+    System.out.println("Merged " + merger.getDeltaWords() + " words into " + nextPath + ": " + merger.getNewWords()
+        + " new words, " + next.getWords() + " words and " + next.getTotalCount() + " occurrences in total");
+  }
+
+  public static void main(String[] args) throws Exception {
+    Configuration conf = new Configuration();
+    String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+    if (otherArgs.length != 2) {
+      System.err.println("Usage: incrementalwordcount <new documents> <index directory>");
+      System.err.println("-D" + CountIndexMerger.WORDS_PER_BLOCK + "=<n>: words of each block of the index (default "
+          + CountIndexFile.DEFAULT_WORDS_PER_BLOCK + ")");
+      System.err.println("The options of wordcount apply to the count of the new documents");
+      System.exit(2);
+    }
+    Path indexPath = new Path(otherArgs[1]);
+    Path deltaPath = new Path(indexPath, DELTA_DIRECTORY);
+    FileSystem fs = indexPath.getFileSystem(conf);
+    if (fs.exists(deltaPath)) {
+      fs.delete(deltaPath, true);
+    }
+    if (conf.get(WordDictionary.DICTIONARY_PATH) == null) {
+      conf.set(WordDictionary.DICTIONARY_PATH, new Path(indexPath, "dictionary").toString());
+    }
+    if (conf.get(HeavyKeys.HEAVY_KEYS_PATH) == null) {
+      conf.set(HeavyKeys.HEAVY_KEYS_PATH, new Path(indexPath, "heavy-keys").toString());
+    }
+
+    CompressionStats compression = CompressionStats.snapshot();
+    Job job = WordCount.createJob(conf, new Path(otherArgs[0]), deltaPath);
+    job.setJobName("incremental word count");
+    if (!job.waitForCompletion(true)) {
+      System.exit(1);
+    }
+    JobCompression.report(job, compression);
+    WordCount.mergeHeavyKeys(conf, deltaPath);
+    merge(conf, deltaPath, indexPath);
+    fs.delete(deltaPath, true);
+  }
+}
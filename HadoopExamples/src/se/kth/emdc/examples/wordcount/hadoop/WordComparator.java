@@ -0,0 +1,32 @@
+package se.kth.emdc.examples.wordcount.hadoop;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import se.kth.emdc.examples.wordcount.NormalizedKey;
+
+/**
+ * Sort comparator for the Text words of the word count. Compares the
+ * serialized keys without deserializing them, through the
+ * {@link NormalizedKey} prefix of each word, so most comparisons are a
+ * single long compare. Gives the same order as Text's own comparator.
+ */
+public class WordComparator extends WritableComparator {
+
+  public WordComparator() {
+    super(Text.class);
+  }
+
+  public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+    try {
+      int h1 = WritableUtils.decodeVIntSize(b1[s1]);
+      int h2 = WritableUtils.decodeVIntSize(b2[s2]);
+      return NormalizedKey.compare(b1, s1 + h1, readVInt(b1, s1), b2, s2 + h2, readVInt(b2, s2));
+    } catch (IOException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+}
@@ -1,9 +1,12 @@
 package se.kth.emdc.examples.wordcount.hadoop;
 
 import java.io.IOException;
-import java.util.StringTokenizer;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
@@ -14,22 +17,140 @@ import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.GenericOptionsParser;
 
+import se.kth.emdc.examples.compress.CompressionStats;
+import se.kth.emdc.examples.compress.hadoop.JobCompression;
+import se.kth.emdc.examples.wordcount.ByteTokenizer;
+import se.kth.emdc.examples.wordcount.HeavyKeys;
+import se.kth.emdc.examples.wordcount.WordCountTable;
+import se.kth.emdc.examples.wordcount.WordDictionary;
+
 public class WordCount {
 
+  // side files of the partial counts of the heavy keys, and their merged output
+  private static final String HEAVY_KEYS_FILE = "heavy";
+
+  /**
+   * Splits the bytes of the line into lower case words with the same
+   * tokenizer as the Stratosphere WordCount, without decoding the line.
+   * With -DIN_MAPPER_AGGREGATION=true the words are counted in memory and
+   * emitted once per word when the table is full and at the end of the task.
+   */
   public static class TokenizerMapper 
        extends Mapper<Object, Text, Text, IntWritable>{
     
     private final static IntWritable one = new IntWritable(1);
     private Text word = new Text();
+    private ByteTokenizer tokenizer = new ByteTokenizer();
+    
+    // only set when the words are aggregated in memory
+    private WordCountTable table = null;
+    private IntWritable count = new IntWritable();
+    
+    protected void setup(Context context) {
+      Configuration conf = context.getConfiguration();
+      if (conf.getBoolean(WordCountTable.IN_MAPPER_AGGREGATION, false)) {
+        table = new WordCountTable(conf.getInt(WordCountTable.AGGREGATION_BUFFER_MB,
+            WordCountTable.DEFAULT_AGGREGATION_BUFFER_MB) * 1024L * 1024L);
+      }
+    }
       
     public void map(Object key, Text value, Context context
                     ) throws IOException, InterruptedException {
-      StringTokenizer itr = new StringTokenizer(value.toString());
-      while (itr.hasMoreTokens()) {
-        word.set(itr.nextToken());
-        context.write(word, one);
+      tokenizer.reset(value.getBytes(), 0, value.getLength());
+      while (tokenizer.next()) {
+        if (table != null) {
+          table.add(tokenizer.getBytes(), tokenizer.getStart(), tokenizer.getLength(), 1);
+        } else {
+          word.set(tokenizer.getBytes(), tokenizer.getStart(), tokenizer.getLength());
+          context.write(word, one);
+        }
+      }
+      if (table != null && table.isFull()) {
+        flush(context);
       }
     }
+    
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      if (table != null) {
+        flush(context);
+      }
+    }
+    
+    private void flush(Context context) throws IOException, InterruptedException {
+      for (int i = 0; i < table.size(); i++) {
+        word.set(table.getWords(), table.getWordStart(i), table.getWordLength(i));
+        count.set(table.getCount(i));
+        context.write(word, count);
+      }
+      table.clear();
+    }
+  }
+  
+  /**
+   * Same as {@link TokenizerMapper}, but the words found in the
+   * {@link WordDictionary} are emitted as their int id, so the shuffle
+   * sorts and transfers ids instead of strings.
+   */
+  public static class EncodingTokenizerMapper 
+       extends Mapper<Object, Text, EncodedWord, IntWritable>{
+    
+    private final static IntWritable one = new IntWritable(1);
+    private EncodedWord word = new EncodedWord();
+    private ByteTokenizer tokenizer = new ByteTokenizer();
+    private WordDictionary dictionary;
+    
+    // only set when the words are aggregated in memory
+    private WordCountTable table = null;
+    private IntWritable count = new IntWritable();
+    
+    protected void setup(Context context) throws IOException {
+      Configuration conf = context.getConfiguration();
+      dictionary = readDictionary(conf);
+      if (conf.getBoolean(WordCountTable.IN_MAPPER_AGGREGATION, false)) {
+        table = new WordCountTable(conf.getInt(WordCountTable.AGGREGATION_BUFFER_MB,
+            WordCountTable.DEFAULT_AGGREGATION_BUFFER_MB) * 1024L * 1024L);
+      }
+    }
+      
+    public void map(Object key, Text value, Context context
+                    ) throws IOException, InterruptedException {
+      tokenizer.reset(value.getBytes(), 0, value.getLength());
+      while (tokenizer.next()) {
+        if (table != null) {
+          table.add(tokenizer.getBytes(), tokenizer.getStart(), tokenizer.getLength(), 1);
+        } else {
+          encode(tokenizer.getBytes(), tokenizer.getStart(), tokenizer.getLength());
+          context.write(word, one);
+        }
+      }
+      if (table != null && table.isFull()) {
+        flush(context);
+      }
+    }
+    
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      if (table != null) {
+        flush(context);
+      }
+    }
+    
+    private void encode(byte[] bytes, int start, int length) {
+      int id = dictionary.getId(bytes, start, length);
+      if (id >= 0) {
+        word.setId(id);
+      } else {
+        word.setWord(bytes, start, length);
+      }
+    }
+    
+    private void flush(Context context) throws IOException, InterruptedException {
+      for (int i = 0; i < table.size(); i++) {
+        encode(table.getWords(), table.getWordStart(i), table.getWordLength(i));
+        count.set(table.getCount(i));
+        context.write(word, count);
+      }
+      table.clear();
+    }
   }
   
   public static class IntSumReducer 
@@ -48,22 +169,263 @@ public class WordCount {
     }
   }
 
+  /**
+   * Sums the counts of a dictionary encoded word and writes the decoded
+   * word, so the output is the same as with {@link IntSumReducer}.
+   */
+  public static class DecodingSumReducer 
+       extends Reducer<EncodedWord,IntWritable,Text,IntWritable> {
+    private Text word = new Text();
+    private IntWritable result = new IntWritable();
+    private WordDictionary dictionary;
+
+    protected void setup(Context context) throws IOException {
+      dictionary = readDictionary(context.getConfiguration());
+    }
+
+    public void reduce(EncodedWord key, Iterable<IntWritable> values, 
+                       Context context
+                       ) throws IOException, InterruptedException {
+      int sum = 0;
+      for (IntWritable val : values) {
+        sum += val.get();
+      }
+      key.decode(dictionary, word);
+      result.set(sum);
+      context.write(word, result);
+    }
+  }
+
+  /**
+   * Same as {@link IntSumReducer}, but the partial counts of the
+   * {@link HeavyKeys}, spread over several reducers by the
+   * {@link HeavyKeyPartitioner}, are written to a heavy-r-* side file of
+   * the output instead, and merged by {@link WordCount#mergeHeavyKeys}.
+   */
+  public static class HeavyKeySumReducer 
+       extends Reducer<Text,IntWritable,Text,IntWritable> {
+    private IntWritable result = new IntWritable();
+    private HeavyKeys heavyKeys;
+    private OutputStream heavyOut = null;
+
+    protected void setup(Context context) throws IOException {
+      heavyKeys = readHeavyKeys(context.getConfiguration());
+    }
+
+    public void reduce(Text key, Iterable<IntWritable> values, 
+                       Context context
+                       ) throws IOException, InterruptedException {
+      int sum = 0;
+      for (IntWritable val : values) {
+        sum += val.get();
+      }
+      if (heavyKeys.isHeavy(key.getBytes(), 0, key.getLength())) {
+        if (heavyOut == null) {
+          Path path = FileOutputFormat.getPathForWorkFile(context, HEAVY_KEYS_FILE, "");
+          heavyOut = path.getFileSystem(context.getConfiguration()).create(path, false);
+        }
+        heavyOut.write(key.getBytes(), 0, key.getLength());
+        heavyOut.write(("\t" + sum + "\n").getBytes());
+      } else {
+        result.set(sum);
+        context.write(key, result);
+      }
+    }
+
+    protected void cleanup(Context context) throws IOException {
+      if (heavyOut != null) {
+        heavyOut.close();
+      }
+    }
+  }
+
+  private static WordDictionary readDictionary(Configuration conf) throws IOException {
+    Path path = new Path(conf.get(WordDictionary.DICTIONARY_PATH));
+    InputStream in = path.getFileSystem(conf).open(path);
+    try {
+      return WordDictionary.read(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  static HeavyKeys readHeavyKeys(Configuration conf) throws IOException {
+    Path path = new Path(conf.get(HeavyKeys.HEAVY_KEYS_PATH));
+    InputStream in = path.getFileSystem(conf).open(path);
+    try {
+      return new HeavyKeys(WordDictionary.read(in), conf.getInt(HeavyKeys.HEAVY_KEY_SPLITS, HeavyKeys.DEFAULT_HEAVY_KEY_SPLITS));
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Counts the words of the first DICTIONARY_SAMPLE_MB megabytes of the
+   * input files.
+   */
+  private static WordDictionary.Builder sample(Configuration conf, Path input) throws IOException {
+    WordDictionary.Builder builder = new WordDictionary.Builder(conf.getInt(WordDictionary.DICTIONARY_SAMPLE_MB,
+        WordDictionary.DEFAULT_DICTIONARY_SAMPLE_MB) * 1024L * 1024L);
+    FileSystem fs = input.getFileSystem(conf);
+    FileStatus[] files = fs.listStatus(input);
+    for (int i = 0; files != null && i < files.length; i++) {
+      if (files[i].isDir() || files[i].getPath().getName().startsWith("_")) {
+        continue;
+      }
+      InputStream in = fs.open(files[i].getPath());
+      try {
+        if (!builder.sample(in)) {
+          break;
+        }
+      } finally {
+        in.close();
+      }
+    }
+    return builder;
+  }
+
+  private static void write(Configuration conf, WordDictionary words, Path path) throws IOException {
+    OutputStream out = path.getFileSystem(conf).create(path);
+    try {
+      words.write(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Builds the dictionary from the first DICTIONARY_SAMPLE_MB megabytes of
+   * the input files.
+   */
+  private static void buildDictionary(Configuration conf, Path input, Path dictionaryPath) throws IOException {
+    WordDictionary dictionary = sample(conf, input).build(conf.getInt(WordDictionary.DICTIONARY_SIZE,
+        WordDictionary.DEFAULT_DICTIONARY_SIZE));
+    write(conf, dictionary, dictionaryPath);
+    System.out.println("Dictionary of " + dictionary.size() + " words written to " + dictionaryPath);
+  }
+
+  /**
+   * Finds the heavy keys in the first DICTIONARY_SAMPLE_MB megabytes of the
+   * input files.
+   */
+  private static void buildHeavyKeys(Configuration conf, Path input, Path heavyKeysPath, int reducers) throws IOException {
+    String share = conf.get(HeavyKeys.HEAVY_KEY_SHARE);
+    WordDictionary heavyKeys = sample(conf, input).buildFrequent(share == null ? HeavyKeys.getDefaultShare(reducers)
+        : Double.parseDouble(share));
+    write(conf, heavyKeys, heavyKeysPath);
+    System.out.println(heavyKeys.size() + " heavy keys written to " + heavyKeysPath);
+  }
+
+  /**
+   * Merges the partial counts of the heavy keys written by the
+   * {@link HeavyKeySumReducer}s into a single part-r-heavy file of the
+   * output. Does nothing if the job did not spread heavy keys.
+   */
+  public static void mergeHeavyKeys(Configuration conf, Path output) throws IOException {
+    FileSystem fs = output.getFileSystem(conf);
+    FileStatus[] files = fs.listStatus(output);
+    WordCountTable counts = new WordCountTable(Long.MAX_VALUE);
+    boolean found = false;
+    for (int i = 0; files != null && i < files.length; i++) {
+      if (files[i].getPath().getName().startsWith(HEAVY_KEYS_FILE + "-")) {
+        InputStream in = fs.open(files[i].getPath());
+        try {
+          counts.readCounts(in);
+        } finally {
+          in.close();
+        }
+        found = true;
+      }
+    }
+    if (!found) {
+      return;
+    }
+
+    OutputStream out = fs.create(new Path(output, "part-r-" + HEAVY_KEYS_FILE));
+    try {
+      for (int i = 0; i < counts.size(); i++) {
+        out.write(counts.getWords(), counts.getWordStart(i), counts.getWordLength(i));
+        out.write(("\t" + counts.getCount(i) + "\n").getBytes());
+      }
+    } finally {
+      out.close();
+    }
+    for (int i = 0; i < files.length; i++) {
+      if (files[i].getPath().getName().startsWith(HEAVY_KEYS_FILE + "-")) {
+        fs.delete(files[i].getPath(), false);
+      }
+    }
+  }
+
+  /**
+   * Configures the word count job of an input path, building the dictionary
+   * first if the words are encoded and it does not exist yet, and the heavy
+   * keys if they are spread and were not found yet.
+   */
+  public static Job createJob(Configuration conf, Path input, Path output) throws IOException {
+    JobCompression.configure(conf);
+    boolean encode = conf.getBoolean(WordDictionary.ENCODE_WORDS, false);
+    if (encode) {
+      Path dictionaryPath = new Path(conf.get(WordDictionary.DICTIONARY_PATH, output + "-dictionary"));
+      conf.set(WordDictionary.DICTIONARY_PATH, dictionaryPath.toString());
+      if (!dictionaryPath.getFileSystem(conf).exists(dictionaryPath)) {
+        buildDictionary(conf, input, dictionaryPath);
+      }
+    }
+    Job job = new Job(conf, "word count");
+    job.setJarByClass(WordCount.class);
+    if (encode) {
+      job.setMapperClass(EncodingTokenizerMapper.class);
+      job.setReducerClass(DecodingSumReducer.class);
+      job.setMapOutputKeyClass(EncodedWord.class);
+      job.setMapOutputValueClass(IntWritable.class);
+    } else {
+      job.setMapperClass(TokenizerMapper.class);
+      job.setSortComparatorClass(WordComparator.class);
+      //job.setCombinerClass(IntSumReducer.class);
+      job.setReducerClass(IntSumReducer.class);
+      if (conf.getBoolean(HeavyKeys.SKEW_AWARE, false)) {
+        Path heavyKeysPath = new Path(conf.get(HeavyKeys.HEAVY_KEYS_PATH, output + "-heavy-keys"));
+        job.getConfiguration().set(HeavyKeys.HEAVY_KEYS_PATH, heavyKeysPath.toString());
+        job.getConfiguration().setInt(HeavyKeys.HEAVY_KEY_SPLITS, Math.min(HeavyKeys.MAX_SPLITS,
+            conf.getInt(HeavyKeys.HEAVY_KEY_SPLITS, job.getNumReduceTasks())));
+        if (!heavyKeysPath.getFileSystem(conf).exists(heavyKeysPath)) {
+          buildHeavyKeys(conf, input, heavyKeysPath, job.getNumReduceTasks());
+        }
+        job.setPartitionerClass(HeavyKeyPartitioner.class);
+        job.setReducerClass(HeavyKeySumReducer.class);
+      }
+    }
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(IntWritable.class);
+    FileInputFormat.addInputPath(job, input);
+    FileOutputFormat.setOutputPath(job, output);
+    return job;
+  }
+
   public static void main(String[] args) throws Exception {
     Configuration conf = new Configuration();
     String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
     if (otherArgs.length != 2) {
       System.err.println("Usage: wordcount <in> <out>");
+      System.err.println("-D" + WordCountTable.IN_MAPPER_AGGREGATION + "=true: count the words of each map task in memory, up to -D"
+          + WordCountTable.AGGREGATION_BUFFER_MB + " megabytes (default " + WordCountTable.DEFAULT_AGGREGATION_BUFFER_MB + ")");
+      System.err.println("-D" + WordDictionary.ENCODE_WORDS + "=true: shuffle the -D" + WordDictionary.DICTIONARY_SIZE + " (default "
+          + WordDictionary.DEFAULT_DICTIONARY_SIZE + ") most frequent words of the first -D" + WordDictionary.DICTIONARY_SAMPLE_MB + " (default "
+          + WordDictionary.DEFAULT_DICTIONARY_SAMPLE_MB + ") megabytes of input as int ids");
+      System.err.println("-D" + WordDictionary.DICTIONARY_PATH + "=<path>: dictionary to use, built if it does not exist (default <out>-dictionary)");
+      System.err.println("-D" + HeavyKeys.SKEW_AWARE + "=true: spread the words making up more than -D" + HeavyKeys.HEAVY_KEY_SHARE
+          + " (default 0.5 / reducers) of the sampled words over -D" + HeavyKeys.HEAVY_KEY_SPLITS + " (default all) reducers");
+      System.err.println("-D" + HeavyKeys.HEAVY_KEYS_PATH + "=<path>: heavy keys to use, found if it does not exist (default <out>-heavy-keys)");
+      System.err.println(JobCompression.usage());
       System.exit(2);
     }
-    Job job = new Job(conf, "word count");
-    job.setJarByClass(WordCount.class);
-    job.setMapperClass(TokenizerMapper.class);
-    //job.setCombinerClass(IntSumReducer.class);
-    job.setReducerClass(IntSumReducer.class);
-    job.setOutputKeyClass(Text.class);
-    job.setOutputValueClass(IntWritable.class);
-    FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
-    FileOutputFormat.setOutputPath(job, new Path(otherArgs[1]));
-    System.exit(job.waitForCompletion(true) ? 0 : 1);
+    CompressionStats compression = CompressionStats.snapshot();
+    Job job = createJob(conf, new Path(otherArgs[0]), new Path(otherArgs[1]));
+    if (!job.waitForCompletion(true)) {
+      System.exit(1);
+    }
+    JobCompression.report(job, compression);
+    mergeHeavyKeys(conf, new Path(otherArgs[1]));
   }
 }
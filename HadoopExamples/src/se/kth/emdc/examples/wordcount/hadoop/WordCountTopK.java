@@ -0,0 +1,164 @@
+package se.kth.emdc.examples.wordcount.hadoop;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import se.kth.emdc.examples.compress.CompressionStats;
+import se.kth.emdc.examples.compress.hadoop.JobCompression;
+import se.kth.emdc.examples.wordcount.ByteTokenizer;
+import se.kth.emdc.examples.wordcount.SpaceSaving;
+import se.kth.emdc.examples.wordcount.WordCountTable;
+
+/**
+ * Word count that only writes the K most frequent words. Each map task
+ * summarizes its words in a {@link SpaceSaving} sketch and emits the sketch
+ * once, a single reducer merges the sketches and writes the top K words as
+ * "word count error": the word occurs between count - error and count times.
+ */
+public class WordCountTopK {
+
+  /**
+   * Serialized form of a sketch between the mappers and the reducer.
+   */
+  public static class SketchWritable implements Writable {
+
+    private SpaceSaving sketch;
+
+    public SketchWritable() {
+      this.sketch = new SpaceSaving(1);
+    }
+
+    public SketchWritable(SpaceSaving sketch) {
+      this.sketch = sketch;
+    }
+
+    public SpaceSaving get() {
+      return sketch;
+    }
+
+    public void write(DataOutput out) throws IOException {
+      sketch.write(out);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+      sketch.read(in);
+    }
+  }
+
+  /**
+   * Counts the words of the task in a {@link WordCountTable} and adds the
+   * counts to the sketch when the table is full, so the sketch is updated
+   * once per distinct word instead of once per token.
+   */
+  public static class SketchMapper
+       extends Mapper<Object, Text, NullWritable, SketchWritable> {
+
+    private ByteTokenizer tokenizer = new ByteTokenizer();
+    private WordCountTable table;
+    private SpaceSaving sketch;
+
+    protected void setup(Context context) {
+      Configuration conf = context.getConfiguration();
+      table = new WordCountTable(conf.getInt(WordCountTable.AGGREGATION_BUFFER_MB,
+          WordCountTable.DEFAULT_AGGREGATION_BUFFER_MB) * 1024L * 1024L);
+      sketch = new SpaceSaving(getCapacity(conf));
+    }
+
+    public void map(Object key, Text value, Context context
+                    ) throws IOException, InterruptedException {
+      tokenizer.reset(value.getBytes(), 0, value.getLength());
+      while (tokenizer.next()) {
+        table.add(tokenizer.getBytes(), tokenizer.getStart(), tokenizer.getLength(), 1);
+      }
+      if (table.isFull()) {
+        flush();
+      }
+    }
+
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      flush();
+      context.write(NullWritable.get(), new SketchWritable(sketch));
+    }
+
+    private void flush() {
+      for (int i = 0; i < table.size(); i++) {
+        sketch.add(new String(table.getWords(), table.getWordStart(i), table.getWordLength(i)), table.getCount(i));
+      }
+      table.clear();
+    }
+  }
+
+  /**
+   * Merges the sketches of all the map tasks and writes the top K words,
+   * most frequent first.
+   */
+  public static class MergeReducer
+       extends Reducer<NullWritable, SketchWritable, Text, Text> {
+
+    private Text word = new Text();
+    private Text bounds = new Text();
+
+    public void reduce(NullWritable key, Iterable<SketchWritable> values,
+                       Context context
+                       ) throws IOException, InterruptedException {
+      Configuration conf = context.getConfiguration();
+      SpaceSaving merged = new SpaceSaving(getCapacity(conf));
+      for (SketchWritable val : values) {
+        merged.merge(val.get());
+      }
+      for (SpaceSaving.Counter counter : merged.getTop(conf.getInt(SpaceSaving.TOP_K, SpaceSaving.DEFAULT_TOP_K))) {
+        word.set(counter.getWord());
+        bounds.set(counter.getCount() + " " + counter.getError());
+        context.write(word, bounds);
+      }
+    }
+  }
+
+  private static int getCapacity(Configuration conf) {
+    int k = conf.getInt(SpaceSaving.TOP_K, SpaceSaving.DEFAULT_TOP_K);
+    return conf.getInt(SpaceSaving.SKETCH_CAPACITY, k * SpaceSaving.DEFAULT_CAPACITY_FACTOR);
+  }
+
+  public static void main(String[] args) throws Exception {
+    Configuration conf = new Configuration();
+    String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+    if (otherArgs.length != 2) {
+      System.err.println("Usage: wordcounttopk <in> <out>");
+      System.err.println("-D" + SpaceSaving.TOP_K + "=<k>: number of words written (default " + SpaceSaving.DEFAULT_TOP_K + ")");
+      System.err.println("-D" + SpaceSaving.SKETCH_CAPACITY + "=<n>: counters per sketch (default " + SpaceSaving.DEFAULT_CAPACITY_FACTOR + " * k)");
+      System.err.println("-D" + WordCountTable.AGGREGATION_BUFFER_MB + "=<mb>: memory of the in-mapper count table (default "
+          + WordCountTable.DEFAULT_AGGREGATION_BUFFER_MB + ")");
+      System.err.println(JobCompression.usage());
+      System.exit(2);
+    }
+    JobCompression.configure(conf);
+    CompressionStats compression = CompressionStats.snapshot();
+    Job job = new Job(conf, "word count top k");
+    job.setJarByClass(WordCountTopK.class);
+    job.setMapperClass(SketchMapper.class);
+    job.setReducerClass(MergeReducer.class);
+    job.setNumReduceTasks(1);
+    job.setMapOutputKeyClass(NullWritable.class);
+    job.setMapOutputValueClass(SketchWritable.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(Text.class);
+    FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
+    FileOutputFormat.setOutputPath(job, new Path(otherArgs[1]));
+    boolean success = job.waitForCompletion(true);
+    JobCompression.report(job, compression);
+    System.exit(success ? 0 : 1);
+  }
+}
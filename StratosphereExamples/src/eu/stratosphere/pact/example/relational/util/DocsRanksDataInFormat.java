@@ -1,56 +1,366 @@
 package eu.stratosphere.pact.example.relational.util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import se.kth.emdc.examples.olap.KeywordMatcher;
+import eu.stratosphere.nephele.configuration.Configuration;
 import eu.stratosphere.pact.common.io.TextInputFormat;
 import eu.stratosphere.pact.common.type.KeyValuePair;
 import eu.stratosphere.pact.common.type.base.PactString;
 
+/**
+ * Reads the docs and ranks tuples, keyed by their URL. The tuples can be
+ * filtered and projected by the format, on the bytes of the line, so the
+ * tuples that are dropped never become records:
+ * <ul>
+ * <li>{@link #RANK_THRESHOLD}: keeps the ranks tuples whose rank is above it</li>
+ * <li>{@link KeywordMatcher#KEYWORDS}: keeps the docs tuples whose content
+ * contains all the keywords</li>
+ * <li>{@link #COLUMN_FILTER}: keeps the tuples satisfying every predicate
+ * on their columns, see {@link ColumnPredicate}</li>
+ * <li>{@link #PROJECTION}: the columns of the emitted tuples</li>
+ * </ul>
+ * Without parameters every tuple is emitted, the docs tuples without
+ * columns and the ranks tuples with all of them.
+ */
 public class DocsRanksDataInFormat extends TextInputFormat<PactString, Tuple> {
 
-	private final int maxColumns = 20;
+	/** Parameter with the rank the ranks tuples must be above. */
+	public static final String RANK_THRESHOLD = "RANK_THRESHOLD";
+
+	/**
+	 * Parameter with predicates on the columns, separated by ';', of the
+	 * form &lt;columns&gt;:&lt;column&gt;&lt;op&gt;&lt;value&gt;, e.g. 3:2&lt;=60
+	 * for the ranks with an average duration of at most 60.
+	 */
+	public static final String COLUMN_FILTER = "COLUMN_FILTER";
+
+	/**
+	 * Parameter with the emitted columns of each table, separated by ';',
+	 * of the form &lt;columns&gt;:&lt;column&gt;,&lt;column&gt;..., e.g. 3:0,2
+	 * for the rank and the average duration of the ranks tuples.
+	 */
+	public static final String PROJECTION = "PROJECTION";
+
+	private static final int DOCS_COLUMNS = 2;
+	private static final int RANKS_COLUMNS = 3;
+
 	private final int delimiter = '|';
 	private Tuple emptyTuple = new Tuple();
 
-	@Override
-	public boolean readLine(KeyValuePair<PactString, Tuple> pair, byte[] line) {
-		int readPos = 0;
+	private ColumnPredicate[] predicates = new ColumnPredicate[0];
+	private KeywordMatcher keywords = null;
+	// the projected columns of docs and ranks tuples, null for all of them
+	private int[] docsProjection = new int[0];
+	private int[] ranksProjection = null;
+
+	// the ends of the columns of the current line, reused for every line
+	private int[] ends = new int[16];
+
+	/**
+	 * A comparison of a column of the tuples with a given number of
+	 * columns. The operators are =, !=, &lt;, &lt;=, &gt;, &gt;=, ^ (starts
+	 * with) and ~ (contains). The order is numeric if the value is an
+	 * integer, and on the bytes otherwise. The tuples of other tables are
+	 * not filtered.
+	 */
+	public static class ColumnPredicate {
+
+		private static final String[] OPERATORS = { "!=", "<=", ">=", "=", "<", ">", "^", "~" };
 
-		// allocate the offsets array
-		short[] offsets = new short[maxColumns];
+		private static final int NOT_A_NUMBER = 2;
 
-		int col = 1; // the column we are in
-		int countInWrapBuffer = 0; // the number of characters in the wrapping buffer
+		private final int columns;
+		private final int column;
+		private final String operator;
+		private final byte[] value;
+		private final boolean numeric;
+		private final long number;
 
-		int startPos = readPos;
+		public ColumnPredicate(int columns, int column, String operator, String value) {
+			if (!Arrays.asList(OPERATORS).contains(operator)) {
+				throw new IllegalArgumentException("Unknown operator " + operator);
+			}
+			if (column < 0 || column >= columns) {
+				throw new IllegalArgumentException("No column " + column + " in tuples of " + columns + " columns");
+			}
+			this.columns = columns;
+			this.column = column;
+			this.operator = operator;
+			this.value = value.getBytes();
+			long number = 0;
+			boolean numeric = !operator.equals("^") && !operator.equals("~");
+			try {
+				number = Long.parseLong(value);
+			} catch (NumberFormatException e) {
+				numeric = false;
+			}
+			this.numeric = numeric;
+			this.number = number;
+		}
 
-		while (readPos < line.length) {
-			if (line[readPos++] == delimiter) {
-				offsets[col++] = (short) (countInWrapBuffer + readPos - startPos);
+		/**
+		 * @param spec &lt;columns&gt;:&lt;column&gt;&lt;op&gt;&lt;value&gt;
+		 */
+		public static ColumnPredicate parse(String spec) {
+			int colon = spec.indexOf(':');
+			int pos = colon + 1;
+			while (pos < spec.length() && Character.isDigit(spec.charAt(pos))) {
+				pos++;
 			}
+			if (colon < 0 || pos == colon + 1) {
+				throw new IllegalArgumentException("Not a column predicate: " + spec);
+			}
+			for (String operator : OPERATORS) {
+				if (spec.startsWith(operator, pos)) {
+					return new ColumnPredicate(Integer.parseInt(spec.substring(0, colon)),
+							Integer.parseInt(spec.substring(colon + 1, pos)), operator, spec.substring(pos + operator.length()));
+				}
+			}
+			throw new IllegalArgumentException("Not a column predicate: " + spec);
 		}
 
-		Tuple value = new Tuple(line, offsets, col - 1);
-		PactString key = null;
+		public int getColumns() {
+			return columns;
+		}
 
+		/**
+		 * @param ends the position of the delimiter after each column
+		 * @return true if the column of the line satisfies the predicate
+		 */
+		public boolean evaluate(byte[] line, int[] ends) {
+			int start = (column == 0 ? 0 : ends[column - 1] + 1);
+			int end = ends[column];
+			if (operator.equals("^")) {
+				return end - start >= value.length && indexOf(line, start, start + value.length) == start;
+			} else if (operator.equals("~")) {
+				return indexOf(line, start, end) >= 0;
+			}
+
+			int comparison = (numeric ? compareNumber(line, start, end) : compare(line, start, end));
+			if (comparison == NOT_A_NUMBER) {
+				return false;
+			}
+
+			if (operator.equals("=")) {
+				return comparison == 0;
+			} else if (operator.equals("!=")) {
+				return comparison != 0;
+			} else if (operator.equals("<")) {
+				return comparison < 0;
+			} else if (operator.equals("<=")) {
+				return comparison <= 0;
+			} else if (operator.equals(">")) {
+				return comparison > 0;
+			} else {
+				return comparison >= 0;
+			}
+		}
+
+		private int indexOf(byte[] line, int start, int end) {
+			for (int i = start; i <= end - value.length; i++) {
+				int j = 0;
+				while (j < value.length && line[i + j] == value[j]) {
+					j++;
+				}
+				if (j == value.length) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * @return the sign of the column minus the value, or NOT_A_NUMBER
+		 */
+		private int compareNumber(byte[] line, int start, int end) {
+			boolean negative = (start < end && line[start] == '-');
+			int pos = (negative ? start + 1 : start);
+			if (pos == end || end - pos > 18) {
+				return NOT_A_NUMBER;
+			}
+			long columnNumber = 0;
+			for (; pos < end; pos++) {
+				if (line[pos] < '0' || line[pos] > '9') {
+					return NOT_A_NUMBER;
+				}
+				columnNumber = columnNumber * 10 + (line[pos] - '0');
+			}
+			if (negative) {
+				columnNumber = -columnNumber;
+			}
+			return (columnNumber < number ? -1 : (columnNumber == number ? 0 : 1));
+		}
+
+		private int compare(byte[] line, int start, int end) {
+			int length = Math.min(end - start, value.length);
+			for (int i = 0; i < length; i++) {
+				int a = line[start + i] & 0xFF;
+				int b = value[i] & 0xFF;
+				if (a != b) {
+					return (a < b ? -1 : 1);
+				}
+			}
+			return Integer.signum((end - start) - value.length);
+		}
+
+		@Override
+		public String toString() {
+			return columns + ":" + column + operator + new String(value);
+		}
+	}
+
+	/**
+	 * @return the bytes as a String of one char per byte, like {@link Tuple#getStringValueAt(int)}
+	 */
+	private static String decode(byte[] line, int start, int end) {
+		char[] chars = new char[end - start];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) (line[start + i] & 0xff);
+		}
+		return new String(chars);
+	}
+
+	private static int[] parseColumns(String columns) {
+		if (columns.trim().length() == 0) {
+			return new int[0];
+		}
+		String[] parts = columns.split(",");
+		int[] result = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			result[i] = Integer.parseInt(parts[i].trim());
+		}
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void configure(Configuration parameters) {
+		super.configure(parameters);
+
+		List<ColumnPredicate> predicates = new ArrayList<ColumnPredicate>();
+		String rankThreshold = parameters.getString(RANK_THRESHOLD, null);
+		if (rankThreshold != null) {
+			predicates.add(new ColumnPredicate(RANKS_COLUMNS, 0, ">", rankThreshold.trim()));
+		}
+		String filter = parameters.getString(COLUMN_FILTER, null);
+		if (filter != null) {
+			for (String spec : filter.split(";")) {
+				if (spec.length() > 0) {
+					predicates.add(ColumnPredicate.parse(spec));
+				}
+			}
+		}
+		this.predicates = predicates.toArray(new ColumnPredicate[predicates.size()]);
+
+		String keywords = parameters.getString(KeywordMatcher.KEYWORDS, null);
+		this.keywords = (keywords == null ? null : KeywordMatcher.parse(keywords));
+
+		String projection = parameters.getString(PROJECTION, null);
+		if (projection != null) {
+			for (String spec : projection.split(";")) {
+				int colon = spec.indexOf(':');
+				if (colon < 0) {
+					throw new IllegalArgumentException("Not a projection: " + spec);
+				}
+				int columns = Integer.parseInt(spec.substring(0, colon).trim());
+				int[] projected = parseColumns(spec.substring(colon + 1));
+				for (int column : projected) {
+					if (column < 0 || column >= columns) {
+						throw new IllegalArgumentException("No column " + column + " in tuples of " + columns + " columns");
+					}
+				}
+				if (columns == DOCS_COLUMNS) {
+					docsProjection = projected;
+				} else if (columns == RANKS_COLUMNS) {
+					ranksProjection = projected;
+				} else {
+					throw new IllegalArgumentException("No table with tuples of " + columns + " columns");
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean readLine(KeyValuePair<PactString, Tuple> pair, byte[] line) {
 		/*
 		 * format of tuples in docs : URL | Content|\n
 		 * example a tuple in docs: url_1|words words words|
 		 * format of tuples in ranks: Rank | URL | Average Duration |\n
 		 * example a tuple in ranks:  86|url_1|50
 		 */
-		
-		if(value.getNumberOfColumns() == 2) //Docs
-		{
-			key = new PactString(value.getStringValueAt(0));
-			pair.setKey(key);
-			pair.setValue(emptyTuple);
-		}
-		else if(value.getNumberOfColumns() == 3)//Ranks
-		{		
-			key = new PactString(value.getStringValueAt(1));
-			pair.setKey(key);
-			pair.setValue(value);
+
+		// every column is terminated by the delimiter
+		int cols = 0;
+		for (int readPos = 0; readPos < line.length; readPos++) {
+			if (line[readPos] == delimiter) {
+				if (cols == ends.length) {
+					ends = Arrays.copyOf(ends, cols * 2);
+				}
+				ends[cols++] = readPos;
+			}
+		}
+
+		int keyColumn;
+		int[] projection;
+		if (cols == DOCS_COLUMNS) {
+			keyColumn = 0;
+			projection = docsProjection;
+			if (keywords != null && !keywords.containsAll(line, ends[0] + 1, ends[1] - ends[0] - 1)) {
+				return false;
+			}
+		} else if (cols == RANKS_COLUMNS) {
+			keyColumn = 1;
+			projection = ranksProjection;
+		} else {
+			// neither a docs nor a ranks tuple
+			return false;
+		}
+		for (ColumnPredicate predicate : predicates) {
+			if (predicate.getColumns() == cols && !predicate.evaluate(line, ends)) {
+				return false;
+			}
 		}
+
+		// only the emitted tuples are built
+		int keyStart = (keyColumn == 0 ? 0 : ends[keyColumn - 1] + 1);
+		pair.setKey(new PactString(decode(line, keyStart, ends[keyColumn])));
+		pair.setValue(project(line, cols, projection));
 		return true;
 	}
 
+	private Tuple project(byte[] line, int cols, int[] projection) {
+		if (projection == null) {
+			short[] offsets = new short[cols + 1];
+			for (int i = 0; i < cols; i++) {
+				offsets[i + 1] = (short) (ends[i] + 1);
+			}
+			return new Tuple(line, offsets, cols);
+		}
+		if (projection.length == 0) {
+			return emptyTuple;
+		}
+
+		int length = 0;
+		for (int column : projection) {
+			length += ends[column] + 1 - (column == 0 ? 0 : ends[column - 1] + 1);
+		}
+		byte[] bytes = new byte[length];
+		short[] offsets = new short[projection.length + 1];
+		int end = 0;
+		for (int i = 0; i < projection.length; i++) {
+			int column = projection[i];
+			int start = (column == 0 ? 0 : ends[column - 1] + 1);
+			int columnLength = ends[column] + 1 - start;
+			System.arraycopy(line, start, bytes, end, columnLength);
+			end += columnLength;
+			offsets[i + 1] = (short) end;
+		}
+		return new Tuple(bytes, offsets, projection.length);
+	}
+
 }
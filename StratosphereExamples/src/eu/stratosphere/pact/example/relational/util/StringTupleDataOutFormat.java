@@ -15,11 +15,11 @@
 
 package eu.stratosphere.pact.example.relational.util;
 
-import eu.stratosphere.pact.common.io.TextOutputFormat;
+import se.kth.emdc.examples.util.CompressedTextOutputFormat;
 import eu.stratosphere.pact.common.type.KeyValuePair;
 import eu.stratosphere.pact.common.type.base.PactString;
 
-public class StringTupleDataOutFormat extends TextOutputFormat<PactString, Tuple> {
+public class StringTupleDataOutFormat extends CompressedTextOutputFormat<PactString, Tuple> {
 
 	@Override
 	public byte[] writeLine(KeyValuePair<PactString, Tuple> pair) {
@@ -0,0 +1,72 @@
+package se.kth.emdc.examples.kmeans.stratosphere;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import se.kth.emdc.examples.kmeans.BinaryPointFile;
+import se.kth.emdc.examples.kmeans.BinaryPointReader;
+import eu.stratosphere.nephele.fs.FileInputSplit;
+import eu.stratosphere.pact.common.io.FileInputFormat;
+import eu.stratosphere.pact.common.io.statistics.BaseStatistics;
+import eu.stratosphere.pact.common.type.Key;
+import eu.stratosphere.pact.common.type.KeyValuePair;
+import eu.stratosphere.pact.common.type.Value;
+
+/**
+ * Reads binary points files (see {@link BinaryPointFile}). Every split
+ * reads the blocks that start inside it; splits of local files are
+ * memory-mapped, the others are read from the file system stream.
+ */
+public abstract class BinaryPointInFormat<K extends Key, V extends Value> extends FileInputFormat<K, V> {
+
+	private BinaryPointReader reader;
+	private long[] coords;
+	private boolean hasNext;
+
+	/**
+	 * Fills the pair with a point.
+	 * @param coords the coordinates of the point, owned by the caller
+	 */
+	protected abstract void setPoint(KeyValuePair<K, V> pair, long[] coords);
+
+	@Override
+	public void open(FileInputSplit split) throws IOException {
+		super.open(split);
+
+		if ("file".equals(split.getPath().toUri().getScheme())) {
+			reader = BinaryPointReader.map(new File(split.getPath().toUri().getPath()), start, length);
+		} else {
+			byte[] header = new byte[BinaryPointFile.HEADER_SIZE];
+			stream.seek(0);
+			new DataInputStream(stream).readFully(header);
+			BinaryPointFile file = BinaryPointFile.readHeader(header);
+
+			stream.seek(file.getBlockOffset(file.getFirstBlockFrom(start)));
+			reader = new BinaryPointReader(file, stream, start, length);
+		}
+
+		coords = new long[reader.getDimension()];
+		hasNext = reader.next(coords);
+	}
+
+	@Override
+	public boolean reachedEnd() {
+		return !hasNext;
+	}
+
+	@Override
+	public boolean nextRecord(KeyValuePair<K, V> pair) throws IOException {
+		if (!hasNext) {
+			return false;
+		}
+		setPoint(pair, coords.clone());
+		hasNext = reader.next(coords);
+		return true;
+	}
+
+	@Override
+	public BaseStatistics getStatistics(BaseStatistics cachedStatistics) {
+		return cachedStatistics;
+	}
+}
@@ -0,0 +1,128 @@
+package se.kth.emdc.examples.kmeans.stratosphere;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import se.kth.emdc.examples.kmeans.BinaryPointFile;
+import se.kth.emdc.examples.kmeans.PointBlockCache;
+import se.kth.emdc.examples.kmeans.PointBlockCache.PointBlock;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.nephele.fs.FileInputSplit;
+import eu.stratosphere.pact.common.io.FileInputFormat;
+import eu.stratosphere.pact.common.io.statistics.BaseStatistics;
+import eu.stratosphere.pact.common.type.KeyValuePair;
+import eu.stratosphere.pact.common.type.base.PactNull;
+
+/**
+ * Reads the points of a text or binary points file through the
+ * {@link PointBlockCache}. The first plan reading a split parses it with
+ * the format selected by {@link BinaryPointFile#POINTS_FORMAT} and caches
+ * its points, the following plans run in the same JVM take them from
+ * memory without opening the file.
+ */
+public class CachedPointInFormat extends FileInputFormat<PactNull, CoordinatesSum> {
+
+	private static final Log LOG = LogFactory.getLog(CachedPointInFormat.class);
+
+	private Configuration parameters;
+	private PointBlockCache cache;
+	private String cacheKey;
+
+	// set when the split is cached
+	private PointBlock block;
+	private int position;
+
+	// set when the split is read from the file
+	private FileInputFormat<PactNull, CoordinatesSum> format;
+	private PointBlockCache.Builder builder;
+
+	@Override
+	public void configure(Configuration parameters) {
+		super.configure(parameters);
+		this.parameters = parameters;
+
+		cache = PointBlockCache.getInstance();
+		cache.setCapacity(parameters.getInteger(PointBlockCache.POINT_CACHE_MB, PointBlockCache.DEFAULT_POINT_CACHE_MB) * 1024L * 1024L);
+	}
+
+	@Override
+	public void open(FileInputSplit split) throws IOException {
+		cacheKey = PointBlockCache.key(split.getPath().toString(), split.getStart(), split.getLength());
+		block = cache.get(cacheKey);
+		position = 0;
+		if (block != null) {
+			return;
+		}
+
+		try {
+			format = CoordinatesSum.getInFormat(parameters.getString(BinaryPointFile.POINTS_FORMAT, null), false).newInstance();
+		} catch (Exception e) {
+			throw new IOException("Could not create the points input format", e);
+		}
+		format.configure(parameters);
+		format.open(split);
+		builder = new PointBlockCache.Builder(cache.getCapacity());
+	}
+
+	@Override
+	public boolean reachedEnd() throws IOException {
+		if (block != null) {
+			return position == block.getCount();
+		}
+
+		if (!format.reachedEnd()) {
+			return false;
+		}
+		// the whole split was read, the next plans can take it from memory
+		if (builder != null) {
+			PointBlock parsed = builder.build();
+			if (parsed != null) {
+				cache.put(cacheKey, parsed);
+			}
+			builder = null;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean nextRecord(KeyValuePair<PactNull, CoordinatesSum> pair) throws IOException {
+		if (block != null) {
+			long[] coords = new long[block.getDimension()];
+			block.getPoint(position++, coords);
+			pair.setKey(PactNull.getInstance());
+			pair.setValue(new CoordinatesSum(coords));
+			return true;
+		}
+
+		if (!format.nextRecord(pair)) {
+			return false;
+		}
+		if (builder != null && !builder.add(pair.getValue().getCoords(), pair.getValue().getDimension())) {
+			builder = null;
+		}
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (format != null) {
+			format.close();
+			format = null;
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug(cache);
+		}
+	}
+
+	@Override
+	public KeyValuePair<PactNull, CoordinatesSum> createPair() {
+		return new KeyValuePair<PactNull, CoordinatesSum>(PactNull.getInstance(), new CoordinatesSum());
+	}
+
+	@Override
+	public BaseStatistics getStatistics(BaseStatistics cachedStatistics) {
+		return cachedStatistics;
+	}
+}
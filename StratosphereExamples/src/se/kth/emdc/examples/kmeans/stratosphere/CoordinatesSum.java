@@ -4,6 +4,9 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
+import se.kth.emdc.examples.kmeans.BinaryPointFile;
+import se.kth.emdc.examples.kmeans.PointParser;
+import eu.stratosphere.pact.common.io.FileInputFormat;
 import eu.stratosphere.pact.common.io.TextInputFormat;
 import eu.stratosphere.pact.common.type.Key;
 import eu.stratosphere.pact.common.type.KeyValuePair;
@@ -12,7 +15,7 @@ import eu.stratosphere.pact.common.type.base.PactNull;
 
 public class CoordinatesSum extends PactPoint implements Value{
 
-	private Long count;
+	private long count;
 	
 	public CoordinatesSum() {
 		super();
@@ -20,19 +23,19 @@ public class CoordinatesSum extends PactPoint implements Value{
 	
 	public CoordinatesSum(String[] points){
 		super(points);
-		this.count = 1L;
+		this.count = 1;
 	}
 	
-	public CoordinatesSum(Long[] points){
-		this(points, 1L);
+	public CoordinatesSum(long[] points){
+		this(points, 1);
 	}
 	
-	public CoordinatesSum(Long[] points, Long count){
+	public CoordinatesSum(long[] points, long count){
 		super(points);
 		this.count = count;
 	}
 	
-	public Long getCount() {
+	public long getCount() {
 		return count;
 	}
 	
@@ -58,7 +61,10 @@ public class CoordinatesSum extends PactPoint implements Value{
 		
 		int superCompareTo = super.compareTo(o);
 				
-		return superCompareTo == 0? count.compareTo(oP.count) : superCompareTo;
+		if (superCompareTo != 0) {
+			return superCompareTo;
+		}
+		return count < oP.count ? -1 : (count == oP.count ? 0 : 1);
 	};
 	
 	/**
@@ -67,24 +73,62 @@ public class CoordinatesSum extends PactPoint implements Value{
 	 */
 	public static class LineInFormat extends TextInputFormat<PactNull, CoordinatesSum> {
 
+		private final PointParser parser = new PointParser();
+
 		/**
 		 * {@inheritDoc}
 		 */
 		@Override
 		public boolean readLine(KeyValuePair<PactNull, CoordinatesSum> pair, byte[] line) {
-			String lineStr = new String(line);
-			
-			CoordinatesSum onePoint = null;
+			// blank and malformed lines are skipped
 			try {
-				onePoint = new CoordinatesSum(lineStr.toString().split("\\s+"));
-			} catch (Exception e) {
+				if (parser.parse(line) == 0) {
+					return false;
+				}
+			} catch (NumberFormatException e) {
 				e.printStackTrace();
+				return false;
 			}
 			
+			CoordinatesSum onePoint = new CoordinatesSum(parser.copyValues());
+			
 			pair.setKey(new PactNull());
 			pair.setValue(onePoint);
 			return true;
 		}
 
 	}
+	
+	/**
+	 * Reads the points of a binary points file.
+	 */
+	public static class BinaryInFormat extends BinaryPointInFormat<PactNull, CoordinatesSum> {
+
+		@Override
+		protected void setPoint(KeyValuePair<PactNull, CoordinatesSum> pair, long[] coords) {
+			pair.setKey(PactNull.getInstance());
+			pair.setValue(new CoordinatesSum(coords));
+		}
+
+		@Override
+		public KeyValuePair<PactNull, CoordinatesSum> createPair() {
+			return new KeyValuePair<PactNull, CoordinatesSum>(PactNull.getInstance(), new CoordinatesSum());
+		}
+	}
+	
+	/**
+	 * @param pointsFormat {@link BinaryPointFile#TEXT} or {@link BinaryPointFile#BINARY}, null selects text
+	 * @param cached whether the points are read through the {@link CachedPointInFormat}
+	 * @return the input format reading the points file
+	 */
+	public static Class<? extends FileInputFormat<PactNull, CoordinatesSum>> getInFormat(String pointsFormat, boolean cached) {
+		if (cached) {
+			return CachedPointInFormat.class;
+		} else if (pointsFormat == null || BinaryPointFile.TEXT.equals(pointsFormat)) {
+			return LineInFormat.class;
+		} else if (BinaryPointFile.BINARY.equals(pointsFormat)) {
+			return BinaryInFormat.class;
+		}
+		throw new IllegalArgumentException("Unknown points format: " + pointsFormat);
+	}
 }
@@ -0,0 +1,184 @@
+package se.kth.emdc.examples.kmeans.stratosphere;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import se.kth.emdc.examples.compress.BlockCompressedInputStream;
+import se.kth.emdc.examples.kmeans.BasePoint;
+import se.kth.emdc.examples.kmeans.BinaryPointFile;
+import se.kth.emdc.examples.kmeans.BinaryPointReader;
+import se.kth.emdc.examples.kmeans.KmeansDriver;
+import se.kth.emdc.examples.kmeans.PointBlockCache;
+import se.kth.emdc.examples.util.LocalExecutor;
+import se.kth.emdc.examples.util.PlanExecutor;
+import se.kth.emdc.examples.util.PlanOptions;
+import eu.stratosphere.nephele.fs.FSDataInputStream;
+import eu.stratosphere.nephele.fs.FileStatus;
+import eu.stratosphere.nephele.fs.FileSystem;
+import eu.stratosphere.nephele.fs.Path;
+import eu.stratosphere.pact.common.plan.Plan;
+import eu.stratosphere.pact.common.plan.PlanAssembler;
+
+/**
+ * Runs {@link KmeansMR}, {@link KmeansPACT} or {@link KmeansBroadcastPACT} iterations from a single JVM
+ * until the centers converge, replacing kmeans-strat-*-local.sh. Each
+ * iteration assembles a new plan with the current centers and hands it to
+ * a {@link PlanExecutor}.
+ */
+public class IterativeKmeans extends KmeansDriver {
+
+	private final PlanAssembler assembler;
+	private final PlanExecutor executor;
+	private final String[] extraArgs;
+
+	/**
+	 * @param assembler the k-means plan to iterate
+	 * @param executor runs the plan of each iteration
+	 * @param pointsFile the points file URI
+	 * @param outputPath the output URI written by each iteration
+	 * @param extraArgs additional plan arguments (degrees of parallelism)
+	 */
+	public IterativeKmeans(PlanAssembler assembler, PlanExecutor executor, String pointsFile, String outputPath, String... extraArgs) {
+		super(pointsFile, outputPath);
+		this.assembler = assembler;
+		this.executor = executor;
+		this.extraArgs = extraArgs;
+	}
+
+	@Override
+	protected List<BasePoint> runIteration(int iteration, String centersFileName) throws Exception {
+		Path output = new Path(outputPath);
+		FileSystem fs = FileSystem.get(output.toUri());
+		if (fs.exists(output)) {
+			fs.delete(output, true);
+		}
+
+		// KmeansMR reads the centers from the local file system, the other plans take a URI
+		String centers = (assembler instanceof KmeansMR ? centersFileName : new File(centersFileName).toURI().toString());
+
+		String[] args = new String[3 + extraArgs.length];
+		args[0] = pointsFile;
+		args[1] = centers;
+		args[2] = outputPath;
+		System.arraycopy(extraArgs, 0, args, 3, extraArgs.length);
+
+		Plan plan = assembler.getPlan(args);
+		executor.executePlan(plan);
+
+		return readCenters(fs, output);
+	}
+
+	/**
+	 * Reads the centers written by the sink, either a single file or a
+	 * folder with one file per sink subtask.
+	 */
+	private static List<BasePoint> readCenters(FileSystem fs, Path output) throws Exception {
+		List<BasePoint> centers = new ArrayList<BasePoint>();
+
+		FileStatus status = fs.getFileStatus(output);
+		FileStatus[] files = (status.isDir() ? fs.listStatus(output) : new FileStatus[] { status });
+
+		for (FileStatus file : files) {
+			if (file.isDir()) {
+				continue;
+			}
+			BufferedReader reader = new BufferedReader(new InputStreamReader(BlockCompressedInputStream.open(fs.open(file.getPath()))));
+			try {
+				centers.addAll(BasePoint.readPoints(reader));
+			} finally {
+				reader.close();
+			}
+		}
+		return centers;
+	}
+
+	/**
+	 * Samples the initial centers from a text or binary points file.
+	 */
+	private static List<BasePoint> samplePoints(Path pointsPath, String pointsFormat, int numClusters) throws Exception {
+		FileSystem fs = FileSystem.get(pointsPath.toUri());
+		FSDataInputStream in = fs.open(pointsPath);
+		try {
+			if (BinaryPointFile.BINARY.equals(pointsFormat)) {
+				byte[] header = new byte[BinaryPointFile.HEADER_SIZE];
+				new DataInputStream(in).readFully(header);
+				BinaryPointReader reader = new BinaryPointReader(BinaryPointFile.readHeader(header), in, 0, fs.getFileStatus(pointsPath).getLen());
+				return sampleCenters(reader, numClusters, DEFAULT_SAMPLE_SEED);
+			}
+			return sampleCenters(new BufferedReader(new InputStreamReader(in)), numClusters, DEFAULT_SAMPLE_SEED);
+		} finally {
+			in.close();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		if (args.length < 6) {
+			System.err.println("Usage: " + IterativeKmeans.class.getName() + " <mr|pact|broadcast> <executorClass> <pointsFile> <numClusters> <output> <centersFile> [threshold] [maxIterations] [planArgs...]");
+			System.err.println("<mr|pact|broadcast>: iterate " + KmeansMR.class.getSimpleName() + ", " + KmeansPACT.class.getSimpleName()
+					+ " or " + KmeansBroadcastPACT.class.getSimpleName());
+			System.err.println("<executorClass>: " + PlanExecutor.class.getSimpleName() + " implementation running the plans");
+			System.err.println("<pointsFile>: points file URI");
+			System.err.println("<numClusters>: number of clusters, the initial centers are sampled from the points");
+			System.err.println("<output>: output URI used by every iteration, it is overwritten");
+			System.err.println("<centersFile>: final centers file in the local file system");
+			System.err.println("[threshold]: stop when no center moves more than this distance (default " + DEFAULT_CONVERGENCE_THRESHOLD + ")");
+			System.err.println("[maxIterations]: upper bound on the number of iterations (default " + DEFAULT_MAX_ITERATIONS + ")");
+			System.err.println("[planArgs...]: degrees of parallelism and -Dkey=value options, passed to the plan after its first three arguments");
+			System.exit(2);
+		}
+
+		PlanAssembler assembler;
+		if ("mr".equals(args[0])) {
+			assembler = new KmeansMR();
+		} else if ("pact".equals(args[0])) {
+			assembler = new KmeansPACT();
+		} else if ("broadcast".equals(args[0])) {
+			assembler = new KmeansBroadcastPACT();
+		} else {
+			throw new IllegalArgumentException("Unknown k-means plan: " + args[0]);
+		}
+
+		PlanExecutor executor = Class.forName(args[1]).asSubclass(PlanExecutor.class).newInstance();
+
+		String[] planArgs = new String[Math.max(0, args.length - 8)];
+		System.arraycopy(args, args.length - planArgs.length, planArgs, 0, planArgs.length);
+
+		Path pointsPath = new Path(args[2]);
+		int numClusters = Integer.parseInt(args[3]);
+		PlanOptions options = new PlanOptions(planArgs);
+		String pointsFormat = options.get(BinaryPointFile.POINTS_FORMAT, BinaryPointFile.TEXT);
+
+		// with an in-process executor all the iterations share the parsed points (KmeansPACT takes no options)
+		if (!(assembler instanceof KmeansPACT) && !options.contains(PointBlockCache.POINT_CACHE)) {
+			planArgs = Arrays.copyOf(planArgs, planArgs.length + 1);
+			planArgs[planArgs.length - 1] = "-D" + PointBlockCache.POINT_CACHE + "=true";
+		}
+		List<BasePoint> initialCenters = samplePoints(pointsPath, pointsFormat, numClusters);
+
+		IterativeKmeans driver = new IterativeKmeans(assembler, executor, args[2], args[4], planArgs);
+		if (args.length > 6) {
+			driver.setConvergenceThreshold(Double.parseDouble(args[6]));
+		}
+		if (args.length > 7) {
+			driver.setMaxIterations(Integer.parseInt(args[7]));
+		}
+
+		long start = System.currentTimeMillis();
+		List<BasePoint> centers = driver.run(initialCenters);
+		BasePoint.writePoints(centers, args[5]);
+
+		System.out.println("Iterations: " + driver.getIterations());
+		System.out.println("Last max center movement: " + driver.getLastMovement());
+		System.out.println("Total execution time: " + (System.currentTimeMillis() - start) + "ms");
+		if (executor instanceof LocalExecutor) {
+			// the tasks ran in this JVM and shared its cache
+			System.out.println(PointBlockCache.getInstance());
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package se.kth.emdc.examples.kmeans.stratosphere;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import se.kth.emdc.examples.kmeans.BasePoint;
+import se.kth.emdc.examples.kmeans.BinaryPointFile;
+import se.kth.emdc.examples.kmeans.NearestCenterIndex;
+import se.kth.emdc.examples.kmeans.PointBlockCache;
+import se.kth.emdc.examples.util.PlanOptions;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.nephele.fs.FileSystem;
+import eu.stratosphere.nephele.fs.Path;
+import eu.stratosphere.pact.common.contract.FileDataSinkContract;
+import eu.stratosphere.pact.common.contract.FileDataSourceContract;
+import eu.stratosphere.pact.common.contract.MapContract;
+import eu.stratosphere.pact.common.contract.ReduceContract;
+import eu.stratosphere.pact.common.plan.Plan;
+import eu.stratosphere.pact.common.plan.PlanAssembler;
+import eu.stratosphere.pact.common.plan.PlanAssemblerDescription;
+import eu.stratosphere.pact.common.stub.Collector;
+import eu.stratosphere.pact.common.stub.MapStub;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+import eu.stratosphere.pact.common.type.base.PactNull;
+
+/**
+ * Single k-means iteration where the centers are broadcast to the tasks
+ * instead of being crossed with the points. The plan reads the centers when
+ * it is assembled and ships them as a parameter of the Map contract, so
+ * every task loads them once and assigns each point to its nearest center
+ * in a single pass. Compared to {@link KmeansPACT}, which materializes and
+ * shuffles one Distance record per (point, center) pair, the Map emits one
+ * record per point and the combiner of {@link KmeansMR.RecomputeClusterCenter}
+ * folds them into one partial sum per center and task.
+ *
+ * The input and output arguments are the same as for {@link KmeansPACT}, so
+ * both plans can be swapped in the scripts.
+ */
+public class KmeansBroadcastPACT implements PlanAssembler, PlanAssemblerDescription {
+
+	private static final Log LOG = LogFactory.getLog(KmeansBroadcastPACT.class);
+
+	/** Map parameter holding the centers, one point per line. */
+	public static final String CENTERS_CONF = "CENTERS";
+
+	/**
+	 * Assigns every point to the nearest of the broadcast centers and emits
+	 * it keyed by the center id.
+	 */
+	public static class AssignNearestCenter extends MapStub<PactNull, CoordinatesSum, PactInteger, CoordinatesSum> {
+
+		private NearestCenterIndex centers = null;
+
+		@Override
+		public void configure(Configuration parameters) {
+			String centersText = parameters.getString(CENTERS_CONF, "");
+			String indexType = parameters.getString(NearestCenterIndex.NEAREST_CENTER_INDEX, null);
+
+			try {
+				centers = NearestCenterIndex.create(indexType, BasePoint.readPoints(new BufferedReader(new StringReader(centersText))),
+						parameters.getInteger(NearestCenterIndex.PROJECTION_DIMENSION, NearestCenterIndex.DEFAULT_PROJECTION_DIMENSION),
+						parameters.getInteger(NearestCenterIndex.PROJECTION_CANDIDATES, NearestCenterIndex.DEFAULT_PROJECTION_CANDIDATES),
+						parameters.getLong(NearestCenterIndex.PROJECTION_SEED, NearestCenterIndex.DEFAULT_PROJECTION_SEED));
+			} catch (IOException e) {
+				// cannot happen when reading from a string
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void map(PactNull key, CoordinatesSum onePoint, Collector<PactInteger, CoordinatesSum> out) {
+			out.collect(new PactInteger(centers.nearest(onePoint)), onePoint);
+		}
+
+		@Override
+		public void close() {
+			LOG.info("Nearest center lookup: " + centers.getDistanceComputations() + " distances computed, "
+					+ centers.getSkippedDistances() + " skipped");
+		}
+	}
+
+	/**
+	 * Reads the centers file and returns its points, one per line, as they
+	 * are passed to {@link AssignNearestCenter}.
+	 * @param centersPath URI of the centers file
+	 */
+	private static String readCenters(String centersPath) throws IOException {
+		Path path = new Path(centersPath);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(FileSystem.get(path.toUri()).open(path)));
+
+		List<BasePoint> centers;
+		try {
+			centers = BasePoint.readPoints(reader);
+		} finally {
+			reader.close();
+		}
+
+		StringBuilder buf = new StringBuilder();
+		for (BasePoint center : centers) {
+			buf.append(center).append('\n');
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Plan getPlan(String... args) {
+
+		// separate -Dkey=value options from the positional parameters
+		PlanOptions options = new PlanOptions(args);
+		args = options.getRemainingArgs();
+
+		// parse job parameters
+		String dataPointInput = (args.length > 0 ? args[0] : "");
+		String clusterInput = (args.length > 1 ? args[1] : "");
+		String output = (args.length > 2 ? args[2] : "");
+
+		String centers;
+		try {
+			centers = readCenters(clusterInput);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Could not read centers file " + clusterInput, e);
+		}
+
+		FileDataSourceContract<PactNull, CoordinatesSum> dataPoints = new FileDataSourceContract<PactNull, CoordinatesSum>(
+				CoordinatesSum.getInFormat(options.get(BinaryPointFile.POINTS_FORMAT, null),
+						Boolean.parseBoolean(options.get(PointBlockCache.POINT_CACHE, null))), dataPointInput, "Data Points");
+		options.applyTo(dataPoints);
+
+		MapContract<PactNull, CoordinatesSum, PactInteger, CoordinatesSum> assignCenters = new MapContract<PactNull, CoordinatesSum, PactInteger, CoordinatesSum>(
+				AssignNearestCenter.class, "Assign Nearest Centers");
+		assignCenters.setParameter(CENTERS_CONF, centers);
+		options.applyTo(assignCenters);
+
+		ReduceContract<PactInteger, CoordinatesSum, PactNull, PactPoint> recomputeClusterCenter = new ReduceContract<PactInteger, CoordinatesSum, PactNull, PactPoint>(
+				KmeansMR.RecomputeClusterCenter.class, "Recompute Center Positions");
+
+		FileDataSinkContract<PactNull, PactPoint> newClusterPoints = new FileDataSinkContract<PactNull, PactPoint>(
+				PactPoint.LineOutFormat.class, output, "New Centers");
+		options.applyTo(newClusterPoints);
+
+		if(args.length > 3)
+		{
+			dataPoints.setDegreeOfParallelism(Integer.parseInt(args[3]));
+			assignCenters.setDegreeOfParallelism(Integer.parseInt(args[4]));
+			recomputeClusterCenter.setDegreeOfParallelism(Integer.parseInt(args[5]));
+			newClusterPoints.setDegreeOfParallelism(Integer.parseInt(args[6]));
+		}
+
+		// assemble the PACT plan
+		newClusterPoints.setInput(recomputeClusterCenter);
+		recomputeClusterCenter.setInput(assignCenters);
+		assignCenters.setInput(dataPoints);
+
+		return new Plan(newClusterPoints, "KMeans Iteration (broadcast centers)");
+	}
+
+	@Override
+	public String getDescription() {
+		return "Parameters: [dataPoints] [clusterCenters] [output] [inSubTasks] [mapTasks] [reduceTasks] [outSubTasks] "
+			+ "[-D" + NearestCenterIndex.NEAREST_CENTER_INDEX + "=" + NearestCenterIndex.BRUTE_FORCE + "|" + NearestCenterIndex.KD_TREE + "|" + NearestCenterIndex.TRIANGLE_INEQUALITY + "|" + NearestCenterIndex.RANDOM_PROJECTION + "] "
+			+ "[-D" + NearestCenterIndex.PROJECTION_DIMENSION + "=" + NearestCenterIndex.DEFAULT_PROJECTION_DIMENSION + "] [-D" + NearestCenterIndex.PROJECTION_CANDIDATES + "=" + NearestCenterIndex.DEFAULT_PROJECTION_CANDIDATES
+			+ "] [-D" + NearestCenterIndex.PROJECTION_SEED + "=" + NearestCenterIndex.DEFAULT_PROJECTION_SEED + "] "
+			+ "[-D" + BinaryPointFile.POINTS_FORMAT + "=" + BinaryPointFile.TEXT + "|" + BinaryPointFile.BINARY + "] "
+			+ "[-D" + PointBlockCache.POINT_CACHE + "=true] [-D" + PointBlockCache.POINT_CACHE_MB + "=" + PointBlockCache.DEFAULT_POINT_CACHE_MB + "]";
+	}
+}
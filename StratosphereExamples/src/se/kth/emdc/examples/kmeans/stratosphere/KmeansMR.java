@@ -1,10 +1,18 @@
 package se.kth.emdc.examples.kmeans.stratosphere;
 
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import se.kth.emdc.examples.kmeans.BasePoint;
+import se.kth.emdc.examples.kmeans.BinaryPointFile;
+import se.kth.emdc.examples.kmeans.NearestCenterIndex;
+import se.kth.emdc.examples.kmeans.PartialSums;
+import se.kth.emdc.examples.kmeans.PointBlockCache;
+import se.kth.emdc.examples.util.PlanOptions;
 import eu.stratosphere.nephele.configuration.Configuration;
 import eu.stratosphere.pact.common.contract.FileDataSinkContract;
 import eu.stratosphere.pact.common.contract.FileDataSourceContract;
@@ -21,40 +29,69 @@ import eu.stratosphere.pact.common.type.base.PactInteger;
 import eu.stratosphere.pact.common.type.base.PactNull;
 
 public class KmeansMR implements PlanAssembler, PlanAssemblerDescription{
+
+	private static final Log LOG = LogFactory.getLog(KmeansMR.class);
+
 	public static String CENTERS_FILENAME_CONF = "CENTERS_FILENAME";
 
 	public static class NearestCenterMapper extends MapStub<PactNull, CoordinatesSum, PactInteger, CoordinatesSum> {
 		
-		private List<BasePoint> centers = null;
+		private NearestCenterIndex centers = null;
+		
+		// only set when the points are combined in memory
+		private PartialSums partialSums = null;
+		
+		// the sums are emitted in close(), which has no collector parameter
+		private Collector<PactInteger, CoordinatesSum> collector = null;
 		
 		@Override
 		public void configure(Configuration parameters) {
 			String centersFilePath = parameters.getString(CENTERS_FILENAME_CONF, null);
+			String indexType = parameters.getString(NearestCenterIndex.NEAREST_CENTER_INDEX, null);
 
+			List<BasePoint> centersList;
 			try {
-				centers = BasePoint.getPoints(centersFilePath);
+				centersList = BasePoint.getPoints(centersFilePath);
 			} catch (Exception e) {
 				System.err.println("Could not read centers file. Empty centers list.");
 				e.printStackTrace();
-				centers = new LinkedList<BasePoint>();
+				centersList = new ArrayList<BasePoint>();
+			}
+			centers = NearestCenterIndex.create(indexType, centersList,
+					parameters.getInteger(NearestCenterIndex.PROJECTION_DIMENSION, NearestCenterIndex.DEFAULT_PROJECTION_DIMENSION),
+					parameters.getInteger(NearestCenterIndex.PROJECTION_CANDIDATES, NearestCenterIndex.DEFAULT_PROJECTION_CANDIDATES),
+					parameters.getLong(NearestCenterIndex.PROJECTION_SEED, NearestCenterIndex.DEFAULT_PROJECTION_SEED));
+			
+			if (parameters.getBoolean(PartialSums.IN_MAPPER_COMBINING, false)) {
+				partialSums = new PartialSums(centers.size());
 			}
 		}
 
 		@Override
 		public void map(PactNull key, CoordinatesSum onePoint, Collector<PactInteger, CoordinatesSum> out) {
-			double minDist = Double.MAX_VALUE;
-			Integer closestCenterId = -1;
-
-			for (int i = 0; i < centers.size(); i++) {
-				BasePoint center = centers.get(i);
-				double dist = onePoint.euclidianDistanceTo(center);
-				if(dist < minDist){
-					minDist = dist;
-					closestCenterId = i;
+			int closestCenterId = centers.nearest(onePoint);
+
+			if (partialSums != null) {
+				partialSums.add(closestCenterId, onePoint.getCoords(), onePoint.getCount());
+				collector = out;
+			} else {
+				out.collect(new PactInteger(closestCenterId), onePoint);
+			}
+		}
+		
+		@Override
+		public void close() {
+			// emit a single partial sum per cluster
+			if (partialSums != null && collector != null) {
+				for (int centerId = 0; centerId < partialSums.size(); centerId++) {
+					if (partialSums.getCount(centerId) > 0) {
+						collector.collect(new PactInteger(centerId), new CoordinatesSum(partialSums.getSums(centerId), partialSums.getCount(centerId)));
+					}
 				}
 			}
-
-			out.collect(new PactInteger(closestCenterId), onePoint);
+			
+			LOG.info("Nearest center lookup: " + centers.getDistanceComputations() + " distances computed, "
+					+ centers.getSkippedDistances() + " skipped");
 		}
 	}
 
@@ -65,17 +102,14 @@ public class KmeansMR implements PlanAssembler, PlanAssemblerDescription{
 		@Override
 		public void combine(PactInteger key, Iterator<CoordinatesSum> points, Collector<PactInteger, CoordinatesSum> out) {
 
-			Long[] coordSums = null;
+			long[] coordSums = null;
 			long length=0;
 			
 			while(points.hasNext()){
 				CoordinatesSum onePoint = points.next();
-				Long[] pointCoords = onePoint.getCoords();
+				long[] pointCoords = onePoint.getCoords();
 				if(coordSums == null){
-					coordSums = new Long[pointCoords.length];
-					for (int i=0; i<pointCoords.length; i++) {
-						coordSums[i] = pointCoords[i];
-					}
+					coordSums = pointCoords.clone();
 				} else {
 					for (int i = 0; i < coordSums.length; i++) {
 						coordSums[i] += pointCoords[i];
@@ -89,17 +123,14 @@ public class KmeansMR implements PlanAssembler, PlanAssemblerDescription{
 
 		@Override
 		public void reduce(PactInteger key, Iterator<CoordinatesSum> points, Collector<PactNull, PactPoint> out) {
-			Long[] coordSums = null;
+			long[] coordSums = null;
 			long length=0;
 			
 			while(points.hasNext()){
 				CoordinatesSum onePoint = points.next();
-				Long[] pointCoords = onePoint.getCoords();
+				long[] pointCoords = onePoint.getCoords();
 				if(coordSums == null){
-					coordSums = new Long[pointCoords.length];
-					for (int i=0; i<pointCoords.length; i++) {
-						coordSums[i] = pointCoords[i];
-					}
+					coordSums = pointCoords.clone();
 				} else {
 					for (int i = 0; i < coordSums.length; i++) {
 						coordSums[i] += pointCoords[i];
@@ -108,7 +139,7 @@ public class KmeansMR implements PlanAssembler, PlanAssemblerDescription{
 				length += onePoint.getCount();
 			}
 			
-			Long[] centCoords = new Long[coordSums.length];
+			long[] centCoords = new long[coordSums.length];
 			for (int i = 0; i < centCoords.length; i++) {
 				centCoords[i] = coordSums[i]/length;
 			}
@@ -126,6 +157,10 @@ public class KmeansMR implements PlanAssembler, PlanAssemblerDescription{
 	@Override
 	public Plan getPlan(String... args) {
 
+		// separate -Dkey=value options from the positional parameters
+		PlanOptions options = new PlanOptions(args);
+		args = options.getRemainingArgs();
+
 		// parse job parameters
 		String dataInput = (args.length > 0 ? args[0] : "");
 		String centersFileName = (args.length > 1 ? args[1] : "");
@@ -136,17 +171,21 @@ public class KmeansMR implements PlanAssembler, PlanAssemblerDescription{
 		int OutSubTasks   = 0;
 
 		FileDataSourceContract<PactNull, CoordinatesSum> data = new FileDataSourceContract<PactNull, CoordinatesSum>(
-				CoordinatesSum.LineInFormat.class, dataInput, "Input Lines");
+				CoordinatesSum.getInFormat(options.get(BinaryPointFile.POINTS_FORMAT, null),
+						Boolean.parseBoolean(options.get(PointBlockCache.POINT_CACHE, null))), dataInput, "Input Lines");
+		options.applyTo(data);
 
 		MapContract<PactNull, CoordinatesSum, PactInteger, CoordinatesSum> mapper = new MapContract<PactNull, CoordinatesSum, PactInteger, CoordinatesSum>(
 				NearestCenterMapper.class, "Find nearest center for each point");
 		mapper.setParameter(CENTERS_FILENAME_CONF, centersFileName);
+		options.applyTo(mapper);
 
 		ReduceContract<PactInteger, CoordinatesSum, PactNull, PactPoint> reducer = new ReduceContract<PactInteger, CoordinatesSum, PactNull, PactPoint>(
 				RecomputeClusterCenter.class, "Compute the new centers");
 
 		FileDataSinkContract<PactNull, PactPoint> out = new FileDataSinkContract<PactNull, PactPoint>(
 				PactPoint.LineOutFormat.class, output, "Centers");
+		options.applyTo(out);
 		
 		if(args.length > 3)
 		{
@@ -172,6 +211,12 @@ public class KmeansMR implements PlanAssembler, PlanAssemblerDescription{
 	 */
 	@Override
 	public String getDescription() {
-		return "Parameters: [noSubStasks] [input] [localLocalFile] [output]";
+		return "Parameters: [input] [localCentersFile] [output] [mapSubTasks] [reduceSubTasks] [inSubTasks] [outSubTasks] "
+			+ "[-D" + NearestCenterIndex.NEAREST_CENTER_INDEX + "=" + NearestCenterIndex.BRUTE_FORCE + "|" + NearestCenterIndex.KD_TREE + "|" + NearestCenterIndex.TRIANGLE_INEQUALITY + "|" + NearestCenterIndex.RANDOM_PROJECTION + "] "
+			+ "[-D" + NearestCenterIndex.PROJECTION_DIMENSION + "=" + NearestCenterIndex.DEFAULT_PROJECTION_DIMENSION + "] [-D" + NearestCenterIndex.PROJECTION_CANDIDATES + "=" + NearestCenterIndex.DEFAULT_PROJECTION_CANDIDATES
+			+ "] [-D" + NearestCenterIndex.PROJECTION_SEED + "=" + NearestCenterIndex.DEFAULT_PROJECTION_SEED + "] "
+			+ "[-D" + BinaryPointFile.POINTS_FORMAT + "=" + BinaryPointFile.TEXT + "|" + BinaryPointFile.BINARY + "] "
+			+ "[-D" + PointBlockCache.POINT_CACHE + "=true] [-D" + PointBlockCache.POINT_CACHE_MB + "=" + PointBlockCache.DEFAULT_POINT_CACHE_MB + "] "
+			+ "[-D" + PartialSums.IN_MAPPER_COMBINING + "=true]";
 	}
 }
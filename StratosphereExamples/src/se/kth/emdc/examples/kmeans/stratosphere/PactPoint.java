@@ -5,8 +5,9 @@ import java.io.DataOutput;
 import java.io.IOException;
 
 import se.kth.emdc.examples.kmeans.BasePoint;
+import se.kth.emdc.examples.kmeans.PointParser;
+import se.kth.emdc.examples.util.CompressedTextOutputFormat;
 import eu.stratosphere.pact.common.io.TextInputFormat;
-import eu.stratosphere.pact.common.io.TextOutputFormat;
 import eu.stratosphere.pact.common.type.Key;
 import eu.stratosphere.pact.common.type.KeyValuePair;
 import eu.stratosphere.pact.common.type.Value;
@@ -22,14 +23,14 @@ public class PactPoint extends BasePoint implements Key, Value{
 		super(coords);
 	}
 	
-	public PactPoint(Long... coords){
+	public PactPoint(long... coords){
 		super(coords);
 	}
 	
 	@Override
 	public void read(DataInput in) throws IOException {
 		int length = in.readInt();
-		coords = new Long[length];
+		coords = new long[length];
 		for (int i = 0; i < length; i++) {
 			this.coords[i] = in.readLong();
 		}
@@ -84,7 +85,7 @@ public class PactPoint extends BasePoint implements Key, Value{
 		return 0;
 	}
 	
-	public static class LineOutFormat extends TextOutputFormat<PactNull, PactPoint> {
+	public static class LineOutFormat extends CompressedTextOutputFormat<PactNull, PactPoint> {
 
 		/**
 		 * {@inheritDoc}
@@ -106,20 +107,25 @@ public class PactPoint extends BasePoint implements Key, Value{
 	 */
 	public static class LineInFormat extends TextInputFormat<PactPoint, PactNull> {
 
+		private final PointParser parser = new PointParser();
+
 		/**
 		 * {@inheritDoc}
 		 */
 		@Override
 		public boolean readLine(KeyValuePair<PactPoint, PactNull> pair, byte[] line) {
-			String lineStr = new String(line);
-			
-			CoordinatesSum onePoint = null;
+			// blank and malformed lines are skipped
 			try {
-				onePoint = new CoordinatesSum(lineStr.toString().split("\\s+"));
-			} catch (Exception e) {
+				if (parser.parse(line) == 0) {
+					return false;
+				}
+			} catch (NumberFormatException e) {
 				e.printStackTrace();
+				return false;
 			}
 			
+			CoordinatesSum onePoint = new CoordinatesSum(parser.copyValues());
+			
 			pair.setKey(onePoint);
 			pair.setValue(new PactNull());
 			return true;
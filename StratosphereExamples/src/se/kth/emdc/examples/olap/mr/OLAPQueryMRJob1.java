@@ -2,12 +2,20 @@ package se.kth.emdc.examples.olap.mr;
 
 import java.util.Iterator;
 
+import se.kth.emdc.examples.compress.BlockCodec;
+import se.kth.emdc.examples.olap.FieldScanner;
+import se.kth.emdc.examples.olap.KeywordMatcher;
+import se.kth.emdc.examples.olap.OLAPRecord;
+import se.kth.emdc.examples.util.CompressedTextOutputFormat;
+import se.kth.emdc.examples.util.PactLine;
+import se.kth.emdc.examples.util.PactWord;
+import se.kth.emdc.examples.util.PlanOptions;
+import eu.stratosphere.nephele.configuration.Configuration;
 import eu.stratosphere.pact.common.contract.FileDataSinkContract;
 import eu.stratosphere.pact.common.contract.FileDataSourceContract;
 import eu.stratosphere.pact.common.contract.MapContract;
 import eu.stratosphere.pact.common.contract.ReduceContract;
 import eu.stratosphere.pact.common.io.TextInputFormat;
-import eu.stratosphere.pact.common.io.TextOutputFormat;
 import eu.stratosphere.pact.common.plan.Plan;
 import eu.stratosphere.pact.common.plan.PlanAssembler;
 import eu.stratosphere.pact.common.plan.PlanAssemblerDescription;
@@ -25,15 +33,15 @@ public class OLAPQueryMRJob1 implements PlanAssembler, PlanAssemblerDescription
 	 * Converts a input string (a line) into a KeyValuePair with the string
 	 * being the key and the value being a zero Integer.
 	 */
-	public static class LineInFormat extends TextInputFormat<PactNull, PactString> {
+	public static class LineInFormat extends TextInputFormat<PactNull, PactLine> {
 
 		/**
 		 * {@inheritDoc}
 		 */
 		@Override
-		public boolean readLine(KeyValuePair<PactNull, PactString> pair, byte[] line) {
+		public boolean readLine(KeyValuePair<PactNull, PactLine> pair, byte[] line) {
 			pair.setKey(new PactNull());
-			pair.setValue(new PactString(new String(line)));
+			pair.setValue(new PactLine(line));
 			return true;
 		}
 
@@ -43,7 +51,7 @@ public class OLAPQueryMRJob1 implements PlanAssembler, PlanAssemblerDescription
 	 * Writes a (String,Integer)-KeyValuePair to a string. The output format is:
 	 * "&lt;key&gt;&nbsp;&lt;value&gt;\nl"
 	 */
-	public static class OLAPOutFormat extends TextOutputFormat<PactNull, PactString> {
+	public static class OLAPOutFormat extends CompressedTextOutputFormat<PactNull, PactString> {
 
 		/**
 		 * {@inheritDoc}
@@ -56,7 +64,7 @@ public class OLAPQueryMRJob1 implements PlanAssembler, PlanAssemblerDescription
 		}
 
 	}
-	public static class OLAPJoinMapper extends MapStub<PactNull, PactString, PactString, PactString>
+	public static class OLAPJoinMapper extends MapStub<PactNull, PactLine, PactWord, PactOLAPRecord>
 	{
 		/*
 		 * format of tuples in docs : URL | Content|\n
@@ -66,35 +74,41 @@ public class OLAPQueryMRJob1 implements PlanAssembler, PlanAssemblerDescription
 		 */
 		Integer docs_KeyPosition = 0;
 		Integer ranks_KeyPosition = 1;
-		String Delimiter = "\\|";
 
-		String[] keywords={ " editors ", " oscillations ", " convection " };
+		// all the keywords are searched in one pass over the content
+		KeywordMatcher keywords;
 		Integer rank=50;
 
+		FieldScanner fields = new FieldScanner();
+		PactWord url = new PactWord();
+		PactOLAPRecord record = new PactOLAPRecord();
+
 		@Override
-		public void map(PactNull key, PactString value,
-				Collector<PactString, PactString> out) {
-			String[] items = value.toString().split(Delimiter);
-			if(items.length == 2) // it's a docs-tuple
+		public void configure(Configuration parameters) {
+			keywords = KeywordMatcher.parse(parameters.getString(KeywordMatcher.KEYWORDS, KeywordMatcher.DEFAULT_KEYWORDS));
+		}
+
+		@Override
+		public void map(PactNull key, PactLine value,
+				Collector<PactWord, PactOLAPRecord> out) {
+			fields.reset(value.getBytes(), 0, value.getLength());
+			if(fields.getFieldCount() == 2) // it's a docs-tuple
 			{
-				boolean ContainAllKeywords=true;
-				for(String keyword: keywords)
+				if(keywords.containsAll(fields, 1)) // check whether content contains all the keywords
 				{
-					if(!items[1].contains(keyword)) // check whether content contains keyword
-					{
-						ContainAllKeywords=false;
-					}
-				}
-				if(ContainAllKeywords)
-				{
-					out.collect(new PactString(items[docs_KeyPosition]), value);
+					url.set(fields.getBytes(), fields.getStart(docs_KeyPosition), fields.getLength(docs_KeyPosition));
+					record.setDoc();
+					out.collect(url, record);
 				}
 			}
-			else if(items.length == 3) // it's a ranks-tuple
+			else if(fields.getFieldCount() == 3) // it's a ranks-tuple
 			{
-				if(Integer.parseInt(items[0]) > rank) // check whether the rank is bigger enough
+				int tupleRank = fields.parseInt(0);
+				if(tupleRank > rank) // check whether the rank is bigger enough
 				{
-					out.collect(new PactString(items[ranks_KeyPosition]), value);
+					url.set(fields.getBytes(), fields.getStart(ranks_KeyPosition), fields.getLength(ranks_KeyPosition));
+					record.setRank(tupleRank, fields.parseInt(2));
+					out.collect(url, record);
 				}
 			}
 
@@ -102,26 +116,25 @@ public class OLAPQueryMRJob1 implements PlanAssembler, PlanAssemblerDescription
 
 	}
 
-	public static class OLAPJoinReducer extends ReduceStub<PactString, PactString, PactNull, PactString> {
+	public static class OLAPJoinReducer extends ReduceStub<PactWord, PactOLAPRecord, PactNull, PactString> {
 
-			String Delimiter = "\\|";
+			OLAPRecord rank_record = new OLAPRecord();
 			
 			@Override
-			public void reduce(PactString key, Iterator<PactString> tuples,
+			public void reduce(PactWord key, Iterator<PactOLAPRecord> tuples,
 					Collector<PactNull, PactString> out) {
 				boolean rank_tuple_found = false;
 				boolean doc_tuple_found = false;
 
-				PactString rank_tuple = new PactString();
 				while(tuples.hasNext())
 				{
-					PactString tuple=tuples.next();
-					if(tuple.toString().split(Delimiter).length == 3)
+					PactOLAPRecord tuple=tuples.next();
+					if(tuple.getTag() == OLAPRecord.RANK)
 					{
 						rank_tuple_found = true;
-						rank_tuple.setValue(tuple.getValue());
+						rank_record.setRank(tuple.getRank(), tuple.getDuration());
 					}
-					else if(tuple.toString().split(Delimiter).length == 2)
+					else if(tuple.getTag() == OLAPRecord.DOC)
 					{
 						doc_tuple_found = true;
 					}
@@ -130,7 +143,7 @@ public class OLAPQueryMRJob1 implements PlanAssembler, PlanAssemblerDescription
 				if(rank_tuple_found && doc_tuple_found)
 				{					
 					//emit the rank tuple
-					out.collect(PactNull.getInstance(), rank_tuple);
+					out.collect(PactNull.getInstance(), new PactString(rank_record.toLine(key.toString())));
 				}
 				
 			}
@@ -145,14 +158,19 @@ public class OLAPQueryMRJob1 implements PlanAssembler, PlanAssemblerDescription
 
 		@Override
 		public Plan getPlan(String... args) throws IllegalArgumentException {
+			// separate -Dkey=value options from the positional parameters
+			PlanOptions options = new PlanOptions(args);
+			args = options.getRemainingArgs();
+
 			if (args.length != 4) {
 				System.err.println("Usage: " + OLAPQueryMRJob1.class.getName() + 
-								   "<docs_ranks_file> <outputFolderPath> <num_mappers> <num_reducers>");
+								   "<docs_ranks_file> <outputFolderPath> <num_mappers> <num_reducers> [-D" + BlockCodec.COMPRESSION_CODEC + "=<codec>] [-D" + KeywordMatcher.KEYWORDS + "=<keywords>]");
 				
 				System.err.println("<docs_ranks_file>: the path to the \"docs_ranks\" file in HDFS");
 				System.err.println("<outputFolderPath>: output folder in HDFS, must be empty before running the job");
 				System.err.println("<num_mappers>: number of mappers");
 				System.err.println("<num_reducers>: number of reducers");				
+				System.err.println("<keywords>: the keywords the docs must contain, separated by '|' and not trimmed (default \"" + KeywordMatcher.DEFAULT_KEYWORDS + "\")");
 				System.exit(2);
 			}
 			
@@ -163,20 +181,21 @@ public class OLAPQueryMRJob1 implements PlanAssembler, PlanAssemblerDescription
 			int ReduceSubTasks   = Integer.parseInt(args[3]);
 
 
-			FileDataSourceContract<PactNull, PactString> data = new FileDataSourceContract<PactNull, PactString>(
+			FileDataSourceContract<PactNull, PactLine> data = new FileDataSourceContract<PactNull, PactLine>(
 					LineInFormat.class, dataInput, "Splitting Input To Mappers");
 			
 
-			MapContract<PactNull, PactString, PactString, PactString> mapper = new MapContract<PactNull, PactString, PactString, PactString>(
+			MapContract<PactNull, PactLine, PactWord, PactOLAPRecord> mapper = new MapContract<PactNull, PactLine, PactWord, PactOLAPRecord>(
 					OLAPJoinMapper.class, "Mapper Filtering Docs and Ranks");
 			
 
-			ReduceContract<PactString, PactString, PactNull, PactString> reducer = new ReduceContract<PactString, PactString, PactNull, PactString>(
+			ReduceContract<PactWord, PactOLAPRecord, PactNull, PactString> reducer = new ReduceContract<PactWord, PactOLAPRecord, PactNull, PactString>(
 					OLAPJoinReducer.class, "Reducer Joining");
 			
 
 			FileDataSinkContract<PactNull, PactString> out = new FileDataSinkContract<PactNull, PactString>(
 					OLAPOutFormat.class, dataOutput, "Output To Disk");
+			options.applyTo(mapper, out);
 			
 			data.setDegreeOfParallelism(MapSubTasks);
 			mapper.setDegreeOfParallelism(MapSubTasks);
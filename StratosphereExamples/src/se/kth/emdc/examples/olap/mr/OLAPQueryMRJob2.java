@@ -1,16 +1,31 @@
 package se.kth.emdc.examples.olap.mr;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Arrays;
 
 
 
+import se.kth.emdc.examples.compress.BlockCodec;
+import se.kth.emdc.examples.olap.BloomFilter;
+import se.kth.emdc.examples.olap.FieldScanner;
+import se.kth.emdc.examples.olap.OLAPRecord;
+import se.kth.emdc.examples.util.CompressedTextOutputFormat;
+import se.kth.emdc.examples.util.PactLine;
+import se.kth.emdc.examples.util.PactWord;
+import se.kth.emdc.examples.util.PlanOptions;
+import se.kth.emdc.examples.wordcount.WordCountTable;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.nephele.fs.FileStatus;
+import eu.stratosphere.nephele.fs.FileSystem;
+import eu.stratosphere.nephele.fs.Path;
 import eu.stratosphere.pact.common.contract.FileDataSinkContract;
 import eu.stratosphere.pact.common.contract.FileDataSourceContract;
 import eu.stratosphere.pact.common.contract.MapContract;
 import eu.stratosphere.pact.common.contract.ReduceContract;
 import eu.stratosphere.pact.common.io.TextInputFormat;
-import eu.stratosphere.pact.common.io.TextOutputFormat;
 import eu.stratosphere.pact.common.plan.Plan;
 import eu.stratosphere.pact.common.plan.PlanAssembler;
 import eu.stratosphere.pact.common.plan.PlanAssemblerDescription;
@@ -23,15 +38,19 @@ import eu.stratosphere.pact.common.type.base.PactString;
 
 
 public class OLAPQueryMRJob2 implements PlanAssembler, PlanAssemblerDescription {
-	public static class LineInFormat extends TextInputFormat<PactNull, PactString> {
+
+	/** Job parameter with the output of OLAPQueryMRJob1, the Bloom filter is built from. */
+	public static final String BLOOM_FILTER_INPUT = "BLOOM_FILTER_INPUT";
+
+	public static class LineInFormat extends TextInputFormat<PactNull, PactLine> {
 
 		/**
 		 * {@inheritDoc}
 		 */
 		@Override
-		public boolean readLine(KeyValuePair<PactNull, PactString> pair, byte[] line) {
+		public boolean readLine(KeyValuePair<PactNull, PactLine> pair, byte[] line) {
 			pair.setKey(new PactNull());
-			pair.setValue(new PactString(new String(line)));
+			pair.setValue(new PactLine(line));
 			return true;
 		}
 
@@ -41,7 +60,7 @@ public class OLAPQueryMRJob2 implements PlanAssembler, PlanAssemblerDescription
 	 * Writes a (String,Integer)-KeyValuePair to a string. The output format is:
 	 * "&lt;key&gt;&nbsp;&lt;value&gt;\nl"
 	 */
-	public static class OLAPOutFormat extends TextOutputFormat<PactNull, PactString> {
+	public static class OLAPOutFormat extends CompressedTextOutputFormat<PactNull, PactString> {
 
 		/**
 		 * {@inheritDoc}
@@ -54,7 +73,7 @@ public class OLAPQueryMRJob2 implements PlanAssembler, PlanAssemblerDescription
 		}
 
 	}
-	public static class OLAPJoinMapper extends MapStub<PactNull, PactString, PactString, PactString>{
+	public static class OLAPJoinMapper extends MapStub<PactNull, PactLine, PactWord, PactOLAPRecord>{
 		/*
 		 * format of tuples from step1 : Rank | URL | Average Duration |\n
 		 * example a tuple from step1: 86|url_1|50
@@ -63,59 +82,147 @@ public class OLAPQueryMRJob2 implements PlanAssembler, PlanAssemblerDescription
 		 */
 		Integer step1_KeyPosition = 1;
 		Integer visits_KeyPosition = 1;
-		String Delimiter = "\\|";
 
 		String date="2010";
 
+		FieldScanner fields = new FieldScanner();
+		byte[] dateBytes = date.getBytes();
+		PactWord url = new PactWord();
+		PactOLAPRecord record = new PactOLAPRecord();
+
+		// only set when the visits are pruned
+		String bloomFilterPath = null;
+		BloomFilter step1_urls = null;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void configure(Configuration parameters) {
+			bloomFilterPath = parameters.getString(BloomFilter.BLOOM_FILTER_PATH, null);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void open() {
+			if (bloomFilterPath != null) {
+				try {
+					Path path = new Path(bloomFilterPath);
+					InputStream in = FileSystem.get(path.toUri()).open(path);
+					try {
+						step1_urls = BloomFilter.readFrom(in);
+					} finally {
+						in.close();
+					}
+				} catch (IOException e) {
+					throw new RuntimeException("Could not read the Bloom filter " + bloomFilterPath, e);
+				}
+			}
+		}
+
 		@Override
-		public void map(PactNull key, PactString value, Collector<PactString, PactString> out){
-			String[] items = value.toString().split(Delimiter);
-			if(items.length == 3) // it's a step1-tuple
+		public void map(PactNull key, PactLine value, Collector<PactWord, PactOLAPRecord> out){
+			fields.reset(value.getBytes(), 0, value.getLength());
+			if(fields.getFieldCount() == 3) // it's a step1-tuple
 			{
-				out.collect(new PactString(items[step1_KeyPosition]), value);
+				url.set(fields.getBytes(), fields.getStart(step1_KeyPosition), fields.getLength(step1_KeyPosition));
+				record.setRank(fields.parseInt(0), fields.parseInt(2));
+				out.collect(url, record);
 			}
-			else if(items.length == 9) // it's a visits-tuple
+			else if(fields.getFieldCount() == 9) // it's a visits-tuple
 			{
-				if(items[2].substring(0, 4).equals(date)) // check whether the date is specified date
+				if(fields.startsWith(2, dateBytes)) // check whether the date is specified date
 				{
-					out.collect(new PactString(items[visits_KeyPosition]), value);
+					// a visit whose URL has no step1 tuple cannot remove a rank
+					if(step1_urls != null && !step1_urls.mightContain(fields.getBytes(), fields.getStart(visits_KeyPosition), fields.getLength(visits_KeyPosition)))
+						return;
+					url.set(fields.getBytes(), fields.getStart(visits_KeyPosition), fields.getLength(visits_KeyPosition));
+					record.setVisit();
+					out.collect(url, record);
 				}
 			}
 		};
 
 	}
 
-	public static class OLAPJoinReducer extends ReduceStub<PactString, PactString, PactNull, PactString> {
-		String Delimiter = "\\|";
+	public static class OLAPJoinReducer extends ReduceStub<PactWord, PactOLAPRecord, PactNull, PactString> {
+		// the step1 tuples are buffered until the visits are known
+		int[] ranks = new int[16];
+		int[] durations = new int[16];
+		OLAPRecord step1_record = new OLAPRecord();
 
 		@Override
-		public void reduce(PactString key, Iterator<PactString> tuples,
+		public void reduce(PactWord key, Iterator<PactOLAPRecord> tuples,
 				Collector<PactNull, PactString> out){
-			boolean step1_tuple_found = false;
 			boolean visits_tuple_found = false;
-			LinkedList<PactString> outputTuples = new LinkedList<PactString>();
+			int step1_tuples = 0;
 			while(tuples.hasNext())
 			{
-				PactString tuple=tuples.next();
-				if(tuple.toString().split(Delimiter).length == 3)
+				PactOLAPRecord tuple=tuples.next();
+				if(tuple.getTag() == OLAPRecord.RANK)
 				{
-					step1_tuple_found = true;
-					outputTuples.add(tuple);
+					if(step1_tuples == ranks.length)
+					{
+						ranks = Arrays.copyOf(ranks, step1_tuples * 2);
+						durations = Arrays.copyOf(durations, step1_tuples * 2);
+					}
+					ranks[step1_tuples] = tuple.getRank();
+					durations[step1_tuples] = tuple.getDuration();
+					step1_tuples++;
 				}
-				if(tuple.toString().split(Delimiter).length == 9)
+				if(tuple.getTag() == OLAPRecord.VISIT)
 					visits_tuple_found = true;
 			}
 
-			if(step1_tuple_found && (!visits_tuple_found))
+			if(step1_tuples > 0 && (!visits_tuple_found))
 			{
-				for(PactString tuple: outputTuples)
+				String url = key.toString();
+				for(int i = 0; i < step1_tuples; i++)
 				{
-					out.collect(PactNull.getInstance(), tuple);
+					step1_record.setRank(ranks[i], durations[i]);
+					out.collect(PactNull.getInstance(), new PactString(step1_record.toLine(url)));
 				}
 			}
 		}
 	}
 
+	/**
+	 * Builds a Bloom filter of the URLs of the step1 files, a file or a
+	 * folder, and overwrites the filter file.
+	 */
+	static void buildBloomFilter(PlanOptions options, String step1Input, String bloomFilterPath) throws IOException {
+		WordCountTable urls = new WordCountTable(Long.MAX_VALUE);
+		Path input = new Path(step1Input);
+		FileSystem inputFs = FileSystem.get(input.toUri());
+		FileStatus status = inputFs.getFileStatus(input);
+		FileStatus[] files = (status.isDir() ? inputFs.listStatus(input) : new FileStatus[] { status });
+		for (FileStatus file : files) {
+			if (file.isDir()) {
+				continue;
+			}
+			InputStream in = inputFs.open(file.getPath());
+			try {
+				OLAPRecord.readRankUrls(in, Integer.MIN_VALUE, urls);
+			} finally {
+				in.close();
+			}
+		}
+
+		BloomFilter filter = BloomFilter.create(urls,
+				Double.parseDouble(options.get(BloomFilter.BLOOM_FILTER_FPP, Double.toString(BloomFilter.DEFAULT_FPP))),
+				Integer.parseInt(options.get(BloomFilter.BLOOM_FILTER_MAX_MB, Integer.toString(BloomFilter.DEFAULT_MAX_MB))) * 1024L * 1024L);
+		Path path = new Path(bloomFilterPath);
+		OutputStream out = FileSystem.get(path.toUri()).create(path, true);
+		try {
+			filter.writeTo(out);
+		} finally {
+			out.close();
+		}
+		System.out.println(filter + " written to " + bloomFilterPath);
+	}
+
 	@Override
 	public String getDescription() {
 		return "Stratosphere-MR OLAP Job2";
@@ -125,14 +232,21 @@ public class OLAPQueryMRJob2 implements PlanAssembler, PlanAssemblerDescription
 
 	@Override
 	public Plan getPlan(String... args) throws IllegalArgumentException {
+		// separate -Dkey=value options from the positional parameters
+		PlanOptions options = new PlanOptions(args);
+		args = options.getRemainingArgs();
+
 		if (args.length != 4) {
 			System.err.println("Usage: " + OLAPQueryMRJob2.class.getName() + 
-			"<step1_visits_file> <outputFolderPath> <num_mappers> <num_reducers>");
+			"<step1_visits_file> <outputFolderPath> <num_mappers> <num_reducers> [-D" + BlockCodec.COMPRESSION_CODEC + "=<codec>] [-D" +
+			BloomFilter.BLOOM_FILTER + "=true] [-D" + BloomFilter.BLOOM_FILTER_FPP + "=<false positive rate>] [-D" + BloomFilter.BLOOM_FILTER_MAX_MB + "=<max size>] [-D" + BLOOM_FILTER_INPUT + "=<step1 output>]");
 
 			System.err.println("<step1_visits_files>: the merged file from visits_file and step1_file");
 			System.err.println("<outputFolderPath>: output folder in HDFS, must be empty before running the job");
 			System.err.println("<num_mappers>: number of mappers");
 			System.err.println("<num_reducers>: number of reducers");	
+			System.err.println("-D" + BloomFilter.BLOOM_FILTER + "=true: prune the visits whose URL is not in a Bloom filter of the step1 URLs,\n" +
+					"			built before the job from the output of step 1 given by -D" + BLOOM_FILTER_INPUT);
 			System.exit(2);
 		}
 		String dataInput=args[0];
@@ -142,20 +256,35 @@ public class OLAPQueryMRJob2 implements PlanAssembler, PlanAssemblerDescription
 		int ReduceSubTasks   = Integer.parseInt(args[3]);
 
 
-		FileDataSourceContract<PactNull, PactString> data = new FileDataSourceContract<PactNull, PactString>(
+		FileDataSourceContract<PactNull, PactLine> data = new FileDataSourceContract<PactNull, PactLine>(
 				LineInFormat.class, dataInput, "Splitting Input To Mappers");
 		
 
-		MapContract<PactNull, PactString, PactString, PactString> mapper = new MapContract<PactNull, PactString, PactString, PactString>(
+		MapContract<PactNull, PactLine, PactWord, PactOLAPRecord> mapper = new MapContract<PactNull, PactLine, PactWord, PactOLAPRecord>(
 				OLAPJoinMapper.class, "Mapper Filtering Visits");
 		
 
-		ReduceContract<PactString, PactString, PactNull, PactString> reducer = new ReduceContract<PactString, PactString, PactNull, PactString>(
+		ReduceContract<PactWord, PactOLAPRecord, PactNull, PactString> reducer = new ReduceContract<PactWord, PactOLAPRecord, PactNull, PactString>(
 				OLAPJoinReducer.class, "Reducer Anti-joining");
 		
 
 		FileDataSinkContract<PactNull, PactString> out = new FileDataSinkContract<PactNull, PactString>(
 				OLAPOutFormat.class, dataOutput, "Output To Disk");
+		options.applyTo(out);
+
+		if (Boolean.parseBoolean(options.get(BloomFilter.BLOOM_FILTER, "false"))) {
+			String step1Input = options.get(BLOOM_FILTER_INPUT, null);
+			if (step1Input == null) {
+				throw new IllegalArgumentException("The Bloom filter needs the output of step 1: -D" + BLOOM_FILTER_INPUT + "=<path>");
+			}
+			String bloomFilterPath = options.get(BloomFilter.BLOOM_FILTER_PATH, dataOutput + "-bloom");
+			try {
+				buildBloomFilter(options, step1Input, bloomFilterPath);
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Could not build the Bloom filter " + bloomFilterPath, e);
+			}
+			mapper.setParameter(BloomFilter.BLOOM_FILTER_PATH, bloomFilterPath);
+		}
 		
 		data.setDegreeOfParallelism(MapSubTasks);
 		mapper.setDegreeOfParallelism(MapSubTasks);
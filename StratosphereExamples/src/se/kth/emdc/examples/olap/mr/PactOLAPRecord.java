@@ -0,0 +1,11 @@
+package se.kth.emdc.examples.olap.mr;
+
+import se.kth.emdc.examples.olap.OLAPRecord;
+import eu.stratosphere.pact.common.type.Value;
+
+/**
+ * {@link OLAPRecord} shipped between the mappers and the reducers of the
+ * Stratosphere OLAP jobs.
+ */
+public class PactOLAPRecord extends OLAPRecord implements Value {
+}
@@ -0,0 +1,349 @@
+package se.kth.emdc.examples.olap.pact;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import se.kth.emdc.examples.compress.BlockCodec;
+import se.kth.emdc.examples.olap.BloomFilter;
+import se.kth.emdc.examples.olap.FieldScanner;
+import se.kth.emdc.examples.olap.KeywordMatcher;
+import se.kth.emdc.examples.olap.OLAPRecord;
+import se.kth.emdc.examples.olap.mr.OLAPQueryMRJob2.LineInFormat;
+import se.kth.emdc.examples.olap.mr.OLAPQueryMRJob2.OLAPOutFormat;
+import se.kth.emdc.examples.olap.mr.PactOLAPRecord;
+import se.kth.emdc.examples.util.PactLine;
+import se.kth.emdc.examples.util.PactWord;
+import se.kth.emdc.examples.util.PlanOptions;
+import se.kth.emdc.examples.wordcount.WordCountTable;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.nephele.fs.FileStatus;
+import eu.stratosphere.nephele.fs.FileSystem;
+import eu.stratosphere.nephele.fs.Path;
+import eu.stratosphere.pact.common.contract.CoGroupContract;
+import eu.stratosphere.pact.common.contract.FileDataSinkContract;
+import eu.stratosphere.pact.common.contract.FileDataSourceContract;
+import eu.stratosphere.pact.common.contract.MapContract;
+import eu.stratosphere.pact.common.contract.MatchContract;
+import eu.stratosphere.pact.common.contract.OutputContract;
+import eu.stratosphere.pact.common.plan.Plan;
+import eu.stratosphere.pact.common.plan.PlanAssembler;
+import eu.stratosphere.pact.common.plan.PlanAssemblerDescription;
+import eu.stratosphere.pact.common.stub.CoGroupStub;
+import eu.stratosphere.pact.common.stub.Collector;
+import eu.stratosphere.pact.common.stub.MapStub;
+import eu.stratosphere.pact.common.stub.MatchStub;
+import eu.stratosphere.pact.common.type.base.PactNull;
+import eu.stratosphere.pact.common.type.base.PactString;
+
+/**
+ * The whole OLAP query of OLAPQueryMRJob1 and OLAPQueryMRJob2 as a single
+ * PACT plan over the three separate tables:
+ * <pre>
+ * docs   -> FilterDocs  --\
+ *                          Match (JoinDocsRanks) --\
+ * ranks  -> FilterRanks --/                         CoGroup (AntiJoinVisits) -> result
+ * visits -> FilterVisits --------------------------/
+ * </pre>
+ * The inputs do not need to be merged into one file, and the result of
+ * the join is shipped straight to the anti-join instead of being written
+ * and read back by a second job. The optimizer chooses how to ship each
+ * input of the Match and the CoGroup (repartition or broadcast); the join
+ * keeps its key, so its output can stay partitioned for the CoGroup.
+ *
+ * The URL is the primary key of docs and ranks, as in the benchmark data,
+ * so the join emits each rank at most once, like the reducer of job 1.
+ *
+ * With -DBLOOM_FILTER=true the plan first builds a {@link BloomFilter} of
+ * the URLs of the ranks above the threshold, and the visits of other URLs
+ * are dropped by FilterVisits instead of being shipped to the anti-join.
+ * The join result is pipelined and not known when the plan is built, so
+ * the filter holds a superset of its URLs: the filtered ranks.
+ */
+public class OLAPQueryPACT implements PlanAssembler, PlanAssemblerDescription {
+
+	private static final int MIN_RANK = 50;
+
+	/**
+	 * Keeps the URL of the docs containing all the keywords. The content
+	 * is not needed after the filter and is not shipped.
+	 */
+	public static class FilterDocs extends MapStub<PactNull, PactLine, PactWord, PactNull> {
+		/*
+		 * format of tuples in docs : URL | Content|\n
+		 * example a tuple in docs: url_1|words words words|
+		 */
+		KeywordMatcher keywords;
+
+		FieldScanner fields = new FieldScanner();
+		PactWord url = new PactWord();
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void configure(Configuration parameters) {
+			keywords = KeywordMatcher.parse(parameters.getString(KeywordMatcher.KEYWORDS, KeywordMatcher.DEFAULT_KEYWORDS));
+		}
+
+		@Override
+		public void map(PactNull key, PactLine value, Collector<PactWord, PactNull> out) {
+			fields.reset(value.getBytes(), 0, value.getLength());
+			if (fields.getFieldCount() != 2 || !keywords.containsAll(fields, 1)) {
+				return;
+			}
+			url.set(fields.getBytes(), fields.getStart(0), fields.getLength(0));
+			out.collect(url, PactNull.getInstance());
+		}
+	}
+
+	/**
+	 * Keeps the rank and the duration of the ranks above the threshold, keyed by URL.
+	 */
+	public static class FilterRanks extends MapStub<PactNull, PactLine, PactWord, PactOLAPRecord> {
+		/*
+		 * format of tuples in ranks: Rank | URL | Average Duration |\n
+		 * example a tuple in ranks:  86|url_1|50
+		 */
+		int rank = MIN_RANK;
+
+		FieldScanner fields = new FieldScanner();
+		PactWord url = new PactWord();
+		PactOLAPRecord record = new PactOLAPRecord();
+
+		@Override
+		public void map(PactNull key, PactLine value, Collector<PactWord, PactOLAPRecord> out) {
+			fields.reset(value.getBytes(), 0, value.getLength());
+			if (fields.getFieldCount() != 3) {
+				return;
+			}
+			int tupleRank = fields.parseInt(0);
+			if (tupleRank > rank) {
+				url.set(fields.getBytes(), fields.getStart(1), fields.getLength(1));
+				record.setRank(tupleRank, fields.parseInt(2));
+				out.collect(url, record);
+			}
+		}
+	}
+
+	/**
+	 * Keeps the URL of the visits of the selected year.
+	 */
+	public static class FilterVisits extends MapStub<PactNull, PactLine, PactWord, PactNull> {
+		/*
+		 * format of tuples in visits: IP|URL|DATE|1|2|3|4|5|6|\n
+		 * example a tuple in visits:  133.33.250.203|url_910|2005-4-16|0.12|Mozilla Firefox 3.1|de|de|Nothing special|124|
+		 */
+		String date = "2010";
+
+		FieldScanner fields = new FieldScanner();
+		byte[] dateBytes = date.getBytes();
+		PactWord url = new PactWord();
+
+		// only set when the visits are pruned
+		String bloomFilterPath = null;
+		BloomFilter rankUrls = null;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void configure(Configuration parameters) {
+			bloomFilterPath = parameters.getString(BloomFilter.BLOOM_FILTER_PATH, null);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void open() {
+			if (bloomFilterPath != null) {
+				try {
+					Path path = new Path(bloomFilterPath);
+					InputStream in = FileSystem.get(path.toUri()).open(path);
+					try {
+						rankUrls = BloomFilter.readFrom(in);
+					} finally {
+						in.close();
+					}
+				} catch (IOException e) {
+					throw new RuntimeException("Could not read the Bloom filter " + bloomFilterPath, e);
+				}
+			}
+		}
+
+		@Override
+		public void map(PactNull key, PactLine value, Collector<PactWord, PactNull> out) {
+			fields.reset(value.getBytes(), 0, value.getLength());
+			if (fields.getFieldCount() == 9 && fields.startsWith(2, dateBytes)) {
+				if (rankUrls != null && !rankUrls.mightContain(fields.getBytes(), fields.getStart(1), fields.getLength(1))) {
+					return;
+				}
+				url.set(fields.getBytes(), fields.getStart(1), fields.getLength(1));
+				out.collect(url, PactNull.getInstance());
+			}
+		}
+	}
+
+	/**
+	 * Emits the ranks of the URLs that have a doc containing the keywords.
+	 * The key is not modified, hence a SameKey OutputContract.
+	 */
+	@OutputContract.SameKey
+	public static class JoinDocsRanks extends MatchStub<PactWord, PactOLAPRecord, PactNull, PactWord, PactOLAPRecord> {
+
+		@Override
+		public void match(PactWord url, PactOLAPRecord rank, PactNull doc, Collector<PactWord, PactOLAPRecord> out) {
+			out.collect(url, rank);
+		}
+	}
+
+	/**
+	 * Emits the joined ranks of the URLs that were not visited in the
+	 * selected year, as Rank|URL|Average Duration lines.
+	 */
+	public static class AntiJoinVisits extends CoGroupStub<PactWord, PactOLAPRecord, PactNull, PactNull, PactString> {
+
+		OLAPRecord rank = new OLAPRecord();
+
+		@Override
+		public void coGroup(PactWord url, Iterator<PactOLAPRecord> ranks, Iterator<PactNull> visits,
+				Collector<PactNull, PactString> out) {
+			if (visits.hasNext()) {
+				return;
+			}
+			String urlString = null;
+			while (ranks.hasNext()) {
+				PactOLAPRecord record = ranks.next();
+				if (urlString == null) {
+					urlString = url.toString();
+				}
+				rank.setRank(record.getRank(), record.getDuration());
+				out.collect(PactNull.getInstance(), new PactString(rank.toLine(urlString)));
+			}
+		}
+	}
+
+	/**
+	 * Builds a Bloom filter of the URLs of the ranks above the threshold and
+	 * overwrites the filter file, so that a filter of older ranks is never used.
+	 */
+	private static void buildBloomFilter(PlanOptions options, String ranksInput, String bloomFilterPath) throws IOException {
+		Path path = new Path(bloomFilterPath);
+		FileSystem fs = FileSystem.get(path.toUri());
+
+		WordCountTable urls = new WordCountTable(Long.MAX_VALUE);
+		Path input = new Path(ranksInput);
+		FileSystem inputFs = FileSystem.get(input.toUri());
+		FileStatus status = inputFs.getFileStatus(input);
+		FileStatus[] files = (status.isDir() ? inputFs.listStatus(input) : new FileStatus[] { status });
+		for (FileStatus file : files) {
+			if (file.isDir()) {
+				continue;
+			}
+			InputStream in = inputFs.open(file.getPath());
+			try {
+				OLAPRecord.readRankUrls(in, MIN_RANK, urls);
+			} finally {
+				in.close();
+			}
+		}
+
+		BloomFilter filter = BloomFilter.create(urls,
+				Double.parseDouble(options.get(BloomFilter.BLOOM_FILTER_FPP, Double.toString(BloomFilter.DEFAULT_FPP))),
+				Integer.parseInt(options.get(BloomFilter.BLOOM_FILTER_MAX_MB, Integer.toString(BloomFilter.DEFAULT_MAX_MB))) * 1024L * 1024L);
+		OutputStream out = fs.create(path, true);
+		try {
+			filter.writeTo(out);
+		} finally {
+			out.close();
+		}
+		System.out.println(filter + " written to " + bloomFilterPath);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Plan getPlan(String... args) {
+
+		// separate -Dkey=value options from the positional parameters
+		PlanOptions options = new PlanOptions(args);
+		args = options.getRemainingArgs();
+
+		// parse job parameters
+		String docsInput   = (args.length > 0 ? args[0] : "");
+		String ranksInput  = (args.length > 1 ? args[1] : "");
+		String visitsInput = (args.length > 2 ? args[2] : "");
+		String output      = (args.length > 3 ? args[3] : "");
+		int degreeOfParallelism = (args.length > 4 ? Integer.parseInt(args[4]) : 0);
+
+		FileDataSourceContract<PactNull, PactLine> docs = new FileDataSourceContract<PactNull, PactLine>(
+				LineInFormat.class, docsInput, "Documents");
+		FileDataSourceContract<PactNull, PactLine> ranks = new FileDataSourceContract<PactNull, PactLine>(
+				LineInFormat.class, ranksInput, "Ranks");
+		FileDataSourceContract<PactNull, PactLine> visits = new FileDataSourceContract<PactNull, PactLine>(
+				LineInFormat.class, visitsInput, "Visits");
+
+		MapContract<PactNull, PactLine, PactWord, PactNull> filterDocs = new MapContract<PactNull, PactLine, PactWord, PactNull>(
+				FilterDocs.class, "Filter Docs");
+		MapContract<PactNull, PactLine, PactWord, PactOLAPRecord> filterRanks = new MapContract<PactNull, PactLine, PactWord, PactOLAPRecord>(
+				FilterRanks.class, "Filter Ranks");
+		MapContract<PactNull, PactLine, PactWord, PactNull> filterVisits = new MapContract<PactNull, PactLine, PactWord, PactNull>(
+				FilterVisits.class, "Filter Visits");
+
+		MatchContract<PactWord, PactOLAPRecord, PactNull, PactWord, PactOLAPRecord> joinDocsRanks = new MatchContract<PactWord, PactOLAPRecord, PactNull, PactWord, PactOLAPRecord>(
+				JoinDocsRanks.class, "Join Docs and Ranks");
+		CoGroupContract<PactWord, PactOLAPRecord, PactNull, PactNull, PactString> antiJoinVisits = new CoGroupContract<PactWord, PactOLAPRecord, PactNull, PactNull, PactString>(
+				AntiJoinVisits.class, "Anti-join Visits");
+
+		FileDataSinkContract<PactNull, PactString> out = new FileDataSinkContract<PactNull, PactString>(
+				OLAPOutFormat.class, output, "Output To Disk");
+		options.applyTo(filterDocs, out);
+
+		if (Boolean.parseBoolean(options.get(BloomFilter.BLOOM_FILTER, "false"))) {
+			String bloomFilterPath = options.get(BloomFilter.BLOOM_FILTER_PATH, output + "-bloom");
+			try {
+				buildBloomFilter(options, ranksInput, bloomFilterPath);
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Could not build the Bloom filter " + bloomFilterPath, e);
+			}
+			filterVisits.setParameter(BloomFilter.BLOOM_FILTER_PATH, bloomFilterPath);
+		}
+
+		if (degreeOfParallelism > 0) {
+			docs.setDegreeOfParallelism(degreeOfParallelism);
+			ranks.setDegreeOfParallelism(degreeOfParallelism);
+			visits.setDegreeOfParallelism(degreeOfParallelism);
+			filterDocs.setDegreeOfParallelism(degreeOfParallelism);
+			filterRanks.setDegreeOfParallelism(degreeOfParallelism);
+			filterVisits.setDegreeOfParallelism(degreeOfParallelism);
+			joinDocsRanks.setDegreeOfParallelism(degreeOfParallelism);
+			antiJoinVisits.setDegreeOfParallelism(degreeOfParallelism);
+			out.setDegreeOfParallelism(degreeOfParallelism);
+		}
+
+		// assemble the PACT plan
+		filterDocs.setInput(docs);
+		filterRanks.setInput(ranks);
+		filterVisits.setInput(visits);
+		joinDocsRanks.setFirstInput(filterRanks);
+		joinDocsRanks.setSecondInput(filterDocs);
+		antiJoinVisits.setFirstInput(joinDocsRanks);
+		antiJoinVisits.setSecondInput(filterVisits);
+		out.setInput(antiJoinVisits);
+
+		return new Plan(out, "OLAP Query PACT");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getDescription() {
+		return "Parameters: [docsPath] [ranksPath] [visitsPath] [outPath] [degreeOfParallelism] [-D"
+				+ BlockCodec.COMPRESSION_CODEC + "=<codec>] [-D" + KeywordMatcher.KEYWORDS + "=<keywords>] [-D" + BloomFilter.BLOOM_FILTER + "=true] [-D"
+				+ BloomFilter.BLOOM_FILTER_FPP + "=<false positive rate>] [-D" + BloomFilter.BLOOM_FILTER_MAX_MB + "=<max size>]";
+	}
+}
@@ -0,0 +1,79 @@
+package se.kth.emdc.examples.util;
+
+import java.io.IOException;
+
+import se.kth.emdc.examples.compress.BlockCodec;
+import se.kth.emdc.examples.compress.BlockCompressedOutputStream;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.nephele.fs.FSDataOutputStream;
+import eu.stratosphere.pact.common.io.TextOutputFormat;
+import eu.stratosphere.pact.common.type.Key;
+import eu.stratosphere.pact.common.type.Value;
+
+/**
+ * Text output format compressing its file with the codec of the
+ * COMPRESSION_CODEC parameter, unless COMPRESS_OUTPUT is false. Without the
+ * parameter the lines are written as is.
+ *
+ * Compressed files start with the header of a {@link BlockCompressedOutputStream},
+ * so the readers of the output can detect them.
+ */
+public abstract class CompressedTextOutputFormat<K extends Key, V extends Value> extends TextOutputFormat<K, V> {
+
+	private String codecName;
+	private int blockSize;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void configure(Configuration parameters) {
+		super.configure(parameters);
+		codecName = parameters.getString(BlockCodec.COMPRESSION_CODEC, BlockCodec.NONE);
+		if (!parameters.getBoolean(BlockCodec.COMPRESS_OUTPUT, true)) {
+			codecName = BlockCodec.NONE;
+		}
+		blockSize = parameters.getInteger(BlockCodec.COMPRESSION_BLOCK_KB, BlockCodec.DEFAULT_BLOCK_KB) * 1024;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void open(int taskNumber) throws IOException {
+		super.open(taskNumber);
+		BlockCodec codec = BlockCodec.forName(codecName);
+		if (codec != null) {
+			stream = new CompressedStream(new BlockCompressedOutputStream(stream, codec, blockSize));
+		}
+	}
+
+	private static class CompressedStream extends FSDataOutputStream {
+
+		private final BlockCompressedOutputStream out;
+
+		CompressedStream(BlockCompressedOutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,691 @@
+package se.kth.emdc.examples.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import se.kth.emdc.examples.compress.BlockCodec;
+import se.kth.emdc.examples.compress.CompressionStats;
+import se.kth.emdc.examples.compress.DeflateBlockCodec;
+import se.kth.emdc.examples.compress.Lz4BlockCodec;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.nephele.fs.FileSystem;
+import eu.stratosphere.nephele.fs.Path;
+import eu.stratosphere.nephele.template.InputSplit;
+import eu.stratosphere.pact.common.contract.CoGroupContract;
+import eu.stratosphere.pact.common.contract.Contract;
+import eu.stratosphere.pact.common.contract.CrossContract;
+import eu.stratosphere.pact.common.contract.DualInputContract;
+import eu.stratosphere.pact.common.contract.FileDataSinkContract;
+import eu.stratosphere.pact.common.contract.GenericDataSource;
+import eu.stratosphere.pact.common.contract.MapContract;
+import eu.stratosphere.pact.common.contract.MatchContract;
+import eu.stratosphere.pact.common.contract.Order;
+import eu.stratosphere.pact.common.contract.ReduceContract;
+import eu.stratosphere.pact.common.contract.SingleInputContract;
+import eu.stratosphere.pact.common.io.InputFormat;
+import eu.stratosphere.pact.common.io.OutputFormat;
+import eu.stratosphere.pact.common.plan.Plan;
+import eu.stratosphere.pact.common.plan.PlanAssembler;
+import eu.stratosphere.pact.common.stub.CoGroupStub;
+import eu.stratosphere.pact.common.stub.Collector;
+import eu.stratosphere.pact.common.stub.CrossStub;
+import eu.stratosphere.pact.common.stub.MapStub;
+import eu.stratosphere.pact.common.stub.MatchStub;
+import eu.stratosphere.pact.common.stub.ReduceStub;
+import eu.stratosphere.pact.common.stub.Stub;
+import eu.stratosphere.pact.common.type.Key;
+import eu.stratosphere.pact.common.type.KeyValuePair;
+import eu.stratosphere.pact.common.type.Value;
+
+/**
+ * Runs a PACT plan inside the calling JVM, without a Nephele job manager,
+ * so small inputs are not dominated by the deployment of the job. Meant for
+ * tests, small data sets and benchmarking the stubs in isolation.
+ *
+ * The plan is evaluated from its sinks, every contract once. Each contract
+ * runs as many subtasks as its degree of parallelism (the executor's
+ * parallelism when it is not set), on a thread pool with one thread per
+ * core. Records are serialized when they are collected, like between two
+ * Nephele tasks, so stubs may reuse their output objects, and every record
+ * is deserialized into new objects for the consumer.
+ *
+ * Local strategies:
+ * <ul>
+ * <li>Map: records are forwarded, or redistributed round-robin when the
+ * degree of parallelism changes.</li>
+ * <li>Reduce: hash partitioning on the key, then sort and group. Combinable
+ * stubs are run as combiners on each input partition first.</li>
+ * <li>Match: hash partitioning of both inputs, then a hash join building on
+ * the first input.</li>
+ * <li>CoGroup: hash partitioning of both inputs, then a sort-merge on the key.</li>
+ * <li>Cross: the first input is partitioned, the second broadcast to every
+ * subtask.</li>
+ * </ul>
+ * Sinks with a degree of parallelism above one write one file per subtask
+ * into the output directory, as on a cluster.
+ */
+public class LocalExecutor implements PlanExecutor {
+
+	private static final Log LOG = LogFactory.getLog(LocalExecutor.class);
+
+	/** Option with the number of threads of {@link #main(String[])}. */
+	public static final String LOCAL_PARALLELISM = "LOCAL_PARALLELISM";
+
+	private final int parallelism;
+
+	// set while a plan runs
+	private ExecutorService threads;
+	private Map<Contract, DataSet> results;
+
+	public LocalExecutor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param parallelism the number of threads, and the degree of
+	 *        parallelism of the contracts that do not set one
+	 */
+	public LocalExecutor(int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("The parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void executePlan(Plan plan) throws Exception {
+		threads = Executors.newFixedThreadPool(parallelism);
+		results = new IdentityHashMap<Contract, DataSet>();
+		CompressionStats before = CompressionStats.snapshot();
+		try {
+			for (FileDataSinkContract<?, ?> sink : plan.getDataSinks()) {
+				writeSink(sink, evaluate(sink.getInput()));
+			}
+
+			CompressionStats compression = CompressionStats.snapshot().since(before);
+			if (compression.getRawBytes() > 0) {
+				LOG.info(plan.getJobName() + ": " + compression);
+			}
+		} finally {
+			threads.shutdownNow();
+			threads = null;
+			results = null;
+		}
+	}
+
+	/**
+	 * The serialized records produced by a contract, one list per subtask.
+	 */
+	private static class DataSet {
+
+		final Class<? extends Key> keyClass;
+		final Class<? extends Value> valueClass;
+		final List<List<byte[]>> partitions;
+
+		DataSet(Class<? extends Key> keyClass, Class<? extends Value> valueClass, List<List<byte[]>> partitions) {
+			this.keyClass = keyClass;
+			this.valueClass = valueClass;
+			this.partitions = partitions;
+		}
+
+		long size() {
+			long size = 0;
+			for (List<byte[]> partition : partitions) {
+				size += partition.size();
+			}
+			return size;
+		}
+
+		Key readKey(byte[] record) throws IOException {
+			Key key = newInstance(keyClass);
+			key.read(new DataInputStream(new ByteArrayInputStream(record)));
+			return key;
+		}
+
+		KeyValuePair<Key, Value> read(byte[] record) throws IOException {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+			Key key = newInstance(keyClass);
+			key.read(in);
+			Value value = newInstance(valueClass);
+			value.read(in);
+			return new KeyValuePair<Key, Value>(key, value);
+		}
+
+		List<KeyValuePair<Key, Value>> read(List<byte[]> partition) throws IOException {
+			List<KeyValuePair<Key, Value>> pairs = new ArrayList<KeyValuePair<Key, Value>>(partition.size());
+			for (byte[] record : partition) {
+				pairs.add(read(record));
+			}
+			return pairs;
+		}
+	}
+
+	/**
+	 * Serializes the collected records of a subtask.
+	 */
+	private static class RecordCollector implements Collector<Key, Value> {
+
+		private final List<byte[]> records = new ArrayList<byte[]>();
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(buffer);
+
+		@Override
+		public void collect(Key key, Value value) {
+			buffer.reset();
+			try {
+				key.write(out);
+				value.write(out);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not serialize the record (" + key + ", " + value + ")", e);
+			}
+			records.add(buffer.toByteArray());
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * The work of one subtask of a contract.
+	 */
+	private interface Subtask {
+		void run(int index, RecordCollector out) throws Exception;
+	}
+
+	private DataSet evaluate(Contract contract) throws Exception {
+		DataSet result = results.get(contract);
+		if (result != null) {
+			return result;
+		}
+
+		long start = System.currentTimeMillis();
+		if (contract instanceof GenericDataSource) {
+			result = readSource((GenericDataSource<?, ?>) contract);
+		} else if (contract instanceof MapContract) {
+			result = runMap((SingleInputContract<?, ?, ?, ?>) contract);
+		} else if (contract instanceof ReduceContract) {
+			result = runReduce((ReduceContract<?, ?, ?, ?>) contract);
+		} else if (contract instanceof MatchContract) {
+			result = runMatch((DualInputContract<?, ?, ?, ?, ?, ?>) contract);
+		} else if (contract instanceof CoGroupContract) {
+			result = runCoGroup((DualInputContract<?, ?, ?, ?, ?, ?>) contract);
+		} else if (contract instanceof CrossContract) {
+			result = runCross((DualInputContract<?, ?, ?, ?, ?, ?>) contract);
+		} else {
+			throw new IllegalArgumentException("Unsupported contract: " + contract.getClass().getName());
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug(contract.getName() + ": " + result.size() + " records in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		}
+
+		results.put(contract, result);
+		return result;
+	}
+
+	private int getParallelism(Contract contract) {
+		return (contract.getDegreeOfParallelism() > 0 ? contract.getDegreeOfParallelism() : parallelism);
+	}
+
+	/**
+	 * Runs the subtasks of a contract on the thread pool and returns the
+	 * records of each subtask.
+	 */
+	private List<List<byte[]>> run(int subtasks, final Subtask subtask) throws Exception {
+		List<Future<List<byte[]>>> futures = new ArrayList<Future<List<byte[]>>>(subtasks);
+		for (int i = 0; i < subtasks; i++) {
+			final int index = i;
+			futures.add(threads.submit(new Callable<List<byte[]>>() {
+				@Override
+				public List<byte[]> call() throws Exception {
+					RecordCollector out = new RecordCollector();
+					subtask.run(index, out);
+					return out.records;
+				}
+			}));
+		}
+
+		List<List<byte[]>> partitions = new ArrayList<List<byte[]>>(subtasks);
+		try {
+			for (Future<List<byte[]>> future : futures) {
+				partitions.add(future.get());
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+		return partitions;
+	}
+
+	@SuppressWarnings("unchecked")
+	private DataSet readSource(GenericDataSource<?, ?> source) throws Exception {
+		final Class<? extends InputFormat<InputSplit, Key, Value>> formatClass = (Class<? extends InputFormat<InputSplit, Key, Value>>) source.getFormatClass();
+		final Configuration parameters = source.getParameters();
+		final int subtasks = getParallelism(source);
+
+		InputFormat<InputSplit, Key, Value> format = newInstance(formatClass);
+		format.configure(parameters);
+		final InputSplit[] splits = format.createInputSplits(subtasks);
+		KeyValuePair<Key, Value> pair = format.createPair();
+
+		// the splits are assigned round-robin to the subtasks
+		List<List<byte[]>> partitions = run(subtasks, new Subtask() {
+			@Override
+			public void run(int index, RecordCollector out) throws Exception {
+				InputFormat<InputSplit, Key, Value> format = newInstance(formatClass);
+				format.configure(parameters);
+				for (int i = index; i < splits.length; i += subtasks) {
+					format.open(splits[i]);
+					try {
+						while (!format.reachedEnd()) {
+							KeyValuePair<Key, Value> pair = format.createPair();
+							if (format.nextRecord(pair)) {
+								out.collect(pair.getKey(), pair.getValue());
+							}
+						}
+					} finally {
+						format.close();
+					}
+				}
+			}
+		});
+		return new DataSet(pair.getKey().getClass(), pair.getValue().getClass(), partitions);
+	}
+
+	@SuppressWarnings("unchecked")
+	private DataSet runMap(final SingleInputContract<?, ?, ?, ?> contract) throws Exception {
+		final DataSet input = redistribute(evaluate(contract.getInput()), getParallelism(contract));
+
+		List<List<byte[]>> partitions = run(input.partitions.size(), new Subtask() {
+			@Override
+			public void run(int index, RecordCollector out) throws Exception {
+				MapStub<Key, Value, Key, Value> stub = (MapStub<Key, Value, Key, Value>) createStub(contract);
+				for (byte[] record : input.partitions.get(index)) {
+					KeyValuePair<Key, Value> pair = input.read(record);
+					stub.map(pair.getKey(), pair.getValue(), out);
+				}
+				stub.close();
+			}
+		});
+		return output(contract, partitions);
+	}
+
+	@SuppressWarnings("unchecked")
+	private DataSet runReduce(final ReduceContract<?, ?, ?, ?> contract) throws Exception {
+		DataSet input = evaluate(contract.getInput());
+
+		if (contract.isCombinable()) {
+			// combine the records of each producer before they are shuffled
+			final DataSet uncombined = input;
+			List<List<byte[]>> combined = run(uncombined.partitions.size(), new Subtask() {
+				@Override
+				public void run(int index, RecordCollector out) throws Exception {
+					ReduceStub<Key, Value, Key, Value> stub = (ReduceStub<Key, Value, Key, Value>) createStub(contract);
+					for (List<KeyValuePair<Key, Value>> group : groups(uncombined.read(uncombined.partitions.get(index)))) {
+						stub.combine(group.get(0).getKey(), values(group), out);
+					}
+					stub.close();
+				}
+			});
+			input = new DataSet(input.keyClass, input.valueClass, combined);
+		}
+
+		final DataSet partitioned = partition(input, getParallelism(contract));
+		List<List<byte[]>> partitions = run(partitioned.partitions.size(), new Subtask() {
+			@Override
+			public void run(int index, RecordCollector out) throws Exception {
+				ReduceStub<Key, Value, Key, Value> stub = (ReduceStub<Key, Value, Key, Value>) createStub(contract);
+				for (List<KeyValuePair<Key, Value>> group : groups(partitioned.read(partitioned.partitions.get(index)))) {
+					stub.reduce(group.get(0).getKey(), values(group), out);
+				}
+				stub.close();
+			}
+		});
+		return output(contract, partitions);
+	}
+
+	@SuppressWarnings("unchecked")
+	private DataSet runMatch(final DualInputContract<?, ?, ?, ?, ?, ?> contract) throws Exception {
+		int subtasks = getParallelism(contract);
+		final DataSet first = partition(evaluate(contract.getFirstInput()), subtasks);
+		final DataSet second = partition(evaluate(contract.getSecondInput()), subtasks);
+
+		List<List<byte[]>> partitions = run(subtasks, new Subtask() {
+			@Override
+			public void run(int index, RecordCollector out) throws Exception {
+				MatchStub<Key, Value, Value, Key, Value> stub = (MatchStub<Key, Value, Value, Key, Value>) createStub(contract);
+
+				// build side
+				Map<Key, List<Value>> table = new HashMap<Key, List<Value>>();
+				for (byte[] record : first.partitions.get(index)) {
+					KeyValuePair<Key, Value> pair = first.read(record);
+					List<Value> values = table.get(pair.getKey());
+					if (values == null) {
+						values = new ArrayList<Value>(1);
+						table.put(pair.getKey(), values);
+					}
+					values.add(pair.getValue());
+				}
+
+				// probe side
+				for (byte[] record : second.partitions.get(index)) {
+					KeyValuePair<Key, Value> pair = second.read(record);
+					List<Value> values = table.get(pair.getKey());
+					if (values != null) {
+						for (Value value : values) {
+							stub.match(pair.getKey(), value, pair.getValue(), out);
+						}
+					}
+				}
+				stub.close();
+			}
+		});
+		return output(contract, partitions);
+	}
+
+	@SuppressWarnings("unchecked")
+	private DataSet runCoGroup(final DualInputContract<?, ?, ?, ?, ?, ?> contract) throws Exception {
+		int subtasks = getParallelism(contract);
+		final DataSet first = partition(evaluate(contract.getFirstInput()), subtasks);
+		final DataSet second = partition(evaluate(contract.getSecondInput()), subtasks);
+
+		List<List<byte[]>> partitions = run(subtasks, new Subtask() {
+			@Override
+			public void run(int index, RecordCollector out) throws Exception {
+				CoGroupStub<Key, Value, Value, Key, Value> stub = (CoGroupStub<Key, Value, Value, Key, Value>) createStub(contract);
+				List<Value> none = Collections.emptyList();
+
+				Iterator<List<KeyValuePair<Key, Value>>> groups1 = groups(first.read(first.partitions.get(index))).iterator();
+				Iterator<List<KeyValuePair<Key, Value>>> groups2 = groups(second.read(second.partitions.get(index))).iterator();
+				List<KeyValuePair<Key, Value>> group1 = (groups1.hasNext() ? groups1.next() : null);
+				List<KeyValuePair<Key, Value>> group2 = (groups2.hasNext() ? groups2.next() : null);
+
+				// merge the groups of both inputs in key order
+				while (group1 != null || group2 != null) {
+					int c = (group1 == null ? 1 : (group2 == null ? -1 : group1.get(0).getKey().compareTo(group2.get(0).getKey())));
+					if (c < 0) {
+						stub.coGroup(group1.get(0).getKey(), values(group1), none.iterator(), out);
+						group1 = (groups1.hasNext() ? groups1.next() : null);
+					} else if (c > 0) {
+						stub.coGroup(group2.get(0).getKey(), none.iterator(), values(group2), out);
+						group2 = (groups2.hasNext() ? groups2.next() : null);
+					} else {
+						stub.coGroup(group1.get(0).getKey(), values(group1), values(group2), out);
+						group1 = (groups1.hasNext() ? groups1.next() : null);
+						group2 = (groups2.hasNext() ? groups2.next() : null);
+					}
+				}
+				stub.close();
+			}
+		});
+		return output(contract, partitions);
+	}
+
+	@SuppressWarnings("unchecked")
+	private DataSet runCross(final DualInputContract<?, ?, ?, ?, ?, ?> contract) throws Exception {
+		final DataSet first = redistribute(evaluate(contract.getFirstInput()), getParallelism(contract));
+		final DataSet second = evaluate(contract.getSecondInput());
+
+		List<List<byte[]>> partitions = run(first.partitions.size(), new Subtask() {
+			@Override
+			public void run(int index, RecordCollector out) throws Exception {
+				CrossStub<Key, Value, Key, Value, Key, Value> stub = (CrossStub<Key, Value, Key, Value, Key, Value>) createStub(contract);
+
+				// the second input is broadcast to every subtask
+				List<KeyValuePair<Key, Value>> broadcast = new ArrayList<KeyValuePair<Key, Value>>();
+				for (List<byte[]> partition : second.partitions) {
+					broadcast.addAll(second.read(partition));
+				}
+
+				for (byte[] record : first.partitions.get(index)) {
+					KeyValuePair<Key, Value> pair = first.read(record);
+					for (KeyValuePair<Key, Value> other : broadcast) {
+						stub.cross(pair.getKey(), pair.getValue(), other.getKey(), other.getValue(), out);
+					}
+				}
+				stub.close();
+			}
+		});
+		return output(contract, partitions);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void writeSink(final FileDataSinkContract<?, ?> sink, DataSet result) throws Exception {
+		final DataSet input = redistribute(result, getParallelism(sink));
+		final Class<? extends OutputFormat<Key, Value>> formatClass = (Class<? extends OutputFormat<Key, Value>>) sink.getFormatClass();
+
+		// like on a cluster, parallel sinks write one file per subtask into a directory
+		if (input.partitions.size() > 1) {
+			Path path = new Path(sink.getFilePath());
+			FileSystem fs = FileSystem.get(path.toUri());
+			if (fs.exists(path) && !fs.getFileStatus(path).isDir()) {
+				fs.delete(path, false);
+			}
+			fs.mkdirs(path);
+		}
+
+		long start = System.currentTimeMillis();
+		run(input.partitions.size(), new Subtask() {
+			@Override
+			public void run(int index, RecordCollector out) throws Exception {
+				List<KeyValuePair<Key, Value>> pairs = input.read(input.partitions.get(index));
+				Order order = sink.getLocalOrder();
+				if (order == Order.ASCENDING || order == Order.DESCENDING) {
+					Collections.sort(pairs, BY_KEY);
+					if (order == Order.DESCENDING) {
+						Collections.reverse(pairs);
+					}
+				}
+
+				OutputFormat<Key, Value> format = newInstance(formatClass);
+				format.configure(sink.getParameters());
+				format.open(index + 1);
+				try {
+					for (KeyValuePair<Key, Value> pair : pairs) {
+						format.writeRecord(pair);
+					}
+				} finally {
+					format.close();
+				}
+			}
+		});
+		LOG.info(sink.getName() + ": " + input.size() + " records written in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+
+	private static Stub<?, ?> createStub(Contract contract) throws Exception {
+		Stub<?, ?> stub = (Stub<?, ?>) newInstance(contract.getUserCodeClass());
+		stub.configure(contract.getParameters());
+		stub.open();
+		return stub;
+	}
+
+	/**
+	 * @return the data set with the record types of the stub output
+	 */
+	private static DataSet output(Contract contract, List<List<byte[]>> partitions) throws Exception {
+		Stub<?, ?> stub = (Stub<?, ?>) newInstance(contract.getUserCodeClass());
+		return new DataSet(stub.getOutKeyType(), stub.getOutValueType(), partitions);
+	}
+
+	/**
+	 * Forwards the partitions when their number does not change, otherwise
+	 * deals the records round-robin.
+	 */
+	private static DataSet redistribute(DataSet input, int subtasks) {
+		if (input.partitions.size() == subtasks) {
+			return input;
+		}
+		List<List<byte[]>> partitions = newPartitions(subtasks);
+		int next = 0;
+		for (List<byte[]> partition : input.partitions) {
+			for (byte[] record : partition) {
+				partitions.get(next).add(record);
+				next = (next + 1) % subtasks;
+			}
+		}
+		return new DataSet(input.keyClass, input.valueClass, partitions);
+	}
+
+	/**
+	 * Hash partitions the records on their key.
+	 */
+	private DataSet partition(final DataSet input, final int subtasks) throws Exception {
+		List<List<byte[]>> partitions = newPartitions(subtasks);
+
+		// each producer partition is split in parallel, then the pieces are concatenated
+		List<Future<List<List<byte[]>>>> futures = new ArrayList<Future<List<List<byte[]>>>>();
+		for (final List<byte[]> partition : input.partitions) {
+			futures.add(threads.submit(new Callable<List<List<byte[]>>>() {
+				@Override
+				public List<List<byte[]>> call() throws Exception {
+					List<List<byte[]>> pieces = newPartitions(subtasks);
+					for (byte[] record : partition) {
+						int hash = input.readKey(record).hashCode();
+						pieces.get((hash & Integer.MAX_VALUE) % subtasks).add(record);
+					}
+					return pieces;
+				}
+			}));
+		}
+		try {
+			for (Future<List<List<byte[]>>> future : futures) {
+				List<List<byte[]>> pieces = future.get();
+				for (int i = 0; i < subtasks; i++) {
+					partitions.get(i).addAll(pieces.get(i));
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+		return new DataSet(input.keyClass, input.valueClass, partitions);
+	}
+
+	private static List<List<byte[]>> newPartitions(int count) {
+		List<List<byte[]>> partitions = new ArrayList<List<byte[]>>(count);
+		for (int i = 0; i < count; i++) {
+			partitions.add(new ArrayList<byte[]>());
+		}
+		return partitions;
+	}
+
+	private static final Comparator<KeyValuePair<Key, Value>> BY_KEY = new Comparator<KeyValuePair<Key, Value>>() {
+		@Override
+		public int compare(KeyValuePair<Key, Value> p1, KeyValuePair<Key, Value> p2) {
+			return p1.getKey().compareTo(p2.getKey());
+		}
+	};
+
+	/**
+	 * Sorts the pairs on their key and splits them into groups of equal keys.
+	 */
+	private static List<List<KeyValuePair<Key, Value>>> groups(List<KeyValuePair<Key, Value>> pairs) {
+		Collections.sort(pairs, BY_KEY);
+
+		List<List<KeyValuePair<Key, Value>>> groups = new ArrayList<List<KeyValuePair<Key, Value>>>();
+		int start = 0;
+		for (int i = 1; i <= pairs.size(); i++) {
+			if (i == pairs.size() || pairs.get(i).getKey().compareTo(pairs.get(start).getKey()) != 0) {
+				groups.add(pairs.subList(start, i));
+				start = i;
+			}
+		}
+		return groups;
+	}
+
+	private static Iterator<Value> values(final List<KeyValuePair<Key, Value>> group) {
+		return new Iterator<Value>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < group.size();
+			}
+
+			@Override
+			public Value next() {
+				return group.get(next++).getValue();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private static <T> T newInstance(Class<T> clazz) {
+		try {
+			return clazz.newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException("Could not instantiate " + clazz.getName(), e);
+		}
+	}
+
+	/**
+	 * Runs a plan assembler locally.
+	 * Parameters: [assemblerClass] [plan arguments...] [-DLOCAL_PARALLELISM=cores]
+	 * [-DCOMPRESSION_CODEC=none|lz4|deflate]
+	 *
+	 * The compression options are also set on the sinks of plans that do not
+	 * pass their options to them.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: LocalExecutor <assemblerClass> [plan arguments...] [-D" + LOCAL_PARALLELISM + "=<threads>]"
+					+ " [-D" + BlockCodec.COMPRESSION_CODEC + "=" + BlockCodec.NONE + "|" + Lz4BlockCodec.NAME + "|" + DeflateBlockCodec.NAME + "]");
+			System.exit(2);
+		}
+
+		PlanOptions options = new PlanOptions(args);
+		int parallelism = Integer.parseInt(options.get(LOCAL_PARALLELISM,
+				Integer.toString(Runtime.getRuntime().availableProcessors())));
+
+		PlanAssembler assembler = Class.forName(args[0]).asSubclass(PlanAssembler.class).newInstance();
+		String[] planArgs = Arrays.copyOfRange(args, 1, args.length);
+		Plan plan = assembler.getPlan(planArgs);
+		for (FileDataSinkContract<?, ?> sink : plan.getDataSinks()) {
+			for (String option : new String[] { BlockCodec.COMPRESSION_CODEC, BlockCodec.COMPRESS_OUTPUT, BlockCodec.COMPRESSION_BLOCK_KB }) {
+				if (options.contains(option) && sink.getParameters().getString(option, null) == null) {
+					sink.setParameter(option, options.get(option, null));
+				}
+			}
+		}
+
+		long start = System.currentTimeMillis();
+		new LocalExecutor(parallelism).executePlan(plan);
+		if (assembler instanceof SideOutputMerger) {
+			((SideOutputMerger) assembler).mergeSideOutputs(planArgs);
+		}
+		System.out.println(plan.getJobName() + " executed in " + (System.currentTimeMillis() - start) + " ms");
+	}
+}
@@ -0,0 +1,138 @@
+package se.kth.emdc.examples.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import se.kth.emdc.examples.wordcount.WordDictionary;
+import eu.stratosphere.pact.common.type.Key;
+
+/**
+ * Word key of the dictionary encoded word count: the id of the word in the
+ * {@link WordDictionary} or, for the words that are not in the dictionary,
+ * its bytes. Two ids are compared as ints, and ids are ordered before
+ * words, so the reducers see the keys in id order and not alphabetically.
+ *
+ * Serialized as a variable length int holding 2 * id, or 2 * length + 1
+ * followed by the bytes of the word, so the ids of the most frequent words
+ * take a single byte.
+ */
+public class PactEncodedWord implements Key {
+
+	private int id = -1;
+	private final PactWord word = new PactWord();
+
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	public void setWord(byte[] src, int offset, int length) {
+		this.id = -1;
+		this.word.set(src, offset, length);
+	}
+
+	/**
+	 * @return the id of the word, or -1 if the word is not in the dictionary
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Sets the given key to the decoded word.
+	 */
+	public void decode(WordDictionary dictionary, PactWord into) {
+		if (id >= 0) {
+			into.set(dictionary.getWords(), dictionary.getWordStart(id), dictionary.getWordLength(id));
+		} else {
+			into.set(word.getBytes(), 0, word.getLength());
+		}
+	}
+
+	@Override
+	public void read(DataInput in) throws IOException {
+		int n = readVarInt(in);
+		if ((n & 1) == 0) {
+			id = n >>> 1;
+		} else {
+			id = -1;
+			int length = n >>> 1;
+			byte[] bytes = word.getBytes();
+			if (bytes.length < length) {
+				bytes = new byte[length];
+			}
+			in.readFully(bytes, 0, length);
+			word.set(bytes, 0, length);
+		}
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		if (id >= 0) {
+			writeVarInt(out, id << 1);
+		} else {
+			writeVarInt(out, (word.getLength() << 1) | 1);
+			out.write(word.getBytes(), 0, word.getLength());
+		}
+	}
+
+	private static void writeVarInt(DataOutput out, int n) throws IOException {
+		while ((n & ~0x7F) != 0) {
+			out.writeByte((n & 0x7F) | 0x80);
+			n >>>= 7;
+		}
+		out.writeByte(n);
+	}
+
+	private static int readVarInt(DataInput in) throws IOException {
+		int n = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = in.readUnsignedByte();
+			n |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return n;
+			}
+		}
+	}
+
+	@Override
+	public int compareTo(Key o) {
+		if (!(o instanceof PactEncodedWord)) {
+			return -1;
+		}
+		PactEncodedWord other = (PactEncodedWord) o;
+
+		if (id >= 0 || other.id >= 0) {
+			if (id < 0) {
+				return 1;
+			}
+			if (other.id < 0) {
+				return -1;
+			}
+			return (id < other.id ? -1 : (id == other.id ? 0 : 1));
+		}
+		return word.compareTo(other.word);
+	}
+
+	@Override
+	public int hashCode() {
+		return (id >= 0 ? id : word.hashCode());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof PactEncodedWord))
+			return false;
+		PactEncodedWord other = (PactEncodedWord) obj;
+		if (id >= 0 || other.id >= 0)
+			return id == other.id;
+		return word.equals(other.word);
+	}
+
+	@Override
+	public String toString() {
+		return (id >= 0 ? "#" + id : word.toString());
+	}
+}
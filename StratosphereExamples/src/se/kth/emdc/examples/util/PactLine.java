@@ -0,0 +1,61 @@
+package se.kth.emdc.examples.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import eu.stratosphere.pact.common.type.Value;
+
+/**
+ * A line of text kept as the raw bytes read by the input format, so the
+ * mappers can work on the bytes without decoding them into a String.
+ */
+public class PactLine implements Value {
+
+	private byte[] bytes;
+	private int length;
+
+	public PactLine() {
+		this.bytes = new byte[0];
+		this.length = 0;
+	}
+
+	/**
+	 * Wraps a line without copying it.
+	 */
+	public PactLine(byte[] bytes) {
+		this.bytes = bytes;
+		this.length = bytes.length;
+	}
+
+	/**
+	 * @return the buffer holding the line in its first {@link #getLength()} bytes
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	@Override
+	public void read(DataInput in) throws IOException {
+		length = in.readInt();
+		if (bytes.length < length) {
+			bytes = new byte[length];
+		}
+		in.readFully(bytes, 0, length);
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(length);
+		out.write(bytes, 0, length);
+	}
+
+	@Override
+	public String toString() {
+		return new String(bytes, 0, length);
+	}
+}
@@ -0,0 +1,126 @@
+package se.kth.emdc.examples.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import se.kth.emdc.examples.wordcount.NormalizedKey;
+import eu.stratosphere.pact.common.type.Key;
+
+/**
+ * A word kept as bytes. Replaces PactString as the key of the word counts:
+ * it is filled straight from the tokenized line, can be reused for every
+ * word and compares its bytes without decoding them. Words are ordered by
+ * their unsigned bytes, which is the same order as PactString for ASCII
+ * words.
+ *
+ * The {@link NormalizedKey} prefix of the word is kept next to its bytes,
+ * so comparing two words that differ in their first eight bytes is a
+ * single long compare.
+ */
+public class PactWord implements Key {
+
+	private byte[] bytes;
+	private int length;
+	private long prefix;
+
+	public PactWord() {
+		this.bytes = new byte[16];
+		this.length = 0;
+	}
+
+	public PactWord(String word) {
+		this();
+		byte[] wordBytes = word.getBytes();
+		set(wordBytes, 0, wordBytes.length);
+	}
+
+	/**
+	 * Copies a word into this key, reusing its buffer when it is large enough.
+	 */
+	public void set(byte[] src, int offset, int length) {
+		if (bytes.length < length) {
+			bytes = new byte[Math.max(length, bytes.length * 2)];
+		}
+		System.arraycopy(src, offset, bytes, 0, length);
+		this.length = length;
+		this.prefix = NormalizedKey.prefix(bytes, 0, length);
+	}
+
+	/**
+	 * @return the buffer holding the word in its first {@link #getLength()} bytes
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the first eight bytes of the word packed into a long, see {@link NormalizedKey}
+	 */
+	public long getPrefix() {
+		return prefix;
+	}
+
+	@Override
+	public void read(DataInput in) throws IOException {
+		length = in.readInt();
+		if (bytes.length < length) {
+			bytes = new byte[length];
+		}
+		in.readFully(bytes, 0, length);
+		prefix = NormalizedKey.prefix(bytes, 0, length);
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(length);
+		out.write(bytes, 0, length);
+	}
+
+	@Override
+	public int compareTo(Key o) {
+		if (!(o instanceof PactWord)) {
+			return -1;
+		}
+		PactWord other = (PactWord) o;
+
+		if (prefix != other.prefix) {
+			return NormalizedKey.compare(prefix, other.prefix);
+		}
+		return NormalizedKey.compareTail(bytes, 0, length, other.bytes, 0, other.length);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 1;
+		for (int i = 0; i < length; i++) {
+			result = 31 * result + bytes[i];
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof PactWord))
+			return false;
+		PactWord other = (PactWord) obj;
+		if (length != other.length || prefix != other.prefix)
+			return false;
+		for (int i = NormalizedKey.PREFIX_LENGTH; i < length; i++) {
+			if (bytes[i] != other.bytes[i])
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return new String(bytes, 0, length);
+	}
+}
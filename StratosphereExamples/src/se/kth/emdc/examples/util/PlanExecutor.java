@@ -0,0 +1,19 @@
+package se.kth.emdc.examples.util;
+
+import eu.stratosphere.pact.common.plan.Plan;
+
+/**
+ * Runs a PACT plan to completion from within the calling JVM. Used by the
+ * drivers that submit several plans in a row (e.g. the k-means iterations).
+ * Implementations need a public no-argument constructor, so they can be
+ * selected by class name on the command line.
+ */
+public interface PlanExecutor {
+
+	/**
+	 * Executes the plan and blocks until all its sinks are written.
+	 * @param plan the plan to execute
+	 * @throws Exception if the plan could not be executed
+	 */
+	void executePlan(Plan plan) throws Exception;
+}
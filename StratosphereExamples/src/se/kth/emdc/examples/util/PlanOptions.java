@@ -0,0 +1,62 @@
+package se.kth.emdc.examples.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.stratosphere.pact.common.contract.Contract;
+
+/**
+ * Separates generic options of the form -Dkey=value from the positional
+ * arguments of a plan, like Hadoop's GenericOptionsParser does for jobs.
+ * The options can then be passed to the contracts as stub parameters, e.g.
+ * the filters of DocsRanksDataInFormat to the sources of the join examples,
+ * while the plan reads its paths and degrees of parallelism from
+ * {@link #getRemainingArgs()}.
+ */
+public class PlanOptions {
+
+	private final Map<String, String> options = new LinkedHashMap<String, String>();
+	private final String[] remainingArgs;
+
+	public PlanOptions(String... args) {
+		List<String> remaining = new ArrayList<String>(args.length);
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (arg.startsWith("-D") && eq > 2) {
+				options.put(arg.substring(2, eq), arg.substring(eq + 1));
+			} else {
+				remaining.add(arg);
+			}
+		}
+		remainingArgs = remaining.toArray(new String[remaining.size()]);
+	}
+
+	/**
+	 * @return the arguments that are not generic options, in their original order
+	 */
+	public String[] getRemainingArgs() {
+		return remainingArgs;
+	}
+
+	public String get(String key, String defaultValue) {
+		String value = options.get(key);
+		return (value == null ? defaultValue : value);
+	}
+
+	public boolean contains(String key) {
+		return options.containsKey(key);
+	}
+
+	/**
+	 * Sets every option as a parameter of the given contracts.
+	 */
+	public void applyTo(Contract... contracts) {
+		for (Contract contract : contracts) {
+			for (Map.Entry<String, String> option : options.entrySet()) {
+				contract.setParameter(option.getKey(), option.getValue());
+			}
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package se.kth.emdc.examples.util;
+
+import java.io.IOException;
+
+/**
+ * A plan assembler whose plans write partial results next to their output,
+ * which the caller merges once the plan ran, after
+ * {@link PlanExecutor#executePlan(eu.stratosphere.pact.common.plan.Plan)}
+ * returned.
+ */
+public interface SideOutputMerger {
+
+	/**
+	 * Merges the side outputs of the plan assembled from the same arguments.
+	 * Does nothing if the plan did not write any.
+	 * @param args the arguments the plan was assembled from
+	 * @throws IOException if the side outputs could not be merged
+	 */
+	void mergeSideOutputs(String... args) throws IOException;
+}
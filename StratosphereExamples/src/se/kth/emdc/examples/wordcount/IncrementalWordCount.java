@@ -0,0 +1,154 @@
+package se.kth.emdc.examples.wordcount;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import se.kth.emdc.examples.compress.BlockCompressedInputStream;
+import se.kth.emdc.examples.util.PlanExecutor;
+import se.kth.emdc.examples.util.PlanOptions;
+import eu.stratosphere.nephele.fs.FileStatus;
+import eu.stratosphere.nephele.fs.FileSystem;
+import eu.stratosphere.nephele.fs.Path;
+import eu.stratosphere.pact.common.plan.Plan;
+
+/**
+ * Word count over a growing set of documents. Only the new documents are
+ * counted, by the {@link WordCount} plan run on a {@link PlanExecutor},
+ * and their counts are merged into the index of the previous runs kept in
+ * the index directory.
+ *
+ * @see CountIndexFile
+ */
+public class IncrementalWordCount {
+
+	private static final String DELTA_DIRECTORY = "_delta";
+
+	/**
+	 * @return the latest complete generation of the index in the directory, -1 if there is none
+	 */
+	public static int findGeneration(FileSystem fs, Path indexPath) throws IOException {
+		int generation = -1;
+		if (fs.exists(indexPath)) {
+			for (FileStatus status : fs.listStatus(indexPath)) {
+				int candidate = CountIndexFile.parseGeneration(status.getPath().getName());
+				if (candidate > generation && isComplete(fs, status)) {
+					generation = candidate;
+				}
+			}
+		}
+		return generation;
+	}
+
+	private static boolean isComplete(FileSystem fs, FileStatus status) throws IOException {
+		InputStream in = fs.open(status.getPath());
+		try {
+			return CountIndexFile.isComplete(in, status.getLen());
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Merges the output of the word count plan, either a single file or a
+	 * folder with one file per sink subtask, into the index directory,
+	 * writing its next generation and deleting the previous one. The file
+	 * system cannot rename, so the next generation is written under its
+	 * name and deleted if the merge fails; {@link #findGeneration} skips it
+	 * if the process dies before.
+	 */
+	public static void merge(Path deltaPath, Path indexPath, int wordsPerBlock) throws IOException {
+		CountIndexMerger merger = new CountIndexMerger();
+		FileSystem deltaFs = FileSystem.get(deltaPath.toUri());
+		FileStatus delta = deltaFs.getFileStatus(deltaPath);
+		FileStatus[] files = (delta.isDir() ? deltaFs.listStatus(deltaPath) : new FileStatus[] { delta });
+		for (FileStatus file : files) {
+			if (!file.isDir()) {
+				InputStream in = BlockCompressedInputStream.open(deltaFs.open(file.getPath()));
+				try {
+					merger.readDelta(in);
+				} finally {
+					in.close();
+				}
+			}
+		}
+
+		FileSystem fs = FileSystem.get(indexPath.toUri());
+		if (!fs.exists(indexPath)) {
+			fs.mkdirs(indexPath);
+		}
+		int generation = findGeneration(fs, indexPath);
+		Path previousPath = new Path(indexPath, CountIndexFile.getGenerationName(generation));
+		Path nextPath = new Path(indexPath, CountIndexFile.getGenerationName(generation + 1));
+		CountIndexReader previous = (generation < 0 ? null : new CountIndexReader(fs.open(previousPath)));
+		OutputStream out = fs.create(nextPath, true);
+		CountIndexWriter next = null;
+		boolean merged = false;
+		try {
+			next = new CountIndexWriter(out, wordsPerBlock);
+			merger.merge(previous, next);
+			merged = true;
+		} finally {
+			if (previous != null) {
+				previous.close();
+			}
+			if (!merged) {
+				out.close();
+				fs.delete(nextPath, false);
+			}
+		}
+		if (generation >= 0) {
+			fs.delete(previousPath, false);
+		}
+
+		System.out.println("Merged " + merger.getDeltaWords() + " words into " + nextPath + ": " + merger.getNewWords()
+				+ " new words, " + next.getWords() + " words and " + next.getTotalCount() + " occurrences in total");
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		if (args.length < 3) {
+			System.err.println("Usage: " + IncrementalWordCount.class.getName() + " <executorClass> <newDocuments> <indexDirectory> [planArgs...]");
+			System.err.println("<executorClass>: " + PlanExecutor.class.getSimpleName() + " implementation running the plan");
+			System.err.println("<newDocuments>: URI of the documents added since the last run");
+			System.err.println("<indexDirectory>: URI of the directory holding the word count index, created by the first run");
+			System.err.println("[planArgs...]: degrees of parallelism and -Dkey=value options, passed to " + WordCount.class.getSimpleName()
+					+ " after its first two arguments");
+			System.err.println("-D" + CountIndexMerger.WORDS_PER_BLOCK + "=<n>: words of each block of the index (default "
+					+ CountIndexFile.DEFAULT_WORDS_PER_BLOCK + ")");
+			System.exit(2);
+		}
+
+		PlanExecutor executor = Class.forName(args[0]).asSubclass(PlanExecutor.class).newInstance();
+		Path indexPath = new Path(args[2]);
+		Path deltaPath = new Path(indexPath, DELTA_DIRECTORY);
+		FileSystem fs = FileSystem.get(indexPath.toUri());
+		if (fs.exists(deltaPath)) {
+			fs.delete(deltaPath, true);
+		}
+
+		String[] planArgs = new String[args.length - 1];
+		planArgs[0] = args[1];
+		planArgs[1] = deltaPath.toString();
+		System.arraycopy(args, 3, planArgs, 2, args.length - 3);
+		PlanOptions options = new PlanOptions(planArgs);
+
+		// the heavy keys found by the first run are kept with the index
+		if (!options.contains(HeavyKeys.HEAVY_KEYS_PATH)) {
+			planArgs = Arrays.copyOf(planArgs, planArgs.length + 1);
+			planArgs[planArgs.length - 1] = "-D" + HeavyKeys.HEAVY_KEYS_PATH + "=" + new Path(indexPath, "heavy-keys");
+		}
+
+		long start = System.currentTimeMillis();
+		Plan plan = new WordCount().getPlan(planArgs);
+		executor.executePlan(plan);
+		WordCount.mergeHeavyKeys(deltaPath.toString());
+
+		merge(deltaPath, indexPath, Integer.parseInt(options.get(CountIndexMerger.WORDS_PER_BLOCK,
+				Integer.toString(CountIndexFile.DEFAULT_WORDS_PER_BLOCK))));
+		fs.delete(deltaPath, true);
+
+		System.out.println("Total execution time: " + (System.currentTimeMillis() - start) + "ms");
+	}
+}
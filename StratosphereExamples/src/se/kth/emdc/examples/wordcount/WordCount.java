@@ -17,9 +17,22 @@ package se.kth.emdc.examples.wordcount;
 
 
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Iterator;
-import java.util.StringTokenizer;
 
+import se.kth.emdc.examples.util.CompressedTextOutputFormat;
+import se.kth.emdc.examples.util.PactEncodedWord;
+import se.kth.emdc.examples.util.PactLine;
+import se.kth.emdc.examples.util.PactWord;
+import se.kth.emdc.examples.util.PlanOptions;
+import se.kth.emdc.examples.util.SideOutputMerger;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.nephele.fs.FSDataOutputStream;
+import eu.stratosphere.nephele.fs.FileStatus;
+import eu.stratosphere.nephele.fs.FileSystem;
+import eu.stratosphere.nephele.fs.Path;
 import eu.stratosphere.pact.common.contract.FileDataSinkContract;
 import eu.stratosphere.pact.common.contract.FileDataSourceContract;
 import eu.stratosphere.pact.common.contract.MapContract;
@@ -27,7 +40,6 @@ import eu.stratosphere.pact.common.contract.ReduceContract;
 import eu.stratosphere.pact.common.contract.OutputContract.SameKey;
 import eu.stratosphere.pact.common.contract.ReduceContract.Combinable;
 import eu.stratosphere.pact.common.io.TextInputFormat;
-import eu.stratosphere.pact.common.io.TextOutputFormat;
 import eu.stratosphere.pact.common.plan.Plan;
 import eu.stratosphere.pact.common.plan.PlanAssembler;
 import eu.stratosphere.pact.common.plan.PlanAssemblerDescription;
@@ -37,7 +49,6 @@ import eu.stratosphere.pact.common.stub.ReduceStub;
 import eu.stratosphere.pact.common.type.KeyValuePair;
 import eu.stratosphere.pact.common.type.base.PactInteger;
 import eu.stratosphere.pact.common.type.base.PactNull;
-import eu.stratosphere.pact.common.type.base.PactString;
 
 /**
  * Implements a word count which takes the input file and counts the number of
@@ -45,21 +56,24 @@ import eu.stratosphere.pact.common.type.base.PactString;
  * 
  * @author Larysa, Moritz Kaufmann
  */
-public class WordCount implements PlanAssembler, PlanAssemblerDescription {
+public class WordCount implements PlanAssembler, PlanAssemblerDescription, SideOutputMerger {
+
+	// side files of the partial counts of the heavy keys, and their merged output
+	private static final String HEAVY_KEYS_FILE = "heavy";
 
 	/**
-	 * Converts a input string (a line) into a KeyValuePair with the string
-	 * being the key and the value being a zero Integer.
+	 * Converts a input line into a KeyValuePair with a null key and the
+	 * bytes of the line as value. The line is not decoded.
 	 */
-	public static class LineInFormat extends TextInputFormat<PactNull, PactString> {
+	public static class LineInFormat extends TextInputFormat<PactNull, PactLine> {
 
 		/**
 		 * {@inheritDoc}
 		 */
 		@Override
-		public boolean readLine(KeyValuePair<PactNull, PactString> pair, byte[] line) {
-			pair.setKey(new PactNull());
-			pair.setValue(new PactString(new String(line)));
+		public boolean readLine(KeyValuePair<PactNull, PactLine> pair, byte[] line) {
+			pair.setKey(PactNull.getInstance());
+			pair.setValue(new PactLine(line));
 			return true;
 		}
 
@@ -69,46 +83,339 @@ public class WordCount implements PlanAssembler, PlanAssemblerDescription {
 	 * Writes a (String,Integer)-KeyValuePair to a string. The output format is:
 	 * "&lt;key&gt;&nbsp;&lt;value&gt;\nl"
 	 */
-	public static class WordCountOutFormat extends TextOutputFormat<PactString, PactInteger> {
+	public static class WordCountOutFormat extends CompressedTextOutputFormat<PactWord, PactInteger> {
 
 		/**
 		 * {@inheritDoc}
 		 */
 		@Override
-		public byte[] writeLine(KeyValuePair<PactString, PactInteger> pair) {
-			String key = pair.getKey().toString();
-			String value = pair.getValue().toString();
-			String line = key + " " + value + "\n";
-			return line.getBytes();
+		public byte[] writeLine(KeyValuePair<PactWord, PactInteger> pair) {
+			PactWord word = pair.getKey();
+			byte[] count = Integer.toString(pair.getValue().getValue()).getBytes();
+
+			byte[] line = new byte[word.getLength() + count.length + 2];
+			System.arraycopy(word.getBytes(), 0, line, 0, word.getLength());
+			line[word.getLength()] = ' ';
+			System.arraycopy(count, 0, line, word.getLength() + 1, count.length);
+			line[line.length - 1] = '\n';
+			return line;
 		}
 
 	}
 
 	/**
-	 * Converts a (String,Integer)-KeyValuePair into multiple KeyValuePairs. The
-	 * key string is tokenized by spaces. For each token a new
-	 * (String,Integer)-KeyValuePair is emitted where the Token is the key and
-	 * an Integer(1) is the value.
+	 * Converts a line into multiple KeyValuePairs. The line is split into
+	 * lower case words by a {@link ByteTokenizer}. For each word a
+	 * (Word,Integer)-KeyValuePair is emitted where the word is the key and
+	 * an Integer(1) is the value. The same key and value objects are
+	 * emitted for every word.
+	 * 
+	 * With the IN_MAPPER_AGGREGATION parameter the words are counted in
+	 * memory instead, and each word is emitted once with its count when the
+	 * table is full and when the task closes.
 	 */
-	public static class TokenizeLine extends MapStub<PactNull, PactString, PactString, PactInteger> {
+	public static class TokenizeLine extends MapStub<PactNull, PactLine, PactWord, PactInteger> {
+
+		private final ByteTokenizer tokenizer = new ByteTokenizer();
+		private final PactWord word = new PactWord();
+		private final PactInteger one = new PactInteger(1);
+
+		// only set when the words are aggregated in memory
+		private WordCountTable table = null;
+		private final PactInteger count = new PactInteger();
+
+		// the table is flushed in close(), which has no collector parameter
+		private Collector<PactWord, PactInteger> collector = null;
+
+		// only set when the heavy keys are spread
+		private String heavyKeysPath = null;
+		private int heavyKeySplits;
+		private HeavyKeys heavyKeys = null;
+		private byte[] salted = new byte[64];
 
 		/**
 		 * {@inheritDoc}
 		 */
 		@Override
-		public void map(PactNull key, PactString value, Collector<PactString, PactInteger> out) {
+		public void configure(Configuration parameters) {
+			// the path may also be set by the options without the heavy keys output format in the plan
+			if (parameters.getBoolean(HeavyKeys.SKEW_AWARE, false)) {
+				heavyKeysPath = parameters.getString(HeavyKeys.HEAVY_KEYS_PATH, null);
+			}
+			heavyKeySplits = parameters.getInteger(HeavyKeys.HEAVY_KEY_SPLITS, HeavyKeys.DEFAULT_HEAVY_KEY_SPLITS);
+			if (parameters.getBoolean(WordCountTable.IN_MAPPER_AGGREGATION, false)) {
+				table = new WordCountTable(parameters.getInteger(WordCountTable.AGGREGATION_BUFFER_MB,
+						WordCountTable.DEFAULT_AGGREGATION_BUFFER_MB) * 1024L * 1024L);
+			}
+		}
 
-			String line = value.toString();
-			line = line.replaceAll("\\W", " ");
-			line = line.toLowerCase();
-			
-			StringTokenizer tokenizer = new StringTokenizer(line);
-			while (tokenizer.hasMoreElements()) {
-				String element = (String) tokenizer.nextElement();
-				out.collect(new PactString(element), new PactInteger(1));
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void open() {
+			if (heavyKeysPath != null) {
+				try {
+					heavyKeys = new HeavyKeys(readDictionary(heavyKeysPath), heavyKeySplits);
+				} catch (IOException e) {
+					throw new RuntimeException("Could not read the heavy keys " + heavyKeysPath, e);
+				}
 			}
 		}
 
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void map(PactNull key, PactLine value, Collector<PactWord, PactInteger> out) {
+
+			tokenizer.reset(value.getBytes(), 0, value.getLength());
+			while (tokenizer.next()) {
+				if (table != null) {
+					table.add(tokenizer.getBytes(), tokenizer.getStart(), tokenizer.getLength(), 1);
+				} else {
+					setWord(tokenizer.getBytes(), tokenizer.getStart(), tokenizer.getLength());
+					out.collect(word, one);
+				}
+			}
+			if (table != null) {
+				collector = out;
+				if (table.isFull()) {
+					flush();
+				}
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() {
+			if (table != null && collector != null) {
+				flush();
+			}
+		}
+
+		/**
+		 * Sets the emitted word, salted with the next split if it is a heavy key.
+		 */
+		private void setWord(byte[] bytes, int start, int length) {
+			if (heavyKeys != null && heavyKeys.isHeavy(bytes, start, length)) {
+				if (salted.length < length + 2) {
+					salted = new byte[length + 2];
+				}
+				word.set(salted, 0, HeavyKeys.salt(bytes, start, length, heavyKeys.nextSplit(), salted));
+			} else {
+				word.set(bytes, start, length);
+			}
+		}
+
+		private void flush() {
+			for (int i = 0; i < table.size(); i++) {
+				setWord(table.getWords(), table.getWordStart(i), table.getWordLength(i));
+				count.setValue(table.getCount(i));
+				collector.collect(word, count);
+			}
+			table.clear();
+		}
+
+	}
+
+	/**
+	 * Same as {@link WordCountOutFormat}, but the partial counts of the words
+	 * salted by {@link TokenizeLine}, spread over several reducers, are
+	 * written without their split to a heavy-* side file of the output
+	 * instead, and merged by {@link WordCount#mergeHeavyKeys}. The other
+	 * words are reduced once.
+	 */
+	public static class HeavyKeysOutFormat extends WordCountOutFormat {
+
+		private final KeyValuePair<PactWord, PactInteger> unsalted = new KeyValuePair<PactWord, PactInteger>(new PactWord(), new PactInteger());
+		private int taskNumber;
+		private FSDataOutputStream heavyOut = null;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void open(int taskNumber) throws IOException {
+			super.open(taskNumber);
+			this.taskNumber = taskNumber;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void writeRecord(KeyValuePair<PactWord, PactInteger> pair) {
+			PactWord word = pair.getKey();
+			int length = HeavyKeys.unsaltedLength(word.getBytes(), 0, word.getLength());
+			if (length == word.getLength()) {
+				super.writeRecord(pair);
+				return;
+			}
+			unsalted.getKey().set(word.getBytes(), 0, length);
+			unsalted.setValue(pair.getValue());
+			try {
+				if (heavyOut == null) {
+					Path path = new Path(outputFilePath, HEAVY_KEYS_FILE + "-" + taskNumber);
+					heavyOut = FileSystem.get(path.toUri()).create(path, true);
+				}
+				heavyOut.write(writeLine(unsalted));
+			} catch (IOException e) {
+				throw new RuntimeException("Could not write the partial counts of the heavy keys", e);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			super.close();
+			if (heavyOut != null) {
+				heavyOut.close();
+			}
+		}
+
+	}
+
+	/**
+	 * Writes a dictionary encoded word count with the decoded word, so the
+	 * output is the same as with {@link WordCountOutFormat}.
+	 */
+	public static class DecodingOutFormat extends CompressedTextOutputFormat<PactEncodedWord, PactInteger> {
+
+		private final WordCountOutFormat format = new WordCountOutFormat();
+		private final KeyValuePair<PactWord, PactInteger> decoded = new KeyValuePair<PactWord, PactInteger>(new PactWord(), new PactInteger());
+		private String dictionaryPath;
+		private WordDictionary dictionary;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void configure(Configuration parameters) {
+			super.configure(parameters);
+			dictionaryPath = parameters.getString(WordDictionary.DICTIONARY_PATH, null);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void open(int taskNumber) throws IOException {
+			super.open(taskNumber);
+			dictionary = readDictionary(dictionaryPath);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public byte[] writeLine(KeyValuePair<PactEncodedWord, PactInteger> pair) {
+			pair.getKey().decode(dictionary, decoded.getKey());
+			decoded.setValue(pair.getValue());
+			return format.writeLine(decoded);
+		}
+
+	}
+
+	/**
+	 * Same as {@link TokenizeLine}, but the words found in the
+	 * {@link WordDictionary} are emitted as their int id, so the words are
+	 * sorted, grouped and shipped as ids instead of strings.
+	 */
+	public static class EncodingTokenizeLine extends MapStub<PactNull, PactLine, PactEncodedWord, PactInteger> {
+
+		private final ByteTokenizer tokenizer = new ByteTokenizer();
+		private final PactEncodedWord word = new PactEncodedWord();
+		private final PactInteger one = new PactInteger(1);
+		private String dictionaryPath;
+		private WordDictionary dictionary;
+
+		// only set when the words are aggregated in memory
+		private WordCountTable table = null;
+		private final PactInteger count = new PactInteger();
+
+		// the table is flushed in close(), which has no collector parameter
+		private Collector<PactEncodedWord, PactInteger> collector = null;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void configure(Configuration parameters) {
+			dictionaryPath = parameters.getString(WordDictionary.DICTIONARY_PATH, null);
+			if (parameters.getBoolean(WordCountTable.IN_MAPPER_AGGREGATION, false)) {
+				table = new WordCountTable(parameters.getInteger(WordCountTable.AGGREGATION_BUFFER_MB,
+						WordCountTable.DEFAULT_AGGREGATION_BUFFER_MB) * 1024L * 1024L);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void open() {
+			try {
+				dictionary = readDictionary(dictionaryPath);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not read the dictionary " + dictionaryPath, e);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void map(PactNull key, PactLine value, Collector<PactEncodedWord, PactInteger> out) {
+
+			tokenizer.reset(value.getBytes(), 0, value.getLength());
+			while (tokenizer.next()) {
+				if (table != null) {
+					table.add(tokenizer.getBytes(), tokenizer.getStart(), tokenizer.getLength(), 1);
+				} else {
+					encode(tokenizer.getBytes(), tokenizer.getStart(), tokenizer.getLength());
+					out.collect(word, one);
+				}
+			}
+			if (table != null) {
+				collector = out;
+				if (table.isFull()) {
+					flush();
+				}
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() {
+			if (table != null && collector != null) {
+				flush();
+			}
+		}
+
+		private void encode(byte[] bytes, int start, int length) {
+			int id = dictionary.getId(bytes, start, length);
+			if (id >= 0) {
+				word.setId(id);
+			} else {
+				word.setWord(bytes, start, length);
+			}
+		}
+
+		private void flush() {
+			for (int i = 0; i < table.size(); i++) {
+				encode(table.getWords(), table.getWordStart(i), table.getWordLength(i));
+				count.setValue(table.getCount(i));
+				collector.collect(word, count);
+			}
+			table.clear();
+		}
+
 	}
 
 	/**
@@ -118,14 +425,14 @@ public class WordCount implements PlanAssembler, PlanAssemblerDescription {
 	 */
 	@SameKey
 	@Combinable
-	public static class CountWords extends ReduceStub<PactString, PactInteger, PactString, PactInteger> {
+	public static class CountWords extends ReduceStub<PactWord, PactInteger, PactWord, PactInteger> {
 
 		/**
 		 * {@inheritDoc}
 		 */
 		PactInteger result = new PactInteger();
 		@Override
-		public void reduce(PactString key, Iterator<PactInteger> values, Collector<PactString, PactInteger> out) {
+		public void reduce(PactWord key, Iterator<PactInteger> values, Collector<PactWord, PactInteger> out) {
 			int sum = 0;
 			while (values.hasNext()) {
 				PactInteger element = (PactInteger) values.next();
@@ -139,19 +446,251 @@ public class WordCount implements PlanAssembler, PlanAssemblerDescription {
 		 * {@inheritDoc}
 		 */
 		@Override
-		public void combine(PactString key, Iterator<PactInteger> values, Collector<PactString, PactInteger> out) {
+		public void combine(PactWord key, Iterator<PactInteger> values, Collector<PactWord, PactInteger> out) {
+
+			this.reduce(key, values, out);
+		}
+
+	}
+
+	/**
+	 * Same as {@link CountWords} for dictionary encoded words.
+	 */
+	@SameKey
+	@Combinable
+	public static class CountEncodedWords extends ReduceStub<PactEncodedWord, PactInteger, PactEncodedWord, PactInteger> {
+
+		private final PactInteger result = new PactInteger();
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void reduce(PactEncodedWord key, Iterator<PactInteger> values, Collector<PactEncodedWord, PactInteger> out) {
+			int sum = 0;
+			while (values.hasNext()) {
+				sum += values.next().getValue();
+			}
+			result.setValue(sum);
+			out.collect(key, result);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void combine(PactEncodedWord key, Iterator<PactInteger> values, Collector<PactEncodedWord, PactInteger> out) {
 
 			this.reduce(key, values, out);
 		}
 
 	}
 
+	private static WordDictionary readDictionary(String dictionaryPath) throws IOException {
+		Path path = new Path(dictionaryPath);
+		InputStream in = FileSystem.get(path.toUri()).open(path);
+		try {
+			return WordDictionary.read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Counts the words of the first DICTIONARY_SAMPLE_MB megabytes of the
+	 * input files.
+	 */
+	private static WordDictionary.Builder sample(PlanOptions options, String dataInput) throws IOException {
+		WordDictionary.Builder builder = new WordDictionary.Builder(Integer.parseInt(options.get(WordDictionary.DICTIONARY_SAMPLE_MB,
+				Integer.toString(WordDictionary.DEFAULT_DICTIONARY_SAMPLE_MB))) * 1024L * 1024L);
+		Path input = new Path(dataInput);
+		FileSystem inputFs = FileSystem.get(input.toUri());
+		FileStatus status = inputFs.getFileStatus(input);
+		FileStatus[] files = (status.isDir() ? inputFs.listStatus(input) : new FileStatus[] { status });
+		for (FileStatus file : files) {
+			if (file.isDir()) {
+				continue;
+			}
+			InputStream in = inputFs.open(file.getPath());
+			try {
+				if (!builder.sample(in)) {
+					break;
+				}
+			} finally {
+				in.close();
+			}
+		}
+		return builder;
+	}
+
+	private static void write(WordDictionary words, FileSystem fs, Path path) throws IOException {
+		OutputStream out = fs.create(path, false);
+		try {
+			words.write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Builds the dictionary from the first DICTIONARY_SAMPLE_MB megabytes of
+	 * the input files, unless the dictionary file already exists.
+	 */
+	private static void buildDictionary(PlanOptions options, String dataInput, String dictionaryPath) throws IOException {
+		Path path = new Path(dictionaryPath);
+		FileSystem fs = FileSystem.get(path.toUri());
+		if (fs.exists(path)) {
+			return;
+		}
+
+		WordDictionary dictionary = sample(options, dataInput).build(Integer.parseInt(options.get(WordDictionary.DICTIONARY_SIZE,
+				Integer.toString(WordDictionary.DEFAULT_DICTIONARY_SIZE))));
+		write(dictionary, fs, path);
+		System.out.println("Dictionary of " + dictionary.size() + " words written to " + dictionaryPath);
+	}
+
+	/**
+	 * Finds the heavy keys in the first DICTIONARY_SAMPLE_MB megabytes of the
+	 * input files, unless the heavy keys file already exists.
+	 */
+	private static void buildHeavyKeys(PlanOptions options, String dataInput, String heavyKeysPath, int reducers) throws IOException {
+		Path path = new Path(heavyKeysPath);
+		FileSystem fs = FileSystem.get(path.toUri());
+		if (fs.exists(path)) {
+			return;
+		}
+
+		String share = options.get(HeavyKeys.HEAVY_KEY_SHARE, null);
+		WordDictionary heavyKeys = sample(options, dataInput).buildFrequent(share == null ? HeavyKeys.getDefaultShare(reducers)
+				: Double.parseDouble(share));
+		write(heavyKeys, fs, path);
+		System.out.println(heavyKeys.size() + " heavy keys written to " + heavyKeysPath);
+	}
+
+	/**
+	 * Merges the partial counts of the heavy keys written by the
+	 * {@link HeavyKeysOutFormat}s into a single heavy file of the output.
+	 * Does nothing if the plan did not spread heavy keys.
+	 */
+	public static void mergeHeavyKeys(String output) throws IOException {
+		Path path = new Path(output);
+		FileSystem fs = FileSystem.get(path.toUri());
+		if (!fs.exists(path) || !fs.getFileStatus(path).isDir()) {
+			return;
+		}
+		FileStatus[] files = fs.listStatus(path);
+		WordCountTable counts = new WordCountTable(Long.MAX_VALUE);
+		boolean found = false;
+		for (FileStatus file : files) {
+			if (file.getPath().getName().startsWith(HEAVY_KEYS_FILE + "-")) {
+				InputStream in = fs.open(file.getPath());
+				try {
+					counts.readCounts(in);
+				} finally {
+					in.close();
+				}
+				found = true;
+			}
+		}
+		if (!found) {
+			return;
+		}
+
+		OutputStream out = fs.create(new Path(path, HEAVY_KEYS_FILE), true);
+		try {
+			for (int i = 0; i < counts.size(); i++) {
+				out.write(counts.getWords(), counts.getWordStart(i), counts.getWordLength(i));
+				out.write((" " + counts.getCount(i) + "\n").getBytes());
+			}
+		} finally {
+			out.close();
+		}
+		for (FileStatus file : files) {
+			if (file.getPath().getName().startsWith(HEAVY_KEYS_FILE + "-")) {
+				fs.delete(file.getPath(), false);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void mergeSideOutputs(String... args) throws IOException {
+		mergeHeavyKeys(new PlanOptions(args).getRemainingArgs()[1]);
+	}
+
+	/**
+	 * Replaces the output by an empty directory.
+	 */
+	private static void createOutputDirectory(String output) throws IOException {
+		Path path = new Path(output);
+		FileSystem fs = FileSystem.get(path.toUri());
+		if (fs.exists(path)) {
+			fs.delete(path, true);
+		}
+		fs.mkdirs(path);
+	}
+
+	/**
+	 * Builds the plan counting dictionary encoded words.
+	 */
+	private Plan getEncodedPlan(PlanOptions options, String[] args) {
+		String dataInput = args[0];
+		String output    = args[1];
+
+		String dictionaryPath = options.get(WordDictionary.DICTIONARY_PATH, output + "-dictionary");
+		try {
+			buildDictionary(options, dataInput, dictionaryPath);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Could not build the dictionary " + dictionaryPath, e);
+		}
+
+		FileDataSourceContract<PactNull, PactLine> data = new FileDataSourceContract<PactNull, PactLine>(
+				LineInFormat.class, dataInput, "SplittingInputToMappers");
+
+		MapContract<PactNull, PactLine, PactEncodedWord, PactInteger> mapper = new MapContract<PactNull, PactLine, PactEncodedWord, PactInteger>(
+				EncodingTokenizeLine.class, "MapperEncodingWords");
+
+		ReduceContract<PactEncodedWord, PactInteger, PactEncodedWord, PactInteger> reducer = new ReduceContract<PactEncodedWord, PactInteger, PactEncodedWord, PactInteger>(
+				CountEncodedWords.class, "ReducerCountingWords");
+
+		FileDataSinkContract<PactEncodedWord, PactInteger> out = new FileDataSinkContract<PactEncodedWord, PactInteger>(
+				DecodingOutFormat.class, output, "OutputToDisk");
+
+		options.applyTo(mapper, out);
+		mapper.setParameter(WordDictionary.DICTIONARY_PATH, dictionaryPath);
+		out.setParameter(WordDictionary.DICTIONARY_PATH, dictionaryPath);
+
+		if(args.length > 2)
+		{
+			mapper.setDegreeOfParallelism(Integer.parseInt(args[2]));
+			reducer.setDegreeOfParallelism(Integer.parseInt(args[3]));
+			data.setDegreeOfParallelism(Integer.parseInt(args[4]));
+			out.setDegreeOfParallelism(Integer.parseInt(args[5]));
+		}
+
+		out.setInput(reducer);
+		reducer.setInput(mapper);
+		mapper.setInput(data);
+
+		return new Plan(out, "WordCount Example (dictionary encoded)");
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public Plan getPlan(String... args) {
 
+		// separate -Dkey=value options from the positional parameters
+		PlanOptions options = new PlanOptions(args);
+		args = options.getRemainingArgs();
+
+		if (Boolean.parseBoolean(options.get(WordDictionary.ENCODE_WORDS, "false"))) {
+			return getEncodedPlan(options, args);
+		}
+
 		// parse job parameters
 		
 		String dataInput = args[0];
@@ -161,20 +700,23 @@ public class WordCount implements PlanAssembler, PlanAssemblerDescription {
 		int InSubTasks   = 0;
 		int OutSubTasks   = 0;
 
-		FileDataSourceContract<PactNull, PactString> data = new FileDataSourceContract<PactNull, PactString>(
+		FileDataSourceContract<PactNull, PactLine> data = new FileDataSourceContract<PactNull, PactLine>(
 				LineInFormat.class, dataInput, "SplittingInputToMappers");
 		
 
-		MapContract<PactNull, PactString, PactString, PactInteger> mapper = new MapContract<PactNull, PactString, PactString, PactInteger>(
+		MapContract<PactNull, PactLine, PactWord, PactInteger> mapper = new MapContract<PactNull, PactLine, PactWord, PactInteger>(
 				TokenizeLine.class, "MapperExtractingWords");
+		options.applyTo(mapper);
 		
 
-		ReduceContract<PactString, PactInteger, PactString, PactInteger> reducer = new ReduceContract<PactString, PactInteger, PactString, PactInteger>(
+		ReduceContract<PactWord, PactInteger, PactWord, PactInteger> reducer = new ReduceContract<PactWord, PactInteger, PactWord, PactInteger>(
 				CountWords.class, "ReducerCountingWords");
 		
 
-		FileDataSinkContract<PactString, PactInteger> out = new FileDataSinkContract<PactString, PactInteger>(
-				WordCountOutFormat.class, output, "OutputToDisk");
+		boolean skewAware = Boolean.parseBoolean(options.get(HeavyKeys.SKEW_AWARE, "false"));
+		FileDataSinkContract<PactWord, PactInteger> out = new FileDataSinkContract<PactWord, PactInteger>(
+				skewAware ? HeavyKeysOutFormat.class : WordCountOutFormat.class, output, "OutputToDisk");
+		options.applyTo(out);
 		
 		
 		if(args.length > 2)
@@ -189,8 +731,29 @@ public class WordCount implements PlanAssembler, PlanAssemblerDescription {
 			out.setDegreeOfParallelism(OutSubTasks);
 		}
 
-		out.setInput(reducer);
+		if (skewAware) {
+			int splits = Integer.parseInt(options.get(HeavyKeys.HEAVY_KEY_SPLITS, Integer.toString(
+					ReduceSubTasks > 0 ? ReduceSubTasks : HeavyKeys.DEFAULT_HEAVY_KEY_SPLITS)));
+			splits = Math.min(splits, HeavyKeys.MAX_SPLITS);
+			String heavyKeysPath = options.get(HeavyKeys.HEAVY_KEYS_PATH, output + "-heavy-keys");
+			try {
+				buildHeavyKeys(options, dataInput, heavyKeysPath, splits);
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Could not find the heavy keys " + heavyKeysPath, e);
+			}
+			mapper.setParameter(HeavyKeys.HEAVY_KEYS_PATH, heavyKeysPath);
+			mapper.setParameter(HeavyKeys.HEAVY_KEY_SPLITS, splits);
+
+			// the sink writes into the output directory even with a single subtask, next to the heavy-* side files
+			try {
+				createOutputDirectory(output);
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Could not create the output directory " + output, e);
+			}
+		}
+
 		reducer.setInput(mapper);
+		out.setInput(reducer);
 		mapper.setInput(data);
 
 		return new Plan(out, "WordCount Example");
@@ -201,7 +764,13 @@ public class WordCount implements PlanAssembler, PlanAssemblerDescription {
 	 */
 	@Override
 	public String getDescription() {
-		return "Parameters: [input] [output]";
+		return "Parameters: [input] [output] [mapSubTasks] [reduceSubTasks] [inSubTasks] [outSubTasks] "
+			+ "[-D" + WordCountTable.IN_MAPPER_AGGREGATION + "=true] [-D" + WordCountTable.AGGREGATION_BUFFER_MB + "=" + WordCountTable.DEFAULT_AGGREGATION_BUFFER_MB + "] "
+			+ "[-D" + WordDictionary.ENCODE_WORDS + "=true] [-D" + WordDictionary.DICTIONARY_PATH + "=<output>-dictionary] "
+			+ "[-D" + WordDictionary.DICTIONARY_SIZE + "=" + WordDictionary.DEFAULT_DICTIONARY_SIZE + "] "
+			+ "[-D" + WordDictionary.DICTIONARY_SAMPLE_MB + "=" + WordDictionary.DEFAULT_DICTIONARY_SAMPLE_MB + "] "
+			+ "[-D" + HeavyKeys.SKEW_AWARE + "=true] [-D" + HeavyKeys.HEAVY_KEYS_PATH + "=<output>-heavy-keys] "
+			+ "[-D" + HeavyKeys.HEAVY_KEY_SHARE + "=<0.5 / splits>] [-D" + HeavyKeys.HEAVY_KEY_SPLITS + "=<reduceSubTasks>]";
 	}
 
 }
@@ -0,0 +1,235 @@
+package se.kth.emdc.examples.wordcount;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Iterator;
+
+import se.kth.emdc.examples.util.CompressedTextOutputFormat;
+import se.kth.emdc.examples.util.PactLine;
+import se.kth.emdc.examples.util.PactWord;
+import se.kth.emdc.examples.util.PlanOptions;
+import se.kth.emdc.examples.wordcount.WordCount.LineInFormat;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.contract.FileDataSinkContract;
+import eu.stratosphere.pact.common.contract.FileDataSourceContract;
+import eu.stratosphere.pact.common.contract.MapContract;
+import eu.stratosphere.pact.common.contract.ReduceContract;
+import eu.stratosphere.pact.common.plan.Plan;
+import eu.stratosphere.pact.common.plan.PlanAssembler;
+import eu.stratosphere.pact.common.plan.PlanAssemblerDescription;
+import eu.stratosphere.pact.common.stub.Collector;
+import eu.stratosphere.pact.common.stub.MapStub;
+import eu.stratosphere.pact.common.stub.ReduceStub;
+import eu.stratosphere.pact.common.type.KeyValuePair;
+import eu.stratosphere.pact.common.type.Value;
+import eu.stratosphere.pact.common.type.base.PactNull;
+import eu.stratosphere.pact.common.type.base.PactString;
+
+/**
+ * Word count that only writes the K most frequent words. Each mapper
+ * summarizes its words in a {@link SpaceSaving} sketch and emits the sketch
+ * once when it closes, a single reducer merges the sketches and emits the
+ * top K words with the bounds of their counts.
+ */
+public class WordCountTopK implements PlanAssembler, PlanAssemblerDescription {
+
+	/**
+	 * A sketch shipped from the mappers to the reducer.
+	 */
+	public static class PactSketch implements Value {
+
+		private SpaceSaving sketch;
+
+		public PactSketch() {
+			this.sketch = new SpaceSaving(1);
+		}
+
+		public PactSketch(SpaceSaving sketch) {
+			this.sketch = sketch;
+		}
+
+		public SpaceSaving get() {
+			return sketch;
+		}
+
+		@Override
+		public void read(DataInput in) throws IOException {
+			sketch.read(in);
+		}
+
+		@Override
+		public void write(DataOutput out) throws IOException {
+			sketch.write(out);
+		}
+	}
+
+	/**
+	 * Writes a word and the bounds of its count as "word count error": the
+	 * word occurs between count - error and count times.
+	 */
+	public static class TopKOutFormat extends CompressedTextOutputFormat<PactWord, PactString> {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public byte[] writeLine(KeyValuePair<PactWord, PactString> pair) {
+			return (pair.getKey().toString() + " " + pair.getValue().getValue() + "\n").getBytes();
+		}
+
+	}
+
+	/**
+	 * Counts the words of the mapper in a {@link WordCountTable} and adds
+	 * the counts to the sketch when the table is full, so the sketch is
+	 * updated once per distinct word instead of once per token. The sketch
+	 * is emitted when the mapper closes.
+	 */
+	public static class SketchLine extends MapStub<PactNull, PactLine, PactNull, PactSketch> {
+
+		private final ByteTokenizer tokenizer = new ByteTokenizer();
+		private WordCountTable table;
+		private SpaceSaving sketch;
+
+		// the sketch is emitted in close(), which has no collector parameter
+		private Collector<PactNull, PactSketch> collector = null;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void configure(Configuration parameters) {
+			table = new WordCountTable(parameters.getInteger(WordCountTable.AGGREGATION_BUFFER_MB,
+					WordCountTable.DEFAULT_AGGREGATION_BUFFER_MB) * 1024L * 1024L);
+			sketch = new SpaceSaving(getCapacity(parameters));
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void map(PactNull key, PactLine value, Collector<PactNull, PactSketch> out) {
+			collector = out;
+			tokenizer.reset(value.getBytes(), 0, value.getLength());
+			while (tokenizer.next()) {
+				table.add(tokenizer.getBytes(), tokenizer.getStart(), tokenizer.getLength(), 1);
+			}
+			if (table.isFull()) {
+				flush();
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() {
+			if (collector != null) {
+				flush();
+				collector.collect(PactNull.getInstance(), new PactSketch(sketch));
+			}
+		}
+
+		private void flush() {
+			for (int i = 0; i < table.size(); i++) {
+				sketch.add(new String(table.getWords(), table.getWordStart(i), table.getWordLength(i)), table.getCount(i));
+			}
+			table.clear();
+		}
+
+	}
+
+	/**
+	 * Merges the sketches of all the mappers and emits the top K words,
+	 * most frequent first. All the sketches have the same null key, so a
+	 * single reduce call sees them all.
+	 */
+	public static class MergeSketches extends ReduceStub<PactNull, PactSketch, PactWord, PactString> {
+
+		private int k;
+		private int capacity;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void configure(Configuration parameters) {
+			k = parameters.getInteger(SpaceSaving.TOP_K, SpaceSaving.DEFAULT_TOP_K);
+			capacity = getCapacity(parameters);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void reduce(PactNull key, Iterator<PactSketch> values, Collector<PactWord, PactString> out) {
+			SpaceSaving merged = new SpaceSaving(capacity);
+			while (values.hasNext()) {
+				merged.merge(values.next().get());
+			}
+			for (SpaceSaving.Counter counter : merged.getTop(k)) {
+				out.collect(new PactWord(counter.getWord()), new PactString(counter.getCount() + " " + counter.getError()));
+			}
+		}
+
+	}
+
+	private static int getCapacity(Configuration parameters) {
+		int k = parameters.getInteger(SpaceSaving.TOP_K, SpaceSaving.DEFAULT_TOP_K);
+		return parameters.getInteger(SpaceSaving.SKETCH_CAPACITY, k * SpaceSaving.DEFAULT_CAPACITY_FACTOR);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Plan getPlan(String... args) {
+
+		// separate -Dkey=value options from the positional parameters
+		PlanOptions options = new PlanOptions(args);
+		args = options.getRemainingArgs();
+
+		String dataInput = args[0];
+		String output    = args[1];
+
+		FileDataSourceContract<PactNull, PactLine> data = new FileDataSourceContract<PactNull, PactLine>(
+				LineInFormat.class, dataInput, "SplittingInputToMappers");
+
+		MapContract<PactNull, PactLine, PactNull, PactSketch> mapper = new MapContract<PactNull, PactLine, PactNull, PactSketch>(
+				SketchLine.class, "MapperSketchingWords");
+
+		// a single reducer merges all the sketches
+		ReduceContract<PactNull, PactSketch, PactWord, PactString> reducer = new ReduceContract<PactNull, PactSketch, PactWord, PactString>(
+				MergeSketches.class, "ReducerMergingSketches");
+		reducer.setDegreeOfParallelism(1);
+
+		FileDataSinkContract<PactWord, PactString> out = new FileDataSinkContract<PactWord, PactString>(
+				TopKOutFormat.class, output, "OutputToDisk");
+		out.setDegreeOfParallelism(1);
+
+		options.applyTo(mapper, reducer, out);
+
+		if (args.length > 2) {
+			mapper.setDegreeOfParallelism(Integer.parseInt(args[2]));
+			data.setDegreeOfParallelism(Integer.parseInt(args[3]));
+		}
+
+		out.setInput(reducer);
+		reducer.setInput(mapper);
+		mapper.setInput(data);
+
+		return new Plan(out, "WordCount Top-K Example");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getDescription() {
+		return "Parameters: [input] [output] [mapSubTasks] [inSubTasks] "
+			+ "[-D" + SpaceSaving.TOP_K + "=" + SpaceSaving.DEFAULT_TOP_K + "] [-D" + SpaceSaving.SKETCH_CAPACITY + "=<counters>] "
+			+ "[-D" + WordCountTable.AGGREGATION_BUFFER_MB + "=" + WordCountTable.DEFAULT_AGGREGATION_BUFFER_MB + "]";
+	}
+
+}
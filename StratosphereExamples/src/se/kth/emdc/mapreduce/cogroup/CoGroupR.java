@@ -2,6 +2,7 @@ package se.kth.emdc.mapreduce.cogroup;
 
 import java.util.Iterator;
 
+import se.kth.emdc.examples.util.PlanOptions;
 import eu.stratosphere.pact.common.contract.FileDataSinkContract;
 import eu.stratosphere.pact.common.contract.FileDataSourceContract;
 import eu.stratosphere.pact.common.contract.ReduceContract;
@@ -33,6 +34,9 @@ public class CoGroupR implements PlanAssembler, PlanAssemblerDescription {
 
 		@Override
 		public Plan getPlan(String... args) throws IllegalArgumentException {
+			PlanOptions options = new PlanOptions(args);
+			args = options.getRemainingArgs();
+
 			// parse job parameters
 			String inputFolder   = (args.length > 0 ? args[0] : "");
 			String outputFolder  = (args.length > 1 ? args[1] : "");
@@ -43,6 +47,7 @@ public class CoGroupR implements PlanAssembler, PlanAssemblerDescription {
 
 			FileDataSourceContract<PactString, Tuple> data = new FileDataSourceContract<PactString, Tuple>(
 					DocsRanksDataInFormat.class, inputFolder, "Splitting Input To Mappers");
+			options.applyTo(data);
 			
 
 			ReduceContract<PactString, Tuple, PactString, Tuple> reducer = new ReduceContract<PactString, Tuple, PactString, Tuple>(
@@ -51,6 +56,7 @@ public class CoGroupR implements PlanAssembler, PlanAssemblerDescription {
 
 			FileDataSinkContract<PactString, Tuple> out = new FileDataSinkContract<PactString, Tuple>(
 					StringTupleDataOutFormat.class, outputFolder, "Output To Disk");
+			options.applyTo(out);
 			
 			data.setDegreeOfParallelism(inputDegreeParallelism);
 			reducer.setDegreeOfParallelism(reducerDegreeParallelism);
@@ -6,6 +6,8 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
+import se.kth.emdc.examples.compress.BlockCodec;
+import se.kth.emdc.examples.util.PlanOptions;
 import se.kth.emdc.pact.cross.CrossPACT;
 import eu.stratosphere.nephele.configuration.Configuration;
 import eu.stratosphere.pact.common.contract.FileDataSinkContract;
@@ -86,6 +88,8 @@ public class CrossMR implements PlanAssembler, PlanAssemblerDescription{
 	public Plan getPlan(String... args) {
 
 		// parse job parameters
+		PlanOptions options = new PlanOptions(args);
+		args = options.getRemainingArgs();
 		String keysInput = (args.length > 0 ? args[0] : "");
 		String valuesLocalFileName = (args.length > 1 ? args[1] : "");
 		String output    = (args.length > 2 ? args[2] : "");
@@ -106,6 +110,7 @@ public class CrossMR implements PlanAssembler, PlanAssemblerDescription{
 
 		FileDataSinkContract<PactLong, PactLong> out = new FileDataSinkContract<PactLong, PactLong>(
 				CrossPACT.LongKeyValueOutput.class, output, "Cartesian Product");
+		options.applyTo(out);
 		
 		if(args.length > 3)
 		{
@@ -131,6 +136,6 @@ public class CrossMR implements PlanAssembler, PlanAssemblerDescription{
 	 */
 	@Override
 	public String getDescription() {
-		return "Parameters: [mapInput] [localFile] [output] [InSubTasks] [MapSubTasks] [ReduceSubTasks] [OutSubTasks]";
+		return "Parameters: [mapInput] [localFile] [output] [InSubTasks] [MapSubTasks] [ReduceSubTasks] [OutSubTasks] [-D" + BlockCodec.COMPRESSION_CODEC + "=<codec>]";
 	}
 }
@@ -2,6 +2,7 @@ package se.kth.emdc.mapreduce.match;
 
 import java.util.Iterator;
 
+import se.kth.emdc.examples.util.PlanOptions;
 import eu.stratosphere.pact.common.contract.FileDataSinkContract;
 import eu.stratosphere.pact.common.contract.FileDataSourceContract;
 import eu.stratosphere.pact.common.contract.MapContract;
@@ -69,6 +70,9 @@ public class MatchMR implements PlanAssembler, PlanAssemblerDescription {
 
 		@Override
 		public Plan getPlan(String... args) throws IllegalArgumentException {
+			PlanOptions options = new PlanOptions(args);
+			args = options.getRemainingArgs();
+
 			// parse job parameters
 			String inputFolder   = (args.length > 0 ? args[0] : "");
 			String outputFolder  = (args.length > 1 ? args[1] : "");
@@ -80,6 +84,7 @@ public class MatchMR implements PlanAssembler, PlanAssemblerDescription {
 
 			FileDataSourceContract<PactString, Tuple> data = new FileDataSourceContract<PactString, Tuple>(
 					DocsRanksDataInFormat.class, inputFolder, "Splitting Input To Mappers");
+			options.applyTo(data);
 			
 
 			MapContract<PactString, Tuple, PactString, Tuple> mapper = new MapContract<PactString, Tuple, PactString, Tuple>(
@@ -92,6 +97,7 @@ public class MatchMR implements PlanAssembler, PlanAssemblerDescription {
 
 			FileDataSinkContract<PactString, Tuple> out = new FileDataSinkContract<PactString, Tuple>(
 					StringTupleDataOutFormat.class, outputFolder, "Output To Disk");
+			options.applyTo(out);
 			
 			data.setDegreeOfParallelism(inputDegreeParallelism);
 			mapper.setDegreeOfParallelism(mapperDegreeParallelism);
@@ -15,11 +15,13 @@
 
 package se.kth.emdc.pact.cross;
 
+import se.kth.emdc.examples.compress.BlockCodec;
+import se.kth.emdc.examples.util.CompressedTextOutputFormat;
+import se.kth.emdc.examples.util.PlanOptions;
 import eu.stratosphere.pact.common.contract.CrossContract;
 import eu.stratosphere.pact.common.contract.FileDataSinkContract;
 import eu.stratosphere.pact.common.contract.FileDataSourceContract;
 import eu.stratosphere.pact.common.io.TextInputFormat;
-import eu.stratosphere.pact.common.io.TextOutputFormat;
 import eu.stratosphere.pact.common.plan.Plan;
 import eu.stratosphere.pact.common.plan.PlanAssembler;
 import eu.stratosphere.pact.common.plan.PlanAssemblerDescription;
@@ -66,7 +68,7 @@ public class CrossPACT implements PlanAssembler, PlanAssemblerDescription {
 	/**
 	 * Reads a file that contain a Long value
 	 */
-	public static class LongKeyValueOutput extends TextOutputFormat<PactLong, PactLong> {
+	public static class LongKeyValueOutput extends CompressedTextOutputFormat<PactLong, PactLong> {
 
 		@Override
 		public byte[] writeLine(KeyValuePair<PactLong, PactLong> pair) {
@@ -82,6 +84,8 @@ public class CrossPACT implements PlanAssembler, PlanAssemblerDescription {
 	public Plan getPlan(String... args) {
 
 		// parse job parameters
+		PlanOptions options = new PlanOptions(args);
+		args = options.getRemainingArgs();
 		String keyInput = args[0];
 		String valueInput = args[1];
 		String output = args[2];
@@ -101,6 +105,7 @@ public class CrossPACT implements PlanAssembler, PlanAssemblerDescription {
 		// create DataSinkContract for writing the new cluster positions
 		FileDataSinkContract<PactLong, PactLong> cartesianProduct = new FileDataSinkContract<PactLong, PactLong>(
 				LongKeyValueOutput.class, output, "Cartesian Product");
+		options.applyTo(cartesianProduct);
 		
 		if(args.length > 3)
 		{
@@ -132,7 +137,7 @@ public class CrossPACT implements PlanAssembler, PlanAssemblerDescription {
 
 	@Override
 	public String getDescription() {
-		return "Parameters: [keyInput] [valueInput] [output] [keysSubTasks] [valSubTasks] [crossTasks] [outSubTasks] {streamedLoop?}";
+		return "Parameters: [keyInput] [valueInput] [output] [keysSubTasks] [valSubTasks] [crossTasks] [outSubTasks] {streamedLoop?} [-D" + BlockCodec.COMPRESSION_CODEC + "=<codec>]";
 	}
 
 }
@@ -1,5 +1,7 @@
 package se.kth.emdc.pact.match;
 
+import se.kth.emdc.examples.compress.BlockCodec;
+import se.kth.emdc.examples.util.PlanOptions;
 import eu.stratosphere.pact.common.contract.FileDataSinkContract;
 import eu.stratosphere.pact.common.contract.FileDataSourceContract;
 import eu.stratosphere.pact.common.contract.MatchContract;
@@ -37,6 +39,9 @@ public class MatchPACT implements PlanAssembler, PlanAssemblerDescription {
 	@Override
 	public Plan getPlan(String... args) {
 
+		PlanOptions options = new PlanOptions(args);
+		args = options.getRemainingArgs();
+
 		// parse job parameters
 		String docsInput   = (args.length > 0 ? args[0] : "");
 		String ranksInput  = (args.length > 1 ? args[1] : "");
@@ -50,6 +55,7 @@ public class MatchPACT implements PlanAssembler, PlanAssemblerDescription {
 		FileDataSourceContract<PactString, Tuple> docs = new FileDataSourceContract<PactString, Tuple>(
 				DocsRanksDataInFormat.class, docsInput, "Documents");
 		docs.setParameter(TextInputFormat.RECORD_DELIMITER, "\n");
+		options.applyTo(docs);
 		if(docsDegreeParallelism != 0)
 			docs.setDegreeOfParallelism(docsDegreeParallelism);
 		else
@@ -59,6 +65,7 @@ public class MatchPACT implements PlanAssembler, PlanAssemblerDescription {
 		FileDataSourceContract<PactString, Tuple> ranks = new FileDataSourceContract<PactString, Tuple>(
 				DocsRanksDataInFormat.class, ranksInput, "Ranks");
 		ranks.setParameter(TextInputFormat.RECORD_DELIMITER, "\n");
+		options.applyTo(ranks);
 		if(ranksDegreeParallelism != 0)
 			ranks.setDegreeOfParallelism(ranksDegreeParallelism);
 		else
@@ -78,6 +85,7 @@ public class MatchPACT implements PlanAssembler, PlanAssemblerDescription {
 		// Create DataSinkContract for writing the result of the OLAP query
 		FileDataSinkContract<PactString, Tuple> result = new FileDataSinkContract<PactString, Tuple>(
 				StringTupleDataOutFormat.class, output, "Result");
+		options.applyTo(result);
 		if(outDegreeParallelism != 0)
 			result.setDegreeOfParallelism(outDegreeParallelism);
 		else
@@ -97,7 +105,10 @@ public class MatchPACT implements PlanAssembler, PlanAssemblerDescription {
 	 */
 	@Override
 	public String getDescription() {
-		return "Parameters: [docPath] [rankPath] [outPath] [docParallelismDegree] [rankParallelismDegree] [matchParallelismDegree] [outParallelismDegree]";
+		return "Parameters: [docPath] [rankPath] [outPath] [docParallelismDegree] [rankParallelismDegree] [matchParallelismDegree] [outParallelismDegree] [-D"
+				+ DocsRanksDataInFormat.RANK_THRESHOLD + "=<rank>] [-D" + DocsRanksDataInFormat.COLUMN_FILTER + "=<predicates>] [-D"
+				+ DocsRanksDataInFormat.PROJECTION + "=<columns>] [-DKEYWORDS=<keywords>] [-D"
+				+ BlockCodec.COMPRESSION_CODEC + "=<codec>]";
 	}
 
 }